@@ -0,0 +1,123 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * HTTP content codings which are supported to compress representations.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public enum ContentCoding {
+
+    /**
+     * No compression.
+     */
+    IDENTITY("identity"),
+
+    /**
+     * GZIP compression.
+     */
+    GZIP("gzip"),
+
+    /**
+     * ZLIB compression.
+     */
+    DEFLATE("deflate");
+
+    private final String _name;
+
+    private ContentCoding(final String name) {
+        _name = name;
+    }
+
+    /**
+     * Returns the name of the content coding which is used within HTTP headers.
+     *
+     * @return The name of the content coding, i.e. "gzip".
+     */
+    public String getName() {
+        return _name;
+    }
+
+    /**
+     * Returns an output stream which encodes all data with this content
+     * coding and writes it to the provided output stream.
+     * 
+     * If this content coding is {@link #IDENTITY}, the provided stream
+     * is returned. Otherwise the caller must invoke {@link #finish(OutputStream)}
+     * after all data was written.
+     *
+     * @param out The output stream to write the encoded data to.
+     * @return An output stream which encodes the data.
+     * @throws IOException In case of an error.
+     */
+    public OutputStream encode(final OutputStream out) throws IOException {
+        switch (this) {
+            case GZIP: return new GZIPOutputStream(out, 8192);
+            case DEFLATE: return new DeflaterOutputStream(out);
+            default: return out;
+        }
+    }
+
+    /**
+     * Finishes writing the encoded data to the underlying output stream 
+     * without closing it.
+     *
+     * @param out An output stream returned by {@link #encode(OutputStream)}.
+     * @throws IOException In case of an error.
+     */
+    public static void finish(final OutputStream out) throws IOException {
+        if (out instanceof DeflaterOutputStream) {
+            ((DeflaterOutputStream) out).finish();
+        }
+        else {
+            out.flush();
+        }
+    }
+
+    /**
+     * Returns the content coding with the provided name.
+     *
+     * @param name The name of the content coding (case-insensitive). 
+     *          "x-gzip" is accepted as alias for "gzip".
+     * @return The content coding or {@code null} if the content coding is unknown.
+     */
+    public static ContentCoding forName(final String name) {
+        if (name == null) {
+            return null;
+        }
+        for (ContentCoding coding: values()) {
+            if (coding._name.equalsIgnoreCase(name)) {
+                return coding;
+            }
+        }
+        return "x-gzip".equalsIgnoreCase(name) ? GZIP : null;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Enum#toString()
+     */
+    @Override
+    public String toString() {
+        return _name;
+    }
+
+}
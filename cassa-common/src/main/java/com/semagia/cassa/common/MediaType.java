@@ -18,15 +18,28 @@ package com.semagia.cassa.common;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Represents an immutable media type.
+ * <p>
+ * Parsed media types are interned: {@link #valueOf(String)} returns the
+ * same instance for equal media types as long as the instance is cached 
+ * (the cache is bounded).
+ * </p>
  * 
  * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
  */
 public final class MediaType {
 
     private static final List<Parameter> _EMPTY_PARAMS = Collections.emptyList();
+    private static final int _MAX_CACHE_SIZE = 512;
+    /**
+     * Maps input strings and normalized string representations to media 
+     * types. Must be initialized before the constants.
+     */
+    private static final ConcurrentMap<String, MediaType> _CACHE = new ConcurrentHashMap<String, MediaType>();
 
     /**
      * Atom feed media type.
@@ -76,6 +89,8 @@ public final class MediaType {
     private final String _mainType;
     private final String _subType;
     private final List<Parameter> _params;
+    private final String _string;
+    private final int _hashCode;
 
     private MediaType(String mainType, String subType, List<Parameter> params) {
         if (mainType == null) {
@@ -90,6 +105,18 @@ public final class MediaType {
         _mainType = mainType;
         _subType = subType;
         _params = Collections.unmodifiableList(params);
+        final StringBuilder buff = new StringBuilder();
+        buff.append(_mainType)
+            .append('/')
+            .append(_subType);
+        for (Parameter param: _params) {
+            buff.append(";")
+                .append(param.getKey())
+                .append('=')
+                .append(param.getValue());
+        }
+        _string = buff.toString();
+        _hashCode = _mainType.hashCode() + _subType.hashCode() + _params.hashCode();
     }
 
     /**
@@ -130,6 +157,9 @@ public final class MediaType {
      * @return <tt>true</tt> if this media type is compatible, otherwise <tt>false</tt>.
      */
     public boolean isCompatible(MediaType other) {
+        if (this == other) {
+            return true;
+        }
         if (other == null) {
             return false;
         }
@@ -158,6 +188,9 @@ public final class MediaType {
      * @return If this media type is compatible to the <tt>other</tt> media type.
      */
     public boolean isCompatible(MediaType other, boolean includeParameters) {
+        if (this == other) {
+            return true;
+        }
         boolean result = isCompatible(other);
         if (!includeParameters) {
             return result;
@@ -172,6 +205,9 @@ public final class MediaType {
      * @return "type/subtype"
      */
     public String toStringWithoutParameters() {
+        if (_params.isEmpty()) {
+            return _string;
+        }
         return new StringBuilder(_mainType)
                     .append('/')
                     .append(_subType)
@@ -186,17 +222,7 @@ public final class MediaType {
      */
     @Override
     public String toString() {
-        StringBuilder buff = new StringBuilder();
-        buff.append(_mainType)
-            .append('/')
-            .append(_subType);
-        for (Parameter param: _params) {
-            buff.append(";")
-                .append(param.getKey())
-                .append('=')
-                .append(param.getValue());
-        }
-        return buff.toString();
+        return _string;
     }
 
     /**
@@ -204,6 +230,10 @@ public final class MediaType {
      * <p>
      * The <tt>value</tt> must follow the syntax for media types.
      * </p>
+     * <p>
+     * Equal media types are represented by the same instance as long as
+     * the instance is cached.
+     * </p>
      *
      * @param value A string representation of a media type.
      * @return A media type instance.
@@ -212,40 +242,102 @@ public final class MediaType {
         if (value == null) {
             throw new IllegalArgumentException("The value must not be null");
         }
-        String mainType = null;
-        String subType = null;
-        String params = null;
-        int idx = value.indexOf(";");
-        if (idx > -1) {
-           params = value.substring(idx + 1);
-           value = value.substring(0, idx);
+        MediaType mediaType = _CACHE.get(value);
+        if (mediaType != null) {
+            return mediaType;
         }
-        String[] pair = value.split("/");
-        if (pair.length < 2 && value.equals("*")) {
-           mainType = "*";
-           subType = "*";
+        mediaType = parse(value);
+        if (_CACHE.size() >= _MAX_CACHE_SIZE) {
+            _CACHE.clear();
         }
-        else if (pair.length != 2) {
-           throw new IllegalArgumentException("Illegal media type: " + value);
+        final MediaType existing = _CACHE.putIfAbsent(mediaType._string, mediaType);
+        if (existing != null) {
+            mediaType = existing;
+        }
+        _CACHE.put(value, mediaType);
+        return mediaType;
+    }
+
+    /**
+     * Parses the <tt>value</tt> in one pass without splitting it into
+     * intermediate strings or arrays.
+     *
+     * @param value The string to parse.
+     * @return A new media type instance.
+     */
+    private static MediaType parse(final String value) {
+        final int len = value.length();
+        final int semicolon = value.indexOf(';');
+        final int end = semicolon > -1 ? semicolon : len;
+        final int slash = value.indexOf('/');
+        final String mainType;
+        final String subType;
+        if (slash < 0 || slash > end) {
+            if (end != 1 || value.charAt(0) != '*') {
+                throw new IllegalArgumentException("Illegal media type: " + value);
+            }
+            mainType = "*";
+            subType = "*";
         }
         else {
-            mainType = pair[0].trim().toLowerCase();
-            subType = pair[1].trim().toLowerCase();
+            final int slash2 = value.indexOf('/', slash + 1);
+            if (slash2 > -1 && slash2 < end) {
+                throw new IllegalArgumentException("Illegal media type: " + value);
+            }
+            mainType = token(value, 0, slash, true);
+            subType = token(value, slash + 1, end, true);
+            if (subType.length() == 0) {
+                throw new IllegalArgumentException("Illegal media type: " + value);
+            }
         }
-        if (params == null) {
+        if (semicolon < 0) {
             return new MediaType(mainType, subType, _EMPTY_PARAMS);
         }
-        List<Parameter> parameters = new ArrayList<Parameter>();
-        String[] keyValuePairs = params.split(";");
-        for (String keyValuePair : keyValuePairs) {
-           idx = keyValuePair.indexOf("=");
-           String key = keyValuePair.substring(0, idx).trim().toLowerCase();
-           String val = keyValuePair.substring(idx + 1).trim();
-           parameters.add(new Parameter(key, val));
+        final List<Parameter> parameters = new ArrayList<Parameter>(2);
+        int start = semicolon + 1;
+        while (start < len) {
+            int next = value.indexOf(';', start);
+            if (next < 0) {
+                next = len;
+            }
+            final int eq = value.indexOf('=', start);
+            if (eq < 0 || eq > next) {
+                throw new IllegalArgumentException("Illegal media type parameter: " + value);
+            }
+            parameters.add(new Parameter(token(value, start, eq, true), token(value, eq + 1, next, false)));
+            start = next + 1;
         }
         return new MediaType(mainType, subType, parameters);
     }
 
+    /**
+     * Returns the trimmed substring of <tt>value</tt>, optionally converted 
+     * to lower case.
+     *
+     * @param value The string.
+     * @param start The start index (inclusive).
+     * @param end The end index (exclusive).
+     * @param lowerCase Indicates if the result should be converted to lower case.
+     * @return The normalized substring.
+     */
+    private static String token(final String value, int start, int end, final boolean lowerCase) {
+        while (start < end && value.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (lowerCase) {
+            for (int i = start; i < end; i++) {
+                final char c = value.charAt(i);
+                if ((c >= 'A' && c <= 'Z') || c > 0x7F) {
+                    return value.substring(start, end).toLowerCase();
+                }
+            }
+        }
+        return value.substring(start, end);
+    }
+
     /* (non-Javadoc)
      * @see java.lang.Object#equals(java.lang.Object)
      */
@@ -258,7 +350,8 @@ public final class MediaType {
             return false;
         }
         MediaType other = (MediaType) obj;
-        return _mainType.equals(other._mainType)
+        return _hashCode == other._hashCode
+                    && _mainType.equals(other._mainType)
                     && _subType.equals(other._subType)
                     && _params.equals(other._params);
     }
@@ -268,7 +361,7 @@ public final class MediaType {
      */
     @Override
     public int hashCode() {
-        return _mainType.hashCode() + _subType.hashCode() + _params.hashCode();
+        return _hashCode;
     }
 
 
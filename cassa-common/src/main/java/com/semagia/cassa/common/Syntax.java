@@ -17,7 +17,10 @@ package com.semagia.cassa.common;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * Represents a serialization syntax.
@@ -219,12 +222,37 @@ public final class Syntax {
             Arrays.asList("text/html", "application/xhtml+xml"),
             Arrays.asList("html", "htm", "xhtml", "xhtm"));
 
-    private static Syntax[] _SYNTAXES = new Syntax[] {
+    private static final Syntax[] _SYNTAXES = new Syntax[] {
         ASTMA, BTM, CTM, JTM, LTM, XTM, XTM_10, XTM_20, XTM_21, TMXML, XFML, 
         SNELLO, RDFXML, N3, NTRIPLES, TURTLE, TRIX, TRIG, RDFA, CRTM
     };
 
+    /*
+     * Lookup indexes. If several syntaxes share a key, the syntax which 
+     * occurs first in _SYNTAXES wins.
+     */
+    private static final Map<String, Syntax> _BY_NAME = new HashMap<String, Syntax>();
+    private static final Map<String, Syntax> _BY_MIME_TYPE = new HashMap<String, Syntax>();
+    private static final Map<String, Syntax> _BY_FILE_EXTENSION = new HashMap<String, Syntax>();
+    private static final Map<String, Syntax> _BY_PSI = new HashMap<String, Syntax>();
+
+    static {
+        for (Syntax syntax: _SYNTAXES) {
+            register(_BY_NAME, syntax._key, syntax);
+            for (String mimeType: syntax._mimeTypes) {
+                register(_BY_MIME_TYPE, normalizeMIMEType(mimeType), syntax);
+            }
+            for (String ext: syntax._fileExtensions) {
+                register(_BY_FILE_EXTENSION, ext.toLowerCase(Locale.ENGLISH), syntax);
+            }
+            for (String psi: syntax._psis) {
+                register(_BY_PSI, psi, syntax);
+            }
+        }
+    }
+
     private final String _name;
+    private final String _key;
     private final String[] _mimeTypes;
     private final String[] _fileExtensions;
     private final String[] _psis;
@@ -249,6 +277,7 @@ public final class Syntax {
     private Syntax(final String name, final List<String> mimeTypes, 
                     final List<String> fileExtensions, final List<String> psis) {
         _name = name;
+        _key = name.toLowerCase(Locale.ENGLISH);
         _mimeTypes = mimeTypes.toArray(new String[mimeTypes.size()]);
         _fileExtensions = fileExtensions.toArray(new String[fileExtensions.size()]);
         _psis = psis.toArray(new String[psis.size()]);
@@ -273,7 +302,7 @@ public final class Syntax {
      */
     @Override
     public int hashCode() {
-        return _name.toLowerCase().hashCode();
+        return _key.hashCode();
     }
 
     /**
@@ -351,6 +380,14 @@ public final class Syntax {
 
     /**
      * Returns a syntax for the specified MIME type.
+     * <p>
+     * The MIME type is matched case-insensitive. If the MIME type has 
+     * parameters, the most specific syntax wins: A syntax which matches the 
+     * MIME type including all parameters is preferred over a syntax which
+     * matches the MIME type with one parameter (in the order of the 
+     * parameters) which is preferred over a syntax which matches the 
+     * MIME type without parameters.
+     * </p>
      *
      * @param mimeType
      * @param defaultSyntax The syntax to return if no appropiate syntax was 
@@ -360,14 +397,36 @@ public final class Syntax {
      *          <tt>mimeType</tt>.
      */
     public static final Syntax forMIMEType(final String mimeType, final Syntax defaultSyntax) {
-        for (Syntax syntax : _SYNTAXES) {
-            for (String mt: syntax.getMIMETypes()) {
-                if (mt.equalsIgnoreCase(mimeType)) {
+        if (mimeType == null) {
+            return defaultSyntax;
+        }
+        final String key = normalizeMIMEType(mimeType);
+        Syntax syntax = _BY_MIME_TYPE.get(key);
+        if (syntax != null) {
+            return syntax;
+        }
+        final int idx = key.indexOf(';');
+        if (idx < 0) {
+            return defaultSyntax;
+        }
+        // Try the MIME type with each single parameter, then without parameters
+        final String type = key.substring(0, idx);
+        int start = idx + 1;
+        while (start < key.length()) {
+            int end = key.indexOf(';', start);
+            if (end < 0) {
+                end = key.length();
+            }
+            if (end > start) {
+                syntax = _BY_MIME_TYPE.get(type + ';' + key.substring(start, end));
+                if (syntax != null) {
                     return syntax;
                 }
             }
+            start = end + 1;
         }
-        return defaultSyntax;
+        syntax = _BY_MIME_TYPE.get(type);
+        return syntax != null ? syntax : defaultSyntax;
     }
 
     /**
@@ -399,14 +458,7 @@ public final class Syntax {
      *          <tt>extension</tt>.
      */
     public static final Syntax forFileExtension(final String extension, final Syntax defaultSyntax) {
-        for (Syntax syntax : _SYNTAXES) {
-            for (String ext: syntax.getFileExtensions()) {
-                if (ext.equalsIgnoreCase(extension)) {
-                    return syntax;
-                }
-            }
-        }
-        return defaultSyntax;
+        return lookup(_BY_FILE_EXTENSION, extension == null ? null : extension.toLowerCase(Locale.ENGLISH), defaultSyntax);
     }
 
     /**
@@ -430,14 +482,7 @@ public final class Syntax {
      *          <tt>psi</tt>.
      */
     public static final Syntax forPSI(final String psi, final Syntax defaultSyntax) {
-        for (Syntax syntax : _SYNTAXES) {
-            for (String p: syntax.getPSIs()) {
-                if (p.equals(psi)) {
-                    return syntax;
-                }
-            }
-        }
-        return defaultSyntax;
+        return lookup(_BY_PSI, psi, defaultSyntax);
     }
 
     /**
@@ -451,12 +496,47 @@ public final class Syntax {
      *          <tt>null</tt> if no syntax was found.
      */
     public static final Syntax valueOf(final String name) {
-        for (Syntax syntax : _SYNTAXES) {
-            if (syntax.getName().equalsIgnoreCase(name)) {
-                return syntax;
+        return lookup(_BY_NAME, name == null ? null : name.toLowerCase(Locale.ENGLISH), null);
+    }
+
+    private static Syntax lookup(final Map<String, Syntax> index, final String key, 
+            final Syntax defaultSyntax) {
+        final Syntax syntax = key == null ? null : index.get(key);
+        return syntax != null ? syntax : defaultSyntax;
+    }
+
+    private static void register(final Map<String, Syntax> index, final String key, 
+            final Syntax syntax) {
+        if (!index.containsKey(key)) {
+            index.put(key, syntax);
+        }
+    }
+
+    /**
+     * Returns the MIME type in lower case without any whitespace, i.e. 
+     * "Application/X-TM+XTM; Version=2.1" becomes "application/x-tm+xtm;version=2.1".
+     *
+     * @param mimeType The MIME type.
+     * @return The normalized MIME type.
+     */
+    private static String normalizeMIMEType(final String mimeType) {
+        final int len = mimeType.length();
+        boolean normalized = true;
+        for (int i = 0; i < len && normalized; i++) {
+            final char c = mimeType.charAt(i);
+            normalized = c > ' ' && (c < 'A' || c > 'Z') && c <= 0x7F;
+        }
+        if (normalized) {
+            return mimeType;
+        }
+        final StringBuilder buff = new StringBuilder(len);
+        for (int i = 0; i < len; i++) {
+            final char c = mimeType.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                buff.append(c);
             }
         }
-        return null;
+        return buff.toString().toLowerCase(Locale.ENGLISH);
     }
 
     /* (non-Javadoc)
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.common.dm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.semagia.cassa.common.ContentCoding;
+
+/**
+ * A representation which is able to write itself with a content coding, i.e.
+ * because it holds an already compressed copy of its serialization.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public interface ICompressibleRepresentation extends IWritableRepresentation {
+
+    /**
+     * Writes this instance encoded with the provided content coding to the 
+     * specified {@link OutputStream}.
+     *
+     * @param out The stream to write to.
+     * @param coding The content coding.
+     * @throws IOException In case of an error.
+     */
+    public void write(OutputStream out, ContentCoding coding) throws IOException;
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against {@link ContentCoding}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestContentCoding extends TestCase {
+
+    private static final byte[] _DATA = "<rdf:RDF xmlns:rdf='http://www.w3.org/1999/02/22-rdf-syntax-ns#'/>".getBytes();
+
+    public void testForName() {
+        assertEquals(ContentCoding.GZIP, ContentCoding.forName("gzip"));
+        assertEquals(ContentCoding.GZIP, ContentCoding.forName("GZIP"));
+        assertEquals(ContentCoding.GZIP, ContentCoding.forName("x-gzip"));
+        assertEquals(ContentCoding.DEFLATE, ContentCoding.forName("deflate"));
+        assertEquals(ContentCoding.IDENTITY, ContentCoding.forName("identity"));
+        assertNull(ContentCoding.forName("compress"));
+        assertNull(ContentCoding.forName(null));
+    }
+
+    private static byte[] encode(final ContentCoding coding) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final OutputStream encoded = coding.encode(out);
+        encoded.write(_DATA);
+        ContentCoding.finish(encoded);
+        return out.toByteArray();
+    }
+
+    private static byte[] read(final InputStream in) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            out.write(b);
+        }
+        return out.toByteArray();
+    }
+
+    public void testIdentity() throws Exception {
+        assertTrue(Arrays.equals(_DATA, encode(ContentCoding.IDENTITY)));
+    }
+
+    public void testGZIP() throws Exception {
+        assertTrue(Arrays.equals(_DATA, read(new GZIPInputStream(new ByteArrayInputStream(encode(ContentCoding.GZIP))))));
+    }
+
+    public void testDeflate() throws Exception {
+        assertTrue(Arrays.equals(_DATA, read(new InflaterInputStream(new ByteArrayInputStream(encode(ContentCoding.DEFLATE))))));
+    }
+
+}
@@ -146,4 +146,32 @@ public class TestMediaType extends TestCase {
         assertFalse(mtApp.isCompatible(mt, true));
     }
 
+    public void testInterned() {
+        assertSame(MediaType.XTM, MediaType.valueOf("application/x-tm+xtm"));
+        assertSame(MediaType.XTM, MediaType.valueOf("Application / X-TM+XTM"));
+        final MediaType mt = MediaType.valueOf("application/x-tm+xml; version = 1.0");
+        assertSame(mt, MediaType.valueOf("application/x-tm+xml;version=1.0"));
+        assertNotSame(mt, MediaType.valueOf("application/x-tm+xml;version=1.1"));
+    }
+
+    public void testIllegalParameter() {
+        try {
+            MediaType.valueOf("application/x-tm+xml;version");
+            fail("A parameter without a value is illegal");
+        }
+        catch (IllegalArgumentException ex) {
+            // noop.
+        }
+    }
+
+    public void testIllegalTypeSubtype() {
+        try {
+            MediaType.valueOf("application/x-tm/xml");
+            fail("Expected an exception for an illegal media type");
+        }
+        catch (IllegalArgumentException ex) {
+            // noop.
+        }
+    }
+
 }
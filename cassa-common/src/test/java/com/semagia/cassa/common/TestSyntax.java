@@ -0,0 +1,65 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.common;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link Syntax} class.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestSyntax extends TestCase {
+
+    public void testValueOf() {
+        assertSame(Syntax.XTM_21, Syntax.valueOf("XTM 2.1"));
+        assertSame(Syntax.XTM_21, Syntax.valueOf("xtm 2.1"));
+        assertSame(Syntax.RDFXML, Syntax.valueOf("rdf/xml"));
+        assertNull(Syntax.valueOf("unknown"));
+        assertNull(Syntax.valueOf(null));
+    }
+
+    public void testFileExtension() {
+        assertSame(Syntax.XTM, Syntax.forFileExtension("xtm"));
+        assertSame(Syntax.XTM, Syntax.forFileExtension("XTM"));
+        assertSame(Syntax.XTM_21, Syntax.forFileExtension("xtm21"));
+        assertSame(Syntax.TMXML, Syntax.forFileExtension("xml"));
+        assertNull(Syntax.forFileExtension("unknown"));
+        assertNull(Syntax.forFileExtension(null));
+        assertSame(Syntax.CTM, Syntax.forFileExtension("unknown", Syntax.CTM));
+    }
+
+    public void testMIMEType() {
+        assertSame(Syntax.XTM, Syntax.forMIMEType("application/x-tm+xtm"));
+        assertSame(Syntax.XTM, Syntax.forMIMEType("Application/X-TM+XTM"));
+        assertSame(Syntax.XTM, Syntax.forMIMEType("application/xml"));
+        assertSame(Syntax.ASTMA, Syntax.forMIMEType("text/plain"));
+        assertNull(Syntax.forMIMEType("application/x-unknown"));
+        assertNull(Syntax.forMIMEType(null));
+        assertSame(Syntax.CTM, Syntax.forMIMEType("application/x-unknown", Syntax.CTM));
+    }
+
+    public void testMIMETypeParameters() {
+        assertSame(Syntax.XTM_21, Syntax.forMIMEType("application/x-tm+xtm;version=2.1"));
+        assertSame(Syntax.XTM_21, Syntax.forMIMEType("application/x-tm+xtm; Version = 2.1"));
+        assertSame(Syntax.XTM_10, Syntax.forMIMEType("application/x-tm+xtm;version=1.0"));
+        assertSame(Syntax.XTM_21, Syntax.forMIMEType("application/x-tm+xtm;charset=utf-8;version=2.1"));
+        assertSame(Syntax.XTM, Syntax.forMIMEType("application/x-tm+xtm;charset=utf-8"));
+        assertSame(Syntax.XTM, Syntax.forMIMEType("application/x-tm+xtm;version=3.0"));
+        assertNull(Syntax.forMIMEType("application/x-unknown;version=2.1"));
+    }
+
+}
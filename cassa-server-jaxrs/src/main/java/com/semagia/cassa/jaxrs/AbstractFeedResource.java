@@ -0,0 +1,211 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.jaxrs;
+
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+import static javax.ws.rs.core.Response.Status.NOT_FOUND;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLEncoder;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
+
+import com.semagia.cassa.common.ContentCoding;
+import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.jaxrs.utils.MediaTypeUtils;
+import com.semagia.cassa.server.sdshare.FeedHandlerRegistry;
+import com.semagia.cassa.server.sdshare.IOutputAwareFeedHandler;
+import com.semagia.cassa.server.sdshare.TagURIGenerator;
+import com.semagia.cassa.server.store.IStore;
+import com.semagia.cassa.server.store.ISDShareStore;
+
+import static com.semagia.cassa.jaxrs.utils.ResponseUtils.contentEncoding;
+
+/**
+ * Common resource for SDShare feeds.
+ * 
+ * The feeds are never materialized: The entries are written to the 
+ * negotiated {@link IOutputAwareFeedHandler} while the store's iterables
+ * are consumed.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public abstract class AbstractFeedResource extends AbstractResource {
+
+    /**
+     * Domain used for the tag IRIs if the host name of the request is no 
+     * valid domain name (i.e. "localhost").
+     */
+    private static final String _FALLBACK_DOMAIN = "localhost.localdomain";
+
+    @Context
+    protected UriInfo _uriInfo;
+
+    /**
+     * Writes the content of a feed.
+     */
+    protected interface IFeedWriter {
+
+        /**
+         * Writes the feed to the provided handler.
+         * 
+         * The handler is initialized, the implementation is responsible 
+         * to write a complete feed, starting with 
+         * {@code startFeed(String, String, long)} and ending with {@code endFeed()}.
+         *
+         * @param handler The handler to write the feed to.
+         * @param updated The time when the feed was updated.
+         * @throws IOException In case of an error.
+         */
+        public void writeFeed(IOutputAwareFeedHandler handler, long updated) throws IOException;
+
+    }
+
+    /**
+     * Returns the SDShare store.
+     *
+     * @return The store to operate on.
+     * @throws WebApplicationException With the status {@code Not found (404)} 
+     *          if the store does not support SDShare.
+     */
+    protected final ISDShareStore getSDShareStore() throws WebApplicationException {
+        final IStore store = getStore();
+        if (!(store instanceof ISDShareStore)) {
+            throw new WebApplicationException(NOT_FOUND);
+        }
+        return (ISDShareStore) store;
+    }
+
+    /**
+     * Returns the graph URI from the provided {@code default} and 
+     * {@code graph} query parameters.
+     *
+     * @param defaultGraph The value of the {@code default} parameter or {@code null}.
+     * @param graph The value of the {@code graph} parameter or {@code null}.
+     * @return The graph URI, {@link IStore#DEFAULT_GRAPH} if the default graph is meant.
+     * @throws WebApplicationException With the status {@code Bad request (400)} 
+     *          if the parameters are illegal.
+     */
+    protected static URI toGraphURI(final String defaultGraph, final URI graph) throws WebApplicationException {
+        final boolean isDefaultGraph = defaultGraph != null;
+        if (isDefaultGraph && (!defaultGraph.isEmpty() || graph != null)) {
+            throw new WebApplicationException(BAD_REQUEST);
+        }
+        if (!isDefaultGraph && (graph == null || !graph.isAbsolute())) {
+            throw new WebApplicationException(BAD_REQUEST);
+        }
+        return isDefaultGraph ? IStore.DEFAULT_GRAPH : graph;
+    }
+
+    /**
+     * Returns an absolute URI which points to the feed of the provided graph.
+     *
+     * @param feedResource The resource class which provides the feed.
+     * @param graphURI The graph URI.
+     * @return An absolute URI to the feed.
+     * @throws UnsupportedEncodingException In case UTF-8 encoding is not supported.
+     */
+    protected final URI linkToFeed(final Class<?> feedResource, final URI graphURI) throws UnsupportedEncodingException {
+        final URI feedURI = _uriInfo.getBaseUriBuilder().path(feedResource).build();
+        return graphURI == IStore.DEFAULT_GRAPH ? feedURI.resolve("?default")
+                                                : feedURI.resolve("?graph=" + URLEncoder.encode(graphURI.toString(), "UTF-8"));
+    }
+
+    /**
+     * Returns a generator for entry identifiers.
+     *
+     * @return A {@link TagURIGenerator} which uses the host name of the request.
+     */
+    protected final TagURIGenerator getTagURIGenerator() {
+        try {
+            return new TagURIGenerator(_uriInfo.getBaseUri().getHost());
+        }
+        catch (IllegalArgumentException ex) {
+            return new TagURIGenerator(_FALLBACK_DOMAIN);
+        }
+    }
+
+    /**
+     * Returns a response which streams the feed.
+     * 
+     * If the request contains a {@code If-Modified-Since} header and the
+     * feed wasn't modified, a {@link WebApplicationException} with
+     * the status {@code Not modified (304)} is thrown before the feed 
+     * writer is invoked.
+     *
+     * @param lastModification Last modification date or {@code -1} to indicate an unknown date.
+     * @param writer The writer which writes the feed.
+     * @return A response.
+     * @throws WebApplicationException In case the feed wasn't modified or 
+     *          if no acceptable media type is available.
+     */
+    protected final Response buildFeed(final long lastModification, final IFeedWriter writer) throws WebApplicationException {
+        final MediaType mt = getMediaType(FeedHandlerRegistry.getMediaTypes());
+        final ContentCoding coding = getContentCoding();
+        final ResponseBuilder builder = makeResponseBuilder(lastModification);
+        builder.variants(MediaTypeUtils.asVariants(FeedHandlerRegistry.getMediaTypes()));
+        builder.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        contentEncoding(builder, coding);
+        final long updated = lastModification != -1 ? lastModification : System.currentTimeMillis();
+        return builder.entity(new StreamingFeedOutput(mt, coding, writer, updated))
+                      .header(HttpHeaders.CONTENT_TYPE, mt.toString() + "; charset=utf-8")
+                      .build();
+    }
+
+
+    /**
+     * {@link StreamingOutput} which writes a feed using the 
+     * {@link IOutputAwareFeedHandler} for a particular media type.
+     */
+    private static final class StreamingFeedOutput implements StreamingOutput {
+
+        private final MediaType _mediaType;
+        private final ContentCoding _coding;
+        private final IFeedWriter _writer;
+        private final long _updated;
+
+        StreamingFeedOutput(final MediaType mediaType, final ContentCoding coding, 
+                final IFeedWriter writer, final long updated) {
+            _mediaType = mediaType;
+            _coding = coding;
+            _writer = writer;
+            _updated = updated;
+        }
+
+        /* (non-Javadoc)
+         * @see javax.ws.rs.core.StreamingOutput#write(java.io.OutputStream)
+         */
+        @Override
+        public void write(final OutputStream out) throws IOException, WebApplicationException {
+            final IOutputAwareFeedHandler handler = FeedHandlerRegistry.createFeedHandler(_mediaType);
+            final OutputStream encoded = _coding.encode(out);
+            handler.init(encoded);
+            _writer.writeFeed(handler, _updated);
+            ContentCoding.finish(encoded);
+        }
+
+    }
+
+}
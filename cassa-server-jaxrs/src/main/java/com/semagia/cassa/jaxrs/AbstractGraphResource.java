@@ -18,14 +18,19 @@ package com.semagia.cassa.jaxrs;
 import static com.semagia.cassa.jaxrs.utils.ResponseUtils.accepted;
 import static com.semagia.cassa.jaxrs.utils.ResponseUtils.badRequest;
 import static com.semagia.cassa.jaxrs.utils.ResponseUtils.buildStreamingEntity;
-import static com.semagia.cassa.jaxrs.utils.ResponseUtils.created;
+import static com.semagia.cassa.jaxrs.utils.ResponseUtils.bulkLoadProgress;
+import static com.semagia.cassa.jaxrs.utils.ResponseUtils.contentEncoding;
 import static com.semagia.cassa.jaxrs.utils.ResponseUtils.noContent;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.HEAD;
 import javax.ws.rs.POST;
@@ -38,13 +43,15 @@ import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.UriInfo;
 
+import com.semagia.cassa.common.ContentCoding;
 import com.semagia.cassa.common.MediaType;
-import com.semagia.cassa.common.dm.IWritableRepresentation;
 import com.semagia.cassa.common.dm.RemovalStatus;
 import com.semagia.cassa.jaxrs.utils.GraphUtils;
 import com.semagia.cassa.jaxrs.utils.MediaTypeUtils;
+import com.semagia.cassa.server.store.BulkLoad;
 import com.semagia.cassa.server.store.GraphMismatchException;
 import com.semagia.cassa.server.store.GraphNotExistsException;
+import com.semagia.cassa.server.store.IGraph;
 import com.semagia.cassa.server.store.IGraphInfo;
 import com.semagia.cassa.server.store.IStore;
 import com.semagia.cassa.server.store.ParseException;
@@ -60,6 +67,8 @@ import com.semagia.cassa.server.utils.ETagUtils;
  */
 public abstract class AbstractGraphResource extends AbstractResource {
 
+    private static final char _BINDING_PREFIX = '$';
+
     @Context
     protected UriInfo _uriInfo;
 
@@ -71,22 +80,62 @@ public abstract class AbstractGraphResource extends AbstractResource {
     protected abstract URI getGraphURI();
 
     /**
-     * Writes a graph.
+     * Writes a graph or the statements about a subject of the graph.
      * 
+     * @param subject The subject or {@code null} to write the graph.
      * @return A graph serialization.
      * @throws IOException In case of an I/O error.
      * @throws GraphNotExistsException In case the graph does not exist. 
      * @throws StoreException In case of an error.
      */
     @GET
-    public Response getGraph() throws IOException, GraphNotExistsException, StoreException {
+    public Response getGraph(@QueryParam("subject") URI subject) throws IOException, GraphNotExistsException, StoreException {
+        if (subject != null) {
+            return getSubject(subject);
+        }
+        final IGraph graph = getStore().openGraph(getGraphURI());
+        boolean released = false;
+        try {
+            final IGraphInfo info = graph.getGraphInfo();
+            final MediaType mt = getMediaType(info.getSupportedMediaTypes());
+            final ContentCoding coding = getContentCoding();
+            // Evaluate the preconditions before the serialization is requested
+            final ResponseBuilder builder = makeResponseBuilder(info, mt, coding);
+            released = true;
+            return buildStreamingEntity(builder, graph.getRepresentation(mt), coding);
+        }
+        finally {
+            if (!released) {
+                graph.close();
+            }
+        }
+    }
+
+    /**
+     * Writes the statements about the provided subject.
+     * 
+     * The response has no ETag since the ETag of the graph does not 
+     * identify the serialization of the subject.
+     *
+     * @param subject The subject.
+     * @return A serialization of the statements about the subject.
+     * @throws IOException In case of an I/O error.
+     * @throws GraphNotExistsException In case the graph does not exist. 
+     * @throws StoreException In case of an error.
+     */
+    private Response getSubject(final URI subject) throws IOException, GraphNotExistsException, StoreException {
+        if (!subject.isAbsolute()) {
+            return badRequest();
+        }
         final URI graphURI = getGraphURI();
         final IStore store = getStore();
-        final IGraphInfo graph = store.getGraphInfo(graphURI);
-        final MediaType mt = getMediaType(graph.getSupportedMediaTypes());
-        final IWritableRepresentation writable = store.getGraph(graphURI, mt);
-        return buildStreamingEntity(
-                makeResponseBuilder(graph, writable.getMediaType()), writable);
+        final IGraphInfo info = store.getGraphInfo(graphURI);
+        final MediaType mt = getMediaType(info.getSupportedMediaTypes());
+        final ContentCoding coding = getContentCoding();
+        final ResponseBuilder builder = super.makeResponseBuilder(info.getLastModification());
+        builder.variants(MediaTypeUtils.asVariants(info.getSupportedMediaTypes()));
+        builder.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        return buildStreamingEntity(builder, store.getSubject(graphURI, subject, mt), coding);
     }
 
     /**
@@ -100,11 +149,15 @@ public abstract class AbstractGraphResource extends AbstractResource {
     public Response getGraphInfo() throws GraphNotExistsException, StoreException {
         final IGraphInfo graph = getStore().getGraphInfo(getGraphURI());
         final MediaType mt = getMediaType(graph.getSupportedMediaTypes());
-        return makeResponseBuilder(graph, mt).build();
+        final ContentCoding coding = getContentCoding();
+        return contentEncoding(makeResponseBuilder(graph, mt, coding), coding).build();
     }
 
     /**
      * Creates a new graph or replaces an existing graph.
+     * 
+     * If the {@code bulk} parameter is provided, the graph is loaded in 
+     * chunks of the provided number of statements, see {@link BulkLoad}.
      *
      * @return A response indicating if a graph was created or replaced.
      * @throws IOException In case of an I/O error. 
@@ -112,21 +165,30 @@ public abstract class AbstractGraphResource extends AbstractResource {
      * @throws StoreException In case of an error.
      */
     @PUT
-    public Response create(InputStream in, @Context HttpHeaders header, @QueryParam("subject") URI subject) throws IOException, ParseException, StoreException {
+    public Response create(InputStream in, @Context HttpHeaders header, @QueryParam("subject") URI subject, 
+            @QueryParam("bulk") @DefaultValue("0") int bulk) throws IOException, ParseException, StoreException {
+        if (bulk < 0 || (bulk > 0 && subject != null)) {
+            return badRequest();
+        }
         final URI graphURI = getGraphURI();
         final IStore store = getStore();
         final MediaType mt = MediaTypeUtils.toMediaType(header.getMediaType());
         final boolean wasKnown = graphURI == IStore.DEFAULT_GRAPH || store.containsGraph(graphURI);
-        final IGraphInfo info = subject == null ? store.createOrReplaceGraph(graphURI, in, getBaseURI(graphURI), mt)
-                                                : store.createOrReplaceSubject(graphURI, subject, in, getBaseURI(graphURI), mt);
+        final BulkLoad bulkLoad = bulk > 0 ? new BulkLoad(bulk, true) : null;
+        final IGraphInfo info = bulkLoad != null ? store.loadGraph(graphURI, in, getBaseURI(graphURI), mt, bulkLoad)
+                                : subject == null ? store.createOrReplaceGraph(graphURI, in, getBaseURI(graphURI), mt)
+                                                  : store.createOrReplaceSubject(graphURI, subject, in, getBaseURI(graphURI), mt);
         if (wasKnown) {
-            return noContent();
+            return build(Response.noContent(), bulkLoad);
         }
-        return created(GraphUtils.linkToGraph(_uriInfo, info));
+        return build(Response.created(GraphUtils.linkToGraph(_uriInfo, info)), bulkLoad);
     }
 
     /**
      * Creates a new graph or updates an existing graph.
+     * 
+     * If the {@code bulk} parameter is provided, the graph is loaded in 
+     * chunks of the provided number of statements, see {@link BulkLoad}.
      *
      * @return A response indicating if a graph was created or updated.
      * @throws UnsupportedMediaTypeException In case the media type isn't supported. 
@@ -135,14 +197,21 @@ public abstract class AbstractGraphResource extends AbstractResource {
      * @throws StoreException In case of an error.
      */
     @POST
-    public Response createOrUpdateGraph(InputStream in, @Context HttpHeaders header) throws UnsupportedMediaTypeException, IOException, ParseException, StoreException {
+    public Response createOrUpdateGraph(InputStream in, @Context HttpHeaders header, 
+            @QueryParam("bulk") @DefaultValue("0") int bulk) throws UnsupportedMediaTypeException, IOException, ParseException, StoreException {
+        if (bulk < 0) {
+            return badRequest();
+        }
         final URI graphURI = getGraphURI();
         final IStore store = getStore();
         final MediaType mt = MediaTypeUtils.toMediaType(header.getMediaType());
         final URI base = getBaseURI(graphURI);
-        final IGraphInfo info = graphURI == null ? store.createGraph(in, base, mt)
-                                                 : store.updateGraph(graphURI, in, base, mt);
-        return graphURI == null ? created(info.getURI()) : noContent();
+        final BulkLoad bulkLoad = bulk > 0 ? new BulkLoad(bulk, false) : null;
+        final IGraphInfo info = bulkLoad != null ? store.loadGraph(graphURI, in, base, mt, bulkLoad)
+                                : graphURI == null ? store.createGraph(in, base, mt)
+                                                   : store.updateGraph(graphURI, in, base, mt);
+        return graphURI == null ? build(Response.created(info.getURI()), bulkLoad) 
+                                : build(Response.noContent(), bulkLoad);
     }
 
     /**
@@ -163,6 +232,10 @@ public abstract class AbstractGraphResource extends AbstractResource {
 
     /**
      * Modifies a graph.
+     * 
+     * Query parameters which start with {@code $} are bound to the variable
+     * with the same name (without the {@code $}), the values must be provided
+     * in N-Triples syntax, i.e. {@code ?$s=<http://www.example.org/>}.
      *
      * @return A response indicating if the graph was modified successfully.
      * @throws QueryException In case of a query error, i.e. syntax error.
@@ -174,8 +247,32 @@ public abstract class AbstractGraphResource extends AbstractResource {
     public Response modifyGraph(InputStream in, @Context HttpHeaders header) throws IOException, GraphMismatchException, UnsupportedMediaTypeException, QueryException, StoreException {
         final URI graphURI = getGraphURI();
         final MediaType mt = MediaTypeUtils.toMediaType(header.getMediaType());
-        return getStore().modifyGraph(graphURI, in, getBaseURI(graphURI), mt) ? noContent()
-                                                                              : badRequest();
+        final Map<String, String> bindings = new HashMap<String, String>();
+        for (Map.Entry<String, List<String>> param: _uriInfo.getQueryParameters().entrySet()) {
+            final String name = param.getKey();
+            if (name.length() > 1 && name.charAt(0) == _BINDING_PREFIX) {
+                if (param.getValue().size() != 1) {
+                    return badRequest();
+                }
+                bindings.put(name.substring(1), param.getValue().get(0));
+            }
+        }
+        return getStore().modifyGraph(graphURI, in, getBaseURI(graphURI), mt, bindings) ? noContent()
+                                                                                        : badRequest();
+    }
+
+    /**
+     * Builds the response and adds the progress of the bulk load, if any.
+     *
+     * @param builder The response builder.
+     * @param bulkLoad The bulk load or {@code null}.
+     * @return The response.
+     */
+    private static Response build(final ResponseBuilder builder, final BulkLoad bulkLoad) {
+        if (bulkLoad != null) {
+            bulkLoadProgress(builder, bulkLoad.getCommittedStatements(), bulkLoad.getCommittedChunks());
+        }
+        return builder.build();
     }
 
     /**
@@ -200,8 +297,21 @@ public abstract class AbstractGraphResource extends AbstractResource {
      * @return A ResponseBuilder instance.
      */
     protected final ResponseBuilder makeResponseBuilder(final IGraphInfo graphInfo, final MediaType mediaType) {
-        final ResponseBuilder builder = super.makeResponseBuilder(graphInfo.getLastModification(), createETag(graphInfo, mediaType));
+        return makeResponseBuilder(graphInfo, mediaType, ContentCoding.IDENTITY);
+    }
+
+    /**
+     * Returns a {@link ResponseBuilder} initialized with the provided graph metadata.
+     *
+     * @param graphInfo The graph's metadata.
+     * @param mediaType The media type of the response or {@code null}.
+     * @param coding The content coding of the response.
+     * @return A ResponseBuilder instance.
+     */
+    protected final ResponseBuilder makeResponseBuilder(final IGraphInfo graphInfo, final MediaType mediaType, final ContentCoding coding) {
+        final ResponseBuilder builder = super.makeResponseBuilder(graphInfo.getLastModification(), createETag(graphInfo, mediaType, coding));
         builder.variants(MediaTypeUtils.asVariants(graphInfo.getSupportedMediaTypes()));
+        builder.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
         return builder;
     }
 
@@ -211,10 +321,11 @@ public abstract class AbstractGraphResource extends AbstractResource {
      * 
      * @param graphInfo The graph to create the ETag for.
      * @param mediaType The media type of the response or {@code null}.
+     * @param coding The content coding of the response.
      * @return An ETag or {@code null}.
      */
-    private static EntityTag createETag(final IGraphInfo graphInfo, final MediaType mediaType) {
-        final String etag = ETagUtils.generateETag(graphInfo, mediaType);
+    private static EntityTag createETag(final IGraphInfo graphInfo, final MediaType mediaType, final ContentCoding coding) {
+        final String etag = ETagUtils.generateETag(graphInfo, mediaType, coding);
         return etag == null ? null : new EntityTag(etag);
     }
 
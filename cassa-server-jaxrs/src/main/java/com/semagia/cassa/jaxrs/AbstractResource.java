@@ -23,12 +23,15 @@ import java.util.List;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Variant;
 
+import com.semagia.cassa.common.ContentCoding;
 import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.jaxrs.utils.ContentCodingUtils;
 import com.semagia.cassa.jaxrs.utils.MediaTypeUtils;
 import com.semagia.cassa.server.ServerApplicationProvider;
 import com.semagia.cassa.server.store.IStore;
@@ -45,6 +48,9 @@ public abstract class AbstractResource {
     @Context 
     private Request _request;
 
+    @Context 
+    private HttpHeaders _headers;
+
     /**
      * Returns the store.
      *
@@ -121,4 +127,14 @@ public abstract class AbstractResource {
         return MediaTypeUtils.toMediaType(variant.getMediaType());
     }
 
+    /**
+     * Returns the most appropriate content coding which is accepted by the 
+     * client.
+     *
+     * @return The preferred content coding, never {@code null}.
+     */
+    protected final ContentCoding getContentCoding() {
+        return ContentCodingUtils.negotiate(_headers.getRequestHeader(HttpHeaders.ACCEPT_ENCODING));
+    }
+
 }
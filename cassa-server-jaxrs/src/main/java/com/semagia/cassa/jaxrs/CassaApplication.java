@@ -20,6 +20,7 @@ import java.util.Set;
 
 import javax.ws.rs.core.Application;
 
+import com.semagia.cassa.jaxrs.providers.BulkLoadExceptionMapper;
 import com.semagia.cassa.jaxrs.providers.GraphMismatchExceptionMapper;
 import com.semagia.cassa.jaxrs.providers.GraphNotExistsExceptionMapper;
 import com.semagia.cassa.jaxrs.providers.IOExceptionMapper;
@@ -47,6 +48,9 @@ public final class CassaApplication extends Application {
         Set<Class<?>> classes = new HashSet<Class<?>>();
         classes.add(GraphsResource.class);
         classes.add(LocalGraphResource.class);
+        classes.add(CollectionFeedResource.class);
+        classes.add(FragmentsFeedResource.class);
+        classes.add(SnapshotsFeedResource.class);
         return classes;
     }
 
@@ -56,6 +60,7 @@ public final class CassaApplication extends Application {
     @Override
     public Set<Object> getSingletons() {
         Set<Object> singletons = new HashSet<Object>();
+        singletons.add(new BulkLoadExceptionMapper());
         singletons.add(new GraphMismatchExceptionMapper());
         singletons.add(new GraphNotExistsExceptionMapper());
         singletons.add(new IllegalArgumentExceptionMapper());
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.jaxrs;
+
+import java.io.IOException;
+import java.net.URI;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.core.Response;
+
+import com.semagia.cassa.common.IConstants;
+import com.semagia.cassa.server.sdshare.IOutputAwareFeedHandler;
+import com.semagia.cassa.server.sdshare.TagURIGenerator;
+import com.semagia.cassa.server.store.IGraphInfo;
+import com.semagia.cassa.server.store.ISDShareStore;
+import com.semagia.cassa.server.store.IStore;
+import com.semagia.cassa.server.store.StoreException;
+
+/**
+ * Represents the SDShare collection feed which provides an entry for each
+ * graph.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+@Path("/sdshare")
+public class CollectionFeedResource extends AbstractFeedResource {
+
+    /**
+     * Returns the collection feed.
+     *
+     * @return A response which streams the feed.
+     * @throws StoreException In case of an error.
+     */
+    @GET
+    public Response getFeed() throws StoreException {
+        final ISDShareStore store = getSDShareStore();
+        final long lastModification = store.getLastModification();
+        final Iterable<IGraphInfo> graphs = store.getGraphInfos();
+        final TagURIGenerator tags = getTagURIGenerator();
+        final String self = _uriInfo.getRequestUri().toString();
+        return buildFeed(lastModification, new IFeedWriter() {
+            @Override
+            public void writeFeed(final IOutputAwareFeedHandler handler, final long updated) throws IOException {
+                handler.startFeed(self, "Collections", updated);
+                handler.link(self, "self");
+                for (IGraphInfo graph: graphs) {
+                    final URI graphURI = graph.getURI();
+                    final long graphUpdated = graph.getLastModification() != -1 ? graph.getLastModification() : updated;
+                    final boolean isDefaultGraph = graphURI == IStore.DEFAULT_GRAPH;
+                    final String title = graph.getTitle() != null ? graph.getTitle() 
+                                            : isDefaultGraph ? "Default graph" : graphURI.toString();
+                    handler.startEntry(tags.generateCollectionIRI(graphUpdated, graphURI.toString()), title, graphUpdated);
+                    if (graph.getDescription() != null) {
+                        handler.summary(graph.getDescription());
+                    }
+                    if (!isDefaultGraph) {
+                        handler.graph(graphURI.toString());
+                    }
+                    handler.link(linkToFeed(FragmentsFeedResource.class, graphURI).toString(), IConstants.REL_FRAGMENTS_FEED);
+                    handler.link(linkToFeed(SnapshotsFeedResource.class, graphURI).toString(), IConstants.REL_SNAPSHOTS_FEED);
+                    handler.endEntry();
+                }
+                handler.endFeed();
+            }
+        });
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.jaxrs;
+
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+import com.semagia.cassa.common.IConstants;
+import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.common.dm.IResource;
+import com.semagia.cassa.jaxrs.utils.GraphUtils;
+import com.semagia.cassa.server.sdshare.FragmentCursor;
+import com.semagia.cassa.server.sdshare.FragmentPage;
+import com.semagia.cassa.server.sdshare.IOutputAwareFeedHandler;
+import com.semagia.cassa.server.sdshare.TagURIGenerator;
+import com.semagia.cassa.server.store.GraphNotExistsException;
+import com.semagia.cassa.server.store.IFragmentInfo;
+import com.semagia.cassa.server.store.ISDShareStore;
+import com.semagia.cassa.server.store.IStore;
+import com.semagia.cassa.server.store.StoreException;
+
+/**
+ * Represents the SDShare fragments feed of a graph.
+ * 
+ * The graph is specified by the {@code graph} parameter or by the 
+ * {@code default} parameter which indicates the default graph. The optional 
+ * {@code since} parameter restricts the feed to the fragments which 
+ * were modified after the provided time. The fragments link to the 
+ * statements about the subject, i.e. {@code ?graph=...&subject=...}.
+ * <p>
+ * The feed is paged: Each response contains at most {@link #getPageSize()} 
+ * fragments and a {@code next} link with a {@code cursor} parameter which 
+ * points to the following page. The cursor identifies the last delivered
+ * fragment, a fragment which is modified in the meantime is delivered again
+ * on a later page. Pages are stable if the store returns the fragments 
+ * ordered by their last modification time and URI.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+@Path("/sdshare/fragments")
+public class FragmentsFeedResource extends AbstractFeedResource {
+
+    /**
+     * System property which configures the max. number of fragments per page.
+     */
+    public static final String PAGE_SIZE_PROPERTY = "com.semagia.cassa.sdshare.pageSize";
+
+    private static final int _DEFAULT_PAGE_SIZE = 1000;
+
+    private static final int _PAGE_SIZE = Math.max(1, Integer.getInteger(PAGE_SIZE_PROPERTY, _DEFAULT_PAGE_SIZE));
+
+    /**
+     * Returns the max. number of fragments per page.
+     *
+     * @return The page size.
+     */
+    public static int getPageSize() {
+        return _PAGE_SIZE;
+    }
+
+    /**
+     * Returns a page of the fragments feed.
+     *
+     * @param defaultGraph The {@code default} parameter.
+     * @param graph The {@code graph} parameter.
+     * @param since Fragments modified after this time are returned, {@code -1} returns all fragments.
+     * @param cursor The position of the page or {@code null} to return the first page.
+     * @return A response which streams the feed.
+     * @throws GraphNotExistsException In case the graph does not exist.
+     * @throws StoreException In case of an error.
+     */
+    @GET
+    public Response getFeed(@QueryParam("default") String defaultGraph, @QueryParam("graph") URI graph,
+            @QueryParam("since") @DefaultValue("-1") long since, @QueryParam("cursor") String cursor) 
+            throws GraphNotExistsException, StoreException {
+        if (cursor != null && since >= 0) {
+            throw new WebApplicationException(BAD_REQUEST);
+        }
+        final URI graphURI = toGraphURI(defaultGraph, graph);
+        final FragmentCursor position = cursor != null ? FragmentCursor.valueOf(cursor) : null;
+        final ISDShareStore store = getSDShareStore();
+        final long lastModification = store.getLastModificationFragments(graphURI);
+        final Iterable<IFragmentInfo> fragments = position != null ? store.getFragments(graphURI, position.getTime())
+                                                : since >= 0 ? store.getFragments(graphURI, since)
+                                                : store.getFragments(graphURI);
+        final TagURIGenerator tags = getTagURIGenerator();
+        final String self = _uriInfo.getRequestUri().toString();
+        final String collectionFeed = _uriInfo.getBaseUriBuilder().path(CollectionFeedResource.class).build().toString();
+        final URI graphResource = GraphUtils.uriToGraphResource(_uriInfo);
+        return buildFeed(lastModification, new IFeedWriter() {
+            @Override
+            public void writeFeed(final IOutputAwareFeedHandler handler, final long updated) throws IOException {
+                // The page is read in advance since the links must precede the entries
+                final FragmentPage page = FragmentPage.read(fragments, position, _PAGE_SIZE);
+                handler.startFeed(self, "Fragments", updated);
+                handler.link(self, "self");
+                handler.link(collectionFeed, IConstants.REL_COLLECTION_FEED);
+                if (page.getNext() != null) {
+                    handler.link(linkToFeed(FragmentsFeedResource.class, graphURI) + "&cursor=" + URLEncoder.encode(page.getNext().toString(), "UTF-8"), "next");
+                }
+                if (graphURI != IStore.DEFAULT_GRAPH) {
+                    handler.graph(graphURI.toString());
+                }
+                for (IFragmentInfo fragment: page) {
+                    writeFragment(handler, tags, fragment, GraphUtils.linkToSubject(graphResource, graphURI, fragment.getURI()).toString(), updated);
+                }
+                handler.endFeed();
+            }
+        });
+    }
+
+    private static void writeFragment(final IOutputAwareFeedHandler handler, final TagURIGenerator tags, 
+            final IFragmentInfo fragment, final String href, final long updated) throws IOException {
+        final String iri = fragment.getURI().toString();
+        final long fragmentUpdated = fragment.getLastModification() != -1 ? fragment.getLastModification() : updated;
+        handler.startEntry(tags.generateFragmentIRI(fragmentUpdated, iri), 
+                fragment.getTitle() != null ? fragment.getTitle() : iri, fragmentUpdated);
+        if (fragment.getDescription() != null) {
+            handler.summary(fragment.getDescription());
+        }
+        for (IResource resource: fragment.getResources()) {
+            final IResource.Role role = resource.getRole();
+            handler.resource(resource.getURI().toString(), role == IResource.Role.NONE ? null : role.toString());
+        }
+        for (MediaType mt: fragment.getSupportedMediaTypes()) {
+            handler.link(href, "alternate", mt.toString());
+        }
+        handler.endEntry();
+    }
+
+}
@@ -38,6 +38,11 @@ import com.semagia.cassa.server.store.StoreException;
 
 /**
  * Represents the root for all graphs.
+ * <p>
+ * Local graphs below the path of the SDShare feeds 
+ * ({@value GraphUtils#SDSHARE_SEGMENT}) are rejected since the feeds 
+ * would shadow them.
+ * </p>
  * 
  * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
  */
@@ -58,7 +63,7 @@ public class GraphsResource extends AbstractGraphResource {
             throw new WebApplicationException(BAD_REQUEST);
         }
         if (graph != null) {
-            if (!graph.isAbsolute()) {
+            if (!graph.isAbsolute() || GraphUtils.isReservedGraph(uriInfo, graph)) {
                 throw new WebApplicationException(BAD_REQUEST);
             }
             else if (GraphUtils.isLocalGraph(uriInfo, graph)) {
@@ -77,12 +82,12 @@ public class GraphsResource extends AbstractGraphResource {
     }
 
     /* (non-Javadoc)
-     * @see com.semagia.cassa.jaxrs.AbstractGraphResource#getGraph()
+     * @see com.semagia.cassa.jaxrs.AbstractGraphResource#getGraph(java.net.URI)
      */
     @Override
     @GET
-    public Response getGraph() throws IOException, StoreException {
-        return _graph == null ? getServiceDescription() : super.getGraph();
+    public Response getGraph(@QueryParam("subject") URI subject) throws IOException, StoreException {
+        return _graph == null ? getServiceDescription() : super.getGraph(subject);
     }
 
     /* (non-Javadoc)
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.jaxrs;
+
+import java.io.IOException;
+import java.net.URI;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Response;
+
+import com.semagia.cassa.common.IConstants;
+import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.jaxrs.utils.GraphUtils;
+import com.semagia.cassa.server.sdshare.IOutputAwareFeedHandler;
+import com.semagia.cassa.server.sdshare.TagURIGenerator;
+import com.semagia.cassa.server.store.GraphNotExistsException;
+import com.semagia.cassa.server.store.IGraphInfo;
+import com.semagia.cassa.server.store.ISDShareStore;
+import com.semagia.cassa.server.store.IStore;
+import com.semagia.cassa.server.store.StoreException;
+
+/**
+ * Represents the SDShare snapshots feed of a graph.
+ * 
+ * The graph is specified by the {@code graph} parameter or by the 
+ * {@code default} parameter which indicates the default graph.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+@Path("/sdshare/snapshots")
+public class SnapshotsFeedResource extends AbstractFeedResource {
+
+    /**
+     * Returns the snapshots feed.
+     *
+     * @param defaultGraph The {@code default} parameter.
+     * @param graph The {@code graph} parameter.
+     * @return A response which streams the feed.
+     * @throws GraphNotExistsException In case the graph does not exist.
+     * @throws StoreException In case of an error.
+     */
+    @GET
+    public Response getFeed(@QueryParam("default") String defaultGraph, @QueryParam("graph") URI graph) 
+            throws GraphNotExistsException, StoreException {
+        final URI graphURI = toGraphURI(defaultGraph, graph);
+        final ISDShareStore store = getSDShareStore();
+        final long lastModification = store.getLastModificationSnapshots(graphURI);
+        final Iterable<IGraphInfo> snapshots = store.getSnapshots(graphURI);
+        final TagURIGenerator tags = getTagURIGenerator();
+        final String self = _uriInfo.getRequestUri().toString();
+        final URI graphResource = GraphUtils.uriToGraphResource(_uriInfo);
+        final String collectionFeed = _uriInfo.getBaseUriBuilder().path(CollectionFeedResource.class).build().toString();
+        return buildFeed(lastModification, new IFeedWriter() {
+            @Override
+            public void writeFeed(final IOutputAwareFeedHandler handler, final long updated) throws IOException {
+                handler.startFeed(self, "Snapshots", updated);
+                handler.link(self, "self");
+                handler.link(collectionFeed, IConstants.REL_COLLECTION_FEED);
+                if (graphURI != IStore.DEFAULT_GRAPH) {
+                    handler.graph(graphURI.toString());
+                }
+                for (IGraphInfo snapshot: snapshots) {
+                    final URI snapshotURI = snapshot.getURI();
+                    final String href = snapshotURI == IStore.DEFAULT_GRAPH ? graphResource.resolve("?default").toString()
+                                                                            : GraphUtils.linkToGraph(graphResource, snapshotURI).toString();
+                    final long snapshotUpdated = snapshot.getLastModification() != -1 ? snapshot.getLastModification() : updated;
+                    handler.startEntry(tags.generateSnapshotIRI(snapshotUpdated, snapshotURI.toString()), 
+                            snapshot.getTitle() != null ? snapshot.getTitle() : "Snapshot", snapshotUpdated);
+                    if (snapshot.getDescription() != null) {
+                        handler.summary(snapshot.getDescription());
+                    }
+                    for (MediaType mt: snapshot.getSupportedMediaTypes()) {
+                        handler.link(href, "alternate", mt.toString());
+                    }
+                    handler.endEntry();
+                }
+                handler.endFeed();
+            }
+        });
+    }
+
+}
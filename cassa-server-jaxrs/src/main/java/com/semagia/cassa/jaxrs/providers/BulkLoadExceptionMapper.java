@@ -0,0 +1,48 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.jaxrs.providers;
+
+import static com.semagia.cassa.jaxrs.utils.ResponseUtils.bulkLoadProgress;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+
+import com.semagia.cassa.server.store.BulkLoadException;
+import com.semagia.cassa.server.store.ParseException;
+
+/**
+ * Converts a {@link BulkLoadException} into a HTTP Bad Request error if the
+ * input could not be parsed, otherwise into an Internal Server error. 
+ * 
+ * The response reports the number of committed statements and chunks.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+@Provider
+public class BulkLoadExceptionMapper implements ExceptionMapper<BulkLoadException> {
+
+    /* (non-Javadoc)
+     * @see javax.ws.rs.ext.ExceptionMapper#toResponse(java.lang.Throwable)
+     */
+    @Override
+    public Response toResponse(BulkLoadException ex) {
+        final Response.Status status = ex.getCause() instanceof ParseException ? Response.Status.BAD_REQUEST
+                                                                               : Response.Status.INTERNAL_SERVER_ERROR;
+        return bulkLoadProgress(Response.status(status), ex.getCommittedStatements(), ex.getCommittedChunks()).build();
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.jaxrs.utils;
+
+import java.util.List;
+
+import com.semagia.cassa.common.ContentCoding;
+
+/**
+ * Internal utility functions to negotiate the {@link ContentCoding} of a 
+ * response.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class ContentCodingUtils {
+
+    /**
+     * Supported content codings, ordered by preference.
+     */
+    private static final ContentCoding[] _CODINGS = new ContentCoding[] { 
+        ContentCoding.GZIP, ContentCoding.DEFLATE, ContentCoding.IDENTITY 
+    };
+
+    private ContentCodingUtils() {
+        // noop.
+    }
+
+    /**
+     * Returns the most appropriate content coding which is accepted by the 
+     * client.
+     * 
+     * If the client does not accept any supported content coding, 
+     * {@link ContentCoding#IDENTITY} is returned.
+     *
+     * @param acceptEncodings The values of the {@code Accept-Encoding} headers 
+     *          or {@code null}.
+     * @return The preferred content coding, never {@code null}.
+     */
+    public static ContentCoding negotiate(final List<String> acceptEncodings) {
+        if (acceptEncodings == null || acceptEncodings.isEmpty()) {
+            return ContentCoding.IDENTITY;
+        }
+        // Quality values of the supported codings, -1 == not mentioned
+        final float[] qualities = new float[_CODINGS.length];
+        for (int i = 0; i < qualities.length; i++) {
+            qualities[i] = -1;
+        }
+        float wildcard = -1;
+        for (String header: acceptEncodings) {
+            for (String element: header.split(",")) {
+                final int idx = element.indexOf(';');
+                final String name = (idx == -1 ? element : element.substring(0, idx)).trim();
+                if (name.length() == 0) {
+                    continue;
+                }
+                final float quality = idx == -1 ? 1 : parseQuality(element.substring(idx + 1));
+                if ("*".equals(name)) {
+                    wildcard = quality;
+                    continue;
+                }
+                final ContentCoding coding = ContentCoding.forName(name);
+                for (int i = 0; i < _CODINGS.length; i++) {
+                    if (_CODINGS[i] == coding) {
+                        qualities[i] = quality;
+                    }
+                }
+            }
+        }
+        ContentCoding result = ContentCoding.IDENTITY;
+        float best = 0;
+        for (int i = 0; i < _CODINGS.length; i++) {
+            float quality = qualities[i];
+            if (quality == -1) {
+                quality = wildcard != -1 ? wildcard 
+                                         : _CODINGS[i] == ContentCoding.IDENTITY ? 0.001f : 0;
+            }
+            if (quality > best) {
+                best = quality;
+                result = _CODINGS[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the quality value of the provided parameters.
+     *
+     * @param params The parameters of an {@code Accept-Encoding} element.
+     * @return The quality value, {@code 1} if no (valid) quality value was found.
+     */
+    private static float parseQuality(final String params) {
+        for (String param: params.split(";")) {
+            final String p = param.trim();
+            if (p.length() > 2 && (p.charAt(0) == 'q' || p.charAt(0) == 'Q') && p.charAt(1) == '=') {
+                try {
+                    return Float.parseFloat(p.substring(2).trim());
+                }
+                catch (NumberFormatException ex) {
+                    return 1;
+                }
+            }
+        }
+        return 1;
+    }
+
+}
@@ -23,6 +23,7 @@ import javax.ws.rs.core.UriInfo;
 
 import com.semagia.cassa.jaxrs.GraphsResource;
 import com.semagia.cassa.server.store.IGraphInfo;
+import com.semagia.cassa.server.store.IStore;
 
 /**
  * Internal utility functions related to graphs.
@@ -31,6 +32,12 @@ import com.semagia.cassa.server.store.IGraphInfo;
  */
 public final class GraphUtils {
 
+    /**
+     * The path segment of the SDShare feeds. A local graph with this name 
+     * would be shadowed by the feeds, so it is reserved.
+     */
+    public static final String SDSHARE_SEGMENT = "sdshare";
+
     private GraphUtils() {
         // noop.
     }
@@ -57,6 +64,23 @@ public final class GraphUtils {
         return !uriToGraphResource(uriInfo).relativize(graphURI).isAbsolute();
     }
 
+    /**
+     * Returns if the provided graph URI is a local graph whose path is 
+     * reserved for other resources of the service, i.e. the SDShare feeds.
+     * 
+     * @param uriInfo UriInfo instance.
+     * @param graphURI Graph URI.
+     * @return {@code true} if the graph URI must not be used, otherwise {@code false}.
+     */
+    public static boolean isReservedGraph(final UriInfo uriInfo, final URI graphURI) {
+        final URI relative = uriToGraphResource(uriInfo).relativize(graphURI);
+        if (relative.isAbsolute()) {
+            return false;
+        }
+        final String path = relative.getPath();
+        return path.equals(SDSHARE_SEGMENT) || path.startsWith(SDSHARE_SEGMENT + "/");
+    }
+
     /**
      * Returns an URI which points either to a local graph (Direct Graph Identification)
      * or to the service with a graph parameter (Indirect Graph Identification). 
@@ -114,4 +138,26 @@ public final class GraphUtils {
         }
     }
 
+    /**
+     * Returns an absolute URI which is used to retrieve the statements about
+     * a subject of the provided graph.
+     * 
+     * {@code http://www.example.org/store/graph-A?subject=http://www.example.org/subject} or 
+     * {@code http://www.example.org/store/?graph=http://www.example.net/graph-B&subject=http://www.example.org/subject}
+     * 
+     * @param graphResourceURI An absolute URI pointing to the graphs resource.
+     * @param graphURI The graph URI ({@link IStore#DEFAULT_GRAPH} indicates the default graph).
+     * @param subjectURI The subject URI.
+     * @return An absolute URI which can be used to retrieve the subject.
+     * @throws UnsupportedEncodingException If case UTF-8 encoding is not supported.
+     */
+    public static URI linkToSubject(final URI graphResourceURI, final URI graphURI, final URI subjectURI) throws UnsupportedEncodingException {
+        final String subject = "subject=" + URLEncoder.encode(subjectURI.toString(), "UTF-8");
+        if (graphURI == IStore.DEFAULT_GRAPH) {
+            return graphResourceURI.resolve("?default&" + subject);
+        }
+        final URI graphLink = linkToGraph(graphResourceURI, graphURI);
+        return URI.create(graphLink.toString() + (graphLink.getRawQuery() == null ? '?' : '&') + subject);
+    }
+
 }
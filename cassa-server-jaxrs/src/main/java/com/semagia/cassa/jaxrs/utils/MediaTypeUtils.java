@@ -16,7 +16,9 @@
 package com.semagia.cassa.jaxrs.utils;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.ws.rs.core.Variant;
 
@@ -41,7 +43,18 @@ public final class MediaTypeUtils {
      * @return The JAX-RS media type or {@code null} if the provided media type is null.
      */
     public static javax.ws.rs.core.MediaType toJaxRSMediaType(final MediaType mt) {
-        return mt == null ? null : javax.ws.rs.core.MediaType.valueOf(mt.toString());
+        if (mt == null) {
+            return null;
+        }
+        final List<MediaType.Parameter> params = mt.getParameters();
+        if (params.isEmpty()) {
+            return new javax.ws.rs.core.MediaType(mt.getType(), mt.getSubtype());
+        }
+        final Map<String, String> map = new HashMap<String, String>(params.size() * 2);
+        for (MediaType.Parameter param: params) {
+            map.put(param.getKey(), param.getValue());
+        }
+        return new javax.ws.rs.core.MediaType(mt.getType(), mt.getSubtype(), map);
     }
 
     /**
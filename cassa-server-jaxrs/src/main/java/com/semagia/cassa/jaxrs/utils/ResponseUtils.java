@@ -22,6 +22,7 @@ import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 
+import com.semagia.cassa.common.ContentCoding;
 import com.semagia.cassa.common.MediaType;
 import com.semagia.cassa.common.dm.IWritableRepresentation;
 
@@ -32,6 +33,16 @@ import com.semagia.cassa.common.dm.IWritableRepresentation;
  */
 public final class ResponseUtils {
 
+    /**
+     * Header which reports the number of committed statements of a bulk load.
+     */
+    public static final String COMMITTED_STATEMENTS = "X-Cassa-Committed-Statements";
+
+    /**
+     * Header which reports the number of committed chunks of a bulk load.
+     */
+    public static final String COMMITTED_CHUNKS = "X-Cassa-Committed-Chunks";
+
     private ResponseUtils() {
         // noop.
     }
@@ -55,13 +66,56 @@ public final class ResponseUtils {
      * @return The reponse.
      */
     public static Response buildStreamingEntity(final ResponseBuilder builder, final IWritableRepresentation writable) {
+        return buildStreamingEntity(builder, writable, ContentCoding.IDENTITY);
+    }
+
+    /**
+     * Returns a response using the provided {@link IWritableRepresentation} instance to 
+     * serialize the body of the response which is encoded with the provided 
+     * content coding.
+     *
+     * @param builder The builder used to build the response.
+     * @param writable A {@link IWritableRepresentation} instance which is reposible to serialize the response body.
+     * @param coding The content coding of the response body.
+     * @return The reponse.
+     */
+    public static Response buildStreamingEntity(final ResponseBuilder builder, final IWritableRepresentation writable, final ContentCoding coding) {
         final String contentType = writable.getEncoding() == null ? writable.getMediaType().toString() 
                                                                   : writable.getMediaType().toString() + "; charset=" + writable.getEncoding();
-        return builder.entity(new StreamingWritableOutput(writable))
+        contentEncoding(builder, coding);
+        return builder.entity(new StreamingWritableOutput(writable, coding))
                       .header(HttpHeaders.CONTENT_TYPE, contentType)
                       .build();
     }
 
+    /**
+     * Sets the {@code Content-Encoding} header if the content coding is not
+     * {@link ContentCoding#IDENTITY}.
+     *
+     * @param builder The builder used to build the response.
+     * @param coding The content coding of the response body.
+     * @return The provided builder.
+     */
+    public static ResponseBuilder contentEncoding(final ResponseBuilder builder, final ContentCoding coding) {
+        if (coding != ContentCoding.IDENTITY) {
+            builder.header(HttpHeaders.CONTENT_ENCODING, coding.getName());
+        }
+        return builder;
+    }
+
+    /**
+     * Adds the progress of a bulk load to the provided builder.
+     *
+     * @param builder The builder.
+     * @param committedStatements The number of committed statements.
+     * @param committedChunks The number of committed chunks.
+     * @return The builder.
+     */
+    public static ResponseBuilder bulkLoadProgress(final ResponseBuilder builder, final long committedStatements, final long committedChunks) {
+        return builder.header(COMMITTED_STATEMENTS, Long.toString(committedStatements))
+                      .header(COMMITTED_CHUNKS, Long.toString(committedChunks));
+    }
+
     /**
      * Returns a HTTP No Content response.
      *
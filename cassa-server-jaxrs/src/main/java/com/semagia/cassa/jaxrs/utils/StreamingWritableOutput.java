@@ -21,23 +21,34 @@ import java.io.OutputStream;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.StreamingOutput;
 
+import com.semagia.cassa.common.ContentCoding;
+import com.semagia.cassa.common.dm.ICompressibleRepresentation;
 import com.semagia.cassa.common.dm.IWritableRepresentation;
 
 /**
  * {@link StreamingOutput} implementation that wraps a {@link IWritableRepresentation}
- * instance.
+ * instance and encodes the output with a {@link ContentCoding}.
  * 
  * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
  */
 final class StreamingWritableOutput implements StreamingOutput {
 
     private final IWritableRepresentation _writable;
+    private final ContentCoding _coding;
 
     public StreamingWritableOutput(final IWritableRepresentation writable) {
+        this(writable, ContentCoding.IDENTITY);
+    }
+
+    public StreamingWritableOutput(final IWritableRepresentation writable, final ContentCoding coding) {
         if (writable == null) {
             throw new IllegalArgumentException("The writable must not be null");
         }
+        if (coding == null) {
+            throw new IllegalArgumentException("The content coding must not be null");
+        }
         _writable = writable;
+        _coding = coding;
     }
 
     /* (non-Javadoc)
@@ -46,7 +57,17 @@ final class StreamingWritableOutput implements StreamingOutput {
     @Override
     public void write(final OutputStream out) throws IOException,
             WebApplicationException {
-        _writable.write(out);
+        if (_coding == ContentCoding.IDENTITY) {
+            _writable.write(out);
+        }
+        else if (_writable instanceof ICompressibleRepresentation) {
+            ((ICompressibleRepresentation) _writable).write(out, _coding);
+        }
+        else {
+            final OutputStream encoded = _coding.encode(out);
+            _writable.write(encoded);
+            ContentCoding.finish(encoded);
+        }
     }
 
 }
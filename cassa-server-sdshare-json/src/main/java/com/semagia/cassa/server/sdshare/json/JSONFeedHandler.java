@@ -89,6 +89,7 @@ final class JSONFeedHandler implements IOutputAwareFeedHandler {
         _writer.startObject();
         _wroteEntryLinks = false;
         _wroteEntryAuthors = false;
+        _wroteSIDs = false;
         _writeCommons(id, title, updated);
     }
 
@@ -250,6 +251,7 @@ final class JSONFeedHandler implements IOutputAwareFeedHandler {
         if (_inSIDs) {
             _writer.endArray();
             _wroteSIDs = true;
+            _inSIDs = false;
         }
     }
 
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.sdshare.json;
+
+import java.io.ByteArrayOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link JSONFeedHandler}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestJSONFeedHandler extends TestCase {
+
+    private static String entry(final String name) {
+        return "{\"id\":\"http://www.example.org/entry-" + name + "\",\"title\":\"" + name + "\",\"updated\":\"1970-01-01T00:00:00.000Z\","
+                + "\"[sd:resource]\":[{\"iri\":\"http://psi.example.org/" + name + "\"}],"
+                + "\"links\":[{\"href\":\"http://www.example.org/?subject=" + name + "\",\"rel\":\"alternate\",\"type\":\"text/plain\"}]}";
+    }
+
+    /**
+     * The resource array of an entry must be closed and every entry 
+     * must be able to write its own resource array.
+     */
+    public void testEntriesWithResources() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final JSONFeedHandler handler = new JSONFeedHandler();
+        handler.init(out);
+        handler.startFeed("http://www.example.org/feed", "Fragments", 0);
+        handler.link("http://www.example.org/feed", "self");
+        for (String name: new String[] {"a", "b"}) {
+            handler.startEntry("http://www.example.org/entry-" + name, name, 0);
+            handler.resource("http://psi.example.org/" + name, null);
+            handler.link("http://www.example.org/?subject=" + name, "alternate", "text/plain");
+            handler.endEntry();
+        }
+        handler.endFeed();
+        assertEquals("{\"id\":\"http://www.example.org/feed\",\"title\":\"Fragments\",\"updated\":\"1970-01-01T00:00:00.000Z\","
+                + "\"links\":[{\"href\":\"http://www.example.org/feed\",\"rel\":\"self\"}],"
+                + "\"entries\":["
+                + entry("a") + ","
+                + entry("b")
+                + "]}", out.toString("utf-8").trim());
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.sdshare;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+/**
+ * Position within a sequence of fragments ordered by their last 
+ * modification time and their URI.
+ * <p>
+ * A cursor consists of the timestamp and the URI of the last delivered
+ * fragment; the next page starts strictly after that fragment. The cursor 
+ * stays valid if fragments are added, modified or removed: A fragment which
+ * is modified after it was delivered moves to a later position and is 
+ * delivered again, the position of the fragments which were not delivered 
+ * yet is not affected.
+ * </p>
+ * <p>
+ * The string representation of a cursor is {@code <timestamp>-<uri>}.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class FragmentCursor {
+
+    private final long _time;
+    private final URI _uri;
+
+    /**
+     * Creates a cursor.
+     *
+     * @param time The last modification time of the last delivered fragment.
+     * @param uri The URI of the last delivered fragment.
+     */
+    public FragmentCursor(final long time, final URI uri) {
+        if (uri == null) {
+            throw new IllegalArgumentException("The URI must not be null");
+        }
+        _time = time;
+        _uri = uri;
+    }
+
+    /**
+     * Returns a cursor from its string representation.
+     *
+     * @param value The string representation of a cursor.
+     * @return A cursor.
+     * @throws IllegalArgumentException In case the value is not a valid cursor.
+     */
+    public static FragmentCursor valueOf(final String value) throws IllegalArgumentException {
+        if (value == null) {
+            throw new IllegalArgumentException("The cursor must not be null");
+        }
+        // A negative timestamp starts with a '-'
+        final int idx = value.indexOf('-', 1);
+        if (idx < 1 || idx == value.length() - 1) {
+            throw new IllegalArgumentException("Invalid cursor: " + value);
+        }
+        try {
+            return new FragmentCursor(Long.parseLong(value.substring(0, idx)), 
+                                      new URI(value.substring(idx + 1)));
+        }
+        catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid cursor: " + value);
+        }
+        catch (URISyntaxException ex) {
+            throw new IllegalArgumentException("Invalid cursor: " + value);
+        }
+    }
+
+    /**
+     * Returns the last modification time of the last delivered fragment.
+     *
+     * @return The timestamp.
+     */
+    public long getTime() {
+        return _time;
+    }
+
+    /**
+     * Returns the URI of the last delivered fragment.
+     *
+     * @return The fragment URI.
+     */
+    public URI getURI() {
+        return _uri;
+    }
+
+    /**
+     * Returns if the provided fragment follows the position of this cursor.
+     *
+     * @param time The last modification time of the fragment.
+     * @param uri The URI of the fragment.
+     * @return {@code true} if the fragment follows this position, otherwise {@code false}.
+     */
+    public boolean precedes(final long time, final URI uri) {
+        return time > _time || (time == _time && uri.compareTo(_uri) > 0);
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(final Object obj) {
+        if (!(obj instanceof FragmentCursor)) {
+            return false;
+        }
+        final FragmentCursor other = (FragmentCursor) obj;
+        return _time == other._time && _uri.equals(other._uri);
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        return (int) (_time ^ (_time >>> 32)) * 31 + _uri.hashCode();
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return _time + "-" + _uri;
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.sdshare;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import com.semagia.cassa.server.store.IFragmentInfo;
+
+/**
+ * A bounded page of fragments.
+ * <p>
+ * The fragments must be provided in ascending order of their last 
+ * modification time and, within the same timestamp, of their URI, i.e. by 
+ * a store which maintains a {@link com.semagia.cassa.server.store.impl.FragmentIndex}.
+ * Reading a page consumes at most the fragments which precede the 
+ * {@link FragmentCursor cursor} within the same timestamp, the fragments of 
+ * the page and one additional fragment to detect if a further page exists. 
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class FragmentPage implements Iterable<IFragmentInfo> {
+
+    private final List<IFragmentInfo> _fragments;
+    private final FragmentCursor _next;
+
+    private FragmentPage(final List<IFragmentInfo> fragments, final FragmentCursor next) {
+        _fragments = fragments;
+        _next = next;
+    }
+
+    /**
+     * Reads a page.
+     *
+     * @param fragments The fragments which were modified at or after 
+     *          {@code cursor.getTime()}, ordered by their last modification 
+     *          time and URI.
+     * @param cursor The position of the last delivered fragment or {@code null} 
+     *          if the page starts with the first fragment.
+     * @param pageSize The max. number of fragments of the page.
+     * @return A page.
+     */
+    public static FragmentPage read(final Iterable<IFragmentInfo> fragments, 
+            final FragmentCursor cursor, final int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("The page size must be greater than 0, got: " + pageSize);
+        }
+        final List<IFragmentInfo> page = new ArrayList<IFragmentInfo>(Math.min(pageSize, 1024));
+        final Iterator<IFragmentInfo> iter = fragments.iterator();
+        while (iter.hasNext()) {
+            final IFragmentInfo fragment = iter.next();
+            if (cursor != null && !cursor.precedes(fragment.getLastModification(), fragment.getURI())) {
+                continue;
+            }
+            if (page.size() == pageSize) {
+                final IFragmentInfo last = page.get(pageSize - 1);
+                return new FragmentPage(page, new FragmentCursor(last.getLastModification(), last.getURI()));
+            }
+            page.add(fragment);
+        }
+        return new FragmentPage(page, null);
+    }
+
+    /**
+     * Returns the cursor which points to the next page.
+     *
+     * @return The cursor of the next page or {@code null} if this is the last page.
+     */
+    public FragmentCursor getNext() {
+        return _next;
+    }
+
+    /**
+     * Returns the number of fragments of this page.
+     *
+     * @return The number of fragments.
+     */
+    public int size() {
+        return _fragments.size();
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Iterable#iterator()
+     */
+    @Override
+    public Iterator<IFragmentInfo> iterator() {
+        return Collections.unmodifiableList(_fragments).iterator();
+    }
+
+}
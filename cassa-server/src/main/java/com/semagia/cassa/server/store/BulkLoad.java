@@ -0,0 +1,132 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Options and progress of a bulk load.
+ * <p>
+ * A bulk load commits the statements in chunks of the provided size 
+ * instead of loading the whole input within one transaction. The counters 
+ * are updated after each commit and may be read by other threads to 
+ * observe the progress.
+ * </p>
+ * <p>
+ * A bulk load is not atomic: If the load fails after one or more chunks 
+ * were committed, the committed statements remain in the graph and a 
+ * {@link BulkLoadException} is thrown. If the load fails before the first
+ * chunk was committed, the graph is left unchanged and the original 
+ * exception is thrown. If the graph should be replaced, the graph is 
+ * cleared within the transaction of the first chunk.
+ * </p>
+ * <p>
+ * {@link #chunkCommitted(long)} is called by stores which load the input 
+ * in chunks only, once per committed chunk with the exact number of 
+ * statements of the chunk. Stores which do not support chunked loading 
+ * apply the input within one operation and do not change the counters, 
+ * i.e. the counters report {@code 0} after a successful load.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class BulkLoad {
+
+    private final int _chunkSize;
+    private final boolean _replace;
+    private final AtomicLong _committedStatements;
+    private final AtomicLong _committedChunks;
+
+    /**
+     * Creates an instance.
+     *
+     * @param chunkSize The max. number of statements per transaction.
+     * @param replace {@code true} if the graph should be replaced,
+     *          {@code false} if the statements should be added to the graph.
+     */
+    public BulkLoad(final int chunkSize, final boolean replace) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("The chunk size must be greater than zero");
+        }
+        _chunkSize = chunkSize;
+        _replace = replace;
+        _committedStatements = new AtomicLong();
+        _committedChunks = new AtomicLong();
+    }
+
+    /**
+     * Returns the max. number of statements per transaction.
+     *
+     * @return The chunk size.
+     */
+    public int getChunkSize() {
+        return _chunkSize;
+    }
+
+    /**
+     * Returns if the graph should be replaced.
+     *
+     * @return {@code true} if the graph should be replaced, {@code false} 
+     *          if the statements should be added to the graph.
+     */
+    public boolean isReplace() {
+        return _replace;
+    }
+
+    /**
+     * Returns the number of committed statements.
+     * 
+     * Stores which do not support chunked loading do not report any statements.
+     *
+     * @return The number of committed statements.
+     */
+    public long getCommittedStatements() {
+        return _committedStatements.get();
+    }
+
+    /**
+     * Returns the number of committed transactions.
+     * 
+     * Stores which do not support chunked loading do not report any chunks.
+     *
+     * @return The number of committed chunks.
+     */
+    public long getCommittedChunks() {
+        return _committedChunks.get();
+    }
+
+    /**
+     * Called by a store which loads the input in chunks after a chunk was 
+     * committed.
+     *
+     * @param statements The number of statements of the chunk.
+     */
+    public void chunkCommitted(final long statements) {
+        _committedStatements.addAndGet(statements);
+        _committedChunks.incrementAndGet();
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "BulkLoad [chunkSize=" + _chunkSize + ", replace=" + _replace 
+                + ", committedStatements=" + getCommittedStatements() 
+                + ", committedChunks=" + getCommittedChunks() + "]";
+    }
+
+}
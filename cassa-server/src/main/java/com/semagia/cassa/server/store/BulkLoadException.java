@@ -0,0 +1,65 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store;
+
+/**
+ * Exception which indicates that a bulk load failed after some statements
+ * were committed.
+ * 
+ * The cause of this exception is the original error.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+@SuppressWarnings("serial")
+public class BulkLoadException extends StoreException {
+
+    private final long _committedStatements;
+    private final long _committedChunks;
+
+    /**
+     * Creates an exception.
+     *
+     * @param bulkLoad The failed bulk load.
+     * @param cause The original error.
+     */
+    public BulkLoadException(final BulkLoad bulkLoad, final Throwable cause) {
+        super("The bulk load failed after " + bulkLoad.getCommittedStatements() 
+                + " committed statements (" + bulkLoad.getCommittedChunks() + " chunks)", cause);
+        _committedStatements = bulkLoad.getCommittedStatements();
+        _committedChunks = bulkLoad.getCommittedChunks();
+    }
+
+    /**
+     * Returns the number of statements which were committed before the 
+     * error occurred.
+     *
+     * @return The number of committed statements.
+     */
+    public long getCommittedStatements() {
+        return _committedStatements;
+    }
+
+    /**
+     * Returns the number of chunks which were committed before the 
+     * error occurred.
+     *
+     * @return The number of committed chunks.
+     */
+    public long getCommittedChunks() {
+        return _committedChunks;
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store;
+
+import java.io.IOException;
+
+import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.common.dm.IWritableRepresentation;
+
+/**
+ * Provides the metadata and the serialization of a graph which were
+ * retrieved by a single store operation.
+ * 
+ * Instances are obtained via {@link IStore#openGraph(java.net.URI)} and may
+ * hold resources of the store (i.e. a connection). Either 
+ * {@link #getRepresentation(MediaType)} must be called and the returned 
+ * representation must be written, or {@link #close()} must be called to 
+ * release the resources.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public interface IGraph {
+
+    /**
+     * Returns the metadata about the graph.
+     *
+     * @return The metadata.
+     */
+    public IGraphInfo getGraphInfo();
+
+    /**
+     * Returns a serialization of the graph.
+     * 
+     * This method must not be called more than once. The returned 
+     * representation owns the resources of this instance afterwards.
+     *
+     * @param mediaType The requested media type of the serialization.
+     * @return A {@link IWritableRepresentation} that serializes the graph into the provided media type.
+     * @throws UnsupportedMediaTypeException In case the media type is not available.
+     * @throws IOException In case of an I/O error.
+     * @throws StoreException In case of an error.
+     */
+    public IWritableRepresentation getRepresentation(MediaType mediaType) throws UnsupportedMediaTypeException, IOException, StoreException;
+
+    /**
+     * Releases the resources if no representation was requested.
+     * 
+     * Calling this method after {@link #getRepresentation(MediaType)} or 
+     * calling it more than once has no effect.
+     *
+     * @throws StoreException In case of an error.
+     */
+    public void close() throws StoreException;
+
+}
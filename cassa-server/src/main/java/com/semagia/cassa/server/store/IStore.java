@@ -18,6 +18,7 @@ package com.semagia.cassa.server.store;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.util.Map;
 
 import com.semagia.cassa.common.MediaType;
 import com.semagia.cassa.common.dm.IWritableRepresentation;
@@ -67,6 +68,35 @@ public interface IStore {
      */
     public IWritableRepresentation getGraph(URI graphURI, MediaType mediaType) throws GraphNotExistsException, UnsupportedMediaTypeException, IOException, StoreException;
 
+    /**
+     * Returns the metadata and the serialization of the graph with one lookup.
+     * 
+     * The returned instance must be released either by writing the
+     * representation or by calling {@link IGraph#close()}.
+     *
+     * @param graphURI The URI of the graph ({@link #DEFAULT_GRAPH} indicates the default graph)
+     * @return The graph.
+     * @throws GraphNotExistsException In case the graph does not exist.
+     * @throws StoreException In case of an error.
+     */
+    public IGraph openGraph(URI graphURI) throws GraphNotExistsException, StoreException;
+
+    /**
+     * Returns a serialization of the statements about a subject.
+     *
+     * @param graphURI The URI of the graph ({@link #DEFAULT_GRAPH} indicates the default graph)
+     * @param subjectURI The URI of the subject.
+     * @param mediaType The requested media type of the serialization. 
+     * @return A {@link IWritableRepresentation} that serializes the statements
+     *          about the subject into the provided media type. The serialization
+     *          is empty if the graph contains no statements about the subject.
+     * @throws GraphNotExistsException In case the graph does not exist.
+     * @throws UnsupportedMediaTypeException In case the media type is not available.
+     * @throws IOException In case of an I/O error.
+     * @throws StoreException In case of an error.
+     */
+    public IWritableRepresentation getSubject(URI graphURI, URI subjectURI, MediaType mediaType) throws GraphNotExistsException, UnsupportedMediaTypeException, IOException, StoreException;
+
     /**
      * Returns if the graph is part of this store.
      *
@@ -142,6 +172,27 @@ public interface IStore {
      */
     public boolean modifyGraph(URI graphURI, InputStream in, URI baseURI, MediaType mediaType) throws UnsupportedMediaTypeException, IOException, QueryException, GraphMismatchException, StoreException;
 
+    /**
+     * Modifies a graph with a parameterized query.
+     * 
+     * The values of the {@code bindings} are RDF terms in N-Triples syntax, 
+     * i.e. {@code <http://www.example.org/>} or {@code "literal"@en}; they 
+     * are bound to the variables with the same name before the query is executed.
+     *
+     * @param graphURI The URI of the graph ({@link #DEFAULT_GRAPH} indicates the default graph)
+     * @param in The input stream to read the query from.
+     * @param baseURI The base URI to resolve relative URIs against (in most cases identical to the graph IRI).
+     * @param mediaType The media type of the input stream.
+     * @param bindings Variable name to value mapping, may be empty.
+     * @return {@code true} if the graph was modified sucessfully, {@code false} otherwise.
+     * @throws UnsupportedMediaTypeException In case the media type isn't supported.
+     * @throws IOException In case of an I/O error.
+     * @throws QueryException In case of a syntax error, an illegal binding or any other query-related error.
+     * @throws GraphMismatchException If the {@code graphURI} is not identitical with graph which is referenced by the query.
+     * @throws StoreException In case of an error.
+     */
+    public boolean modifyGraph(URI graphURI, InputStream in, URI baseURI, MediaType mediaType, Map<String, String> bindings) throws UnsupportedMediaTypeException, IOException, QueryException, GraphMismatchException, StoreException;
+
     /**
      * Creates a graph.
      * 
@@ -171,6 +222,27 @@ public interface IStore {
      */
     public IGraphInfo createOrReplaceGraph(URI graphURI, InputStream in, URI baseURI, MediaType mediaType) throws UnsupportedMediaTypeException, IOException, ParseException, StoreException;
 
+    /**
+     * Loads a graph in chunks.
+     * 
+     * See {@link BulkLoad} for the semantics of a failed bulk load. Stores
+     * which do not support chunked loading load the graph within one transaction.
+     *
+     * @param graphURI The URI of the graph ({@link #DEFAULT_GRAPH} indicates the default graph), 
+     *          {@code null} indicates that a new graph should be created.
+     * @param in The input stream to read the graph from.
+     * @param baseURI The base URI to resolve relative URIs against (in most cases identical to the graph IRI).
+     * @param mediaType The media type of the input stream.
+     * @param bulkLoad The options of the bulk load, the progress is reported to this instance.
+     * @return Metadata of the created/updated graph.
+     * @throws UnsupportedMediaTypeException In case the media type isn't supported.
+     * @throws IOException In case of an I/O error.
+     * @throws ParseException In case of a parsing error, i.e. syntax error.
+     * @throws BulkLoadException In case the load failed after some statements were committed.
+     * @throws StoreException In case of an error.
+     */
+    public IGraphInfo loadGraph(URI graphURI, InputStream in, URI baseURI, MediaType mediaType, BulkLoad bulkLoad) throws UnsupportedMediaTypeException, IOException, ParseException, BulkLoadException, StoreException;
+
     /**
      * Creates or updates a subject within a graph.
      *
@@ -33,7 +33,10 @@ public abstract class AbstractSDShareStore extends AbstractReadOnlyStore
         implements ISDShareStore {
 
     /**
-     * Calls {@link #getFragments(URI)} and filters the returned fragments.
+     * Returns the fragments of the provided graph from the 
+     * {@link #getFragmentIndex(URI) fragment index} if the graph is indexed,
+     * otherwise this method calls {@link #getFragments(URI)} and filters the 
+     * returned fragments.
      * 
      * Derived classes may want to override this method with a store-specific,
      * native filter.
@@ -43,10 +46,30 @@ public abstract class AbstractSDShareStore extends AbstractReadOnlyStore
     @Override
     public Iterable<IFragmentInfo> getFragments(final URI graphURI, final long since)
             throws GraphNotExistsException, StoreException {
+        final FragmentIndex index = getFragmentIndex(graphURI);
+        if (index != null) {
+            return index.getFragments(since);
+        }
         Iterable<IFragmentInfo> fragments = getFragments(graphURI);
         return new SinceFilter(fragments, since);
     }
 
+    /**
+     * Returns the time-ordered index of the fragments of the provided graph.
+     * 
+     * This implementation returns {@code null}, derived classes which 
+     * maintain a {@link FragmentIndex} per graph should return it.
+     *
+     * @param graphURI The URI of the graph.
+     * @return The fragment index or {@code null} if the graph is not indexed.
+     * @throws GraphNotExistsException In case the graph does not exist.
+     * @throws StoreException In case of an error.
+     */
+    protected FragmentIndex getFragmentIndex(final URI graphURI) 
+            throws GraphNotExistsException, StoreException {
+        return null;
+    }
+
 
     /**
      * Iterable/iterator which returns only those {@link IFragmentInfo} instances
@@ -15,12 +15,23 @@
  */
 package com.semagia.cassa.server.store.impl;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.util.Map;
 
+import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.common.dm.IWritableRepresentation;
+import com.semagia.cassa.server.store.BulkLoad;
+import com.semagia.cassa.server.store.GraphMismatchException;
 import com.semagia.cassa.server.store.GraphNotExistsException;
+import com.semagia.cassa.server.store.IGraph;
 import com.semagia.cassa.server.store.IGraphInfo;
 import com.semagia.cassa.server.store.IStore;
+import com.semagia.cassa.server.store.ParseException;
+import com.semagia.cassa.server.store.QueryException;
 import com.semagia.cassa.server.store.StoreException;
+import com.semagia.cassa.server.store.UnsupportedMediaTypeException;
 
 /**
  * Abstract store which implements some common methods.
@@ -45,6 +56,66 @@ public abstract class AbstractStore implements IStore {
         return false;
     }
 
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.IStore#openGraph(java.net.URI)
+     */
+    @Override
+    public IGraph openGraph(URI graphURI) throws GraphNotExistsException,
+            StoreException {
+        return new DefaultGraph(this, graphURI, getGraphInfo(graphURI));
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * This implementation does not support serializations of subjects, it 
+     * throws an {@link UnsupportedOperationException}.
+     */
+    @Override
+    public IWritableRepresentation getSubject(URI graphURI, URI subjectURI,
+            MediaType mediaType) throws GraphNotExistsException,
+            UnsupportedMediaTypeException, IOException, StoreException {
+        throw new UnsupportedOperationException("Serializations of subjects are not supported");
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * This implementation does not support bindings, it calls
+     * {@link #modifyGraph(URI, InputStream, URI, MediaType)} if {@code bindings}
+     * is empty and throws a {@link QueryException} otherwise.
+     */
+    @Override
+    public boolean modifyGraph(URI graphURI, InputStream in, URI baseURI,
+            MediaType mediaType, Map<String, String> bindings)
+            throws UnsupportedMediaTypeException, IOException, QueryException,
+            GraphMismatchException, StoreException {
+        if (!bindings.isEmpty()) {
+            throw new QueryException("Bindings are not supported");
+        }
+        return modifyGraph(graphURI, in, baseURI, mediaType);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * This implementation does not support chunked loading, it calls
+     * {@link #createGraph(InputStream, URI, MediaType)}, 
+     * {@link #createOrReplaceGraph(URI, InputStream, URI, MediaType)} or 
+     * {@link #updateGraph(URI, InputStream, URI, MediaType)}. The input is 
+     * not loaded in chunks, therefore the counters of the bulk load are not
+     * changed.
+     */
+    @Override
+    public IGraphInfo loadGraph(URI graphURI, InputStream in, URI baseURI,
+            MediaType mediaType, BulkLoad bulkLoad)
+            throws UnsupportedMediaTypeException, IOException, ParseException,
+            StoreException {
+        return graphURI == null ? createGraph(in, baseURI, mediaType)
+                 : bulkLoad.isReplace() ? createOrReplaceGraph(graphURI, in, baseURI, mediaType)
+                                        : updateGraph(graphURI, in, baseURI, mediaType);
+    }
+
     /**
      * Raises an exception if the graph URI is not in the store.
      *
@@ -0,0 +1,832 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.semagia.cassa.common.ContentCoding;
+import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.common.dm.ICompressibleRepresentation;
+import com.semagia.cassa.common.dm.IWritableRepresentation;
+import com.semagia.cassa.common.dm.RemovalStatus;
+import com.semagia.cassa.common.dm.impl.InputStreamWritableRepresentation;
+import com.semagia.cassa.server.store.BulkLoad;
+import com.semagia.cassa.server.store.GraphMismatchException;
+import com.semagia.cassa.server.store.GraphNotExistsException;
+import com.semagia.cassa.server.store.IGraph;
+import com.semagia.cassa.server.store.IGraphInfo;
+import com.semagia.cassa.server.store.IStore;
+import com.semagia.cassa.server.store.ParseException;
+import com.semagia.cassa.server.store.QueryException;
+import com.semagia.cassa.server.store.StoreException;
+import com.semagia.cassa.server.store.UnsupportedMediaTypeException;
+
+/**
+ * {@link IStore} implementation which caches the serializations of graphs.
+ * <p>
+ * The serializations are cached by graph URI, media type and the last 
+ * modification time of the graph. Graphs with an unknown modification time
+ * are not cached. The cache is bounded by the total number of bytes, the 
+ * least recently used serializations are evicted first.
+ * </p>
+ * <p>
+ * A serialization is cached while it is written to the client; if it 
+ * exceeds the size of the cache, it is not cached at all. All modifying 
+ * methods invalidate the cached serializations of the affected graph and 
+ * of the default graph.
+ * </p>
+ * <p>
+ * The cached serializations implement {@link ICompressibleRepresentation};
+ * a compressed copy of a serialization is created once per content coding 
+ * and kept in the cache as well.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class CachingStore extends DelegatingStore {
+
+    private final long _maxBytes;
+    private final boolean _offHeap;
+    private final LinkedHashMap<CacheKey, CacheEntry> _cache;
+    private long _bytes;
+    private final AtomicLong _hits;
+    private final AtomicLong _misses;
+    private final AtomicLong _evictions;
+
+    /**
+     * Creates a cache which keeps the serializations on the heap.
+     *
+     * @param store The underlying store.
+     * @param maxBytes The maximum number of bytes to cache.
+     */
+    public CachingStore(final IStore store, final long maxBytes) {
+        this(store, maxBytes, false);
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param store The underlying store.
+     * @param maxBytes The maximum number of bytes to cache.
+     * @param offHeap {@code true} to keep the serializations in direct 
+     *          (off-heap) buffers, {@code false} to keep them on the heap.
+     */
+    public CachingStore(final IStore store, final long maxBytes, final boolean offHeap) {
+        super(store);
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("The maximum number of bytes must be greater than zero");
+        }
+        _maxBytes = maxBytes;
+        _offHeap = offHeap;
+        _cache = new LinkedHashMap<CacheKey, CacheEntry>(16, 0.75f, true);
+        _hits = new AtomicLong();
+        _misses = new AtomicLong();
+        _evictions = new AtomicLong();
+    }
+
+    /**
+     * Returns the number of requests which were served from the cache.
+     *
+     * @return The number of cache hits.
+     */
+    public long getHits() {
+        return _hits.get();
+    }
+
+    /**
+     * Returns the number of requests which were served by the underlying store.
+     *
+     * @return The number of cache misses.
+     */
+    public long getMisses() {
+        return _misses.get();
+    }
+
+    /**
+     * Returns the ratio of cache hits to all requests.
+     *
+     * @return A value between {@code 0} and {@code 1}.
+     */
+    public double getHitRatio() {
+        final long hits = _hits.get();
+        final long total = hits + _misses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Returns the number of serializations which were evicted to make room
+     * for new serializations.
+     *
+     * @return The number of evictions.
+     */
+    public long getEvictions() {
+        return _evictions.get();
+    }
+
+    /**
+     * Returns the number of bytes held by the cache.
+     *
+     * @return The number of cached bytes.
+     */
+    public synchronized long getCachedBytes() {
+        return _bytes;
+    }
+
+    /**
+     * Returns the number of cached serializations.
+     *
+     * @return The number of cache entries.
+     */
+    public synchronized int getCachedEntries() {
+        return _cache.size();
+    }
+
+    /**
+     * Removes all serializations from the cache.
+     */
+    public synchronized void clear() {
+        _cache.clear();
+        _bytes = 0;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#getGraph(java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IWritableRepresentation getGraph(final URI graphURI, final MediaType mediaType)
+            throws GraphNotExistsException, UnsupportedMediaTypeException,
+            IOException, StoreException {
+        final long lastModification = mediaType == null ? -1 : _store.getGraphInfo(graphURI).getLastModification();
+        if (lastModification == -1) {
+            return _store.getGraph(graphURI, mediaType);
+        }
+        final CacheKey key = new CacheKey(graphURI, mediaType, lastModification);
+        final CacheEntry entry = lookup(key);
+        if (entry != null) {
+            return new CachedWritableRepresentation(key, entry);
+        }
+        return new CachingWritableRepresentation(key, _store.getGraph(graphURI, mediaType));
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#openGraph(java.net.URI)
+     */
+    @Override
+    public IGraph openGraph(final URI graphURI) throws GraphNotExistsException,
+            StoreException {
+        return new CachingGraph(graphURI, _store.openGraph(graphURI));
+    }
+
+    /**
+     * Returns the cache entry for the provided key and updates the statistics.
+     *
+     * @param key The cache key.
+     * @return The cache entry or {@code null}.
+     */
+    private CacheEntry lookup(final CacheKey key) {
+        final CacheEntry entry = get(key);
+        if (entry != null) {
+            _hits.incrementAndGet();
+        }
+        else {
+            _misses.incrementAndGet();
+        }
+        return entry;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#deleteGraph(java.net.URI)
+     */
+    @Override
+    public RemovalStatus deleteGraph(final URI graphURI)
+            throws GraphNotExistsException, IOException, StoreException {
+        try {
+            return super.deleteGraph(graphURI);
+        }
+        finally {
+            invalidate(graphURI);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#deleteSubject(java.net.URI, java.net.URI)
+     */
+    @Override
+    public RemovalStatus deleteSubject(final URI graphURI, final URI subjectURI)
+            throws GraphNotExistsException, IOException, StoreException {
+        try {
+            return super.deleteSubject(graphURI, subjectURI);
+        }
+        finally {
+            invalidate(graphURI);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#updateGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IGraphInfo updateGraph(final URI graphURI, final InputStream in, final URI baseURI,
+            final MediaType mediaType) throws UnsupportedMediaTypeException,
+            IOException, ParseException, StoreException {
+        try {
+            return super.updateGraph(graphURI, in, baseURI, mediaType);
+        }
+        finally {
+            invalidate(graphURI);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#modifyGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public boolean modifyGraph(final URI graphURI, final InputStream in, final URI baseURI,
+            final MediaType mediaType) throws UnsupportedMediaTypeException,
+            IOException, QueryException, GraphMismatchException, StoreException {
+        try {
+            return super.modifyGraph(graphURI, in, baseURI, mediaType);
+        }
+        finally {
+            invalidate(graphURI);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#modifyGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType, java.util.Map)
+     */
+    @Override
+    public boolean modifyGraph(final URI graphURI, final InputStream in, final URI baseURI,
+            final MediaType mediaType, final Map<String, String> bindings) throws UnsupportedMediaTypeException,
+            IOException, QueryException, GraphMismatchException, StoreException {
+        try {
+            return super.modifyGraph(graphURI, in, baseURI, mediaType, bindings);
+        }
+        finally {
+            invalidate(graphURI);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#createGraph(java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IGraphInfo createGraph(final InputStream in, final URI baseURI,
+            final MediaType mediaType) throws UnsupportedMediaTypeException,
+            IOException, ParseException, StoreException {
+        try {
+            return super.createGraph(in, baseURI, mediaType);
+        }
+        finally {
+            invalidate(null);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#createOrReplaceGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IGraphInfo createOrReplaceGraph(final URI graphURI, final InputStream in,
+            final URI baseURI, final MediaType mediaType)
+            throws UnsupportedMediaTypeException, IOException, ParseException,
+            StoreException {
+        try {
+            return super.createOrReplaceGraph(graphURI, in, baseURI, mediaType);
+        }
+        finally {
+            invalidate(graphURI);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#loadGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType, com.semagia.cassa.server.store.BulkLoad)
+     */
+    @Override
+    public IGraphInfo loadGraph(final URI graphURI, final InputStream in,
+            final URI baseURI, final MediaType mediaType, final BulkLoad bulkLoad)
+            throws UnsupportedMediaTypeException, IOException, ParseException,
+            StoreException {
+        try {
+            return super.loadGraph(graphURI, in, baseURI, mediaType, bulkLoad);
+        }
+        finally {
+            invalidate(graphURI);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#createOrReplaceSubject(java.net.URI, java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IGraphInfo createOrReplaceSubject(final URI graphURI, final URI subjectURI,
+            final InputStream in, final URI baseURI, final MediaType mediaType)
+            throws UnsupportedMediaTypeException, IOException, ParseException,
+            StoreException {
+        try {
+            return super.createOrReplaceSubject(graphURI, subjectURI, in, baseURI, mediaType);
+        }
+        finally {
+            invalidate(graphURI);
+        }
+    }
+
+    /**
+     * Removes all serializations of the provided graph and of the default 
+     * graph from the cache. 
+     * 
+     * If the default graph was modified, the cache is cleared.
+     *
+     * @param graphURI The modified graph or {@code null} if only the 
+     *          default graph should be invalidated.
+     */
+    protected synchronized void invalidate(final URI graphURI) {
+        if (graphURI == IStore.DEFAULT_GRAPH) {
+            clear();
+            return;
+        }
+        final Iterator<Map.Entry<CacheKey, CacheEntry>> iter = _cache.entrySet().iterator();
+        while (iter.hasNext()) {
+            final Map.Entry<CacheKey, CacheEntry> entry = iter.next();
+            final URI uri = entry.getKey().graphURI;
+            if (uri == IStore.DEFAULT_GRAPH || uri.equals(graphURI)) {
+                _bytes -= entry.getValue().size();
+                iter.remove();
+            }
+        }
+    }
+
+    private synchronized CacheEntry get(final CacheKey key) {
+        return _cache.get(key);
+    }
+
+    private synchronized void put(final CacheKey key, final CacheEntry entry) {
+        final CacheEntry old = _cache.put(key, entry);
+        if (old != null) {
+            _bytes -= old.size();
+        }
+        _bytes += entry.size();
+        evict();
+    }
+
+    private synchronized CacheEntry getVariant(final CacheEntry entry, final ContentCoding coding) {
+        return entry.getVariant(coding);
+    }
+
+    private synchronized void putVariant(final CacheKey key, final CacheEntry entry, 
+            final ContentCoding coding, final CacheEntry variant) {
+        if (_cache.get(key) != entry || entry.getVariant(coding) != null) {
+            return;
+        }
+        entry.putVariant(coding, variant);
+        _bytes += variant.size();
+        evict();
+    }
+
+    /**
+     * Removes the least recently used entries until the cache size is 
+     * within the limit.
+     */
+    private void evict() {
+        final Iterator<CacheEntry> iter = _cache.values().iterator();
+        while (_bytes > _maxBytes && iter.hasNext()) {
+            _bytes -= iter.next().size();
+            iter.remove();
+            _evictions.incrementAndGet();
+        }
+    }
+
+    private CacheEntry createEntry(final byte[] data, final int length, 
+            final MediaType mediaType, final String encoding) {
+        if (_offHeap) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+            buffer.put(data, 0, length);
+            buffer.flip();
+            return new DirectCacheEntry(buffer, mediaType, encoding);
+        }
+        final byte[] content = new byte[length];
+        System.arraycopy(data, 0, content, 0, length);
+        return new HeapCacheEntry(content, mediaType, encoding);
+    }
+
+
+    /**
+     * Key of a cached serialization.
+     */
+    private static final class CacheKey {
+
+        final URI graphURI;
+        final MediaType mediaType;
+        final long lastModification;
+
+        CacheKey(final URI graphURI, final MediaType mediaType, final long lastModification) {
+            this.graphURI = graphURI;
+            this.mediaType = mediaType;
+            this.lastModification = lastModification;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CacheKey)) {
+                return false;
+            }
+            final CacheKey other = (CacheKey) obj;
+            return lastModification == other.lastModification
+                    && graphURI.equals(other.graphURI)
+                    && mediaType.equals(other.mediaType);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = graphURI.hashCode();
+            result = 31 * result + mediaType.hashCode();
+            return 31 * result + (int) (lastModification ^ (lastModification >>> 32));
+        }
+
+    }
+
+
+    /**
+     * A cached serialization and its compressed variants.
+     * 
+     * The variants are guarded by the lock of the {@link CachingStore}.
+     */
+    private static abstract class CacheEntry {
+
+        private final MediaType _mediaType;
+        private final String _encoding;
+        private EnumMap<ContentCoding, CacheEntry> _variants;
+
+        CacheEntry(final MediaType mediaType, final String encoding) {
+            _mediaType = mediaType;
+            _encoding = encoding;
+        }
+
+        /**
+         * Returns the number of bytes of the serialization.
+         *
+         * @return The length of the serialization.
+         */
+        abstract int length();
+
+        /**
+         * Returns a new input stream to read the serialization.
+         *
+         * @return An input stream.
+         */
+        abstract InputStream openStream();
+
+        /**
+         * Returns the number of bytes of the serialization and its variants.
+         *
+         * @return The size of this entry.
+         */
+        int size() {
+            int size = length();
+            if (_variants != null) {
+                for (CacheEntry variant: _variants.values()) {
+                    size += variant.size();
+                }
+            }
+            return size;
+        }
+
+        CacheEntry getVariant(final ContentCoding coding) {
+            return _variants == null ? null : _variants.get(coding);
+        }
+
+        void putVariant(final ContentCoding coding, final CacheEntry variant) {
+            if (_variants == null) {
+                _variants = new EnumMap<ContentCoding, CacheEntry>(ContentCoding.class);
+            }
+            _variants.put(coding, variant);
+        }
+
+    }
+
+
+    private static final class HeapCacheEntry extends CacheEntry {
+
+        private final byte[] _data;
+
+        HeapCacheEntry(final byte[] data, final MediaType mediaType, final String encoding) {
+            super(mediaType, encoding);
+            _data = data;
+        }
+
+        @Override
+        int length() {
+            return _data.length;
+        }
+
+        @Override
+        InputStream openStream() {
+            return new ByteArrayInputStream(_data);
+        }
+
+    }
+
+
+    private static final class DirectCacheEntry extends CacheEntry {
+
+        private final ByteBuffer _buffer;
+
+        DirectCacheEntry(final ByteBuffer buffer, final MediaType mediaType, final String encoding) {
+            super(mediaType, encoding);
+            _buffer = buffer;
+        }
+
+        @Override
+        int length() {
+            return _buffer.limit();
+        }
+
+        @Override
+        InputStream openStream() {
+            return new ByteBufferInputStream(_buffer.duplicate());
+        }
+
+    }
+
+
+    /**
+     * Input stream which reads from a {@link ByteBuffer}.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer _buffer;
+
+        ByteBufferInputStream(final ByteBuffer buffer) {
+            _buffer = buffer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return _buffer.hasRemaining() ? _buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (!_buffer.hasRemaining()) {
+                return -1;
+            }
+            final int n = Math.min(len, _buffer.remaining());
+            _buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return _buffer.remaining();
+        }
+
+    }
+
+
+    /**
+     * {@link IGraph} which serves the serialization from the cache if possible.
+     */
+    private final class CachingGraph implements IGraph {
+
+        private final URI _graphURI;
+        private final IGraph _graph;
+
+        public CachingGraph(final URI graphURI, final IGraph graph) {
+            _graphURI = graphURI;
+            _graph = graph;
+        }
+
+        /* (non-Javadoc)
+         * @see com.semagia.cassa.server.store.IGraph#getGraphInfo()
+         */
+        @Override
+        public IGraphInfo getGraphInfo() {
+            return _graph.getGraphInfo();
+        }
+
+        /* (non-Javadoc)
+         * @see com.semagia.cassa.server.store.IGraph#getRepresentation(com.semagia.cassa.common.MediaType)
+         */
+        @Override
+        public IWritableRepresentation getRepresentation(final MediaType mediaType)
+                throws UnsupportedMediaTypeException, IOException,
+                StoreException {
+            final long lastModification = mediaType == null ? -1 : _graph.getGraphInfo().getLastModification();
+            if (lastModification == -1) {
+                return _graph.getRepresentation(mediaType);
+            }
+            final CacheKey key = new CacheKey(_graphURI, mediaType, lastModification);
+            final CacheEntry entry = lookup(key);
+            if (entry != null) {
+                // The underlying graph isn't needed anymore
+                _graph.close();
+                return new CachedWritableRepresentation(key, entry);
+            }
+            return new CachingWritableRepresentation(key, _graph.getRepresentation(mediaType));
+        }
+
+        /* (non-Javadoc)
+         * @see com.semagia.cassa.server.store.IGraph#close()
+         */
+        @Override
+        public void close() throws StoreException {
+            _graph.close();
+        }
+
+    }
+
+
+    /**
+     * {@link IWritableRepresentation} which writes a cached serialization.
+     */
+    private final class CachedWritableRepresentation extends InputStreamWritableRepresentation 
+            implements ICompressibleRepresentation {
+
+        private final CacheKey _key;
+        private final CacheEntry _entry;
+
+        CachedWritableRepresentation(final CacheKey key, final CacheEntry entry) {
+            super(entry.openStream(), entry._mediaType, entry._encoding, entry.length());
+            _key = key;
+            _entry = entry;
+        }
+
+        /* (non-Javadoc)
+         * @see com.semagia.cassa.common.dm.ICompressibleRepresentation#write(java.io.OutputStream, com.semagia.cassa.common.ContentCoding)
+         */
+        @Override
+        public void write(final OutputStream out, final ContentCoding coding) throws IOException {
+            if (coding == ContentCoding.IDENTITY) {
+                write(out);
+                return;
+            }
+            CacheEntry variant = getVariant(_entry, coding);
+            if (variant == null) {
+                final CopyBuffer buffer = new CopyBuffer();
+                final OutputStream encoded = coding.encode(buffer);
+                write(encoded);
+                ContentCoding.finish(encoded);
+                variant = createEntry(buffer.getBuffer(), buffer.size(), _entry._mediaType, _entry._encoding);
+                putVariant(_key, _entry, coding, variant);
+            }
+            else {
+                close();
+            }
+            new InputStreamWritableRepresentation(variant.openStream(), 
+                    variant._mediaType, variant._encoding, variant.length()).write(out);
+        }
+
+    }
+
+
+    /**
+     * {@link IWritableRepresentation} which writes the serialization of the
+     * underlying store and puts a copy of it into the cache.
+     */
+    private final class CachingWritableRepresentation implements IWritableRepresentation {
+
+        private final CacheKey _key;
+        private final IWritableRepresentation _writable;
+
+        CachingWritableRepresentation(final CacheKey key, final IWritableRepresentation writable) {
+            _key = key;
+            _writable = writable;
+        }
+
+        /* (non-Javadoc)
+         * @see com.semagia.cassa.common.dm.IWritableRepresentation#write(java.io.OutputStream)
+         */
+        @Override
+        public void write(final OutputStream out) throws IOException {
+            final CapturingOutputStream capture = new CapturingOutputStream(out, Math.min(_maxBytes, Integer.MAX_VALUE - 8));
+            _writable.write(capture);
+            if (!capture.isOverflowed()) {
+                put(_key, createEntry(capture.getBuffer(), capture.size(), 
+                        _writable.getMediaType(), _writable.getEncoding()));
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see com.semagia.cassa.common.dm.IWritableRepresentation#getMediaType()
+         */
+        @Override
+        public MediaType getMediaType() {
+            return _writable.getMediaType();
+        }
+
+        /* (non-Javadoc)
+         * @see com.semagia.cassa.common.dm.IWritableRepresentation#getEncoding()
+         */
+        @Override
+        public String getEncoding() {
+            return _writable.getEncoding();
+        }
+
+    }
+
+
+    /**
+     * Output stream which writes to an underlying output stream and keeps
+     * a copy of the written bytes as long as the limit isn't exceeded.
+     */
+    private static final class CapturingOutputStream extends OutputStream {
+
+        private final OutputStream _out;
+        private final long _limit;
+        private CopyBuffer _copy;
+
+        CapturingOutputStream(final OutputStream out, final long limit) {
+            _out = out;
+            _limit = limit;
+            _copy = new CopyBuffer();
+        }
+
+        boolean isOverflowed() {
+            return _copy == null;
+        }
+
+        byte[] getBuffer() {
+            return _copy.getBuffer();
+        }
+
+        int size() {
+            return _copy.size();
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            _out.write(b);
+            if (_copy != null) {
+                if (_copy.size() + 1 > _limit) {
+                    _copy = null;
+                }
+                else {
+                    _copy.write(b);
+                }
+            }
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            _out.write(b, off, len);
+            if (_copy != null) {
+                if ((long) _copy.size() + len > _limit) {
+                    _copy = null;
+                }
+                else {
+                    _copy.write(b, off, len);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            _out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            _out.close();
+        }
+
+    }
+
+
+    /**
+     * Provides access to the internal buffer to avoid a copy.
+     */
+    private static final class CopyBuffer extends ByteArrayOutputStream {
+
+        byte[] getBuffer() {
+            return buf;
+        }
+
+    }
+
+}
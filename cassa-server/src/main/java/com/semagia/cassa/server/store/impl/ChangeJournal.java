@@ -0,0 +1,386 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store.impl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.common.dm.impl.DefaultResource;
+import com.semagia.cassa.server.store.IFragmentInfo;
+import com.semagia.cassa.server.store.IStore;
+import com.semagia.cassa.server.store.StoreException;
+
+/**
+ * Journal of the changed subjects of graphs.
+ * <p>
+ * The journal keeps the time of the last change of each subject per graph.
+ * A change which affects a whole graph (a "reset") supersedes all subject 
+ * changes of that graph; a reset of the {@link IStore#DEFAULT_GRAPH} 
+ * supersedes the changes of all graphs. The time stamps are strictly 
+ * increasing.
+ * </p>
+ * <p>
+ * If a file is provided, all changes are appended to that file and read 
+ * back if a new instance is created. The file is compacted when it is read.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class ChangeJournal {
+
+    private static final char 
+        _SUBJECT = 'S',
+        _RESET = 'R',
+        _REMOVED = 'D';
+
+    private final Map<URI, GraphJournal> _graphs;
+    private final File _file;
+    private long _lastModification;
+    private Writer _writer;
+
+    /**
+     * Creates an in-memory journal.
+     */
+    public ChangeJournal() {
+        _graphs = new HashMap<URI, GraphJournal>();
+        _file = null;
+    }
+
+    /**
+     * Creates a journal which persists the changes into the provided file.
+     *
+     * @param file The file to read the changes from and to append all 
+     *          changes to. The file is created if it does not exist.
+     * @throws IOException In case the file cannot be read or written.
+     */
+    public ChangeJournal(final File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("The file must not be null");
+        }
+        _graphs = new HashMap<URI, GraphJournal>();
+        _file = file;
+        if (file.exists()) {
+            read(file);
+        }
+        compact();
+    }
+
+    /**
+     * Records a change of a subject.
+     *
+     * @param graphURI The graph URI.
+     * @param subjectURI The changed (or removed) subject.
+     * @return The time of the change.
+     * @throws StoreException In case the change cannot be persisted.
+     */
+    public synchronized long subjectChanged(final URI graphURI, final URI subjectURI) throws StoreException {
+        final long time = nextTime();
+        applySubject(graphURI, subjectURI, time);
+        log(_SUBJECT, time, graphURI, subjectURI);
+        return time;
+    }
+
+    /**
+     * Records a change which affects the whole graph.
+     *
+     * @param graphURI The graph URI.
+     * @return The time of the change.
+     * @throws StoreException In case the change cannot be persisted.
+     */
+    public synchronized long graphChanged(final URI graphURI) throws StoreException {
+        final long time = nextTime();
+        applyReset(graphURI, time);
+        log(_RESET, time, graphURI, null);
+        return time;
+    }
+
+    /**
+     * Removes all changes of the provided graph.
+     *
+     * @param graphURI The removed graph.
+     * @throws StoreException In case the change cannot be persisted.
+     */
+    public synchronized void graphRemoved(final URI graphURI) throws StoreException {
+        final long time = nextTime();
+        applyRemoval(graphURI);
+        log(_REMOVED, time, graphURI, null);
+    }
+
+    /**
+     * Returns the time of the last change of the provided graph.
+     *
+     * @param graphURI The graph URI.
+     * @return The time of the last change or {@code -1} if no change of the
+     *          graph was recorded.
+     */
+    public synchronized long getLastModification(final URI graphURI) {
+        final GraphJournal journal = _graphs.get(graphURI);
+        return journal != null ? journal.getLastModification() : -1;
+    }
+
+    /**
+     * Returns the time of the last change which affected the whole graph.
+     *
+     * @param graphURI The graph URI.
+     * @return The time of the last reset or {@code -1} if no reset of the 
+     *          graph was recorded.
+     */
+    public synchronized long getLastReset(final URI graphURI) {
+        final GraphJournal journal = _graphs.get(graphURI);
+        return journal != null ? journal._reset : -1;
+    }
+
+    /**
+     * Returns the changed subjects of the provided graph as fragments, 
+     * ordered by the time of the change.
+     * 
+     * The URI of a fragment is the URI of the subject.
+     *
+     * @param graphURI The graph URI.
+     * @param since Only changes which happened at or after this time are returned.
+     * @param mediaTypes The media types of the fragments.
+     * @return A (maybe empty) list of fragments.
+     */
+    public synchronized List<IFragmentInfo> getFragments(final URI graphURI, final long since, 
+            final List<MediaType> mediaTypes) {
+        final GraphJournal journal = _graphs.get(graphURI);
+        if (journal == null) {
+            return new ArrayList<IFragmentInfo>(0);
+        }
+        final Map<Long, URI> changes = journal._changes.tailMap(since);
+        final List<IFragmentInfo> fragments = new ArrayList<IFragmentInfo>(changes.size());
+        for (Map.Entry<Long, URI> change: changes.entrySet()) {
+            final URI subject = change.getValue();
+            fragments.add(new DefaultFragmentInfo(subject, new DefaultResource(subject), 
+                    mediaTypes, change.getKey().longValue()));
+        }
+        return fragments;
+    }
+
+    /**
+     * Closes the underlying file (if any).
+     *
+     * @throws IOException In case of an error.
+     */
+    public synchronized void close() throws IOException {
+        if (_writer != null) {
+            _writer.close();
+            _writer = null;
+        }
+    }
+
+    private long nextTime() {
+        final long now = System.currentTimeMillis();
+        _lastModification = now > _lastModification ? now : _lastModification + 1;
+        return _lastModification;
+    }
+
+    private GraphJournal journal(final URI graphURI) {
+        GraphJournal journal = _graphs.get(graphURI);
+        if (journal == null) {
+            journal = new GraphJournal();
+            _graphs.put(graphURI, journal);
+        }
+        return journal;
+    }
+
+    private void applySubject(final URI graphURI, final URI subjectURI, final long time) {
+        journal(graphURI).subjectChanged(subjectURI, time);
+    }
+
+    private void applyReset(final URI graphURI, final long time) {
+        if (graphURI == IStore.DEFAULT_GRAPH) {
+            for (GraphJournal journal: _graphs.values()) {
+                journal.reset(time);
+            }
+        }
+        journal(graphURI).reset(time);
+    }
+
+    private void applyRemoval(final URI graphURI) {
+        if (graphURI == IStore.DEFAULT_GRAPH) {
+            _graphs.clear();
+        }
+        else {
+            _graphs.remove(graphURI);
+        }
+    }
+
+    private void log(final char kind, final long time, final URI graphURI, 
+            final URI subjectURI) throws StoreException {
+        if (_writer == null) {
+            return;
+        }
+        try {
+            writeEntry(_writer, kind, time, graphURI, subjectURI);
+            _writer.flush();
+        }
+        catch (IOException ex) {
+            throw new StoreException("Cannot persist the change", ex);
+        }
+    }
+
+    private static void writeEntry(final Writer writer, final char kind, 
+            final long time, final URI graphURI, final URI subjectURI) throws IOException {
+        writer.write(kind);
+        writer.write(' ');
+        writer.write(Long.toString(time));
+        writer.write(' ');
+        writer.write(graphURI.toString());
+        if (subjectURI != null) {
+            writer.write(' ');
+            writer.write(subjectURI.toString());
+        }
+        writer.write('\n');
+    }
+
+    /**
+     * Replays the entries of the provided file. 
+     * 
+     * Malformed lines (i.e. an incomplete last line) are ignored.
+     *
+     * @param file The file to read.
+     * @throws IOException In case of an error.
+     */
+    private void read(final File file) throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] fields = line.split(" ", 4);
+                if (fields.length < 3 || fields[0].length() != 1) {
+                    continue;
+                }
+                final long time;
+                final URI graphURI;
+                final URI subjectURI;
+                try {
+                    time = Long.parseLong(fields[1]);
+                    graphURI = fields[2].length() == 0 ? IStore.DEFAULT_GRAPH : URI.create(fields[2]);
+                    subjectURI = fields.length == 4 ? URI.create(fields[3]) : null;
+                }
+                catch (IllegalArgumentException ex) {
+                    continue;
+                }
+                switch (fields[0].charAt(0)) {
+                    case _SUBJECT:
+                        if (subjectURI == null) {
+                            continue;
+                        }
+                        applySubject(graphURI, subjectURI, time);
+                        break;
+                    case _RESET:
+                        applyReset(graphURI, time);
+                        break;
+                    case _REMOVED:
+                        applyRemoval(graphURI);
+                        break;
+                    default:
+                        continue;
+                }
+                if (time > _lastModification) {
+                    _lastModification = time;
+                }
+            }
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Writes the current state into a new file which replaces the existing 
+     * file and opens the file for appending.
+     *
+     * @throws IOException In case of an error.
+     */
+    private void compact() throws IOException {
+        final File tmp = new File(_file.getPath() + ".tmp");
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+        try {
+            for (Map.Entry<URI, GraphJournal> entry: _graphs.entrySet()) {
+                final URI graphURI = entry.getKey();
+                final GraphJournal journal = entry.getValue();
+                if (journal._reset != -1) {
+                    writeEntry(writer, _RESET, journal._reset, graphURI, null);
+                }
+                for (Map.Entry<Long, URI> change: journal._changes.entrySet()) {
+                    writeEntry(writer, _SUBJECT, change.getKey().longValue(), graphURI, change.getValue());
+                }
+            }
+        }
+        finally {
+            writer.close();
+        }
+        if (!tmp.renameTo(_file)) {
+            if (!_file.delete() || !tmp.renameTo(_file)) {
+                throw new IOException("Cannot replace " + _file);
+            }
+        }
+        _writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(_file, true), "UTF-8"));
+    }
+
+
+    /**
+     * The changes of one graph.
+     */
+    private static final class GraphJournal {
+
+        private final Map<URI, Long> _subjects;
+        private final TreeMap<Long, URI> _changes;
+        private long _reset;
+
+        GraphJournal() {
+            _subjects = new HashMap<URI, Long>();
+            _changes = new TreeMap<Long, URI>();
+            _reset = -1;
+        }
+
+        void subjectChanged(final URI subjectURI, final long time) {
+            final Long previous = _subjects.put(subjectURI, time);
+            if (previous != null) {
+                _changes.remove(previous);
+            }
+            _changes.put(time, subjectURI);
+        }
+
+        void reset(final long time) {
+            _subjects.clear();
+            _changes.clear();
+            _reset = time;
+        }
+
+        long getLastModification() {
+            return _changes.isEmpty() ? _reset : Math.max(_reset, _changes.lastKey().longValue());
+        }
+
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store.impl;
+
+import java.io.IOException;
+import java.net.URI;
+
+import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.common.dm.IWritableRepresentation;
+import com.semagia.cassa.server.store.IGraph;
+import com.semagia.cassa.server.store.IGraphInfo;
+import com.semagia.cassa.server.store.IStore;
+import com.semagia.cassa.server.store.StoreException;
+import com.semagia.cassa.server.store.UnsupportedMediaTypeException;
+
+/**
+ * Default {@link IGraph} implementation which requests the serialization 
+ * via {@link IStore#getGraph(java.net.URI, MediaType)}.
+ * 
+ * This implementation does not hold any resources.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class DefaultGraph implements IGraph {
+
+    private final IStore _store;
+    private final URI _graphURI;
+    private final IGraphInfo _info;
+
+    /**
+     * Creates an instance.
+     *
+     * @param store The store to request the serialization from.
+     * @param graphURI The URI of the graph ({@link IStore#DEFAULT_GRAPH} indicates the default graph)
+     * @param info The graph metadata.
+     */
+    public DefaultGraph(final IStore store, final URI graphURI, final IGraphInfo info) {
+        if (store == null) {
+            throw new IllegalArgumentException("The store must not be null");
+        }
+        if (graphURI == null) {
+            throw new IllegalArgumentException("The graph URI must not be null");
+        }
+        if (info == null) {
+            throw new IllegalArgumentException("The graph info must not be null");
+        }
+        _store = store;
+        _graphURI = graphURI;
+        _info = info;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.IGraph#getGraphInfo()
+     */
+    @Override
+    public IGraphInfo getGraphInfo() {
+        return _info;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.IGraph#getRepresentation(com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IWritableRepresentation getRepresentation(final MediaType mediaType)
+            throws UnsupportedMediaTypeException, IOException, StoreException {
+        return _store.getGraph(_graphURI, mediaType);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.IGraph#close()
+     */
+    @Override
+    public void close() throws StoreException {
+        // noop.
+    }
+
+}
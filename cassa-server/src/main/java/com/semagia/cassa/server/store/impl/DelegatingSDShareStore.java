@@ -18,12 +18,15 @@ package com.semagia.cassa.server.store.impl;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.util.Map;
 
 import com.semagia.cassa.common.MediaType;
 import com.semagia.cassa.common.dm.IWritableRepresentation;
 import com.semagia.cassa.common.dm.RemovalStatus;
+import com.semagia.cassa.server.store.BulkLoad;
 import com.semagia.cassa.server.store.GraphMismatchException;
 import com.semagia.cassa.server.store.GraphNotExistsException;
+import com.semagia.cassa.server.store.IGraph;
 import com.semagia.cassa.server.store.IFragmentInfo;
 import com.semagia.cassa.server.store.IGraphInfo;
 import com.semagia.cassa.server.store.ISDShareStore;
@@ -111,6 +114,25 @@ public class DelegatingSDShareStore implements ISDShareStore {
         return _store.getFragments(graphURI, since);
     }
 
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.IStore#openGraph(java.net.URI)
+     */
+    @Override
+    public IGraph openGraph(URI graphURI) throws GraphNotExistsException,
+            StoreException {
+        return _store.openGraph(graphURI);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.IStore#getSubject(java.net.URI, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IWritableRepresentation getSubject(URI graphURI, URI subjectURI, MediaType mediaType)
+            throws GraphNotExistsException, UnsupportedMediaTypeException,
+            IOException, StoreException {
+        return _store.getSubject(graphURI, subjectURI, mediaType);
+    }
+
     /* (non-Javadoc)
      * @see com.semagia.cassa.server.store.IStore#containsGraph(java.net.URI)
      */
@@ -175,6 +197,17 @@ public class DelegatingSDShareStore implements ISDShareStore {
         return _store.modifyGraph(graphURI, in, baseURI, mediaType);
     }
 
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.IStore#modifyGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType, java.util.Map)
+     */
+    @Override
+    public boolean modifyGraph(URI graphURI, InputStream in, URI baseURI,
+            MediaType mediaType, Map<String, String> bindings)
+            throws UnsupportedMediaTypeException, IOException, QueryException,
+            GraphMismatchException, StoreException {
+        return _store.modifyGraph(graphURI, in, baseURI, mediaType, bindings);
+    }
+
     /* (non-Javadoc)
      * @see com.semagia.cassa.server.store.IStore#createGraph(java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
      */
@@ -196,6 +229,17 @@ public class DelegatingSDShareStore implements ISDShareStore {
         return _store.createOrReplaceGraph(graphURI, in, baseURI, mediaType);
     }
 
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.IStore#loadGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType, com.semagia.cassa.server.store.BulkLoad)
+     */
+    @Override
+    public IGraphInfo loadGraph(URI graphURI, InputStream in, URI baseURI,
+            MediaType mediaType, BulkLoad bulkLoad)
+            throws UnsupportedMediaTypeException, IOException, ParseException,
+            StoreException {
+        return _store.loadGraph(graphURI, in, baseURI, mediaType, bulkLoad);
+    }
+
     /* (non-Javadoc)
      * @see com.semagia.cassa.server.store.IStore#createOrReplaceSubject(java.net.URI, java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
      */
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store.impl;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.semagia.cassa.server.store.IFragmentInfo;
+
+/**
+ * Index of the fragments of a graph ordered by their last modification time
+ * and their URI.
+ * <p>
+ * The fragments are kept in a skip list, the fragments which were modified 
+ * at or after a point in time are found in {@code O(log n + k)}. A fragment
+ * replaces an existing fragment with the same URI. 
+ * </p>
+ * <p>
+ * The index is thread-safe; the iterables returned by 
+ * {@link #getFragments(long)} are live views which reflect concurrent 
+ * modifications.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class FragmentIndex {
+
+    private final ConcurrentNavigableMap<Key, IFragmentInfo> _fragments;
+    private final ConcurrentMap<URI, Key> _keys;
+
+    public FragmentIndex() {
+        _fragments = new ConcurrentSkipListMap<Key, IFragmentInfo>();
+        _keys = new ConcurrentHashMap<URI, Key>();
+    }
+
+    /**
+     * Adds a fragment to the index.
+     * 
+     * An existing fragment with the same URI is removed.
+     *
+     * @param fragment The fragment to add.
+     */
+    public synchronized void add(final IFragmentInfo fragment) {
+        final Key key = new Key(fragment.getLastModification(), fragment.getURI());
+        final Key previous = _keys.put(fragment.getURI(), key);
+        if (previous != null) {
+            _fragments.remove(previous);
+        }
+        _fragments.put(key, fragment);
+    }
+
+    /**
+     * Removes the fragment with the provided URI.
+     *
+     * @param fragmentURI The fragment URI.
+     * @return {@code true} if the fragment was removed, {@code false} if the
+     *          index does not contain the fragment.
+     */
+    public synchronized boolean remove(final URI fragmentURI) {
+        final Key key = _keys.remove(fragmentURI);
+        if (key == null) {
+            return false;
+        }
+        _fragments.remove(key);
+        return true;
+    }
+
+    /**
+     * Removes all fragments.
+     */
+    public synchronized void clear() {
+        _keys.clear();
+        _fragments.clear();
+    }
+
+    /**
+     * Returns the number of fragments.
+     *
+     * @return The number of fragments.
+     */
+    public int size() {
+        return _keys.size();
+    }
+
+    /**
+     * Returns the last modification time of the fragments.
+     *
+     * @return The max. last modification time of the fragments or {@code -1} 
+     *          if the index is empty.
+     */
+    public long getLastModification() {
+        final Map.Entry<Key, IFragmentInfo> last = _fragments.lastEntry();
+        return last != null ? last.getKey()._time : -1;
+    }
+
+    /**
+     * Returns all fragments ordered by their last modification time and URI.
+     *
+     * @return A (maybe empty) iterable of fragments.
+     */
+    public Iterable<IFragmentInfo> getFragments() {
+        return Collections.unmodifiableCollection(_fragments.values());
+    }
+
+    /**
+     * Returns the fragments which were modified at or after {@code since},
+     * ordered by their last modification time and URI.
+     *
+     * @param since A timestamp.
+     * @return A (maybe empty) iterable of fragments.
+     */
+    public Iterable<IFragmentInfo> getFragments(final long since) {
+        return Collections.unmodifiableCollection(_fragments.tailMap(new Key(since, null)).values());
+    }
+
+
+    /**
+     * Orders the fragments by time and URI. A key without a URI precedes 
+     * all keys with the same time.
+     */
+    private static final class Key implements Comparable<Key> {
+
+        private final long _time;
+        private final URI _uri;
+
+        Key(final long time, final URI uri) {
+            _time = time;
+            _uri = uri;
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Comparable#compareTo(java.lang.Object)
+         */
+        @Override
+        public int compareTo(final Key other) {
+            if (_time != other._time) {
+                return _time < other._time ? -1 : 1;
+            }
+            if (_uri == null || other._uri == null) {
+                return _uri == other._uri ? 0 : _uri == null ? -1 : 1;
+            }
+            return _uri.compareTo(other._uri);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return _time == other._time 
+                    && (_uri == null ? other._uri == null : _uri.equals(other._uri));
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (_time ^ (_time >>> 32)) * 31 + (_uri == null ? 0 : _uri.hashCode());
+        }
+
+    }
+
+}
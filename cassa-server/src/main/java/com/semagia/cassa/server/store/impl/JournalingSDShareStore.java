@@ -0,0 +1,310 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.common.dm.RemovalStatus;
+import com.semagia.cassa.server.store.BulkLoad;
+import com.semagia.cassa.server.store.BulkLoadException;
+import com.semagia.cassa.server.store.GraphMismatchException;
+import com.semagia.cassa.server.store.GraphNotExistsException;
+import com.semagia.cassa.server.store.IFragmentInfo;
+import com.semagia.cassa.server.store.IGraphInfo;
+import com.semagia.cassa.server.store.ISDShareStore;
+import com.semagia.cassa.server.store.IStore;
+import com.semagia.cassa.server.store.ParseException;
+import com.semagia.cassa.server.store.QueryException;
+import com.semagia.cassa.server.store.StoreException;
+import com.semagia.cassa.server.store.UnsupportedMediaTypeException;
+
+/**
+ * Adapts a {@link IStore} instance to a {@link ISDShareStore} which records
+ * all modifications into a {@link ChangeJournal}.
+ * <p>
+ * {@link #createOrReplaceSubject(URI, URI, InputStream, URI, MediaType)} and
+ * {@link #deleteSubject(URI, URI)} are recorded as subject changes, each 
+ * changed subject is reported as fragment. The URI of a fragment is the 
+ * URI of the subject.
+ * </p>
+ * <p>
+ * Subject changes in the {@link IStore#DEFAULT_GRAPH} may affect the subject 
+ * in any graph (i.e. the default graph of the Sesame store is the union of 
+ * all graphs). These changes are recorded once in the journal of the default 
+ * graph and are reported as fragments of all graphs unless the graph was 
+ * reset afterwards.
+ * </p>
+ * <p>
+ * The subjects which are affected by the other modifying methods are 
+ * unknown, these methods reset the journal of the graph, the fragments 
+ * of the graph are discarded and the last modification of the snapshots 
+ * is set to the time of the reset. Consumers which synchronized before 
+ * the reset have to load a snapshot.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class JournalingSDShareStore extends SDShareStoreAdapter {
+
+    private static final Comparator<IFragmentInfo> _BY_MODIFICATION = new Comparator<IFragmentInfo>() {
+        @Override
+        public int compare(final IFragmentInfo o1, final IFragmentInfo o2) {
+            final long t1 = o1.getLastModification();
+            final long t2 = o2.getLastModification();
+            return t1 < t2 ? -1 : t1 == t2 ? 0 : 1;
+        }
+    };
+
+    private final ChangeJournal _journal;
+
+    /**
+     * Creates a store which keeps the journal in memory.
+     *
+     * @param store The underlying store.
+     */
+    public JournalingSDShareStore(final IStore store) {
+        this(store, new ChangeJournal());
+    }
+
+    /**
+     * Creates a store which uses the provided journal.
+     *
+     * @param store The underlying store.
+     * @param journal The journal, i.e. a journal which persists the changes.
+     */
+    public JournalingSDShareStore(final IStore store, final ChangeJournal journal) {
+        super(store);
+        if (journal == null) {
+            throw new IllegalArgumentException("The journal must not be null");
+        }
+        _journal = journal;
+    }
+
+    /**
+     * Returns the journal.
+     *
+     * @return The journal.
+     */
+    public ChangeJournal getJournal() {
+        return _journal;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.SDShareStoreAdapter#getLastModificationFragments(java.net.URI)
+     */
+    @Override
+    public long getLastModificationFragments(final URI graphURI)
+            throws GraphNotExistsException, StoreException {
+        ensureGraphExists(graphURI);
+        final long lastModification = _journal.getLastModification(graphURI);
+        return graphURI == IStore.DEFAULT_GRAPH ? lastModification 
+                : Math.max(lastModification, _journal.getLastModification(IStore.DEFAULT_GRAPH));
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.SDShareStoreAdapter#getLastModificationSnapshots(java.net.URI)
+     */
+    @Override
+    public long getLastModificationSnapshots(final URI graphURI)
+            throws GraphNotExistsException, StoreException {
+        final long reset = _journal.getLastReset(graphURI);
+        return reset != -1 ? reset : super.getLastModificationSnapshots(graphURI);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.SDShareStoreAdapter#getFragments(java.net.URI)
+     */
+    @Override
+    public Iterable<IFragmentInfo> getFragments(final URI graphURI)
+            throws GraphNotExistsException, StoreException {
+        return getFragments(graphURI, -1);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.SDShareStoreAdapter#getFragments(java.net.URI, long)
+     */
+    @Override
+    public Iterable<IFragmentInfo> getFragments(final URI graphURI, final long since)
+            throws GraphNotExistsException, StoreException {
+        final IGraphInfo info = _store.getGraphInfo(graphURI);
+        final List<MediaType> mediaTypes = info.getSupportedMediaTypes();
+        final List<IFragmentInfo> fragments = _journal.getFragments(graphURI, since, mediaTypes);
+        if (graphURI == IStore.DEFAULT_GRAPH) {
+            return fragments;
+        }
+        final long reset = _journal.getLastReset(graphURI);
+        final Map<URI, IFragmentInfo> subjects = new HashMap<URI, IFragmentInfo>();
+        for (IFragmentInfo fragment: fragments) {
+            subjects.put(fragment.getURI(), fragment);
+        }
+        boolean merged = false;
+        for (IFragmentInfo fragment: _journal.getFragments(IStore.DEFAULT_GRAPH, since, mediaTypes)) {
+            if (fragment.getLastModification() <= reset) {
+                continue;
+            }
+            final IFragmentInfo existing = subjects.get(fragment.getURI());
+            if (existing == null || existing.getLastModification() < fragment.getLastModification()) {
+                subjects.put(fragment.getURI(), fragment);
+                merged = true;
+            }
+        }
+        if (!merged) {
+            return fragments;
+        }
+        final List<IFragmentInfo> result = new ArrayList<IFragmentInfo>(subjects.values());
+        Collections.sort(result, _BY_MODIFICATION);
+        return result;
+    }
+
+    private void ensureGraphExists(final URI graphURI) throws GraphNotExistsException, StoreException {
+        if (graphURI != IStore.DEFAULT_GRAPH && !_store.containsGraph(graphURI)) {
+            throw new GraphNotExistsException(graphURI);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#deleteGraph(java.net.URI)
+     */
+    @Override
+    public RemovalStatus deleteGraph(final URI graphURI)
+            throws GraphNotExistsException, IOException, StoreException {
+        final RemovalStatus status = super.deleteGraph(graphURI);
+        _journal.graphRemoved(graphURI);
+        return status;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#deleteSubject(java.net.URI, java.net.URI)
+     */
+    @Override
+    public RemovalStatus deleteSubject(final URI graphURI, final URI subjectURI)
+            throws GraphNotExistsException, IOException, StoreException {
+        final RemovalStatus status = super.deleteSubject(graphURI, subjectURI);
+        _journal.subjectChanged(graphURI, subjectURI);
+        return status;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#updateGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IGraphInfo updateGraph(final URI graphURI, final InputStream in, final URI baseURI,
+            final MediaType mediaType) throws UnsupportedMediaTypeException,
+            IOException, ParseException, StoreException {
+        final IGraphInfo info = super.updateGraph(graphURI, in, baseURI, mediaType);
+        _journal.graphChanged(graphURI);
+        return info;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#modifyGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public boolean modifyGraph(final URI graphURI, final InputStream in, final URI baseURI,
+            final MediaType mediaType) throws UnsupportedMediaTypeException,
+            IOException, QueryException, GraphMismatchException, StoreException {
+        final boolean modified = super.modifyGraph(graphURI, in, baseURI, mediaType);
+        if (modified) {
+            _journal.graphChanged(graphURI);
+        }
+        return modified;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#modifyGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType, java.util.Map)
+     */
+    @Override
+    public boolean modifyGraph(final URI graphURI, final InputStream in, final URI baseURI,
+            final MediaType mediaType, final Map<String, String> bindings) throws UnsupportedMediaTypeException,
+            IOException, QueryException, GraphMismatchException, StoreException {
+        final boolean modified = super.modifyGraph(graphURI, in, baseURI, mediaType, bindings);
+        if (modified) {
+            _journal.graphChanged(graphURI);
+        }
+        return modified;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#createGraph(java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IGraphInfo createGraph(final InputStream in, final URI baseURI,
+            final MediaType mediaType) throws UnsupportedMediaTypeException,
+            IOException, ParseException, StoreException {
+        final IGraphInfo info = super.createGraph(in, baseURI, mediaType);
+        _journal.graphChanged(info.getURI());
+        return info;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#createOrReplaceGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IGraphInfo createOrReplaceGraph(final URI graphURI, final InputStream in,
+            final URI baseURI, final MediaType mediaType)
+            throws UnsupportedMediaTypeException, IOException, ParseException,
+            StoreException {
+        final IGraphInfo info = super.createOrReplaceGraph(graphURI, in, baseURI, mediaType);
+        _journal.graphChanged(graphURI);
+        return info;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#loadGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType, com.semagia.cassa.server.store.BulkLoad)
+     */
+    @Override
+    public IGraphInfo loadGraph(final URI graphURI, final InputStream in,
+            final URI baseURI, final MediaType mediaType, final BulkLoad bulkLoad)
+            throws UnsupportedMediaTypeException, IOException, ParseException,
+            StoreException {
+        final IGraphInfo info;
+        try {
+            info = super.loadGraph(graphURI, in, baseURI, mediaType, bulkLoad);
+        }
+        catch (BulkLoadException ex) {
+            // Partially loaded
+            if (graphURI != null) {
+                _journal.graphChanged(graphURI);
+            }
+            throw ex;
+        }
+        _journal.graphChanged(graphURI != null ? graphURI : info.getURI());
+        return info;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#createOrReplaceSubject(java.net.URI, java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IGraphInfo createOrReplaceSubject(final URI graphURI, final URI subjectURI,
+            final InputStream in, final URI baseURI, final MediaType mediaType)
+            throws UnsupportedMediaTypeException, IOException, ParseException,
+            StoreException {
+        final IGraphInfo info = super.createOrReplaceSubject(graphURI, subjectURI, in, baseURI, mediaType);
+        _journal.subjectChanged(graphURI, subjectURI);
+        return info;
+    }
+
+}
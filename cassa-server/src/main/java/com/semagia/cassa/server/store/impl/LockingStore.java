@@ -0,0 +1,560 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.semagia.cassa.common.ContentCoding;
+import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.common.dm.ICompressibleRepresentation;
+import com.semagia.cassa.common.dm.IWritableRepresentation;
+import com.semagia.cassa.common.dm.RemovalStatus;
+import com.semagia.cassa.server.store.BulkLoad;
+import com.semagia.cassa.server.store.GraphMismatchException;
+import com.semagia.cassa.server.store.GraphNotExistsException;
+import com.semagia.cassa.server.store.IGraph;
+import com.semagia.cassa.server.store.IGraphInfo;
+import com.semagia.cassa.server.store.IStore;
+import com.semagia.cassa.server.store.ParseException;
+import com.semagia.cassa.server.store.QueryException;
+import com.semagia.cassa.server.store.StoreException;
+import com.semagia.cassa.server.store.UnsupportedMediaTypeException;
+import com.semagia.cassa.server.utils.Histogram;
+
+/**
+ * {@link IStore} implementation which coordinates the access to the graphs
+ * of the underlying store with read/write locks.
+ * <p>
+ * The graphs are mapped by their URI onto a fixed number of lock stripes. 
+ * Readers of a graph share the lock of the stripe, writers acquire it 
+ * exclusively, so writers of the same graph are serialized while readers 
+ * and writers of graphs which belong to different stripes never block each 
+ * other.
+ * </p>
+ * <p>
+ * The {@link IStore#DEFAULT_GRAPH} covers all graphs and 
+ * {@link #getGraphInfos()} and {@link #getLastModification()} report all 
+ * graphs, therefore they acquire the locks of all stripes (in ascending 
+ * order). {@link #createGraph(InputStream, URI, MediaType)} does not know 
+ * the URI of the new graph in advance and acquires all stripes exclusively.
+ * </p>
+ * <p>
+ * The serialization of a graph is written under the read lock of the graph.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class LockingStore extends DelegatingStore {
+
+    private static final int _DEFAULT_STRIPES = 32;
+
+    private final ReadWriteLock[] _stripes;
+    private final Histogram[] _waitTimes;
+    private final Histogram _coarseWaitTimes;
+
+    /**
+     * Creates a locking store with the default number of lock stripes.
+     *
+     * @param store The underlying store.
+     */
+    public LockingStore(final IStore store) {
+        this(store, _DEFAULT_STRIPES);
+    }
+
+    /**
+     * Creates a locking store.
+     *
+     * @param store The underlying store.
+     * @param stripes The number of lock stripes.
+     */
+    public LockingStore(final IStore store, final int stripes) {
+        super(store);
+        if (stripes < 1) {
+            throw new IllegalArgumentException("The number of stripes must be greater than zero");
+        }
+        _stripes = new ReadWriteLock[stripes];
+        _waitTimes = new Histogram[stripes];
+        for (int i = 0; i < stripes; i++) {
+            _stripes[i] = new ReentrantReadWriteLock();
+            _waitTimes[i] = new Histogram();
+        }
+        _coarseWaitTimes = new Histogram();
+    }
+
+    /**
+     * Returns the number of lock stripes.
+     *
+     * @return The number of stripes.
+     */
+    public int getStripes() {
+        return _stripes.length;
+    }
+
+    /**
+     * Returns the time spent waiting for the lock of the provided graph 
+     * (in microseconds).
+     * 
+     * The wait times are recorded per lock stripe, i.e. the histogram 
+     * covers all graphs which share the stripe with the provided graph. 
+     * The wait times of operations which lock all graphs are reported 
+     * for the {@link IStore#DEFAULT_GRAPH}.
+     *
+     * @param graphURI The graph URI.
+     * @return The wait times of the stripe of the graph.
+     */
+    public Histogram getLockWaitTimes(final URI graphURI) {
+        return isCoarse(graphURI) ? _coarseWaitTimes : _waitTimes[stripeIndex(graphURI)];
+    }
+
+    private static boolean isCoarse(final URI graphURI) {
+        return graphURI == null || graphURI == IStore.DEFAULT_GRAPH;
+    }
+
+    private int stripeIndex(final URI graphURI) {
+        return (graphURI.hashCode() & 0x7fffffff) % _stripes.length;
+    }
+
+    private static Lock lockOf(final ReadWriteLock lock, final boolean write) {
+        return write ? lock.writeLock() : lock.readLock();
+    }
+
+    /**
+     * Acquires the lock of the provided graph.
+     *
+     * @param graphURI The graph URI, {@link IStore#DEFAULT_GRAPH} or 
+     *          {@code null} to lock all graphs.
+     * @param write {@code true} to acquire the lock exclusively.
+     */
+    private void lock(final URI graphURI, final boolean write) {
+        final long start = System.nanoTime();
+        if (isCoarse(graphURI)) {
+            for (ReadWriteLock lock: _stripes) {
+                lockOf(lock, write).lock();
+            }
+        }
+        else {
+            lockOf(_stripes[stripeIndex(graphURI)], write).lock();
+        }
+        getLockWaitTimes(graphURI).record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+    }
+
+    /**
+     * Releases the lock of the provided graph.
+     *
+     * @param graphURI The graph URI, {@link IStore#DEFAULT_GRAPH} or 
+     *          {@code null} to unlock all graphs.
+     * @param write {@code true} if the lock was acquired exclusively.
+     */
+    private void unlock(final URI graphURI, final boolean write) {
+        if (isCoarse(graphURI)) {
+            for (int i = _stripes.length - 1; i >= 0; i--) {
+                lockOf(_stripes[i], write).unlock();
+            }
+        }
+        else {
+            lockOf(_stripes[stripeIndex(graphURI)], write).unlock();
+        }
+    }
+
+    private IWritableRepresentation guard(final URI graphURI, final IWritableRepresentation representation) {
+        return representation instanceof ICompressibleRepresentation 
+                ? new LockedCompressibleRepresentation(graphURI, (ICompressibleRepresentation) representation)
+                : new LockedRepresentation(graphURI, representation);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#getLastModification()
+     */
+    @Override
+    public long getLastModification() throws StoreException {
+        lock(IStore.DEFAULT_GRAPH, false);
+        try {
+            return super.getLastModification();
+        }
+        finally {
+            unlock(IStore.DEFAULT_GRAPH, false);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#getGraphInfos()
+     */
+    @Override
+    public Iterable<IGraphInfo> getGraphInfos() throws StoreException {
+        lock(IStore.DEFAULT_GRAPH, false);
+        try {
+            // Copy the infos since the iterable may be backed by the store
+            final List<IGraphInfo> infos = new ArrayList<IGraphInfo>();
+            for (IGraphInfo info: super.getGraphInfos()) {
+                infos.add(info);
+            }
+            return infos;
+        }
+        finally {
+            unlock(IStore.DEFAULT_GRAPH, false);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#getGraph(java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IWritableRepresentation getGraph(final URI graphURI, final MediaType mediaType)
+            throws GraphNotExistsException, UnsupportedMediaTypeException,
+            IOException, StoreException {
+        lock(graphURI, false);
+        try {
+            return guard(graphURI, super.getGraph(graphURI, mediaType));
+        }
+        finally {
+            unlock(graphURI, false);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#openGraph(java.net.URI)
+     */
+    @Override
+    public IGraph openGraph(final URI graphURI) throws GraphNotExistsException,
+            StoreException {
+        lock(graphURI, false);
+        try {
+            return new LockedGraph(graphURI, super.openGraph(graphURI));
+        }
+        finally {
+            unlock(graphURI, false);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#getSubject(java.net.URI, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IWritableRepresentation getSubject(final URI graphURI, final URI subjectURI, 
+            final MediaType mediaType) throws GraphNotExistsException, 
+            UnsupportedMediaTypeException, IOException, StoreException {
+        lock(graphURI, false);
+        try {
+            return guard(graphURI, super.getSubject(graphURI, subjectURI, mediaType));
+        }
+        finally {
+            unlock(graphURI, false);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#containsGraph(java.net.URI)
+     */
+    @Override
+    public boolean containsGraph(final URI graphURI) throws StoreException {
+        lock(graphURI, false);
+        try {
+            return super.containsGraph(graphURI);
+        }
+        finally {
+            unlock(graphURI, false);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#getGraphInfo(java.net.URI)
+     */
+    @Override
+    public IGraphInfo getGraphInfo(final URI graphURI) throws GraphNotExistsException,
+            StoreException {
+        lock(graphURI, false);
+        try {
+            return super.getGraphInfo(graphURI);
+        }
+        finally {
+            unlock(graphURI, false);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#deleteGraph(java.net.URI)
+     */
+    @Override
+    public RemovalStatus deleteGraph(final URI graphURI)
+            throws GraphNotExistsException, IOException, StoreException {
+        lock(graphURI, true);
+        try {
+            return super.deleteGraph(graphURI);
+        }
+        finally {
+            unlock(graphURI, true);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#deleteSubject(java.net.URI, java.net.URI)
+     */
+    @Override
+    public RemovalStatus deleteSubject(final URI graphURI, final URI subjectURI)
+            throws GraphNotExistsException, IOException, StoreException {
+        lock(graphURI, true);
+        try {
+            return super.deleteSubject(graphURI, subjectURI);
+        }
+        finally {
+            unlock(graphURI, true);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#updateGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IGraphInfo updateGraph(final URI graphURI, final InputStream in, final URI baseURI,
+            final MediaType mediaType) throws UnsupportedMediaTypeException,
+            IOException, ParseException, StoreException {
+        lock(graphURI, true);
+        try {
+            return super.updateGraph(graphURI, in, baseURI, mediaType);
+        }
+        finally {
+            unlock(graphURI, true);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#modifyGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public boolean modifyGraph(final URI graphURI, final InputStream in, final URI baseURI,
+            final MediaType mediaType) throws UnsupportedMediaTypeException,
+            IOException, QueryException, GraphMismatchException, StoreException {
+        lock(graphURI, true);
+        try {
+            return super.modifyGraph(graphURI, in, baseURI, mediaType);
+        }
+        finally {
+            unlock(graphURI, true);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#modifyGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType, java.util.Map)
+     */
+    @Override
+    public boolean modifyGraph(final URI graphURI, final InputStream in, final URI baseURI,
+            final MediaType mediaType, final Map<String, String> bindings) throws UnsupportedMediaTypeException,
+            IOException, QueryException, GraphMismatchException, StoreException {
+        lock(graphURI, true);
+        try {
+            return super.modifyGraph(graphURI, in, baseURI, mediaType, bindings);
+        }
+        finally {
+            unlock(graphURI, true);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#createGraph(java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IGraphInfo createGraph(final InputStream in, final URI baseURI,
+            final MediaType mediaType) throws UnsupportedMediaTypeException,
+            IOException, ParseException, StoreException {
+        lock(null, true);
+        try {
+            return super.createGraph(in, baseURI, mediaType);
+        }
+        finally {
+            unlock(null, true);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#createOrReplaceGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IGraphInfo createOrReplaceGraph(final URI graphURI, final InputStream in,
+            final URI baseURI, final MediaType mediaType)
+            throws UnsupportedMediaTypeException, IOException, ParseException,
+            StoreException {
+        lock(graphURI, true);
+        try {
+            return super.createOrReplaceGraph(graphURI, in, baseURI, mediaType);
+        }
+        finally {
+            unlock(graphURI, true);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#loadGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType, com.semagia.cassa.server.store.BulkLoad)
+     */
+    @Override
+    public IGraphInfo loadGraph(final URI graphURI, final InputStream in,
+            final URI baseURI, final MediaType mediaType, final BulkLoad bulkLoad)
+            throws UnsupportedMediaTypeException, IOException, ParseException,
+            StoreException {
+        lock(graphURI, true);
+        try {
+            return super.loadGraph(graphURI, in, baseURI, mediaType, bulkLoad);
+        }
+        finally {
+            unlock(graphURI, true);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#createOrReplaceSubject(java.net.URI, java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IGraphInfo createOrReplaceSubject(final URI graphURI, final URI subjectURI,
+            final InputStream in, final URI baseURI, final MediaType mediaType)
+            throws UnsupportedMediaTypeException, IOException, ParseException,
+            StoreException {
+        lock(graphURI, true);
+        try {
+            return super.createOrReplaceSubject(graphURI, subjectURI, in, baseURI, mediaType);
+        }
+        finally {
+            unlock(graphURI, true);
+        }
+    }
+
+
+    /**
+     * {@link IGraph} which writes the serialization under the read lock of 
+     * the graph.
+     */
+    private final class LockedGraph implements IGraph {
+
+        private final URI _graphURI;
+        private final IGraph _graph;
+
+        public LockedGraph(final URI graphURI, final IGraph graph) {
+            _graphURI = graphURI;
+            _graph = graph;
+        }
+
+        /* (non-Javadoc)
+         * @see com.semagia.cassa.server.store.IGraph#getGraphInfo()
+         */
+        @Override
+        public IGraphInfo getGraphInfo() {
+            return _graph.getGraphInfo();
+        }
+
+        /* (non-Javadoc)
+         * @see com.semagia.cassa.server.store.IGraph#getRepresentation(com.semagia.cassa.common.MediaType)
+         */
+        @Override
+        public IWritableRepresentation getRepresentation(final MediaType mediaType)
+                throws UnsupportedMediaTypeException, IOException,
+                StoreException {
+            lock(_graphURI, false);
+            try {
+                return guard(_graphURI, _graph.getRepresentation(mediaType));
+            }
+            finally {
+                unlock(_graphURI, false);
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see com.semagia.cassa.server.store.IGraph#close()
+         */
+        @Override
+        public void close() throws StoreException {
+            _graph.close();
+        }
+
+    }
+
+    private class LockedRepresentation implements IWritableRepresentation {
+
+        protected final URI _graphURI;
+        private final IWritableRepresentation _representation;
+
+        LockedRepresentation(final URI graphURI, final IWritableRepresentation representation) {
+            _graphURI = graphURI;
+            _representation = representation;
+        }
+
+        /* (non-Javadoc)
+         * @see com.semagia.cassa.common.dm.IWritableRepresentation#write(java.io.OutputStream)
+         */
+        @Override
+        public void write(final OutputStream out) throws IOException {
+            lock(_graphURI, false);
+            try {
+                _representation.write(out);
+            }
+            finally {
+                unlock(_graphURI, false);
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see com.semagia.cassa.common.dm.IWritableRepresentation#getMediaType()
+         */
+        @Override
+        public MediaType getMediaType() {
+            return _representation.getMediaType();
+        }
+
+        /* (non-Javadoc)
+         * @see com.semagia.cassa.common.dm.IWritableRepresentation#getEncoding()
+         */
+        @Override
+        public String getEncoding() {
+            return _representation.getEncoding();
+        }
+
+    }
+
+    private final class LockedCompressibleRepresentation extends LockedRepresentation 
+            implements ICompressibleRepresentation {
+
+        private final ICompressibleRepresentation _compressible;
+
+        LockedCompressibleRepresentation(final URI graphURI, final ICompressibleRepresentation representation) {
+            super(graphURI, representation);
+            _compressible = representation;
+        }
+
+        /* (non-Javadoc)
+         * @see com.semagia.cassa.common.dm.ICompressibleRepresentation#write(java.io.OutputStream, com.semagia.cassa.common.ContentCoding)
+         */
+        @Override
+        public void write(final OutputStream out, final ContentCoding coding)
+                throws IOException {
+            lock(_graphURI, false);
+            try {
+                _compressible.write(out, coding);
+            }
+            finally {
+                unlock(_graphURI, false);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,785 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.semagia.cassa.common.ContentCoding;
+import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.common.dm.ICompressibleRepresentation;
+import com.semagia.cassa.common.dm.IWritableRepresentation;
+import com.semagia.cassa.server.store.GraphNotExistsException;
+import com.semagia.cassa.server.store.IGraph;
+import com.semagia.cassa.server.store.IGraphInfo;
+import com.semagia.cassa.server.store.ISDShareStore;
+import com.semagia.cassa.server.store.StoreException;
+import com.semagia.cassa.server.store.UnsupportedMediaTypeException;
+
+/**
+ * {@link ISDShareStore} implementation which periodically materializes 
+ * snapshots of the graphs of the underlying store to immutable files.
+ * <p>
+ * A background thread writes a snapshot of each graph which was modified 
+ * since its last snapshot. A snapshot consists of one file per supported
+ * media type of the graph, the files are optionally gzip compressed. 
+ * {@link #getSnapshots(URI)} returns the materialized snapshots of a graph 
+ * (newest first) with the last modification time of the graph at the 
+ * time the snapshot was taken. Graphs without materialized snapshot are 
+ * served by the underlying store.
+ * </p>
+ * <p>
+ * The snapshots are accessible via {@link #openGraph(URI)}, 
+ * {@link #getGraph(URI, MediaType)} and {@link #getGraphInfo(URI)} using
+ * the snapshot URI. The files are copied to the output with a buffered 
+ * stream copy; compressed files are copied as they are if the client 
+ * accepts the gzip content coding.
+ * </p>
+ * <p>
+ * Only the newest {@code retention} snapshots of a graph are kept, older
+ * snapshots and the snapshots of graphs which do not exist anymore are 
+ * removed. 
+ * </p>
+ * <p>
+ * Each snapshot has an index file which is written after its serializations.
+ * The directory is owned by this store: The snapshots of a previous instance
+ * are read from the index files, so graphs whose last modification did not
+ * change are not materialized again. Files which do not belong to a complete
+ * snapshot are removed.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class MaterializingSDShareStore extends DelegatingSDShareStore {
+
+    private static final String _SNAPSHOT_PREFIX = "urn:x-cassa:snapshot:";
+    private static final String _SUFFIX = ".snapshot";
+    private static final String _COMPRESSED_SUFFIX = ".snapshot.gz";
+    private static final String _INDEX_SUFFIX = ".index";
+    private static final String _TMP_SUFFIX = ".tmp";
+
+    /**
+     * Orders the snapshots of a graph, newest first.
+     */
+    private static final Comparator<Snapshot> _NEWEST_FIRST = new Comparator<Snapshot>() {
+        @Override
+        public int compare(final Snapshot o1, final Snapshot o2) {
+            final long t1 = o1.getLastModification();
+            final long t2 = o2.getLastModification();
+            if (t1 != t2) {
+                return t1 > t2 ? -1 : 1;
+            }
+            return o1._id > o2._id ? -1 : o1._id == o2._id ? 0 : 1;
+        }
+    };
+
+    private final File _directory;
+    private final int _retention;
+    private final boolean _compress;
+    private final ConcurrentMap<URI, List<Snapshot>> _graph2Snapshots;
+    private final ConcurrentMap<URI, Snapshot> _snapshots;
+    private final List<File> _garbage;
+    private final AtomicLong _materialized;
+    private final AtomicLong _failures;
+    private final ScheduledExecutorService _executor;
+    private long _id;
+
+    /**
+     * Creates a store which materializes the snapshots uncompressed and
+     * without a schedule. Snapshots are written by {@link #materialize()}.
+     *
+     * @param store The underlying store.
+     * @param directory The directory to write the snapshots to.
+     * @param retention The max. number of snapshots per graph.
+     * @throws IOException In case the directory cannot be created.
+     */
+    public MaterializingSDShareStore(final ISDShareStore store, final File directory, 
+            final int retention) throws IOException {
+        this(store, directory, retention, false, 0);
+    }
+
+    /**
+     * Creates a store.
+     *
+     * @param store The underlying store.
+     * @param directory The directory to write the snapshots to.
+     * @param retention The max. number of snapshots per graph.
+     * @param compress {@code true} to compress the snapshots, otherwise {@code false}.
+     * @param period The time between two runs (in milliseconds) or {@code 0} 
+     *          to disable the background thread.
+     * @throws IOException In case the directory cannot be created or read.
+     */
+    public MaterializingSDShareStore(final ISDShareStore store, final File directory, 
+            final int retention, final boolean compress, final long period) throws IOException {
+        super(store);
+        if (directory == null) {
+            throw new IllegalArgumentException("The directory must not be null");
+        }
+        if (retention < 1) {
+            throw new IllegalArgumentException("The retention must be greater than zero");
+        }
+        if (period < 0) {
+            throw new IllegalArgumentException("The period must not be negative");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create the directory " + directory);
+        }
+        _directory = directory;
+        _retention = retention;
+        _compress = compress;
+        _graph2Snapshots = new ConcurrentHashMap<URI, List<Snapshot>>();
+        _snapshots = new ConcurrentHashMap<URI, Snapshot>();
+        _garbage = new ArrayList<File>();
+        _materialized = new AtomicLong();
+        _failures = new AtomicLong();
+        _recover();
+        if (period > 0) {
+            _executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "cassa-snapshot-materializer");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+            _executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        materialize();
+                    }
+                    catch (StoreException ex) {
+                        _failures.incrementAndGet();
+                    }
+                }
+            }, 0, period, TimeUnit.MILLISECONDS);
+        }
+        else {
+            _executor = null;
+        }
+    }
+
+    /**
+     * Returns the number of snapshots which were materialized.
+     *
+     * @return The number of materialized snapshots.
+     */
+    public long getMaterializedSnapshots() {
+        return _materialized.get();
+    }
+
+    /**
+     * Returns the number of snapshots which could not be materialized.
+     *
+     * @return The number of failures.
+     */
+    public long getFailedSnapshots() {
+        return _failures.get();
+    }
+
+    /**
+     * Writes a snapshot of each graph which was modified since its last 
+     * snapshot and removes the snapshots which exceed the retention.
+     * 
+     * This method is invoked periodically by the background thread, but it
+     * may be called anytime.
+     *
+     * @throws StoreException In case the graphs cannot be retrieved from the underlying store.
+     */
+    public synchronized void materialize() throws StoreException {
+        final Set<URI> graphs = new HashSet<URI>();
+        for (IGraphInfo graph: _store.getGraphInfos()) {
+            graphs.add(graph.getURI());
+            final List<Snapshot> snapshots = _graph2Snapshots.get(graph.getURI());
+            final long lastModification = graph.getLastModification();
+            if (snapshots != null && lastModification != -1 
+                    && snapshots.get(0).getLastModification() == lastModification) {
+                continue;
+            }
+            try {
+                _add(_materialize(graph));
+                _materialized.incrementAndGet();
+            }
+            catch (IOException ex) {
+                _failures.incrementAndGet();
+            }
+            catch (GraphNotExistsException ex) {
+                // Removed in the meantime
+                graphs.remove(graph.getURI());
+            }
+            catch (StoreException ex) {
+                _failures.incrementAndGet();
+            }
+        }
+        for (URI graphURI: new ArrayList<URI>(_graph2Snapshots.keySet())) {
+            if (!graphs.contains(graphURI)) {
+                for (Snapshot snapshot: _graph2Snapshots.remove(graphURI)) {
+                    _remove(snapshot);
+                }
+            }
+        }
+        _collectGarbage();
+    }
+
+    /**
+     * Stops the background thread. 
+     * 
+     * The snapshot files are kept for the next instance.
+     */
+    public synchronized void close() {
+        if (_executor != null) {
+            _executor.shutdownNow();
+        }
+        _collectGarbage();
+    }
+
+    /**
+     * Reads the snapshots of a previous instance and removes the files which
+     * do not belong to a complete snapshot and the snapshots which exceed 
+     * the retention.
+     */
+    private void _recover() throws IOException {
+        final File[] files = _directory.listFiles();
+        if (files == null) {
+            throw new IOException("Cannot read the directory " + _directory);
+        }
+        final Set<File> referenced = new HashSet<File>();
+        final Map<URI, List<Snapshot>> graph2Snapshots = new HashMap<URI, List<Snapshot>>();
+        for (File file: files) {
+            final String name = file.getName();
+            if (!name.endsWith(_INDEX_SUFFIX)) {
+                continue;
+            }
+            final Snapshot snapshot = _readIndex(file);
+            if (snapshot == null) {
+                file.delete();
+                continue;
+            }
+            referenced.add(file);
+            for (SnapshotFile snapshotFile: snapshot.getFiles()) {
+                referenced.add(snapshotFile.getFile());
+            }
+            List<Snapshot> snapshots = graph2Snapshots.get(snapshot.getGraphURI());
+            if (snapshots == null) {
+                snapshots = new ArrayList<Snapshot>();
+                graph2Snapshots.put(snapshot.getGraphURI(), snapshots);
+            }
+            snapshots.add(snapshot);
+            _id = Math.max(_id, snapshot._id);
+        }
+        for (File file: files) {
+            final String name = file.getName();
+            if (!referenced.contains(file) && (name.endsWith(_SUFFIX) || name.endsWith(_COMPRESSED_SUFFIX) 
+                    || name.endsWith(_INDEX_SUFFIX) || name.endsWith(_TMP_SUFFIX))) {
+                file.delete();
+            }
+        }
+        for (Map.Entry<URI, List<Snapshot>> entry: graph2Snapshots.entrySet()) {
+            final List<Snapshot> snapshots = entry.getValue();
+            Collections.sort(snapshots, _NEWEST_FIRST);
+            while (snapshots.size() > _retention) {
+                _remove(snapshots.remove(snapshots.size() - 1));
+            }
+            for (Snapshot snapshot: snapshots) {
+                _snapshots.put(snapshot.getURI(), snapshot);
+            }
+            _graph2Snapshots.put(entry.getKey(), Collections.unmodifiableList(snapshots));
+        }
+        _collectGarbage();
+    }
+
+    /**
+     * Reads a snapshot from the provided index file.
+     *
+     * @return The snapshot or {@code null} if the index file is unreadable 
+     *          or if a serialization is missing.
+     */
+    private Snapshot _readIndex(final File indexFile) {
+        final String name = indexFile.getName();
+        try {
+            final long id = Long.parseLong(name.substring(0, name.length() - _INDEX_SUFFIX.length()));
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            try {
+                final URI graphURI = URI.create(in.readUTF());
+                final long time = in.readLong();
+                final String title = in.readBoolean() ? in.readUTF() : null;
+                final String description = in.readBoolean() ? in.readUTF() : null;
+                final int count = in.readInt();
+                final List<MediaType> mediaTypes = new ArrayList<MediaType>(count);
+                final Map<MediaType, SnapshotFile> files = new LinkedHashMap<MediaType, SnapshotFile>(count);
+                for (int i = 0; i < count; i++) {
+                    final MediaType mt = MediaType.valueOf(in.readUTF());
+                    final String encoding = in.readBoolean() ? in.readUTF() : null;
+                    final File file = new File(_directory, in.readUTF());
+                    if (!file.isFile()) {
+                        return null;
+                    }
+                    mediaTypes.add(mt);
+                    files.put(mt, new SnapshotFile(file, mt, encoding, file.getName().endsWith(_COMPRESSED_SUFFIX)));
+                }
+                return new Snapshot(id, _snapshotURI(time, id), graphURI, title, description, 
+                        time, mediaTypes, files, indexFile);
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch (IOException ex) {
+            return null;
+        }
+        catch (IllegalArgumentException ex) {
+            // Includes NumberFormatException
+            return null;
+        }
+    }
+
+    /**
+     * Writes the index file of the provided snapshot.
+     */
+    private static void _writeIndex(final Snapshot snapshot) throws IOException {
+        final File file = snapshot.getIndexFile();
+        final File tmp = new File(file.getPath() + _TMP_SUFFIX);
+        boolean success = false;
+        final FileOutputStream fileOut = new FileOutputStream(tmp);
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            out.writeUTF(snapshot.getGraphURI().toString());
+            out.writeLong(snapshot.getLastModification());
+            _writeOptionalUTF(out, snapshot.getTitle());
+            _writeOptionalUTF(out, snapshot.getDescription());
+            final List<MediaType> mediaTypes = snapshot.getSupportedMediaTypes();
+            out.writeInt(mediaTypes.size());
+            for (MediaType mt: mediaTypes) {
+                final SnapshotFile snapshotFile = snapshot._files.get(mt);
+                out.writeUTF(mt.toString());
+                _writeOptionalUTF(out, snapshotFile.getEncoding());
+                out.writeUTF(snapshotFile.getFile().getName());
+            }
+            out.flush();
+            fileOut.getFD().sync();
+            success = true;
+        }
+        finally {
+            fileOut.close();
+            if (!success) {
+                tmp.delete();
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Cannot rename " + tmp + " to " + file);
+        }
+    }
+
+    private static void _writeOptionalUTF(final DataOutputStream out, final String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static URI _snapshotURI(final long time, final long id) {
+        return URI.create(_SNAPSHOT_PREFIX + time + ":" + id);
+    }
+
+    private Snapshot _materialize(final IGraphInfo graph) throws IOException, StoreException {
+        final long time = graph.getLastModification() != -1 ? graph.getLastModification() 
+                                                            : System.currentTimeMillis();
+        final long id = ++_id;
+        final List<MediaType> mediaTypes = graph.getSupportedMediaTypes();
+        final Map<MediaType, SnapshotFile> files = new HashMap<MediaType, SnapshotFile>(mediaTypes.size());
+        final Snapshot snapshot;
+        boolean success = false;
+        try {
+            for (int i = 0; i < mediaTypes.size(); i++) {
+                final MediaType mt = mediaTypes.get(i);
+                final File file = new File(_directory, id + "-" + i + (_compress ? _COMPRESSED_SUFFIX : _SUFFIX));
+                files.put(mt, new SnapshotFile(file, mt, _write(graph.getURI(), mt, file), _compress));
+            }
+            snapshot = new Snapshot(id, _snapshotURI(time, id), graph.getURI(), graph.getTitle(), 
+                    graph.getDescription(), time, mediaTypes, files, new File(_directory, id + _INDEX_SUFFIX));
+            _writeIndex(snapshot);
+            success = true;
+        }
+        finally {
+            if (!success) {
+                for (SnapshotFile file: files.values()) {
+                    file.delete();
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Writes the serialization of the graph to a temporary file which is
+     * renamed to the provided file if the serialization succeeds.
+     *
+     * @return The encoding of the serialization.
+     */
+    private String _write(final URI graphURI, final MediaType mediaType, final File file) throws IOException, StoreException {
+        final File tmp = new File(file.getPath() + _TMP_SUFFIX);
+        final IWritableRepresentation representation = _store.getGraph(graphURI, mediaType);
+        boolean success = false;
+        final FileOutputStream fileOut = new FileOutputStream(tmp);
+        try {
+            final OutputStream out = _compress ? new GZIPOutputStream(fileOut, 8192) : fileOut;
+            representation.write(out);
+            ContentCoding.finish(out);
+            fileOut.getFD().sync();
+            success = true;
+        }
+        finally {
+            fileOut.close();
+            if (!success) {
+                tmp.delete();
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Cannot rename " + tmp + " to " + file);
+        }
+        return representation.getEncoding();
+    }
+
+    private void _add(final Snapshot snapshot) {
+        final URI graphURI = snapshot.getGraphURI();
+        final List<Snapshot> existing = _graph2Snapshots.get(graphURI);
+        final List<Snapshot> snapshots = new ArrayList<Snapshot>(_retention);
+        snapshots.add(snapshot);
+        if (existing != null) {
+            for (Snapshot old: existing) {
+                if (snapshots.size() < _retention) {
+                    snapshots.add(old);
+                }
+                else {
+                    _remove(old);
+                }
+            }
+        }
+        _snapshots.put(snapshot.getURI(), snapshot);
+        _graph2Snapshots.put(graphURI, Collections.unmodifiableList(snapshots));
+    }
+
+    private void _remove(final Snapshot snapshot) {
+        _snapshots.remove(snapshot.getURI());
+        // Remove the index first, so the snapshot is incomplete if a file cannot be removed
+        final File indexFile = snapshot.getIndexFile();
+        if (!indexFile.delete() && indexFile.exists()) {
+            _garbage.add(indexFile);
+        }
+        for (SnapshotFile file: snapshot.getFiles()) {
+            if (!file.delete()) {
+                // Maybe in use, try it again later
+                _garbage.add(file.getFile());
+            }
+        }
+    }
+
+    private void _collectGarbage() {
+        for (int i = _garbage.size() - 1; i >= 0; i--) {
+            final File file = _garbage.get(i);
+            if (file.delete() || !file.exists()) {
+                _garbage.remove(i);
+            }
+        }
+    }
+
+    private static boolean _isSnapshotURI(final URI uri) {
+        return uri != null && uri.toString().startsWith(_SNAPSHOT_PREFIX);
+    }
+
+    private Snapshot _getSnapshot(final URI snapshotURI) throws GraphNotExistsException {
+        final Snapshot snapshot = _snapshots.get(snapshotURI);
+        if (snapshot == null) {
+            throw new GraphNotExistsException(snapshotURI);
+        }
+        return snapshot;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingSDShareStore#getSnapshots(java.net.URI)
+     */
+    @Override
+    public Iterable<IGraphInfo> getSnapshots(final URI graphURI)
+            throws GraphNotExistsException, StoreException {
+        final List<Snapshot> snapshots = _graph2Snapshots.get(graphURI);
+        if (snapshots == null) {
+            return _store.getSnapshots(graphURI);
+        }
+        return Collections.<IGraphInfo>unmodifiableList(snapshots);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingSDShareStore#getLastModificationSnapshots(java.net.URI)
+     */
+    @Override
+    public long getLastModificationSnapshots(final URI graphURI)
+            throws GraphNotExistsException, StoreException {
+        final List<Snapshot> snapshots = _graph2Snapshots.get(graphURI);
+        if (snapshots == null) {
+            return _store.getLastModificationSnapshots(graphURI);
+        }
+        return snapshots.get(0).getLastModification();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingSDShareStore#getGraph(java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IWritableRepresentation getGraph(final URI graphURI, final MediaType mediaType)
+            throws GraphNotExistsException, UnsupportedMediaTypeException,
+            IOException, StoreException {
+        if (!_isSnapshotURI(graphURI)) {
+            return _store.getGraph(graphURI, mediaType);
+        }
+        return _getSnapshot(graphURI).getRepresentation(mediaType);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingSDShareStore#openGraph(java.net.URI)
+     */
+    @Override
+    public IGraph openGraph(final URI graphURI) throws GraphNotExistsException,
+            StoreException {
+        if (!_isSnapshotURI(graphURI)) {
+            return _store.openGraph(graphURI);
+        }
+        return new DefaultGraph(this, graphURI, _getSnapshot(graphURI));
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingSDShareStore#containsGraph(java.net.URI)
+     */
+    @Override
+    public boolean containsGraph(final URI graphURI) throws StoreException {
+        if (!_isSnapshotURI(graphURI)) {
+            return _store.containsGraph(graphURI);
+        }
+        return _snapshots.containsKey(graphURI);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingSDShareStore#getGraphInfo(java.net.URI)
+     */
+    @Override
+    public IGraphInfo getGraphInfo(final URI graphURI)
+            throws GraphNotExistsException, StoreException {
+        if (!_isSnapshotURI(graphURI)) {
+            return _store.getGraphInfo(graphURI);
+        }
+        return _getSnapshot(graphURI);
+    }
+
+
+    /**
+     * Immutable snapshot of a graph.
+     */
+    private static final class Snapshot extends DefaultGraphInfo {
+
+        private final long _id;
+        private final URI _graphURI;
+        private final Map<MediaType, SnapshotFile> _files;
+        private final File _indexFile;
+
+        Snapshot(final long id, final URI uri, final URI graphURI, final String title, 
+                final String description, final long time, final List<MediaType> mediaTypes, 
+                final Map<MediaType, SnapshotFile> files, final File indexFile) {
+            super(uri, mediaTypes, time, title, description);
+            _id = id;
+            _graphURI = graphURI;
+            _files = files;
+            _indexFile = indexFile;
+        }
+
+        URI getGraphURI() {
+            return _graphURI;
+        }
+
+        File getIndexFile() {
+            return _indexFile;
+        }
+
+        Iterable<SnapshotFile> getFiles() {
+            return _files.values();
+        }
+
+        IWritableRepresentation getRepresentation(final MediaType mediaType) throws UnsupportedMediaTypeException, IOException {
+            final SnapshotFile file = _files.get(mediaType);
+            if (file == null) {
+                throw new UnsupportedMediaTypeException(mediaType, getSupportedMediaTypes());
+            }
+            return file.open();
+        }
+
+    }
+
+
+    /**
+     * A serialization of a snapshot.
+     */
+    private static final class SnapshotFile {
+
+        private final File _file;
+        private final MediaType _mediaType;
+        private final String _encoding;
+        private final boolean _compressed;
+
+        SnapshotFile(final File file, final MediaType mediaType, final String encoding, final boolean compressed) {
+            _file = file;
+            _mediaType = mediaType;
+            _encoding = encoding;
+            _compressed = compressed;
+        }
+
+        File getFile() {
+            return _file;
+        }
+
+        String getEncoding() {
+            return _encoding;
+        }
+
+        boolean delete() {
+            return _file.delete() || !_file.exists();
+        }
+
+        /**
+         * Returns a representation which keeps the file open, so the 
+         * representation remains readable if the file gets deleted.
+         */
+        IWritableRepresentation open() throws IOException {
+            return new FileRepresentation(new FileInputStream(_file), _mediaType, _encoding, _compressed);
+        }
+
+    }
+
+
+    /**
+     * {@link ICompressibleRepresentation} which copies a file to the 
+     * output.
+     */
+    private static final class FileRepresentation implements ICompressibleRepresentation {
+
+        private final FileInputStream _in;
+        private final MediaType _mediaType;
+        private final String _encoding;
+        private final boolean _compressed;
+
+        FileRepresentation(final FileInputStream in, final MediaType mediaType, 
+                final String encoding, final boolean compressed) {
+            _in = in;
+            _mediaType = mediaType;
+            _encoding = encoding;
+            _compressed = compressed;
+        }
+
+        /* (non-Javadoc)
+         * @see com.semagia.cassa.common.dm.IWritableRepresentation#write(java.io.OutputStream)
+         */
+        @Override
+        public void write(final OutputStream out) throws IOException {
+            try {
+                if (_compressed) {
+                    _copy(new GZIPInputStream(_in, 8192), out);
+                }
+                else {
+                    _copy(_in, out);
+                }
+            }
+            finally {
+                _in.close();
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see com.semagia.cassa.common.dm.ICompressibleRepresentation#write(java.io.OutputStream, com.semagia.cassa.common.ContentCoding)
+         */
+        @Override
+        public void write(final OutputStream out, final ContentCoding coding) throws IOException {
+            if (coding == ContentCoding.IDENTITY) {
+                write(out);
+            }
+            else if (_compressed && coding == ContentCoding.GZIP) {
+                try {
+                    _copy(_in, out);
+                }
+                finally {
+                    _in.close();
+                }
+            }
+            else {
+                final OutputStream encoded = coding.encode(out);
+                write(encoded);
+                ContentCoding.finish(encoded);
+            }
+        }
+
+        private static void _copy(final InputStream in, final OutputStream out) throws IOException {
+            final byte[] buffer = new byte[8192];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see com.semagia.cassa.common.dm.IWritableRepresentation#getMediaType()
+         */
+        @Override
+        public MediaType getMediaType() {
+            return _mediaType;
+        }
+
+        /* (non-Javadoc)
+         * @see com.semagia.cassa.common.dm.IWritableRepresentation#getEncoding()
+         */
+        @Override
+        public String getEncoding() {
+            return _encoding;
+        }
+
+    }
+
+}
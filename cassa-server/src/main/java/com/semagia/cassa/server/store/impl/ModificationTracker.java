@@ -0,0 +1,305 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store.impl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.semagia.cassa.server.store.IStore;
+import com.semagia.cassa.server.store.StoreException;
+
+/**
+ * Keeps track of the last modification time of graphs.
+ * <p>
+ * The modification times are strictly increasing, two modifications never
+ * share the same time stamp even if they happen within the same millisecond.
+ * </p>
+ * <p>
+ * If a file is provided, all modifications are appended to that file and
+ * read back if a new instance is created, so the modification times
+ * survive restarts. The file is compacted when it is read.
+ * </p>
+ * <p>
+ * {@link IStore#DEFAULT_GRAPH} represents the whole store: The 
+ * last modification time of the default graph is the last modification time
+ * of the store, modifying or removing the default graph resets the 
+ * modification time of all graphs.
+ * </p>
+ * <p>
+ * Graphs which are unknown to this tracker (i.e. created before tracking
+ * started) get the current last modification time of the store when their 
+ * modification time is requested the first time.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class ModificationTracker {
+
+    private static final char 
+        _MODIFIED = 'M',
+        _REMOVED = 'D',
+        _CLEARED = 'C';
+
+    private final ConcurrentMap<URI, Long> _modifications;
+    private final File _file;
+    private volatile long _lastModification;
+    private Writer _writer;
+
+    /**
+     * Creates an in-memory tracker.
+     */
+    public ModificationTracker() {
+        _modifications = new ConcurrentHashMap<URI, Long>();
+        _file = null;
+        _lastModification = System.currentTimeMillis();
+    }
+
+    /**
+     * Creates a tracker which persists the modification times into the
+     * provided file.
+     *
+     * @param file The file to read the modification times from and to write 
+     *          all changes to. The file is created if it does not exist.
+     * @throws IOException In case the file cannot be read or written.
+     */
+    public ModificationTracker(final File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("The file must not be null");
+        }
+        _modifications = new ConcurrentHashMap<URI, Long>();
+        _file = file;
+        _lastModification = System.currentTimeMillis();
+        if (file.exists()) {
+            read(file);
+        }
+        compact();
+    }
+
+    /**
+     * Returns the last modification time of the store.
+     *
+     * @return The last modification time.
+     */
+    public long getLastModification() {
+        return _lastModification;
+    }
+
+    /**
+     * Returns the last modification time of the provided graph.
+     * 
+     * The caller must ensure that the graph exists.
+     *
+     * @param graphURI The graph URI.
+     * @return The last modification time of the graph.
+     * @throws StoreException In case the modification time cannot be persisted.
+     */
+    public long getLastModification(final URI graphURI) throws StoreException {
+        if (graphURI == IStore.DEFAULT_GRAPH) {
+            return _lastModification;
+        }
+        final Long time = _modifications.get(graphURI);
+        if (time != null) {
+            return time.longValue();
+        }
+        synchronized (this) {
+            final Long existing = _modifications.get(graphURI);
+            if (existing != null) {
+                return existing.longValue();
+            }
+            final long now = _lastModification;
+            _modifications.put(graphURI, now);
+            log(_MODIFIED, now, graphURI);
+            return now;
+        }
+    }
+
+    /**
+     * Notifies the tracker about a modification of the provided graph.
+     *
+     * @param graphURI The modified graph.
+     * @return The new modification time of the graph.
+     * @throws StoreException In case the modification time cannot be persisted.
+     */
+    public synchronized long touch(final URI graphURI) throws StoreException {
+        final long time = nextTime();
+        if (graphURI == IStore.DEFAULT_GRAPH) {
+            _modifications.clear();
+            log(_CLEARED, time, null);
+        }
+        else {
+            _modifications.put(graphURI, time);
+            log(_MODIFIED, time, graphURI);
+        }
+        return time;
+    }
+
+    /**
+     * Notifies the tracker about the removal of the provided graph.
+     *
+     * @param graphURI The removed graph.
+     * @throws StoreException In case the modification time cannot be persisted.
+     */
+    public synchronized void remove(final URI graphURI) throws StoreException {
+        final long time = nextTime();
+        if (graphURI == IStore.DEFAULT_GRAPH) {
+            _modifications.clear();
+            log(_CLEARED, time, null);
+        }
+        else {
+            _modifications.remove(graphURI);
+            log(_REMOVED, time, graphURI);
+        }
+    }
+
+    /**
+     * Closes the underlying file (if any).
+     *
+     * @throws IOException In case of an error.
+     */
+    public synchronized void close() throws IOException {
+        if (_writer != null) {
+            _writer.close();
+            _writer = null;
+        }
+    }
+
+    /**
+     * Returns a time stamp which is greater than the last modification time.
+     *
+     * @return The next modification time.
+     */
+    private long nextTime() {
+        final long now = System.currentTimeMillis();
+        _lastModification = now > _lastModification ? now : _lastModification + 1;
+        return _lastModification;
+    }
+
+    private void log(final char kind, final long time, final URI graphURI) throws StoreException {
+        if (_writer == null) {
+            return;
+        }
+        try {
+            writeEntry(_writer, kind, time, graphURI);
+            _writer.flush();
+        }
+        catch (IOException ex) {
+            throw new StoreException("Cannot persist the modification time", ex);
+        }
+    }
+
+    private static void writeEntry(final Writer writer, final char kind, 
+            final long time, final URI graphURI) throws IOException {
+        writer.write(kind);
+        writer.write(' ');
+        writer.write(Long.toString(time));
+        if (graphURI != null) {
+            writer.write(' ');
+            writer.write(graphURI.toString());
+        }
+        writer.write('\n');
+    }
+
+    /**
+     * Replays the entries of the provided file. 
+     * 
+     * Malformed lines (i.e. an incomplete last line) are ignored.
+     *
+     * @param file The file to read.
+     * @throws IOException In case of an error.
+     */
+    private void read(final File file) throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() < 3 || line.charAt(1) != ' ') {
+                    continue;
+                }
+                final int idx = line.indexOf(' ', 2);
+                final long time;
+                final URI graphURI;
+                try {
+                    time = Long.parseLong(idx == -1 ? line.substring(2) : line.substring(2, idx));
+                    graphURI = idx == -1 ? null : URI.create(line.substring(idx + 1));
+                }
+                catch (IllegalArgumentException ex) {
+                    continue;
+                }
+                switch (line.charAt(0)) {
+                    case _MODIFIED:
+                        if (graphURI != null) {
+                            _modifications.put(graphURI, time);
+                        }
+                        break;
+                    case _REMOVED:
+                        if (graphURI != null) {
+                            _modifications.remove(graphURI);
+                        }
+                        break;
+                    case _CLEARED:
+                        _modifications.clear();
+                        break;
+                    default:
+                        continue;
+                }
+                if (time > _lastModification) {
+                    _lastModification = time;
+                }
+            }
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Writes the current state into a new file which replaces the existing 
+     * file and opens the file for appending.
+     *
+     * @throws IOException In case of an error.
+     */
+    private void compact() throws IOException {
+        final File tmp = new File(_file.getPath() + ".tmp");
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+        try {
+            writeEntry(writer, _CLEARED, _lastModification, null);
+            for (Map.Entry<URI, Long> entry: _modifications.entrySet()) {
+                writeEntry(writer, _MODIFIED, entry.getValue().longValue(), entry.getKey());
+            }
+        }
+        finally {
+            writer.close();
+        }
+        if (!tmp.renameTo(_file)) {
+            if (!_file.delete() || !tmp.renameTo(_file)) {
+                throw new IOException("Cannot replace " + _file);
+            }
+        }
+        _writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(_file, true), "UTF-8"));
+    }
+
+}
@@ -21,6 +21,7 @@ import java.net.URI;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
+import com.semagia.cassa.common.ContentCoding;
 import com.semagia.cassa.common.MediaType;
 import com.semagia.cassa.server.store.IGraphInfo;
 
@@ -46,7 +47,22 @@ public final class ETagUtils {
      * @return A string which serves as ETag or {@code null}.
      */
     public static String generateETag(final IGraphInfo graphInfo, final MediaType mediaType) {
-        return generateETag(graphInfo.getURI(), graphInfo.getLastModification(), mediaType);
+        return generateETag(graphInfo, mediaType, null);
+    }
+
+    /**
+     * Returns a string which could be used as ETag for the provided graph, 
+     * media type and content coding combination.
+     * 
+     * Returns {@code null} if an ETag could not be created.
+     * 
+     * @param graphInfo {@link IGraphInfo} instance, never {@code null}.
+     * @param mediaType {@link MediaType} instance or {@code null}.
+     * @param coding The content coding of the response or {@code null}.
+     * @return A string which serves as ETag or {@code null}.
+     */
+    public static String generateETag(final IGraphInfo graphInfo, final MediaType mediaType, final ContentCoding coding) {
+        return generateETag(graphInfo.getURI(), graphInfo.getLastModification(), mediaType, coding);
     }
 
     /**
@@ -61,6 +77,25 @@ public final class ETagUtils {
      * @return A string which serves as ETag or {@code null}.
      */
     public static String generateETag(final URI uri, final long lastModification, final MediaType mediaType) {
+        return generateETag(uri, lastModification, mediaType, null);
+    }
+
+    /**
+     * Returns a string which could be used as ETag for the provided graph, 
+     * media type and content coding combination.
+     * 
+     * The ETag for {@link ContentCoding#IDENTITY} is equal to the ETag 
+     * created without a content coding.
+     * 
+     * Returns {@code null} if an ETag could not be created.
+     * 
+     * @param uri A unique resource identifier.
+     * @param lastModification Last modification time or {@code -1} if it's unknown.
+     * @param mediaType {@link MediaType} instance or {@code null}.
+     * @param coding The content coding of the response or {@code null}.
+     * @return A string which serves as ETag or {@code null}.
+     */
+    public static String generateETag(final URI uri, final long lastModification, final MediaType mediaType, final ContentCoding coding) {
         if (lastModification == -1 || mediaType == null) {
             return null;
         }
@@ -73,7 +108,11 @@ public final class ETagUtils {
         }
         byte[] digest = null;
         try {
-            md.update((uri.toString() + "-" + lastModification + "-" + mediaType.toString()).getBytes("utf-8"));
+            String value = uri.toString() + "-" + lastModification + "-" + mediaType.toString();
+            if (coding != null && coding != ContentCoding.IDENTITY) {
+                value += "-" + coding.getName();
+            }
+            md.update(value.getBytes("utf-8"));
             digest = md.digest();
         } 
         catch (UnsupportedEncodingException ex) {
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram with exponential (power of two) buckets.
+ * <p>
+ * Bucket {@code 0} counts the value {@code 0}, bucket {@code i} counts 
+ * the values in the range [2<sup>i-1</sup>, 2<sup>i</sup>). The unit of the
+ * values is defined by the producer, i.e. microseconds or number of items.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class Histogram {
+
+    private static final int _BUCKETS = 64;
+
+    private final AtomicLongArray _buckets;
+    private final AtomicLong _count;
+    private final AtomicLong _sum;
+    private final AtomicLong _max;
+
+    public Histogram() {
+        _buckets = new AtomicLongArray(_BUCKETS);
+        _count = new AtomicLong();
+        _sum = new AtomicLong();
+        _max = new AtomicLong();
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param value A value, negative values are recorded as {@code 0}.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        _buckets.incrementAndGet(bucketIndex(value));
+        _count.incrementAndGet();
+        _sum.addAndGet(value);
+        long max = _max.get();
+        while (value > max && !_max.compareAndSet(max, value)) {
+            max = _max.get();
+        }
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return The number of values.
+     */
+    public long getCount() {
+        return _count.get();
+    }
+
+    /**
+     * Returns the sum of all recorded values.
+     *
+     * @return The sum of the values.
+     */
+    public long getSum() {
+        return _sum.get();
+    }
+
+    /**
+     * Returns the max. recorded value.
+     *
+     * @return The max. value or {@code 0} if no value was recorded.
+     */
+    public long getMax() {
+        return _max.get();
+    }
+
+    /**
+     * Returns the arithmetic mean of the recorded values.
+     *
+     * @return The mean or {@code 0} if no value was recorded.
+     */
+    public double getMean() {
+        final long count = _count.get();
+        return count == 0 ? 0 : (double) _sum.get() / count;
+    }
+
+    /**
+     * Returns an approximation of the provided percentile, i.e. the upper 
+     * bound of the bucket which contains the percentile.
+     *
+     * @param percentile The percentile, a value in the range [0.0 .. 100.0]
+     * @return The (approximated) value or {@code 0} if no value was recorded.
+     */
+    public long getPercentile(final double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("The percentile must be in the range [0 .. 100]");
+        }
+        final long[] buckets = getBuckets();
+        long count = 0;
+        for (long n: buckets) {
+            count += n;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i=0; i<buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return Math.min(getUpperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Returns a snapshot of the bucket counts.
+     *
+     * @return An array of bucket counts.
+     * @see #getUpperBound(int)
+     */
+    public long[] getBuckets() {
+        final long[] buckets = new long[_BUCKETS];
+        for (int i=0; i<_BUCKETS; i++) {
+            buckets[i] = _buckets.get(i);
+        }
+        return buckets;
+    }
+
+    /**
+     * Returns the (inclusive) upper bound of the bucket with the provided index.
+     *
+     * @param index The bucket index.
+     * @return The max. value which is counted by the bucket.
+     */
+    public static long getUpperBound(final int index) {
+        if (index < 0 || index >= _BUCKETS) {
+            throw new IllegalArgumentException("Illegal bucket index: " + index);
+        }
+        return index == _BUCKETS - 1 ? Long.MAX_VALUE : (1L << index) - 1;
+    }
+
+    /**
+     * Resets all counters.
+     */
+    public void reset() {
+        for (int i=0; i<_BUCKETS; i++) {
+            _buckets.set(i, 0);
+        }
+        _count.set(0);
+        _sum.set(0);
+        _max.set(0);
+    }
+
+    private static int bucketIndex(final long value) {
+        return Math.min(_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "Histogram [count=" + getCount() + ", mean=" + getMean() 
+                + ", p50=" + getPercentile(50) + ", p99=" + getPercentile(99) 
+                + ", max=" + getMax() + "]";
+    }
+
+}
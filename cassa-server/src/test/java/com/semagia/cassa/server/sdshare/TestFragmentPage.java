@@ -0,0 +1,147 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.sdshare;
+
+import static com.semagia.cassa.server.store.impl.FragmentTestUtils.fragment;
+import static com.semagia.cassa.server.store.impl.FragmentTestUtils.list;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.semagia.cassa.server.store.IFragmentInfo;
+import com.semagia.cassa.server.store.impl.FragmentIndex;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against {@link FragmentPage} and {@link FragmentCursor}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestFragmentPage extends TestCase {
+
+    private static List<IFragmentInfo> since(final List<IFragmentInfo> fragments, final long since) {
+        final List<IFragmentInfo> result = new ArrayList<IFragmentInfo>();
+        for (IFragmentInfo fragment: fragments) {
+            if (fragment.getLastModification() >= since) {
+                result.add(fragment);
+            }
+        }
+        return result;
+    }
+
+    public void testCursorValueOf() {
+        final FragmentCursor cursor = FragmentCursor.valueOf("1234-http://www.example.org/a-b");
+        assertEquals(1234, cursor.getTime());
+        assertEquals(URI.create("http://www.example.org/a-b"), cursor.getURI());
+        assertEquals("1234-http://www.example.org/a-b", cursor.toString());
+        assertEquals(new FragmentCursor(1234, URI.create("http://www.example.org/a-b")), cursor);
+        assertEquals(new FragmentCursor(1234, URI.create("http://www.example.org/a-b")).hashCode(), cursor.hashCode());
+        assertEquals(-1, FragmentCursor.valueOf("-1-http://www.example.org/").getTime());
+    }
+
+    public void testCursorIllegal() {
+        for (String value: new String[] {"", "1234", "1234-", "-5", "a-http://www.example.org/", "1-http://www.example.org/ a"}) {
+            try {
+                FragmentCursor.valueOf(value);
+                fail("Expected an exception for " + value);
+            }
+            catch (IllegalArgumentException ex) {
+                // noop.
+            }
+        }
+    }
+
+    public void testEmpty() {
+        final FragmentPage page = FragmentPage.read(new ArrayList<IFragmentInfo>(), null, 10);
+        assertEquals(0, page.size());
+        assertNull(page.getNext());
+    }
+
+    public void testIllegalPageSize() {
+        try {
+            FragmentPage.read(new ArrayList<IFragmentInfo>(), null, 0);
+            fail("Expected an exception for page size 0");
+        }
+        catch (IllegalArgumentException ex) {
+            // noop.
+        }
+    }
+
+    public void testSinglePage() {
+        final List<IFragmentInfo> fragments = Arrays.asList(fragment("http://www.example.org/a", 10), 
+                fragment("http://www.example.org/b", 20));
+        final FragmentPage page = FragmentPage.read(fragments, null, 2);
+        assertEquals(fragments, list(page));
+        assertNull(page.getNext());
+    }
+
+    public void testPagesWithEqualTimestamps() {
+        final List<IFragmentInfo> fragments = Arrays.asList(fragment("http://www.example.org/a", 10), 
+                fragment("http://www.example.org/b", 20),
+                fragment("http://www.example.org/c", 20),
+                fragment("http://www.example.org/d", 20),
+                fragment("http://www.example.org/e", 30));
+        FragmentPage page = FragmentPage.read(fragments, null, 2);
+        assertEquals(fragments.subList(0, 2), list(page));
+        assertEquals(new FragmentCursor(20, URI.create("http://www.example.org/b")), page.getNext());
+        page = FragmentPage.read(since(fragments, page.getNext().getTime()), page.getNext(), 2);
+        assertEquals(fragments.subList(2, 4), list(page));
+        assertEquals(new FragmentCursor(20, URI.create("http://www.example.org/d")), page.getNext());
+        page = FragmentPage.read(since(fragments, page.getNext().getTime()), page.getNext(), 2);
+        assertEquals(fragments.subList(4, 5), list(page));
+        assertNull(page.getNext());
+    }
+
+    public void testCursorStableOnAdd() {
+        final List<IFragmentInfo> fragments = new ArrayList<IFragmentInfo>(Arrays.asList(fragment("http://www.example.org/a", 10), 
+                fragment("http://www.example.org/b", 10),
+                fragment("http://www.example.org/c", 10)));
+        final FragmentPage page = FragmentPage.read(fragments, null, 2);
+        assertEquals(new FragmentCursor(10, URI.create("http://www.example.org/b")), page.getNext());
+        final IFragmentInfo d = fragment("http://www.example.org/d", 10);
+        fragments.add(d);
+        final FragmentPage next = FragmentPage.read(fragments, page.getNext(), 2);
+        assertEquals(Arrays.asList(fragments.get(2), d), list(next));
+        assertNull(next.getNext());
+    }
+
+    public void testCursorStableOnModification() {
+        final FragmentIndex index = new FragmentIndex();
+        final IFragmentInfo a = fragment("http://www.example.org/a", 10);
+        final IFragmentInfo b = fragment("http://www.example.org/b", 10);
+        final IFragmentInfo c = fragment("http://www.example.org/c", 10);
+        final IFragmentInfo d = fragment("http://www.example.org/d", 10);
+        index.add(a);
+        index.add(b);
+        index.add(c);
+        index.add(d);
+        FragmentPage page = FragmentPage.read(index.getFragments(), null, 2);
+        assertEquals(Arrays.asList(a, b), list(page));
+        // A delivered fragment is modified between two page reads
+        final IFragmentInfo a2 = fragment("http://www.example.org/a", 20);
+        index.add(a2);
+        page = FragmentPage.read(index.getFragments(page.getNext().getTime()), page.getNext(), 2);
+        assertEquals(Arrays.asList(c, d), list(page));
+        assertEquals(new FragmentCursor(10, URI.create("http://www.example.org/d")), page.getNext());
+        page = FragmentPage.read(index.getFragments(page.getNext().getTime()), page.getNext(), 2);
+        assertEquals(Arrays.asList(a2), list(page));
+        assertNull(page.getNext());
+    }
+
+}
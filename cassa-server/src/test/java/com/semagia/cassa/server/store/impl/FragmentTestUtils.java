@@ -0,0 +1,63 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store.impl;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.common.dm.impl.DefaultResource;
+import com.semagia.cassa.server.store.IFragmentInfo;
+
+/**
+ * Fixtures for tests which work with fragments.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class FragmentTestUtils {
+
+    private FragmentTestUtils() {
+        // noop.
+    }
+
+    /**
+     * Returns a fragment which represents the resource with the provided IRI.
+     *
+     * @param uri The fragment URI, used as resource IRI as well.
+     * @param lastModification The last modification time of the fragment.
+     * @return A fragment.
+     */
+    public static IFragmentInfo fragment(final String uri, final long lastModification) {
+        final URI fragmentURI = URI.create(uri);
+        return new DefaultFragmentInfo(fragmentURI, new DefaultResource(fragmentURI), MediaType.RDF_XML, lastModification);
+    }
+
+    /**
+     * Returns the fragments in iteration order.
+     *
+     * @param fragments The fragments.
+     * @return A (maybe empty) list of fragments.
+     */
+    public static List<IFragmentInfo> list(final Iterable<IFragmentInfo> fragments) {
+        final List<IFragmentInfo> result = new ArrayList<IFragmentInfo>();
+        for (IFragmentInfo fragment: fragments) {
+            result.add(fragment);
+        }
+        return result;
+    }
+
+}
@@ -21,6 +21,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.server.store.GraphNotExistsException;
+import com.semagia.cassa.server.store.IGraph;
 import com.semagia.cassa.server.store.IGraphInfo;
 import com.semagia.cassa.server.store.IStore;
 import com.semagia.cassa.server.store.UnsupportedMediaTypeException;
@@ -47,6 +49,20 @@ public class TestAbstractReadOnlyStore extends TestCase {
         assertNotNull(_store.getGraph(DummyReadOnlyStore.GRAPH_INFO_2_URI, DummyReadOnlyStore.GRAPH_INFO_2_MEDIATYPES.get(0)));
     }
 
+    public void testOpenGraph() throws Exception {
+        final IGraph graph = _store.openGraph(DummyReadOnlyStore.GRAPH_INFO_1_URI);
+        assertEquals(DummyReadOnlyStore.GRAPH_INFO_1_URI, graph.getGraphInfo().getURI());
+        assertNotNull(graph.getRepresentation(DummyReadOnlyStore.GRAPH_INFO_1_MEDIATYPE));
+        graph.close();
+        try {
+            _store.openGraph(DummyReadOnlyStore.GRAPH_INFO_1_URI.resolve("?foo=bar"));
+            fail("Expected a graph not exists exception");
+        }
+        catch (GraphNotExistsException ex) {
+            // noop.
+        }
+    }
+
     public void testSnapshotIllegalMediaType() throws Exception {
         final MediaType mediaType = MediaType.CTM;
         assertFalse(DummyReadOnlyStore.GRAPH_INFO_1_MEDIATYPE.equals(mediaType));
@@ -15,6 +15,7 @@
  */
 package com.semagia.cassa.server.store.impl;
 
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -91,4 +92,27 @@ public class TestAbstractSDShareStore extends TestCase {
         assertTrue(fragments.contains(DummyReadOnlySDShareStore.FRAGMENT_INFO_1));
         assertTrue(fragments.contains(DummyReadOnlySDShareStore.FRAGMENT_INFO_2));
     }
+
+    public void testGetFragmentInfosSinceIndexed() throws Exception {
+        final FragmentIndex index = new FragmentIndex();
+        index.add(DummyReadOnlySDShareStore.FRAGMENT_INFO_2);
+        index.add(DummyReadOnlySDShareStore.FRAGMENT_INFO_1);
+        final ISDShareStore sdstore = new DummyReadOnlySDShareStore() {
+            @Override
+            protected FragmentIndex getFragmentIndex(URI graphURI) {
+                return index;
+            }
+            @Override
+            public Iterable<IFragmentInfo> getFragments(URI graphURI) {
+                throw new AssertionError("The index should be used");
+            }
+        };
+        final long since = DummyReadOnlySDShareStore.FRAGMENT_INFO_1.getLastModification()+1;
+        final List<IFragmentInfo> fragments = new ArrayList<IFragmentInfo>();
+        for (IFragmentInfo info: sdstore.getFragments(DummyReadOnlySDShareStore.FRAGMENT_GRAPH, since)) {
+            fragments.add(info);
+        }
+        assertEquals(1, fragments.size());
+        assertTrue(fragments.contains(DummyReadOnlySDShareStore.FRAGMENT_INFO_2));
+    }
 }
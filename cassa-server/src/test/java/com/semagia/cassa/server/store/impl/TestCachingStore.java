@@ -0,0 +1,161 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import com.semagia.cassa.common.ContentCoding;
+import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.common.dm.ICompressibleRepresentation;
+import com.semagia.cassa.common.dm.IWritableRepresentation;
+import com.semagia.cassa.server.store.IGraph;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against {@link CachingStore}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestCachingStore extends TestCase {
+
+    private static final URI 
+        _GRAPH_1 = DummyReadOnlyStore.GRAPH_INFO_1_URI,
+        _GRAPH_2 = DummyReadOnlyStore.GRAPH_INFO_2_URI;
+
+    private static byte[] read(final CachingStore store, final URI graphURI) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        store.getGraph(graphURI, MediaType.RDF_XML).write(out);
+        return out.toByteArray();
+    }
+
+    public void testIllegalConstructor() {
+        try {
+            new CachingStore(new DummyReadOnlyStore(), 0);
+            fail("The constructor shouldn't accept maxBytes < 1");
+        }
+        catch (IllegalArgumentException ex) {
+            // noop.
+        }
+    }
+
+    private void testCaching(final boolean offHeap) throws Exception {
+        final CachingStore store = new CachingStore(new DummyReadOnlyStore(), 1024 * 1024, offHeap);
+        final byte[] expected = read(store, _GRAPH_1);
+        assertEquals(0, store.getHits());
+        assertEquals(1, store.getMisses());
+        assertEquals(1, store.getCachedEntries());
+        assertEquals(expected.length, store.getCachedBytes());
+        assertTrue(Arrays.equals(expected, read(store, _GRAPH_1)));
+        assertEquals(1, store.getHits());
+        assertEquals(1, store.getMisses());
+        assertEquals(0.5, store.getHitRatio(), 0.0001);
+        assertEquals(MediaType.RDF_XML, store.getGraph(_GRAPH_1, MediaType.RDF_XML).getMediaType());
+    }
+
+    public void testCachingHeap() throws Exception {
+        testCaching(false);
+    }
+
+    public void testCachingOffHeap() throws Exception {
+        testCaching(true);
+    }
+
+    public void testOpenGraph() throws Exception {
+        final CachingStore store = new CachingStore(new DummyReadOnlyStore(), 1024 * 1024);
+        final byte[] expected = read(store, _GRAPH_1);
+        final IGraph graph = store.openGraph(_GRAPH_1);
+        assertEquals(_GRAPH_1, graph.getGraphInfo().getURI());
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        graph.getRepresentation(MediaType.RDF_XML).write(out);
+        assertTrue(Arrays.equals(expected, out.toByteArray()));
+        assertEquals(1, store.getHits());
+        graph.close();
+        store.openGraph(_GRAPH_2).close();
+        assertEquals(1, store.getMisses());
+    }
+
+    public void testEviction() throws Exception {
+        final int size = read(new CachingStore(new DummyReadOnlyStore(), 1), _GRAPH_1).length;
+        final CachingStore store = new CachingStore(new DummyReadOnlyStore(), size + 1);
+        read(store, _GRAPH_1);
+        assertEquals(1, store.getCachedEntries());
+        read(store, _GRAPH_2);
+        assertEquals(1, store.getCachedEntries());
+        assertEquals(1, store.getEvictions());
+        assertTrue(store.getCachedBytes() <= size + 1);
+    }
+
+    public void testTooLarge() throws Exception {
+        final CachingStore store = new CachingStore(new DummyReadOnlyStore(), 10);
+        assertTrue(read(store, _GRAPH_1).length > 10);
+        assertEquals(0, store.getCachedEntries());
+        assertEquals(0, store.getCachedBytes());
+    }
+
+    private static byte[] gunzip(final byte[] data) throws Exception {
+        final InputStream in = new GZIPInputStream(new ByteArrayInputStream(data));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            out.write(b);
+        }
+        return out.toByteArray();
+    }
+
+    public void testCompressedVariant() throws Exception {
+        final CachingStore store = new CachingStore(new DummyReadOnlyStore(), 1024 * 1024);
+        final byte[] expected = read(store, _GRAPH_1);
+        final long bytes = store.getCachedBytes();
+        IWritableRepresentation writable = store.getGraph(_GRAPH_1, MediaType.RDF_XML);
+        assertTrue(writable instanceof ICompressibleRepresentation);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((ICompressibleRepresentation) writable).write(out, ContentCoding.GZIP);
+        assertTrue(Arrays.equals(expected, gunzip(out.toByteArray())));
+        final long compressedBytes = store.getCachedBytes();
+        assertTrue(compressedBytes > bytes);
+        writable = store.getGraph(_GRAPH_1, MediaType.RDF_XML);
+        out = new ByteArrayOutputStream();
+        ((ICompressibleRepresentation) writable).write(out, ContentCoding.GZIP);
+        assertTrue(Arrays.equals(expected, gunzip(out.toByteArray())));
+        assertEquals("The compressed variant should be reused", compressedBytes, store.getCachedBytes());
+        assertEquals(1, store.getCachedEntries());
+    }
+
+    public void testInvalidation() throws Exception {
+        final CachingStore store = new CachingStore(new DummyReadOnlyStore(), 1024 * 1024);
+        read(store, _GRAPH_1);
+        read(store, _GRAPH_2);
+        assertEquals(2, store.getCachedEntries());
+        try {
+            store.deleteGraph(_GRAPH_1);
+            fail("The dummy store is read-only");
+        }
+        catch (UnsupportedOperationException ex) {
+            // noop.
+        }
+        assertEquals(1, store.getCachedEntries());
+        store.clear();
+        assertEquals(0, store.getCachedEntries());
+        assertEquals(0, store.getCachedBytes());
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store.impl;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+
+import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.server.store.IFragmentInfo;
+import com.semagia.cassa.server.store.IStore;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against {@link ChangeJournal}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestChangeJournal extends TestCase {
+
+    private static final URI 
+        _GRAPH_A = URI.create("http://www.example.org/graph-A"),
+        _GRAPH_B = URI.create("http://www.example.org/graph-B"),
+        _SUBJECT_1 = URI.create("http://www.example.org/subject-1"),
+        _SUBJECT_2 = URI.create("http://www.example.org/subject-2");
+
+    private static final List<MediaType> _MEDIA_TYPES = Collections.singletonList(MediaType.RDF_XML);
+
+    private static List<IFragmentInfo> fragments(final ChangeJournal journal, final URI graphURI, final long since) {
+        return journal.getFragments(graphURI, since, _MEDIA_TYPES);
+    }
+
+    public void testIllegalConstructor() throws Exception {
+        try {
+            new ChangeJournal(null);
+            fail("The constructor shouldn't accept file==null");
+        }
+        catch (IllegalArgumentException ex) {
+            // noop.
+        }
+    }
+
+    public void testSubjectChanges() throws Exception {
+        final ChangeJournal journal = new ChangeJournal();
+        assertEquals(-1, journal.getLastModification(_GRAPH_A));
+        final long time = journal.subjectChanged(_GRAPH_A, _SUBJECT_1);
+        final long time2 = journal.subjectChanged(_GRAPH_A, _SUBJECT_2);
+        final long time3 = journal.subjectChanged(_GRAPH_A, _SUBJECT_1);
+        assertTrue(time < time2 && time2 < time3);
+        assertEquals(time3, journal.getLastModification(_GRAPH_A));
+        List<IFragmentInfo> fragments = fragments(journal, _GRAPH_A, -1);
+        assertEquals(2, fragments.size());
+        assertEquals(_SUBJECT_2, fragments.get(0).getURI());
+        assertEquals(time2, fragments.get(0).getLastModification());
+        assertEquals(_SUBJECT_1, fragments.get(1).getURI());
+        assertEquals(_SUBJECT_1, fragments.get(1).getResources().iterator().next().getURI());
+        assertEquals(_MEDIA_TYPES, fragments.get(1).getSupportedMediaTypes());
+        fragments = fragments(journal, _GRAPH_A, time3);
+        assertEquals(1, fragments.size());
+        assertEquals(0, fragments(journal, _GRAPH_B, -1).size());
+    }
+
+    public void testReset() throws Exception {
+        final ChangeJournal journal = new ChangeJournal();
+        journal.subjectChanged(_GRAPH_A, _SUBJECT_1);
+        journal.subjectChanged(_GRAPH_B, _SUBJECT_1);
+        final long time = journal.graphChanged(_GRAPH_A);
+        assertEquals(time, journal.getLastReset(_GRAPH_A));
+        assertEquals(time, journal.getLastModification(_GRAPH_A));
+        assertEquals(0, fragments(journal, _GRAPH_A, -1).size());
+        assertEquals(1, fragments(journal, _GRAPH_B, -1).size());
+        final long time2 = journal.graphChanged(IStore.DEFAULT_GRAPH);
+        assertEquals("A reset of the default graph affects all graphs", 
+                time2, journal.getLastReset(_GRAPH_B));
+        assertEquals(0, fragments(journal, _GRAPH_B, -1).size());
+    }
+
+    public void testRemoval() throws Exception {
+        final ChangeJournal journal = new ChangeJournal();
+        journal.subjectChanged(_GRAPH_A, _SUBJECT_1);
+        journal.graphRemoved(_GRAPH_A);
+        assertEquals(-1, journal.getLastModification(_GRAPH_A));
+        assertEquals(0, fragments(journal, _GRAPH_A, -1).size());
+    }
+
+    public void testPersistence() throws Exception {
+        final File file = File.createTempFile("cassa-journal", ".log");
+        file.deleteOnExit();
+        ChangeJournal journal = new ChangeJournal(file);
+        journal.subjectChanged(_GRAPH_A, _SUBJECT_1);
+        final long reset = journal.graphChanged(_GRAPH_B);
+        journal.subjectChanged(_GRAPH_B, _SUBJECT_1);
+        final long time = journal.subjectChanged(_GRAPH_B, _SUBJECT_2);
+        journal.subjectChanged(IStore.DEFAULT_GRAPH, _SUBJECT_2);
+        journal.graphRemoved(_GRAPH_A);
+        journal.close();
+        journal = new ChangeJournal(file);
+        assertEquals(-1, journal.getLastModification(_GRAPH_A));
+        assertEquals(reset, journal.getLastReset(_GRAPH_B));
+        assertEquals(time, journal.getLastModification(_GRAPH_B));
+        assertEquals(2, fragments(journal, _GRAPH_B, -1).size());
+        assertEquals(1, fragments(journal, IStore.DEFAULT_GRAPH, -1).size());
+        assertTrue("Time stamps must be increasing after a restart", 
+                journal.subjectChanged(_GRAPH_B, _SUBJECT_1) > time);
+        journal.close();
+    }
+
+}
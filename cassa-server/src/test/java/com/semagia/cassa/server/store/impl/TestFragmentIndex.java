@@ -0,0 +1,89 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store.impl;
+
+import static com.semagia.cassa.server.store.impl.FragmentTestUtils.fragment;
+import static com.semagia.cassa.server.store.impl.FragmentTestUtils.list;
+
+import java.net.URI;
+import java.util.List;
+
+import com.semagia.cassa.server.store.IFragmentInfo;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against {@link FragmentIndex}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestFragmentIndex extends TestCase {
+
+    public void testEmpty() {
+        final FragmentIndex index = new FragmentIndex();
+        assertEquals(0, index.size());
+        assertEquals(-1, index.getLastModification());
+        assertFalse(index.getFragments(0).iterator().hasNext());
+    }
+
+    public void testOrder() {
+        final FragmentIndex index = new FragmentIndex();
+        final IFragmentInfo a = fragment("http://www.example.org/a", 30);
+        final IFragmentInfo b = fragment("http://www.example.org/b", 10);
+        final IFragmentInfo c = fragment("http://www.example.org/c", 20);
+        final IFragmentInfo d = fragment("http://www.example.org/d", 20);
+        index.add(a);
+        index.add(b);
+        index.add(c);
+        index.add(d);
+        assertEquals(4, index.size());
+        assertEquals(30, index.getLastModification());
+        List<IFragmentInfo> fragments = list(index.getFragments());
+        assertEquals(b, fragments.get(0));
+        assertEquals(c, fragments.get(1));
+        assertEquals(d, fragments.get(2));
+        assertEquals(a, fragments.get(3));
+        fragments = list(index.getFragments(20));
+        assertEquals(3, fragments.size());
+        assertEquals(c, fragments.get(0));
+        assertEquals(0, list(index.getFragments(31)).size());
+    }
+
+    public void testReplace() {
+        final FragmentIndex index = new FragmentIndex();
+        index.add(fragment("http://www.example.org/a", 10));
+        index.add(fragment("http://www.example.org/b", 20));
+        final IFragmentInfo a = fragment("http://www.example.org/a", 30);
+        index.add(a);
+        assertEquals(2, index.size());
+        final List<IFragmentInfo> fragments = list(index.getFragments(15));
+        assertEquals(2, fragments.size());
+        assertEquals(a, fragments.get(1));
+    }
+
+    public void testRemove() {
+        final FragmentIndex index = new FragmentIndex();
+        index.add(fragment("http://www.example.org/a", 10));
+        assertTrue(index.remove(URI.create("http://www.example.org/a")));
+        assertFalse(index.remove(URI.create("http://www.example.org/a")));
+        assertEquals(0, index.size());
+        assertEquals(0, list(index.getFragments()).size());
+        index.add(fragment("http://www.example.org/b", 10));
+        index.clear();
+        assertEquals(-1, index.getLastModification());
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store.impl;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.common.dm.RemovalStatus;
+import com.semagia.cassa.server.store.GraphNotExistsException;
+import com.semagia.cassa.server.store.IFragmentInfo;
+import com.semagia.cassa.server.store.IGraphInfo;
+import com.semagia.cassa.server.store.IStore;
+import com.semagia.cassa.server.store.StoreException;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against {@link JournalingSDShareStore}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestJournalingSDShareStore extends TestCase {
+
+    private static final URI 
+        _GRAPH = DummyReadOnlyStore.GRAPH_INFO_1_URI,
+        _SUBJECT_1 = URI.create("http://www.example.org/subject-1"),
+        _SUBJECT_2 = URI.create("http://www.example.org/subject-2");
+
+    private JournalingSDShareStore _store;
+
+    /**
+     * Store which accepts (and ignores) modifications.
+     */
+    private static final class DummyStore extends DummyReadOnlyStore {
+
+        @Override
+        public IGraphInfo createOrReplaceSubject(URI graphURI, URI subjectURI, InputStream in, 
+                URI baseURI, MediaType mediaType) throws StoreException {
+            return getGraphInfo(graphURI);
+        }
+
+        @Override
+        public RemovalStatus deleteSubject(URI graphURI, URI subjectURI) throws StoreException {
+            if (graphURI != DEFAULT_GRAPH) {
+                getGraphInfo(graphURI);
+            }
+            return RemovalStatus.IMMEDIATELY;
+        }
+
+        @Override
+        public IGraphInfo updateGraph(URI graphURI, InputStream in, URI baseURI, 
+                MediaType mediaType) throws StoreException {
+            return getGraphInfo(graphURI);
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _store = new JournalingSDShareStore(new DummyStore());
+    }
+
+    private List<IFragmentInfo> fragments(final long since) throws Exception {
+        return fragments(_GRAPH, since);
+    }
+
+    private List<IFragmentInfo> fragments(final URI graphURI, final long since) throws Exception {
+        final List<IFragmentInfo> fragments = new ArrayList<IFragmentInfo>();
+        for (IFragmentInfo info: _store.getFragments(graphURI, since)) {
+            fragments.add(info);
+        }
+        return fragments;
+    }
+
+    public void testIllegalConstructor() {
+        try {
+            new JournalingSDShareStore(new DummyReadOnlyStore(), null);
+            fail("The constructor shouldn't accept journal==null");
+        }
+        catch (IllegalArgumentException ex) {
+            // noop.
+        }
+    }
+
+    public void testNoFragments() throws Exception {
+        assertEquals(0, fragments(-1).size());
+        assertEquals(-1, _store.getLastModificationFragments(_GRAPH));
+        assertEquals(_store.getLastModification(), _store.getLastModificationSnapshots(_GRAPH));
+    }
+
+    public void testSubjectChanges() throws Exception {
+        _store.createOrReplaceSubject(_GRAPH, _SUBJECT_1, null, _GRAPH, MediaType.RDF_XML);
+        _store.deleteSubject(_GRAPH, _SUBJECT_2);
+        final List<IFragmentInfo> fragments = fragments(-1);
+        assertEquals(2, fragments.size());
+        assertEquals(_SUBJECT_1, fragments.get(0).getURI());
+        assertEquals(_SUBJECT_2, fragments.get(1).getURI());
+        assertEquals(DummyReadOnlyStore.GRAPH_INFO_1.getSupportedMediaTypes(), fragments.get(0).getSupportedMediaTypes());
+        final long since = fragments.get(1).getLastModification();
+        assertEquals(since, _store.getLastModificationFragments(_GRAPH));
+        assertEquals(1, fragments(since).size());
+    }
+
+    public void testDefaultGraphSubjectChange() throws Exception {
+        _store.deleteSubject(IStore.DEFAULT_GRAPH, _SUBJECT_1);
+        List<IFragmentInfo> fragments = fragments(_GRAPH, -1);
+        assertEquals(1, fragments.size());
+        assertEquals(_SUBJECT_1, fragments.get(0).getURI());
+        fragments = fragments(DummyReadOnlyStore.GRAPH_INFO_2_URI, -1);
+        assertEquals(1, fragments.size());
+        assertEquals(_SUBJECT_1, fragments.get(0).getURI());
+        assertEquals(fragments.get(0).getLastModification(), 
+                _store.getLastModificationFragments(DummyReadOnlyStore.GRAPH_INFO_2_URI));
+        assertEquals("The change must be recorded once", 0, 
+                _store.getJournal().getFragments(_GRAPH, -1, 
+                        DummyReadOnlyStore.GRAPH_INFO_1.getSupportedMediaTypes()).size());
+    }
+
+    public void testDefaultGraphSubjectChangeMerged() throws Exception {
+        _store.deleteSubject(_GRAPH, _SUBJECT_1);
+        _store.deleteSubject(_GRAPH, _SUBJECT_2);
+        _store.deleteSubject(IStore.DEFAULT_GRAPH, _SUBJECT_1);
+        final List<IFragmentInfo> fragments = fragments(-1);
+        assertEquals(2, fragments.size());
+        assertEquals(_SUBJECT_2, fragments.get(0).getURI());
+        assertEquals(_SUBJECT_1, fragments.get(1).getURI());
+        final long since = fragments.get(1).getLastModification();
+        assertEquals(since, _store.getLastModificationFragments(_GRAPH));
+        assertEquals(1, fragments(since).size());
+    }
+
+    public void testDefaultGraphSubjectChangeBeforeReset() throws Exception {
+        _store.deleteSubject(IStore.DEFAULT_GRAPH, _SUBJECT_1);
+        _store.updateGraph(_GRAPH, null, _GRAPH, MediaType.RDF_XML);
+        assertEquals(0, fragments(-1).size());
+        assertEquals(1, fragments(DummyReadOnlyStore.GRAPH_INFO_2_URI, -1).size());
+    }
+
+    public void testGraphChange() throws Exception {
+        _store.createOrReplaceSubject(_GRAPH, _SUBJECT_1, null, _GRAPH, MediaType.RDF_XML);
+        _store.updateGraph(_GRAPH, null, _GRAPH, MediaType.RDF_XML);
+        assertEquals(0, fragments(-1).size());
+        assertEquals(_store.getLastModificationFragments(_GRAPH), _store.getLastModificationSnapshots(_GRAPH));
+    }
+
+    public void testUnknownGraph() throws Exception {
+        try {
+            _store.getFragments(URI.create("http://www.example.org/unknown"));
+            fail("Expected an exception for an unknown graph");
+        }
+        catch (GraphNotExistsException ex) {
+            // noop.
+        }
+    }
+
+}
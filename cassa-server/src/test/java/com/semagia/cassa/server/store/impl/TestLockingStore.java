@@ -0,0 +1,209 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store.impl;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.server.store.GraphNotExistsException;
+import com.semagia.cassa.server.store.IGraphInfo;
+import com.semagia.cassa.server.store.IStore;
+import com.semagia.cassa.server.store.StoreException;
+import com.semagia.cassa.server.utils.Histogram;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against {@link LockingStore}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestLockingStore extends TestCase {
+
+    private static final URI 
+        _GRAPH_1 = DummyReadOnlyStore.GRAPH_INFO_1_URI;
+
+    private CountDownLatch _entered;
+    private CountDownLatch _release;
+    private ExecutorService _executor;
+
+    /**
+     * Store which blocks within updateGraph and getGraphInfo until it is released.
+     */
+    private final class BlockingStore extends DummyReadOnlyStore {
+
+        private void block() throws StoreException {
+            _entered.countDown();
+            try {
+                _release.await();
+            }
+            catch (InterruptedException ex) {
+                throw new StoreException(ex);
+            }
+        }
+
+        @Override
+        public IGraphInfo updateGraph(URI graphURI, InputStream in, URI baseURI,
+                MediaType mediaType) throws StoreException {
+            block();
+            return getGraphInfo(graphURI);
+        }
+
+        @Override
+        public IGraphInfo getGraphInfo(URI graphURI) throws StoreException {
+            if (_entered.getCount() > 0 && graphURI == IStore.DEFAULT_GRAPH) {
+                block();
+            }
+            return super.getGraphInfo(_GRAPH_1);
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _entered = new CountDownLatch(1);
+        _release = new CountDownLatch(1);
+        _executor = Executors.newCachedThreadPool();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        _release.countDown();
+        _executor.shutdownNow();
+        super.tearDown();
+    }
+
+    private Future<IGraphInfo> updateGraph(final IStore store) {
+        return _executor.submit(new Callable<IGraphInfo>() {
+            @Override
+            public IGraphInfo call() throws Exception {
+                return store.updateGraph(_GRAPH_1, null, _GRAPH_1, MediaType.RDF_XML);
+            }
+        });
+    }
+
+    private Future<Object> call(final Callable<Object> callable) {
+        return _executor.submit(callable);
+    }
+
+    private static void assertBlocked(final Future<?> future) throws Exception {
+        try {
+            future.get(100, TimeUnit.MILLISECONDS);
+            fail("The operation should be blocked");
+        }
+        catch (TimeoutException ex) {
+            // noop.
+        }
+    }
+
+    public void testIllegalConstructor() {
+        try {
+            new LockingStore(new DummyReadOnlyStore(), 0);
+            fail("The constructor shouldn't accept stripes < 1");
+        }
+        catch (IllegalArgumentException ex) {
+            // noop.
+        }
+    }
+
+    public void testWriterBlocksReaders() throws Exception {
+        final LockingStore store = new LockingStore(new BlockingStore());
+        final Future<IGraphInfo> writer = updateGraph(store);
+        assertTrue(_entered.await(5, TimeUnit.SECONDS));
+        final Future<Object> reader = call(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return store.getGraphInfo(_GRAPH_1);
+            }
+        });
+        final Future<Object> infos = call(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return store.getGraphInfos();
+            }
+        });
+        assertBlocked(reader);
+        assertBlocked(infos);
+        _release.countDown();
+        assertNotNull(writer.get(5, TimeUnit.SECONDS));
+        assertNotNull(reader.get(5, TimeUnit.SECONDS));
+        assertNotNull(infos.get(5, TimeUnit.SECONDS));
+        assertEquals(1, store.getLockWaitTimes(_GRAPH_1).getCount() - 1);
+        assertTrue(store.getLockWaitTimes(IStore.DEFAULT_GRAPH).getCount() > 0);
+    }
+
+    public void testDefaultGraphReaderBlocksWriters() throws Exception {
+        final LockingStore store = new LockingStore(new BlockingStore());
+        final Future<Object> reader = call(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return store.getGraphInfo(IStore.DEFAULT_GRAPH);
+            }
+        });
+        assertTrue(_entered.await(5, TimeUnit.SECONDS));
+        final Future<Object> concurrentReader = call(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return store.getGraph(_GRAPH_1, MediaType.RDF_XML);
+            }
+        });
+        assertNotNull("Readers must not block each other", concurrentReader.get(5, TimeUnit.SECONDS));
+        final Future<IGraphInfo> writer = updateGraph(store);
+        assertBlocked(writer);
+        _release.countDown();
+        assertNotNull(reader.get(5, TimeUnit.SECONDS));
+        assertNotNull(writer.get(5, TimeUnit.SECONDS));
+    }
+
+    public void testUnknownGraphWaitTimes() {
+        final LockingStore store = new LockingStore(new DummyReadOnlyStore());
+        assertEquals(0, store.getLockWaitTimes(_GRAPH_1).getCount());
+    }
+
+    public void testWaitTimesPerStripe() throws Exception {
+        final LockingStore store = new LockingStore(new DummyReadOnlyStore(), 4);
+        final Set<Histogram> histograms = Collections.newSetFromMap(new IdentityHashMap<Histogram, Boolean>());
+        for (int i=0; i<1000; i++) {
+            final URI graphURI = URI.create("http://www.example.org/graph-" + i);
+            try {
+                store.getGraphInfo(graphURI);
+                fail("The graph does not exist");
+            }
+            catch (GraphNotExistsException ex) {
+                // noop.
+            }
+            histograms.add(store.getLockWaitTimes(graphURI));
+        }
+        assertTrue(histograms.size() <= store.getStripes());
+        long count = 0;
+        for (Histogram histogram: histograms) {
+            count += histogram.getCount();
+        }
+        assertEquals(1000, count);
+    }
+
+}
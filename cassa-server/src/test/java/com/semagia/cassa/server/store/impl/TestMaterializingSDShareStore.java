@@ -0,0 +1,267 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import com.semagia.cassa.common.ContentCoding;
+import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.common.dm.ICompressibleRepresentation;
+import com.semagia.cassa.common.dm.IWritableRepresentation;
+import com.semagia.cassa.server.store.GraphNotExistsException;
+import com.semagia.cassa.server.store.IGraphInfo;
+import com.semagia.cassa.server.store.StoreException;
+import com.semagia.cassa.server.store.UnsupportedMediaTypeException;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against {@link MaterializingSDShareStore}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestMaterializingSDShareStore extends TestCase {
+
+    private static final URI _GRAPH = DummyReadOnlyStore.GRAPH_INFO_1_URI;
+
+    private DummyStore _dummy;
+    private File _directory;
+    private MaterializingSDShareStore _store;
+
+    /**
+     * Store with one graph and a modifiable modification time.
+     */
+    private static final class DummyStore extends DummyReadOnlyStore {
+
+        long lastModification = 1000;
+        boolean exists = true;
+
+        @Override
+        public Iterable<IGraphInfo> getGraphInfos() throws StoreException {
+            return exists ? Collections.singletonList(getGraphInfo(_GRAPH)) 
+                          : Collections.<IGraphInfo>emptyList();
+        }
+
+        @Override
+        public IGraphInfo getGraphInfo(URI graphURI) throws GraphNotExistsException, StoreException {
+            if (!exists || !_GRAPH.equals(graphURI)) {
+                throw new GraphNotExistsException(graphURI);
+            }
+            return new DefaultGraphInfo(_GRAPH, MediaType.RDF_XML, lastModification);
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _dummy = new DummyStore();
+        _directory = File.createTempFile("cassa-snapshots", "");
+        _directory.delete();
+        _store = new MaterializingSDShareStore(new SDShareStoreAdapter(_dummy), _directory, 2);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        _store.close();
+        final File[] files = _directory.listFiles();
+        assertNotNull(files);
+        for (File file: files) {
+            assertTrue(file.delete());
+        }
+        _directory.delete();
+        super.tearDown();
+    }
+
+    private List<IGraphInfo> snapshots() throws Exception {
+        final List<IGraphInfo> snapshots = new ArrayList<IGraphInfo>();
+        for (IGraphInfo info: _store.getSnapshots(_GRAPH)) {
+            snapshots.add(info);
+        }
+        return snapshots;
+    }
+
+    private static byte[] read(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1024];
+        int len;
+        while ((len = in.read(buffer)) != -1) {
+            out.write(buffer, 0, len);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    private static byte[] write(final IWritableRepresentation representation) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        representation.write(out);
+        return out.toByteArray();
+    }
+
+    private static byte[] expected() throws IOException {
+        return read(TestMaterializingSDShareStore.class.getResourceAsStream("/test.rdf"));
+    }
+
+    public void testIllegalRetention() throws Exception {
+        try {
+            new MaterializingSDShareStore(new SDShareStoreAdapter(_dummy), _directory, 0);
+            fail("Expected an exception for retention 0");
+        }
+        catch (IllegalArgumentException ex) {
+            // noop.
+        }
+    }
+
+    public void testNoSnapshot() throws Exception {
+        final List<IGraphInfo> snapshots = snapshots();
+        assertEquals(1, snapshots.size());
+        assertEquals("Expected the live graph", _GRAPH, snapshots.get(0).getURI());
+    }
+
+    public void testMaterialize() throws Exception {
+        _store.materialize();
+        assertEquals(1, _store.getMaterializedSnapshots());
+        assertEquals(0, _store.getFailedSnapshots());
+        final List<IGraphInfo> snapshots = snapshots();
+        assertEquals(1, snapshots.size());
+        final IGraphInfo snapshot = snapshots.get(0);
+        assertFalse(_GRAPH.equals(snapshot.getURI()));
+        assertEquals(1000, snapshot.getLastModification());
+        assertEquals(1000, _store.getLastModificationSnapshots(_GRAPH));
+        assertEquals(Collections.singletonList(MediaType.RDF_XML), snapshot.getSupportedMediaTypes());
+        assertTrue(_store.containsGraph(snapshot.getURI()));
+        assertEquals(snapshot, _store.getGraphInfo(snapshot.getURI()));
+        assertTrue(Arrays.equals(expected(), write(_store.getGraph(snapshot.getURI(), MediaType.RDF_XML))));
+        assertTrue(Arrays.equals(expected(), write(_store.openGraph(snapshot.getURI()).getRepresentation(MediaType.RDF_XML))));
+        // Unmodified
+        _store.materialize();
+        assertEquals(1, _store.getMaterializedSnapshots());
+        assertEquals(1, snapshots().size());
+    }
+
+    public void testRetention() throws Exception {
+        _store.materialize();
+        final IGraphInfo first = snapshots().get(0);
+        _dummy.lastModification = 2000;
+        _store.materialize();
+        _dummy.lastModification = 3000;
+        _store.materialize();
+        final List<IGraphInfo> snapshots = snapshots();
+        assertEquals(2, snapshots.size());
+        assertEquals(3000, snapshots.get(0).getLastModification());
+        assertEquals(2000, snapshots.get(1).getLastModification());
+        assertFalse(_store.containsGraph(first.getURI()));
+        try {
+            _store.getGraph(first.getURI(), MediaType.RDF_XML);
+            fail("Expected an exception for a pruned snapshot");
+        }
+        catch (GraphNotExistsException ex) {
+            // noop.
+        }
+        assertEquals("Expected two serializations and two index files", 4, _directory.listFiles().length);
+    }
+
+    public void testRestart() throws Exception {
+        _store.materialize();
+        _dummy.lastModification = 2000;
+        _store.materialize();
+        final List<IGraphInfo> snapshots = snapshots();
+        _store.close();
+        assertTrue(new File(_directory, "4711-0.snapshot").createNewFile());
+        assertTrue(new File(_directory, "4712.index.tmp").createNewFile());
+        _store = new MaterializingSDShareStore(new SDShareStoreAdapter(_dummy), _directory, 2);
+        assertEquals(snapshots, snapshots());
+        assertFalse("Expected that the incomplete snapshot was removed", 
+                new File(_directory, "4711-0.snapshot").exists());
+        assertFalse(new File(_directory, "4712.index.tmp").exists());
+        assertTrue(Arrays.equals(expected(), write(_store.getGraph(snapshots.get(0).getURI(), MediaType.RDF_XML))));
+        _store.materialize();
+        assertEquals("The graph was not modified", 0, _store.getMaterializedSnapshots());
+        _dummy.lastModification = 3000;
+        _store.materialize();
+        final List<IGraphInfo> newSnapshots = snapshots();
+        assertEquals(2, newSnapshots.size());
+        assertEquals(3000, newSnapshots.get(0).getLastModification());
+        assertFalse("The snapshot URIs must be unique", snapshots.contains(newSnapshots.get(0)));
+        assertEquals(snapshots.get(0), newSnapshots.get(1));
+    }
+
+    public void testRestartRetention() throws Exception {
+        _store.materialize();
+        _dummy.lastModification = 2000;
+        _store.materialize();
+        _store.close();
+        _store = new MaterializingSDShareStore(new SDShareStoreAdapter(_dummy), _directory, 1);
+        final List<IGraphInfo> snapshots = snapshots();
+        assertEquals(1, snapshots.size());
+        assertEquals(2000, snapshots.get(0).getLastModification());
+        assertEquals(2, _directory.listFiles().length);
+    }
+
+    public void testRemovedGraph() throws Exception {
+        _store.materialize();
+        final IGraphInfo snapshot = snapshots().get(0);
+        _dummy.exists = false;
+        _store.materialize();
+        assertFalse(_store.containsGraph(snapshot.getURI()));
+        assertEquals(0, _directory.listFiles().length);
+    }
+
+    public void testUnsupportedMediaType() throws Exception {
+        _store.materialize();
+        final IGraphInfo snapshot = snapshots().get(0);
+        try {
+            _store.getGraph(snapshot.getURI(), MediaType.TURTLE);
+            fail("Expected an exception for an unsupported media type");
+        }
+        catch (UnsupportedMediaTypeException ex) {
+            // noop.
+        }
+    }
+
+    public void testCompressed() throws Exception {
+        _store.close();
+        _store = new MaterializingSDShareStore(new SDShareStoreAdapter(_dummy), _directory, 2, true, 0);
+        _store.materialize();
+        final URI snapshotURI = snapshots().get(0).getURI();
+        assertTrue(Arrays.equals(expected(), write(_store.getGraph(snapshotURI, MediaType.RDF_XML))));
+        final ICompressibleRepresentation representation = (ICompressibleRepresentation) _store.getGraph(snapshotURI, MediaType.RDF_XML);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        representation.write(out, ContentCoding.GZIP);
+        final byte[] compressed = out.toByteArray();
+        assertTrue(Arrays.equals(expected(), read(new GZIPInputStream(new ByteArrayInputStream(compressed)))));
+    }
+
+    public void testBackgroundThread() throws Exception {
+        _store.close();
+        _store = new MaterializingSDShareStore(new SDShareStoreAdapter(_dummy), _directory, 2, false, 10);
+        for (int i = 0; i < 500 && _store.getMaterializedSnapshots() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, _store.getMaterializedSnapshots());
+        assertEquals(1000, _store.getLastModificationSnapshots(_GRAPH));
+    }
+
+}
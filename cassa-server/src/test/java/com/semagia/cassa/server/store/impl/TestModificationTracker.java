@@ -0,0 +1,93 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store.impl;
+
+import java.io.File;
+import java.net.URI;
+
+import com.semagia.cassa.server.store.IStore;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against {@link ModificationTracker}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestModificationTracker extends TestCase {
+
+    private static final URI 
+        _GRAPH_A = URI.create("http://www.example.org/graph-A"),
+        _GRAPH_B = URI.create("http://www.example.org/graph-B");
+
+    public void testIllegalConstructor() throws Exception {
+        try {
+            new ModificationTracker(null);
+            fail("The constructor shouldn't accept file==null");
+        }
+        catch (IllegalArgumentException ex) {
+            // noop.
+        }
+    }
+
+    public void testTouch() throws Exception {
+        final ModificationTracker tracker = new ModificationTracker();
+        final long time = tracker.getLastModification(_GRAPH_A);
+        assertEquals(time, tracker.getLastModification(_GRAPH_A));
+        final long time2 = tracker.touch(_GRAPH_A);
+        assertTrue(time2 > time);
+        assertEquals(time2, tracker.getLastModification(_GRAPH_A));
+        assertEquals(time2, tracker.getLastModification());
+        final long time3 = tracker.touch(_GRAPH_A);
+        assertTrue("Modification times must be strictly increasing", time3 > time2);
+    }
+
+    public void testDefaultGraph() throws Exception {
+        final ModificationTracker tracker = new ModificationTracker();
+        final long time = tracker.touch(_GRAPH_A);
+        assertEquals(tracker.getLastModification(), tracker.getLastModification(IStore.DEFAULT_GRAPH));
+        final long time2 = tracker.touch(IStore.DEFAULT_GRAPH);
+        assertTrue(time2 > time);
+        assertEquals(time2, tracker.getLastModification(IStore.DEFAULT_GRAPH));
+        assertEquals("Modifying the default graph affects all graphs", 
+                time2, tracker.getLastModification(_GRAPH_A));
+    }
+
+    public void testRemove() throws Exception {
+        final ModificationTracker tracker = new ModificationTracker();
+        final long time = tracker.touch(_GRAPH_A);
+        tracker.remove(_GRAPH_A);
+        assertTrue(tracker.getLastModification() > time);
+        assertTrue(tracker.getLastModification(_GRAPH_A) > time);
+    }
+
+    public void testPersistence() throws Exception {
+        final File file = File.createTempFile("cassa-modifications", ".log");
+        file.deleteOnExit();
+        ModificationTracker tracker = new ModificationTracker(file);
+        final long timeA = tracker.touch(_GRAPH_A);
+        final long timeB = tracker.touch(_GRAPH_B);
+        tracker.remove(_GRAPH_A);
+        final long last = tracker.getLastModification();
+        tracker.close();
+        tracker = new ModificationTracker(file);
+        assertEquals(last, tracker.getLastModification());
+        assertEquals(timeB, tracker.getLastModification(_GRAPH_B));
+        assertTrue(tracker.getLastModification(_GRAPH_A) > timeA);
+        tracker.close();
+    }
+
+}
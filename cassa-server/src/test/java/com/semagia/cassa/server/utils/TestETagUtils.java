@@ -18,6 +18,7 @@ package com.semagia.cassa.server.utils;
 import java.net.URI;
 import java.util.Date;
 
+import com.semagia.cassa.common.ContentCoding;
 import com.semagia.cassa.common.MediaType;
 import com.semagia.cassa.server.store.IGraphInfo;
 import com.semagia.cassa.server.store.impl.DefaultGraphInfo;
@@ -71,4 +72,17 @@ public class TestETagUtils extends TestCase {
         assertFalse(etag.equals(etag2));
     }
 
+    public void testContentCoding() {
+        final long time = new Date().getTime();
+        final String etag = ETagUtils.generateETag(_DEFAULT_URI, time, MediaType.RDF_XML);
+        assertEquals(etag, ETagUtils.generateETag(_DEFAULT_URI, time, MediaType.RDF_XML, ContentCoding.IDENTITY));
+        final String gzip = ETagUtils.generateETag(_DEFAULT_URI, time, MediaType.RDF_XML, ContentCoding.GZIP);
+        assertNotNull(gzip);
+        assertFalse(etag.equals(gzip));
+        final String deflate = ETagUtils.generateETag(_DEFAULT_URI, time, MediaType.RDF_XML, ContentCoding.DEFLATE);
+        assertNotNull(deflate);
+        assertFalse(gzip.equals(deflate));
+        assertNull(ETagUtils.generateETag(_DEFAULT_URI, -1, MediaType.RDF_XML, ContentCoding.GZIP));
+    }
+
 }
@@ -0,0 +1,361 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store.sesame;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openrdf.model.Statement;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.helpers.RDFHandlerWrapper;
+
+/**
+ * Tracks connections which outlive the store method which opened them, 
+ * i.e. connections which are kept open until a graph is serialized.
+ * <p>
+ * Each connection is wrapped into a {@link Lease} with a maximum lifetime.
+ * The lifetime is measured from the last progress of the lease, i.e. its
+ * creation, the start of the export or the last exported statement.
+ * A watchdog closes idle leases (the serialization was never requested or
+ * never written) which exceed the lifetime and cancels exports which did 
+ * not make any progress within the lifetime, so long-running exports to a 
+ * reading client are not affected. Exports are cancelled as well if 
+ * writing to the client fails, i.e. the client disconnected.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+final class ConnectionLeases {
+
+    private static final int _IDLE = 0;
+    private static final int _ACTIVE = 1;
+    private static final int _RELEASED = 2;
+
+    private static final ScheduledExecutorService _WATCHDOG = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "cassa-sesame-connection-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final long _maxLifetime;
+    private final Set<Lease> _leases;
+    private final AtomicLong _leaked;
+    private final AtomicLong _reclaimed;
+    private final AtomicLong _cancelledExports;
+
+    /**
+     * Creates an instance.
+     *
+     * @param maxLifetime The max. lifetime of a lease in milliseconds.
+     */
+    public ConnectionLeases(final long maxLifetime) {
+        if (maxLifetime < 1) {
+            throw new IllegalArgumentException("The max. lifetime must be greater than zero");
+        }
+        _maxLifetime = maxLifetime;
+        _leases = Collections.newSetFromMap(new ConcurrentHashMap<Lease, Boolean>());
+        _leaked = new AtomicLong();
+        _reclaimed = new AtomicLong();
+        _cancelledExports = new AtomicLong();
+        final long period = Math.min(_maxLifetime, 1000);
+        final Reaper reaper = new Reaper(this);
+        reaper._future = _WATCHDOG.scheduleWithFixedDelay(reaper, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns a lease for the provided connection.
+     *
+     * @param conn The connection.
+     * @return A lease which must be released.
+     */
+    public Lease lease(final RepositoryConnection conn) {
+        final Lease lease = new Lease(conn);
+        _leases.add(lease);
+        return lease;
+    }
+
+    /**
+     * Returns the max. lifetime of a lease.
+     *
+     * @return The max. lifetime in milliseconds.
+     */
+    public long getMaxLifetime() {
+        return _maxLifetime;
+    }
+
+    /**
+     * Returns the number of unreleased leases.
+     *
+     * @return The number of open leases.
+     */
+    public int size() {
+        return _leases.size();
+    }
+
+    /**
+     * Returns the number of leases which exceeded the max. lifetime.
+     *
+     * @return The number of leaked leases.
+     */
+    public long getLeaked() {
+        return _leaked.get();
+    }
+
+    /**
+     * Returns the number of leaked leases whose connection was closed by
+     * the watchdog.
+     *
+     * @return The number of reclaimed leases.
+     */
+    public long getReclaimed() {
+        return _reclaimed.get();
+    }
+
+    /**
+     * Returns the number of cancelled exports.
+     *
+     * @return The number of cancelled exports.
+     */
+    public long getCancelled() {
+        return _cancelledExports.get();
+    }
+
+    /**
+     * Closes idle leases and cancels exports which did not make any progress
+     * within the max. lifetime.
+     */
+    void reap() {
+        final long now = System.currentTimeMillis();
+        final long deadline = now - _maxLifetime;
+        for (Lease lease: _leases) {
+            if (lease._leaked) {
+                continue;
+            }
+            final long progress = lease._progress;
+            if (progress != lease._seenProgress) {
+                lease._seenProgress = progress;
+                lease._lastProgress = now;
+                continue;
+            }
+            if (lease._lastProgress > deadline) {
+                continue;
+            }
+            lease._leaked = true;
+            _leaked.incrementAndGet();
+            if (lease._state.compareAndSet(_IDLE, _RELEASED)) {
+                _leases.remove(lease);
+                try {
+                    lease._conn.close();
+                    _reclaimed.incrementAndGet();
+                }
+                catch (RepositoryException ex) {
+                    // noop, the connection is unusable anyway
+                }
+            }
+            else {
+                // The export closes the connection
+                lease.cancel();
+            }
+        }
+    }
+
+
+    /**
+     * A connection which is tracked by the watchdog.
+     */
+    final class Lease {
+
+        private final RepositoryConnection _conn;
+        private final AtomicInteger _state;
+        private volatile boolean _cancelled;
+        private volatile boolean _leaked;
+        /**
+         * Incremented by the exporting thread, read by the watchdog.
+         */
+        private volatile long _progress;
+        /**
+         * Accessed by the watchdog only.
+         */
+        private long _seenProgress;
+        private long _lastProgress;
+
+        Lease(final RepositoryConnection conn) {
+            _conn = conn;
+            _lastProgress = System.currentTimeMillis();
+            _state = new AtomicInteger(_IDLE);
+        }
+
+        /**
+         * Marks the start of an export.
+         *
+         * @return The connection to export the statements from.
+         * @throws IOException In case the lease was already released.
+         */
+        public RepositoryConnection begin() throws IOException {
+            if (!_state.compareAndSet(_IDLE, _ACTIVE)) {
+                throw new IOException("The connection was released or reclaimed after " + _maxLifetime + " ms");
+            }
+            _progress++;
+            return _conn;
+        }
+
+        /**
+         * Cancels the export at the next statement.
+         */
+        public synchronized void cancel() {
+            if (!_cancelled) {
+                _cancelled = true;
+                _cancelledExports.incrementAndGet();
+            }
+        }
+
+        /**
+         * Returns if the export was cancelled.
+         *
+         * @return {@code true} if the export was cancelled, otherwise {@code false}.
+         */
+        public boolean isCancelled() {
+            return _cancelled;
+        }
+
+        /**
+         * Returns a handler which stops the export if the lease was cancelled
+         * and reports each statement as progress.
+         *
+         * @param handler The handler to wrap.
+         * @return A handler which checks the cancellation status.
+         */
+        public RDFHandler guard(final RDFHandler handler) {
+            return new RDFHandlerWrapper(handler) {
+                @Override
+                public void handleStatement(final Statement st) throws RDFHandlerException {
+                    if (_cancelled) {
+                        throw new RDFHandlerException(new IOException("The export was cancelled"));
+                    }
+                    _progress++;
+                    super.handleStatement(st);
+                }
+            };
+        }
+
+        /**
+         * Returns an output stream which cancels the export if writing fails.
+         *
+         * @param out The output stream to wrap.
+         * @return An output stream which cancels the lease in case of an error.
+         */
+        public OutputStream guard(final OutputStream out) {
+            return new FilterOutputStream(out) {
+                @Override
+                public void write(final byte[] b, final int off, final int len) throws IOException {
+                    try {
+                        out.write(b, off, len);
+                    }
+                    catch (IOException ex) {
+                        cancel();
+                        throw ex;
+                    }
+                }
+                @Override
+                public void write(final int b) throws IOException {
+                    try {
+                        out.write(b);
+                    }
+                    catch (IOException ex) {
+                        cancel();
+                        throw ex;
+                    }
+                }
+                @Override
+                public void flush() throws IOException {
+                    try {
+                        out.flush();
+                    }
+                    catch (IOException ex) {
+                        cancel();
+                        throw ex;
+                    }
+                }
+            };
+        }
+
+        /**
+         * Closes the connection. Calling this method more than once has no 
+         * effect.
+         *
+         * @throws RepositoryException In case of an error.
+         */
+        public void release() throws RepositoryException {
+            final int state = _state.getAndSet(_RELEASED);
+            if (state == _RELEASED) {
+                return;
+            }
+            _leases.remove(this);
+            if (_leaked) {
+                _reclaimed.incrementAndGet();
+            }
+            _conn.close();
+        }
+
+    }
+
+
+    /**
+     * Runs {@link ConnectionLeases#reap()} periodically until the leases
+     * are not referenced anymore.
+     */
+    private static final class Reaper implements Runnable {
+
+        private final WeakReference<ConnectionLeases> _leases;
+        volatile ScheduledFuture<?> _future;
+
+        Reaper(final ConnectionLeases leases) {
+            _leases = new WeakReference<ConnectionLeases>(leases);
+        }
+
+        @Override
+        public void run() {
+            final ConnectionLeases leases = _leases.get();
+            if (leases == null) {
+                final ScheduledFuture<?> future = _future;
+                if (future != null) {
+                    future.cancel(false);
+                }
+                return;
+            }
+            leases.reap();
+        }
+    }
+
+}
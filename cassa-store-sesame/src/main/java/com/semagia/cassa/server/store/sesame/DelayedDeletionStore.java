@@ -0,0 +1,448 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store.sesame;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.common.dm.IWritableRepresentation;
+import com.semagia.cassa.common.dm.RemovalStatus;
+import com.semagia.cassa.server.store.BulkLoad;
+import com.semagia.cassa.server.store.GraphMismatchException;
+import com.semagia.cassa.server.store.GraphNotExistsException;
+import com.semagia.cassa.server.store.IGraph;
+import com.semagia.cassa.server.store.IGraphInfo;
+import com.semagia.cassa.server.store.IStore;
+import com.semagia.cassa.server.store.ParseException;
+import com.semagia.cassa.server.store.QueryException;
+import com.semagia.cassa.server.store.StoreException;
+import com.semagia.cassa.server.store.UnsupportedMediaTypeException;
+import com.semagia.cassa.server.store.impl.DelegatingStore;
+
+/**
+ * {@link IStore} implementation which deletes graphs of the underlying 
+ * {@link SesameStore} in the background.
+ * <p>
+ * {@link #deleteGraph(URI)} hides the graph immediately and returns 
+ * {@link RemovalStatus#DELAYED}; the statements of the graph are removed by
+ * a low priority background thread in transactions of a bounded size. Until
+ * the graph is reclaimed, it is neither reported by {@link #getGraphInfos()} 
+ * nor by {@link #containsGraph(URI)}, but the statements are still visible 
+ * in the {@link IStore#DEFAULT_GRAPH}.
+ * </p>
+ * <p>
+ * Methods which create a graph with the URI of a hidden graph wait until 
+ * the graph was reclaimed. The {@link IStore#DEFAULT_GRAPH} is deleted 
+ * immediately. If the deletion of a graph fails, the graph becomes visible 
+ * again with its remaining statements.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class DelayedDeletionStore extends DelegatingStore {
+
+    private final SesameStore _sesame;
+    private final int _batchSize;
+    private final long _pause;
+    private final ConcurrentMap<URI, Future<?>> _pending;
+    private final ExecutorService _executor;
+    private final AtomicLong _reclaimedStatements;
+    private final AtomicLong _reclaimedGraphs;
+    private final AtomicLong _failures;
+
+    /**
+     * Creates a store which deletes the graphs without pausing between 
+     * the batches.
+     *
+     * @param store The underlying store.
+     * @param batchSize The max. number of statements which are removed 
+     *          within one transaction.
+     */
+    public DelayedDeletionStore(final SesameStore store, final int batchSize) {
+        this(store, batchSize, 0);
+    }
+
+    /**
+     * Creates a store.
+     *
+     * @param store The underlying store.
+     * @param batchSize The max. number of statements which are removed 
+     *          within one transaction.
+     * @param pause The time to pause between two batches (in milliseconds).
+     */
+    public DelayedDeletionStore(final SesameStore store, final int batchSize, final long pause) {
+        super(store);
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be greater than zero");
+        }
+        if (pause < 0) {
+            throw new IllegalArgumentException("The pause must not be negative");
+        }
+        _sesame = store;
+        _batchSize = batchSize;
+        _pause = pause;
+        _pending = new ConcurrentHashMap<URI, Future<?>>();
+        _reclaimedStatements = new AtomicLong();
+        _reclaimedGraphs = new AtomicLong();
+        _failures = new AtomicLong();
+        _executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "cassa-sesame-graph-deletion");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns the number of graphs which wait for deletion.
+     *
+     * @return The number of pending deletions.
+     */
+    public int getPendingDeletions() {
+        return _pending.size();
+    }
+
+    /**
+     * Returns the number of statements which were removed in the background.
+     *
+     * @return The number of reclaimed statements.
+     */
+    public long getReclaimedStatements() {
+        return _reclaimedStatements.get();
+    }
+
+    /**
+     * Returns the number of graphs which were deleted in the background.
+     *
+     * @return The number of reclaimed graphs.
+     */
+    public long getReclaimedGraphs() {
+        return _reclaimedGraphs.get();
+    }
+
+    /**
+     * Returns the number of failed deletions.
+     *
+     * @return The number of failures.
+     */
+    public long getFailedDeletions() {
+        return _failures.get();
+    }
+
+    /**
+     * Waits until the provided graph was reclaimed.
+     * 
+     * Returns immediately if the deletion of the graph is not pending.
+     *
+     * @param graphURI The graph URI.
+     * @throws StoreException If the thread was interrupted.
+     */
+    public void awaitDeletion(final URI graphURI) throws StoreException {
+        final Future<?> deletion = _pending.get(graphURI);
+        if (deletion == null) {
+            return;
+        }
+        try {
+            deletion.get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new StoreException(ex);
+        }
+        catch (ExecutionException ex) {
+            // The graph is visible again, noop.
+        }
+    }
+
+    /**
+     * Stops the deletion of the graphs. 
+     * 
+     * Graphs which were not reclaimed become visible again with their 
+     * remaining statements.
+     */
+    public void close() {
+        for (Runnable deletion: _executor.shutdownNow()) {
+            ((Future<?>) deletion).cancel(false);
+        }
+    }
+
+    private boolean isPending(final URI graphURI) {
+        return graphURI != IStore.DEFAULT_GRAPH && _pending.containsKey(graphURI);
+    }
+
+    private void ensureVisible(final URI graphURI) throws GraphNotExistsException {
+        if (isPending(graphURI)) {
+            throw new GraphNotExistsException(graphURI);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#deleteGraph(java.net.URI)
+     */
+    @Override
+    public RemovalStatus deleteGraph(final URI graphURI)
+            throws GraphNotExistsException, IOException, StoreException {
+        if (graphURI == IStore.DEFAULT_GRAPH) {
+            return super.deleteGraph(graphURI);
+        }
+        if (!_store.containsGraph(graphURI)) {
+            throw new GraphNotExistsException(graphURI);
+        }
+        final Deletion deletion = new Deletion(graphURI);
+        if (_pending.putIfAbsent(graphURI, deletion) != null) {
+            throw new GraphNotExistsException(graphURI);
+        }
+        _executor.execute(deletion);
+        return RemovalStatus.DELAYED;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#containsGraph(java.net.URI)
+     */
+    @Override
+    public boolean containsGraph(final URI graphURI) throws StoreException {
+        return !isPending(graphURI) && super.containsGraph(graphURI);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#getGraphInfos()
+     */
+    @Override
+    public Iterable<IGraphInfo> getGraphInfos() throws StoreException {
+        final Iterable<IGraphInfo> infos = super.getGraphInfos();
+        if (_pending.isEmpty()) {
+            return infos;
+        }
+        final List<IGraphInfo> result = new ArrayList<IGraphInfo>();
+        for (IGraphInfo info: infos) {
+            if (!_pending.containsKey(info.getURI())) {
+                result.add(info);
+            }
+        }
+        return result;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#getGraphInfo(java.net.URI)
+     */
+    @Override
+    public IGraphInfo getGraphInfo(final URI graphURI) throws GraphNotExistsException,
+            StoreException {
+        ensureVisible(graphURI);
+        return super.getGraphInfo(graphURI);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#getGraph(java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IWritableRepresentation getGraph(final URI graphURI, final MediaType mediaType)
+            throws GraphNotExistsException, UnsupportedMediaTypeException,
+            IOException, StoreException {
+        ensureVisible(graphURI);
+        return super.getGraph(graphURI, mediaType);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#openGraph(java.net.URI)
+     */
+    @Override
+    public IGraph openGraph(final URI graphURI) throws GraphNotExistsException,
+            StoreException {
+        ensureVisible(graphURI);
+        return super.openGraph(graphURI);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#getSubject(java.net.URI, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IWritableRepresentation getSubject(final URI graphURI, final URI subjectURI, 
+            final MediaType mediaType) throws GraphNotExistsException, 
+            UnsupportedMediaTypeException, IOException, StoreException {
+        ensureVisible(graphURI);
+        return super.getSubject(graphURI, subjectURI, mediaType);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#deleteSubject(java.net.URI, java.net.URI)
+     */
+    @Override
+    public RemovalStatus deleteSubject(final URI graphURI, final URI subjectURI)
+            throws GraphNotExistsException, IOException, StoreException {
+        ensureVisible(graphURI);
+        return super.deleteSubject(graphURI, subjectURI);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#updateGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IGraphInfo updateGraph(final URI graphURI, final InputStream in, final URI baseURI,
+            final MediaType mediaType) throws UnsupportedMediaTypeException,
+            IOException, ParseException, StoreException {
+        ensureVisible(graphURI);
+        return super.updateGraph(graphURI, in, baseURI, mediaType);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#modifyGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public boolean modifyGraph(final URI graphURI, final InputStream in, final URI baseURI,
+            final MediaType mediaType) throws UnsupportedMediaTypeException,
+            IOException, QueryException, GraphMismatchException, StoreException {
+        awaitDeletion(graphURI);
+        return super.modifyGraph(graphURI, in, baseURI, mediaType);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#modifyGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType, java.util.Map)
+     */
+    @Override
+    public boolean modifyGraph(final URI graphURI, final InputStream in, final URI baseURI,
+            final MediaType mediaType, final Map<String, String> bindings) throws UnsupportedMediaTypeException,
+            IOException, QueryException, GraphMismatchException, StoreException {
+        awaitDeletion(graphURI);
+        return super.modifyGraph(graphURI, in, baseURI, mediaType, bindings);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#createOrReplaceGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IGraphInfo createOrReplaceGraph(final URI graphURI, final InputStream in,
+            final URI baseURI, final MediaType mediaType)
+            throws UnsupportedMediaTypeException, IOException, ParseException,
+            StoreException {
+        awaitDeletion(graphURI);
+        return super.createOrReplaceGraph(graphURI, in, baseURI, mediaType);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#loadGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType, com.semagia.cassa.server.store.BulkLoad)
+     */
+    @Override
+    public IGraphInfo loadGraph(final URI graphURI, final InputStream in,
+            final URI baseURI, final MediaType mediaType, final BulkLoad bulkLoad)
+            throws UnsupportedMediaTypeException, IOException, ParseException,
+            StoreException {
+        if (graphURI != null) {
+            if (bulkLoad.isReplace()) {
+                awaitDeletion(graphURI);
+            }
+            else {
+                ensureVisible(graphURI);
+            }
+        }
+        return super.loadGraph(graphURI, in, baseURI, mediaType, bulkLoad);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#createOrReplaceSubject(java.net.URI, java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IGraphInfo createOrReplaceSubject(final URI graphURI, final URI subjectURI,
+            final InputStream in, final URI baseURI, final MediaType mediaType)
+            throws UnsupportedMediaTypeException, IOException, ParseException,
+            StoreException {
+        awaitDeletion(graphURI);
+        return super.createOrReplaceSubject(graphURI, subjectURI, in, baseURI, mediaType);
+    }
+
+
+    /**
+     * Removes the statements of a graph batch by batch.
+     */
+    private final class Deletion extends FutureTask<Void> {
+
+        private final URI _graphURI;
+
+        Deletion(final URI graphURI) {
+            super(new Reclaimer(graphURI), null);
+            _graphURI = graphURI;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.concurrent.FutureTask#done()
+         */
+        @Override
+        protected void done() {
+            // Cancelled deletions
+            _pending.remove(_graphURI, this);
+        }
+
+    }
+
+    private final class Reclaimer implements Runnable {
+
+        private final URI _graphURI;
+
+        Reclaimer(final URI graphURI) {
+            _graphURI = graphURI;
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Runnable#run()
+         */
+        @Override
+        public void run() {
+            try {
+                int removed;
+                do {
+                    removed = _sesame.deleteStatements(_graphURI, _batchSize);
+                    _reclaimedStatements.addAndGet(removed);
+                    if (removed == _batchSize && _pause > 0) {
+                        Thread.sleep(_pause);
+                    }
+                } while (removed == _batchSize);
+                _reclaimedGraphs.incrementAndGet();
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                _failures.incrementAndGet();
+                throw new IllegalStateException(ex);
+            }
+            catch (StoreException ex) {
+                _failures.incrementAndGet();
+                throw new IllegalStateException(ex);
+            }
+            finally {
+                // Waiting threads are released before done() is called
+                _pending.remove(_graphURI);
+            }
+        }
+
+    }
+
+}
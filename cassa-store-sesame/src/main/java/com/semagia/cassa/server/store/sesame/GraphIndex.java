@@ -0,0 +1,187 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store.sesame;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openrdf.model.Resource;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.RepositoryResult;
+
+/**
+ * Internal index of the named graphs (contexts) of a repository.
+ * <p>
+ * The index avoids a scan over all context identifiers to check if a graph
+ * exists. It must be kept in sync by all methods which add or remove
+ * statements. If a graph is not found in the index, the repository is
+ * asked and the index is updated accordingly, so graphs which were created 
+ * without using the store are detected as well.
+ * </p>
+ * <p>
+ * Contexts whose identifier starts with the excluded prefix (i.e. internal 
+ * contexts of the store) are never indexed and never reported as existing.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+final class GraphIndex {
+
+    private final Set<Resource> _graphs;
+    private final String _excludedPrefix;
+    private final AtomicLong _hits;
+    private final AtomicLong _misses;
+
+    /**
+     * Creates an index.
+     *
+     * @param excludedPrefix The prefix of the identifiers of the contexts 
+     *          which must not be indexed.
+     */
+    public GraphIndex(final String excludedPrefix) {
+        _excludedPrefix = excludedPrefix;
+        _graphs = Collections.newSetFromMap(new ConcurrentHashMap<Resource, Boolean>());
+        _hits = new AtomicLong();
+        _misses = new AtomicLong();
+    }
+
+    /**
+     * Clears the index and reads all context identifiers from the repository.
+     *
+     * @param conn The connection to read the context identifiers from.
+     * @throws RepositoryException In case of an error.
+     */
+    public void rebuild(final RepositoryConnection conn) throws RepositoryException {
+        _graphs.clear();
+        RepositoryResult<Resource> res = null;
+        try {
+            res = conn.getContextIDs();
+            while (res.hasNext()) {
+                final Resource context = res.next();
+                if (!isExcluded(context)) {
+                    _graphs.add(context);
+                }
+            }
+        }
+        finally {
+            if (res != null) {
+                res.close();
+            }
+        }
+    }
+
+    /**
+     * Returns if the provided context exists.
+     * 
+     * If the context is unknown to the index, the repository is asked.
+     *
+     * @param conn The connection to use if the context is not indexed.
+     * @param context The context to check.
+     * @return {@code true} if the context exists, otherwise {@code false}.
+     * @throws RepositoryException In case of an error.
+     */
+    public boolean contains(final RepositoryConnection conn, final Resource context) throws RepositoryException {
+        if (_graphs.contains(context)) {
+            _hits.incrementAndGet();
+            return true;
+        }
+        if (isExcluded(context)) {
+            return false;
+        }
+        _misses.incrementAndGet();
+        return sync(conn, context);
+    }
+
+    /**
+     * Adds the provided context to the index.
+     *
+     * @param context The context to add.
+     */
+    public void add(final Resource context) {
+        if (!isExcluded(context)) {
+            _graphs.add(context);
+        }
+    }
+
+    /**
+     * Removes the provided context from the index.
+     *
+     * @param context The context to remove.
+     */
+    public void remove(final Resource context) {
+        _graphs.remove(context);
+    }
+
+    /**
+     * Updates the index entry of the provided context. If the repository 
+     * contains no statement within the context, it is removed from the index,
+     * otherwise it is added.
+     *
+     * @param conn The connection to use.
+     * @param context The context to check.
+     * @return {@code true} if the context exists, otherwise {@code false}.
+     * @throws RepositoryException In case of an error.
+     */
+    public boolean sync(final RepositoryConnection conn, final Resource context) throws RepositoryException {
+        if (!isExcluded(context) && conn.hasStatement(null, null, null, false, context)) {
+            _graphs.add(context);
+            return true;
+        }
+        _graphs.remove(context);
+        return false;
+    }
+
+    /**
+     * Returns if the provided context is excluded from the index.
+     *
+     * @param context The context.
+     * @return {@code true} if the context is an internal context, otherwise {@code false}.
+     */
+    public boolean isExcluded(final Resource context) {
+        return context.stringValue().startsWith(_excludedPrefix);
+    }
+
+    /**
+     * Returns the number of indexed contexts.
+     *
+     * @return The number of contexts.
+     */
+    public int size() {
+        return _graphs.size();
+    }
+
+    /**
+     * Returns how many lookups were answered by the index.
+     *
+     * @return The number of index hits.
+     */
+    public long getHits() {
+        return _hits.get();
+    }
+
+    /**
+     * Returns how many lookups required a repository query.
+     *
+     * @return The number of index misses.
+     */
+    public long getMisses() {
+        return _misses.get();
+    }
+
+}
@@ -0,0 +1,436 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store.sesame;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openrdf.model.Statement;
+
+import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.common.dm.RemovalStatus;
+import com.semagia.cassa.server.store.BulkLoad;
+import com.semagia.cassa.server.store.GraphMismatchException;
+import com.semagia.cassa.server.store.GraphNotExistsException;
+import com.semagia.cassa.server.store.IGraphInfo;
+import com.semagia.cassa.server.store.IStore;
+import com.semagia.cassa.server.store.ParseException;
+import com.semagia.cassa.server.store.QueryException;
+import com.semagia.cassa.server.store.StoreException;
+import com.semagia.cassa.server.store.UnsupportedMediaTypeException;
+import com.semagia.cassa.server.store.impl.DelegatingStore;
+import com.semagia.cassa.server.utils.Histogram;
+
+/**
+ * {@link IStore} implementation which coalesces concurrent 
+ * {@link #updateGraph(URI, InputStream, URI, MediaType)} and 
+ * {@link #createOrReplaceSubject(URI, URI, InputStream, URI, MediaType)} 
+ * requests into a single transaction of the underlying {@link SesameStore}
+ * (group commit).
+ * <p>
+ * The input is parsed by the calling thread, the statements are committed 
+ * by a background thread which collects writes until either the max. batch 
+ * size is reached or the max. delay since the first write of the batch 
+ * elapsed. The calling thread waits until its write was committed. If a 
+ * batch fails, the writes are committed one by one, so each caller 
+ * receives its own result.
+ * </p>
+ * <p>
+ * Writes are committed in the order of their arrival. All other modifying 
+ * methods wait until the pending writes were committed. If the background
+ * thread terminates unexpectedly, the store is closed: Pending and 
+ * subsequent writes fail with a {@link StoreException}.
+ * The whole input of a write is held in memory, this store is meant for
+ * high rates of small writes.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class GroupCommitStore extends DelegatingStore {
+
+    private static final Request _STOP = new Request();
+
+    private final SesameStore _sesame;
+    private final long _maxDelay;
+    private final int _maxBatchSize;
+    private final BlockingQueue<Request> _queue;
+    private final Histogram _batchSizes;
+    private final Histogram _commitLatencies;
+    private final Thread _committer;
+    private volatile boolean _closed;
+
+    /**
+     * Creates an instance.
+     *
+     * @param store The underlying store.
+     * @param maxDelay The max. time (in milliseconds) to wait for further 
+     *          writes after the first write of a batch arrived.
+     * @param maxBatchSize The max. number of writes per transaction.
+     */
+    public GroupCommitStore(final SesameStore store, final long maxDelay, final int maxBatchSize) {
+        super(store);
+        if (maxDelay < 0) {
+            throw new IllegalArgumentException("The max. delay must not be negative");
+        }
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("The max. batch size must be greater than zero");
+        }
+        _sesame = store;
+        _maxDelay = TimeUnit.MILLISECONDS.toNanos(maxDelay);
+        _maxBatchSize = maxBatchSize;
+        _queue = new LinkedBlockingQueue<Request>();
+        _batchSizes = new Histogram();
+        _commitLatencies = new Histogram();
+        _committer = new Thread(new Committer(), "cassa-sesame-group-commit");
+        _committer.setDaemon(true);
+        _committer.start();
+    }
+
+    /**
+     * Returns the histogram of the number of writes per transaction.
+     *
+     * @return The batch size histogram.
+     */
+    public Histogram getBatchSizes() {
+        return _batchSizes;
+    }
+
+    /**
+     * Returns the histogram of the commit latencies (in microseconds).
+     * 
+     * The latency covers the whole transaction, i.e. adding the statements
+     * and the commit.
+     *
+     * @return The commit latency histogram.
+     */
+    public Histogram getCommitLatencies() {
+        return _commitLatencies;
+    }
+
+    /**
+     * Waits until all writes which were submitted before were committed.
+     *
+     * @throws StoreException In case the store was closed or the thread 
+     *          was interrupted.
+     */
+    public void flush() throws StoreException {
+        submit(new Request());
+    }
+
+    /**
+     * Commits all pending writes and stops the background thread.
+     * 
+     * The underlying store is not closed. Calling this method more than 
+     * once has no effect.
+     *
+     * @throws StoreException In case the thread was interrupted.
+     */
+    public void close() throws StoreException {
+        synchronized (_queue) {
+            if (_closed) {
+                return;
+            }
+            _closed = true;
+            _queue.add(_STOP);
+        }
+        try {
+            _committer.join();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new StoreException("Interrupted while waiting for the pending writes", ex);
+        }
+    }
+
+    private IGraphInfo submit(final Request request) throws StoreException {
+        synchronized (_queue) {
+            if (_closed) {
+                throw new StoreException("The store is closed");
+            }
+            _queue.add(request);
+        }
+        return request.await();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#updateGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IGraphInfo updateGraph(final URI graphURI, final InputStream in, final URI baseURI,
+            final MediaType mediaType) throws UnsupportedMediaTypeException,
+            IOException, ParseException, StoreException {
+        if (!_sesame.containsGraph(graphURI)) {
+            throw new GraphNotExistsException(graphURI);
+        }
+        return submit(new Write(graphURI, null, _sesame.parse(in, baseURI, mediaType)));
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#createOrReplaceSubject(java.net.URI, java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IGraphInfo createOrReplaceSubject(final URI graphURI, final URI subjectURI,
+            final InputStream in, final URI baseURI, final MediaType mediaType)
+            throws UnsupportedMediaTypeException, IOException, ParseException,
+            StoreException {
+        return submit(new Write(graphURI, subjectURI, _sesame.parse(in, baseURI, mediaType)));
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#deleteGraph(java.net.URI)
+     */
+    @Override
+    public RemovalStatus deleteGraph(final URI graphURI)
+            throws GraphNotExistsException, IOException, StoreException {
+        flush();
+        return super.deleteGraph(graphURI);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#deleteSubject(java.net.URI, java.net.URI)
+     */
+    @Override
+    public RemovalStatus deleteSubject(final URI graphURI, final URI subjectURI)
+            throws GraphNotExistsException, IOException, StoreException {
+        flush();
+        return super.deleteSubject(graphURI, subjectURI);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#modifyGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public boolean modifyGraph(final URI graphURI, final InputStream in, final URI baseURI,
+            final MediaType mediaType) throws UnsupportedMediaTypeException,
+            IOException, QueryException, GraphMismatchException, StoreException {
+        flush();
+        return super.modifyGraph(graphURI, in, baseURI, mediaType);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#modifyGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType, java.util.Map)
+     */
+    @Override
+    public boolean modifyGraph(final URI graphURI, final InputStream in, final URI baseURI,
+            final MediaType mediaType, final Map<String, String> bindings) throws UnsupportedMediaTypeException,
+            IOException, QueryException, GraphMismatchException, StoreException {
+        flush();
+        return super.modifyGraph(graphURI, in, baseURI, mediaType, bindings);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#createGraph(java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IGraphInfo createGraph(final InputStream in, final URI baseURI,
+            final MediaType mediaType) throws UnsupportedMediaTypeException,
+            IOException, ParseException, StoreException {
+        flush();
+        return super.createGraph(in, baseURI, mediaType);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#createOrReplaceGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IGraphInfo createOrReplaceGraph(final URI graphURI, final InputStream in,
+            final URI baseURI, final MediaType mediaType)
+            throws UnsupportedMediaTypeException, IOException, ParseException,
+            StoreException {
+        flush();
+        return super.createOrReplaceGraph(graphURI, in, baseURI, mediaType);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingStore#loadGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType, com.semagia.cassa.server.store.BulkLoad)
+     */
+    @Override
+    public IGraphInfo loadGraph(final URI graphURI, final InputStream in,
+            final URI baseURI, final MediaType mediaType, final BulkLoad bulkLoad)
+            throws UnsupportedMediaTypeException, IOException, ParseException,
+            StoreException {
+        flush();
+        return super.loadGraph(graphURI, in, baseURI, mediaType, bulkLoad);
+    }
+
+    /**
+     * Commits the batch and notifies the writers.
+     *
+     * @param batch The writes to commit.
+     */
+    private void commit(final List<Write> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            final List<IGraphInfo> infos = commitBatch(batch);
+            for (int i=0; i<batch.size(); i++) {
+                batch.get(i).done(infos.get(i), null);
+            }
+        }
+        catch (StoreException ex) {
+            if (batch.size() == 1) {
+                batch.get(0).done(null, ex);
+                return;
+            }
+            // Find the failing write(s)
+            for (Write write: batch) {
+                try {
+                    write.done(commitBatch(Collections.singletonList(write)).get(0), null);
+                }
+                catch (StoreException e) {
+                    write.done(null, e);
+                }
+            }
+        }
+    }
+
+    private List<IGraphInfo> commitBatch(final List<Write> batch) throws StoreException {
+        final List<StatementWrite> writes = new ArrayList<StatementWrite>(batch.size());
+        for (Write write: batch) {
+            writes.add(write._write);
+        }
+        final long start = System.nanoTime();
+        try {
+            return _sesame.commitBatch(writes);
+        }
+        catch (RuntimeException ex) {
+            throw new StoreException(ex);
+        }
+        finally {
+            _commitLatencies.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            _batchSizes.record(batch.size());
+        }
+    }
+
+
+    /**
+     * Request which is processed by the committer thread. 
+     * 
+     * Instances of this class (which are not {@link Write}s) are used 
+     * as barrier.
+     */
+    private static class Request {
+
+        private final CountDownLatch _latch = new CountDownLatch(1);
+        private IGraphInfo _result;
+        private StoreException _error;
+
+        void done(final IGraphInfo result, final StoreException error) {
+            if (_latch.getCount() == 0) {
+                return;
+            }
+            _result = result;
+            _error = error;
+            _latch.countDown();
+        }
+
+        IGraphInfo await() throws StoreException {
+            try {
+                _latch.await();
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new StoreException("Interrupted while waiting for the commit", ex);
+            }
+            if (_error != null) {
+                throw _error;
+            }
+            return _result;
+        }
+    }
+
+
+    private static final class Write extends Request {
+
+        private final StatementWrite _write;
+
+        Write(final URI graphURI, final URI subjectURI, final List<Statement> statements) {
+            _write = new StatementWrite(graphURI, subjectURI, statements);
+        }
+    }
+
+
+    /**
+     * Collects the writes and commits them.
+     * 
+     * If the thread terminates, either by {@link #close()}, an interrupt 
+     * or an unexpected error, the store is closed and all pending requests 
+     * fail.
+     */
+    private final class Committer implements Runnable {
+
+        @Override
+        public void run() {
+            final List<Write> batch = new ArrayList<Write>(_maxBatchSize);
+            try {
+                boolean running = true;
+                while (running) {
+                    Request request = null;
+                    try {
+                        request = _queue.take();
+                        final long deadline = System.nanoTime() + _maxDelay;
+                        while (request instanceof Write) {
+                            batch.add((Write) request);
+                            request = null;
+                            if (batch.size() >= _maxBatchSize) {
+                                break;
+                            }
+                            final long remaining = deadline - System.nanoTime();
+                            request = remaining > 0 ? _queue.poll(remaining, TimeUnit.NANOSECONDS) 
+                                                    : _queue.poll();
+                        }
+                    }
+                    catch (InterruptedException ex) {
+                        running = false;
+                    }
+                    commit(batch);
+                    batch.clear();
+                    if (request == _STOP) {
+                        running = false;
+                    }
+                    else if (request != null) {
+                        request.done(null, null);
+                    }
+                }
+            }
+            finally {
+                // No further requests are accepted, fail the pending ones
+                synchronized (_queue) {
+                    _closed = true;
+                }
+                final StoreException error = new StoreException("The store is closed");
+                for (Write write: batch) {
+                    write.done(null, error);
+                }
+                Request request;
+                while ((request = _queue.poll()) != null) {
+                    request.done(null, error);
+                }
+            }
+        }
+    }
+
+}
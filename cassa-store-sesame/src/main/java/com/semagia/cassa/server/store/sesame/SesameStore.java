@@ -15,40 +15,60 @@
  */
 package com.semagia.cassa.server.store.sesame;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
-import java.io.StringWriter;
-import java.io.Writer;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import org.openrdf.OpenRDFException;
 import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
 import org.openrdf.query.MalformedQueryException;
 import org.openrdf.query.QueryLanguage;
 import org.openrdf.query.Update;
 import org.openrdf.query.UpdateExecutionException;
 import org.openrdf.query.impl.DatasetImpl;
+import org.openrdf.query.parser.ParsedUpdate;
 import org.openrdf.repository.Repository;
 import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.RepositoryException;
 import org.openrdf.repository.RepositoryResult;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.repository.sail.SailRepositoryConnection;
+import org.openrdf.repository.sail.SailUpdate;
+import org.openrdf.repository.util.RDFInserter;
 import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandlerException;
 import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.RDFParser;
 import org.openrdf.rio.RDFWriter;
 import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.RDFHandlerWrapper;
+import org.openrdf.rio.helpers.StatementCollector;
+import org.openrdf.rio.ntriples.NTriplesUtil;
+import org.openrdf.sail.NotifyingSailConnection;
+import org.openrdf.sail.SailConnection;
+import org.openrdf.sail.SailConnectionListener;
 
 import com.semagia.cassa.common.MediaType;
 import com.semagia.cassa.common.dm.IWritableRepresentation;
 import com.semagia.cassa.common.dm.RemovalStatus;
+import com.semagia.cassa.server.store.BulkLoad;
+import com.semagia.cassa.server.store.BulkLoadException;
 import com.semagia.cassa.server.store.GraphMismatchException;
 import com.semagia.cassa.server.store.GraphNotExistsException;
+import com.semagia.cassa.server.store.IGraph;
 import com.semagia.cassa.server.store.IGraphInfo;
 import com.semagia.cassa.server.store.IStore;
 import com.semagia.cassa.server.store.ParseException;
@@ -56,6 +76,8 @@ import com.semagia.cassa.server.store.QueryException;
 import com.semagia.cassa.server.store.StoreException;
 import com.semagia.cassa.server.store.UnsupportedMediaTypeException;
 import com.semagia.cassa.server.store.impl.DefaultGraphInfo;
+import com.semagia.cassa.server.store.impl.ModificationTracker;
+import com.semagia.cassa.server.utils.Histogram;
 
 /**
  * {@link IStore} implementation that uses a Sesame repository.
@@ -66,11 +88,236 @@ public final class SesameStore implements IStore {
 
     private static Resource[] _ALL_CONTEXTS = new Resource[0];
     private static MediaType _TEXT_PLAIN = MediaType.valueOf("text/plain");
+    private static final long _DEFAULT_MAX_CONNECTION_LIFETIME = 10 * 60 * 1000;
+    private static final String _STAGING_PREFIX = "urn:x-cassa-staging:";
+    private static final int _DEFAULT_UPDATE_CACHE_SIZE = 128;
+    private static final int _QUERY_BUFFER_SIZE = 8192;
 
     private final Repository _repository;
+    private final GraphIndex _graphIndex;
+    private final ModificationTracker _modifications;
+    private final ConnectionLeases _leases;
+    private final UpdateCache _updateCache;
+    private volatile boolean _stagedReplacement;
 
+    /**
+     * Creates a store which keeps the modification times of the graphs in 
+     * memory.
+     *
+     * @param repository The repository.
+     */
     public SesameStore(final Repository repository) {
+        this(repository, new ModificationTracker());
+    }
+
+    /**
+     * Creates a store which uses the provided tracker to maintain the 
+     * modification times of the graphs.
+     *
+     * @param repository The repository.
+     * @param modificationTracker The modification tracker, i.e. a tracker 
+     *          which persists the modification times.
+     */
+    public SesameStore(final Repository repository, final ModificationTracker modificationTracker) {
+        this(repository, modificationTracker, _DEFAULT_MAX_CONNECTION_LIFETIME);
+    }
+
+    /**
+     * Creates a store which uses the provided tracker to maintain the 
+     * modification times of the graphs.
+     * 
+     * Connections which are kept open until a graph is serialized are closed 
+     * if they are not used within the provided lifetime; exports which take
+     * longer are cancelled.
+     *
+     * @param repository The repository.
+     * @param modificationTracker The modification tracker, i.e. a tracker 
+     *          which persists the modification times.
+     * @param maxConnectionLifetime The max. lifetime of a connection which 
+     *          is used to serialize a graph (in milliseconds).
+     */
+    public SesameStore(final Repository repository, final ModificationTracker modificationTracker, 
+            final long maxConnectionLifetime) {
+        if (modificationTracker == null) {
+            throw new IllegalArgumentException("The modification tracker must not be null");
+        }
         _repository = repository;
+        _modifications = modificationTracker;
+        _leases = new ConnectionLeases(maxConnectionLifetime);
+        _updateCache = new UpdateCache(_DEFAULT_UPDATE_CACHE_SIZE);
+        _graphIndex = new GraphIndex(_STAGING_PREFIX);
+        try {
+            rebuildGraphIndex();
+        }
+        catch (StoreException ex) {
+            throw new IllegalStateException("Cannot read the graphs of the repository", ex);
+        }
+    }
+
+    /**
+     * Reads all graphs from the repository and rebuilds the internal graph index.
+     * 
+     * This method should be called if the repository was modified
+     * without using this store.
+     *
+     * @throws StoreException In case of an error.
+     */
+    public void rebuildGraphIndex() throws StoreException {
+        final RepositoryConnection conn = getConnection();
+        try {
+            _graphIndex.rebuild(conn);
+        }
+        catch (RepositoryException ex) {
+            throw new StoreException(ex);
+        }
+        finally {
+            closeConnection(conn);
+        }
+    }
+
+    /**
+     * Returns how many graph existence checks were answered by the graph index.
+     *
+     * @return The number of graph index hits.
+     */
+    public long getGraphIndexHits() {
+        return _graphIndex.getHits();
+    }
+
+    /**
+     * Returns how many graph existence checks required a repository lookup.
+     *
+     * @return The number of graph index misses.
+     */
+    public long getGraphIndexMisses() {
+        return _graphIndex.getMisses();
+    }
+
+    /**
+     * Sets the max. number of parsed SPARQL Update operations which are kept
+     * in memory (default: 128).
+     * 
+     * {@code 0} disables the cache.
+     *
+     * @param size The max. number of cached operations.
+     */
+    public void setUpdateCacheSize(final int size) {
+        _updateCache.setCapacity(size);
+    }
+
+    /**
+     * Returns the max. number of parsed SPARQL Update operations which are 
+     * kept in memory.
+     *
+     * @return The max. number of cached operations.
+     */
+    public int getUpdateCacheSize() {
+        return _updateCache.getCapacity();
+    }
+
+    /**
+     * Returns how many SPARQL Update operations were taken from the cache.
+     *
+     * @return The number of update cache hits.
+     */
+    public long getUpdateCacheHits() {
+        return _updateCache.getHits();
+    }
+
+    /**
+     * Returns how many SPARQL Update operations had to be parsed.
+     *
+     * @return The number of update cache misses.
+     */
+    public long getUpdateCacheMisses() {
+        return _updateCache.getMisses();
+    }
+
+    /**
+     * Returns the parse times of the SPARQL Update operations which were 
+     * not found in the cache (in microseconds).
+     *
+     * @return The parse times.
+     */
+    public Histogram getUpdateParseTimes() {
+        return _updateCache.getParseTimes();
+    }
+
+    /**
+     * Enables or disables the staged replacement of graphs.
+     * <p>
+     * If enabled, {@link #createOrReplaceGraph(URI, InputStream, URI, MediaType)}
+     * parses the input into a private staging context first, so the live 
+     * graph is not touched while the input is parsed and a syntax error 
+     * leaves the graph unchanged. Serializations of the default graph may 
+     * include the staged statements until the second transaction was 
+     * committed.
+     * </p>
+     * <p>
+     * Sesame cannot rename a context, therefore the second transaction 
+     * clears the graph and copies every staged statement into it. The copy 
+     * is {@code O(n)} in the size of the new graph and holds a write 
+     * transaction for its whole duration. Staging shortens the transaction
+     * by the parse time only; the store-level work is roughly doubled since 
+     * each statement is written twice and the staging context is cleared.
+     * </p>
+     * <p>
+     * The default graph is always replaced within one transaction.
+     * Staged replacement is disabled by default.
+     * </p>
+     *
+     * @param enable {@code true} to enable staged replacement, {@code false} to disable it.
+     */
+    public void setStagedReplacement(final boolean enable) {
+        _stagedReplacement = enable;
+    }
+
+    /**
+     * Returns if graphs are replaced via a staging context.
+     *
+     * @return {@code true} if staged replacement is enabled, otherwise {@code false}.
+     * @see #setStagedReplacement(boolean)
+     */
+    public boolean isStagedReplacement() {
+        return _stagedReplacement;
+    }
+
+    /**
+     * Returns the number of connections which are kept open until a graph
+     * is serialized.
+     *
+     * @return The number of connection leases.
+     */
+    public int getConnectionLeases() {
+        return _leases.size();
+    }
+
+    /**
+     * Returns the number of connections which exceeded the max. lifetime.
+     *
+     * @return The number of leaked connections.
+     */
+    public long getLeakedConnections() {
+        return _leases.getLeaked();
+    }
+
+    /**
+     * Returns the number of leaked connections which were closed.
+     *
+     * @return The number of reclaimed connections.
+     */
+    public long getReclaimedConnections() {
+        return _leases.getReclaimed();
+    }
+
+    /**
+     * Returns the number of exports which were cancelled because the client
+     * disconnected or because the export exceeded the max. lifetime.
+     *
+     * @return The number of cancelled exports.
+     */
+    public long getCancelledExports() {
+        return _leases.getCancelled();
     }
 
     private RepositoryConnection getConnection() throws StoreException {
@@ -105,7 +352,7 @@ public final class SesameStore implements IStore {
      */
     @Override
     public long getLastModification() {
-        return -1; //TODO
+        return _modifications.getLastModification();
     }
 
     /* (non-Javadoc)
@@ -125,13 +372,18 @@ public final class SesameStore implements IStore {
         }
     }
 
-    private Iterable<IGraphInfo> getGraphInfos(final RepositoryConnection conn) throws OpenRDFException {
+    private Iterable<IGraphInfo> getGraphInfos(final RepositoryConnection conn) throws OpenRDFException, StoreException {
         final List<IGraphInfo> uris = new ArrayList<IGraphInfo>();
         RepositoryResult<Resource> res = null;
         try {
             res  = conn.getContextIDs();
             while(res.hasNext()) {
-                uris.add(new GraphInfo(URI.create(res.next().stringValue())));
+                final Resource context = res.next();
+                if (_graphIndex.isExcluded(context)) {
+                    continue;
+                }
+                final URI graphURI = URI.create(context.stringValue());
+                uris.add(new GraphInfo(graphURI, _modifications.getLastModification(graphURI)));
             }
         }
         finally {
@@ -149,26 +401,53 @@ public final class SesameStore implements IStore {
     public IWritableRepresentation getGraph(final URI graphURI, MediaType mediaType)
             throws GraphNotExistsException, UnsupportedMediaTypeException,
             StoreException {
+        return open(graphURI).getRepresentation(mediaType);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.IStore#openGraph(java.net.URI)
+     */
+    @Override
+    public IGraph openGraph(final URI graphURI) throws GraphNotExistsException,
+            StoreException {
+        return open(graphURI);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.IStore#getSubject(java.net.URI, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IWritableRepresentation getSubject(final URI graphURI, final URI subjectURI, 
+            final MediaType mediaType) throws GraphNotExistsException, 
+            UnsupportedMediaTypeException, StoreException {
+        return open(graphURI).getRepresentation(mediaType, asResource(subjectURI));
+    }
+
+    /**
+     * Returns a graph which keeps the connection which was used to check
+     * the existence of the graph for the serialization.
+     *
+     * @param graphURI The graph URI.
+     * @return The graph.
+     * @throws GraphNotExistsException In case the graph does not exist.
+     * @throws StoreException In case of an error.
+     */
+    private Graph open(final URI graphURI) throws GraphNotExistsException, StoreException {
         final RepositoryConnection conn = getConnection();
+        boolean ok = false;
         try {
             ensureGraphExists(conn, graphURI);
+            ok = true;
         }
         catch (OpenRDFException ex) {
-            closeConnection(conn);
             throw new StoreException(ex);
         }
-        if (mediaType == null) {
-            mediaType = MediaType.RDF_XML;
-        }
-        RDFFormat format = null;
-        try {
-            format = SesameUtils.asWritableRDFFormat(mediaType);
-        }
-        catch (UnsupportedMediaTypeException ex) {
-            closeConnection(conn);
-            throw ex;
+        finally {
+            if (!ok) {
+                closeConnection(conn);
+            }
         }
-        return new WritableRepresentation(conn, format, mediaType, getContext(graphURI));
+        return new Graph(_leases.lease(conn), graphURI, new GraphInfo(graphURI, _modifications.getLastModification(graphURI)));
     }
 
     /* (non-Javadoc)
@@ -196,21 +475,30 @@ public final class SesameStore implements IStore {
         if (graphURI == IStore.DEFAULT_GRAPH) {
             return true;
         }
-        RepositoryResult<Resource> res = null;
-        try {
-            res  = conn.getContextIDs();
-            while(res.hasNext()) {
-                if (graphURI.equals(URI.create(res.next().stringValue()))) {
-                    return true;
-                }
-            }
+        return _graphIndex.contains(conn, asResource(graphURI));
+    }
+
+    /**
+     * Updates the graph index after the provided graph was modified.
+     * 
+     * Statements which are added to the default graph are added to the 
+     * null context and do not affect the named graphs. Removals from the 
+     * default graph may affect all graphs, the graph index is rebuilt in 
+     * this case.
+     *
+     * @param conn The connection to use.
+     * @param graphURI The modified graph.
+     * @param removal Indicates if statements may have been removed.
+     * @throws RepositoryException In case of an error.
+     */
+    private void updateGraphIndex(final RepositoryConnection conn, 
+            final URI graphURI, final boolean removal) throws RepositoryException {
+        if (graphURI != IStore.DEFAULT_GRAPH) {
+            _graphIndex.sync(conn, asResource(graphURI));
         }
-        finally {
-            if (res != null) {
-                res.close();
-            }
+        else if (removal) {
+            _graphIndex.rebuild(conn);
         }
-        return false;
     }
 
     /* (non-Javadoc)
@@ -229,7 +517,7 @@ public final class SesameStore implements IStore {
         finally {
             closeConnection(conn);
         }
-        return new GraphInfo(graphURI);
+        return new GraphInfo(graphURI, _modifications.getLastModification(graphURI));
     }
 
     /* (non-Javadoc)
@@ -244,6 +532,13 @@ public final class SesameStore implements IStore {
             conn.setAutoCommit(false);
             conn.clear(getContext(graphURI));
             conn.commit();
+            if (graphURI == IStore.DEFAULT_GRAPH) {
+                _graphIndex.rebuild(conn);
+            }
+            else {
+                _graphIndex.remove(asResource(graphURI));
+            }
+            _modifications.remove(graphURI);
         }
         catch (OpenRDFException ex) {
             rollbackConnection(conn);
@@ -255,6 +550,51 @@ public final class SesameStore implements IStore {
         return RemovalStatus.IMMEDIATELY;
     }
 
+    /**
+     * Removes up to {@code batchSize} statements of the provided graph 
+     * within one transaction.
+     * 
+     * If the graph has no statements left, it is removed from the store.
+     *
+     * @param graphURI The graph URI, must not be the {@link IStore#DEFAULT_GRAPH}.
+     * @param batchSize The max. number of statements to remove.
+     * @return The number of removed statements.
+     * @throws StoreException In case of an error.
+     */
+    int deleteStatements(final URI graphURI, final int batchSize) throws StoreException {
+        final Resource context = asResource(graphURI);
+        final List<Statement> batch = new ArrayList<Statement>(batchSize);
+        final RepositoryConnection conn = getConnection();
+        try {
+            final RepositoryResult<Statement> result = conn.getStatements(null, null, null, false, context);
+            try {
+                while (batch.size() < batchSize && result.hasNext()) {
+                    batch.add(result.next());
+                }
+            }
+            finally {
+                result.close();
+            }
+            if (!batch.isEmpty()) {
+                conn.setAutoCommit(false);
+                conn.remove(batch, context);
+                conn.commit();
+            }
+            if (batch.size() < batchSize) {
+                _graphIndex.remove(context);
+                _modifications.remove(graphURI);
+            }
+            return batch.size();
+        }
+        catch (OpenRDFException ex) {
+            rollbackConnection(conn);
+            throw new StoreException(ex);
+        }
+        finally {
+            closeConnection(conn);
+        }
+    }
+
     /* (non-Javadoc)
      * @see com.semagia.cassa.server.store.IStore#updateGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
      */
@@ -268,6 +608,8 @@ public final class SesameStore implements IStore {
             conn.setAutoCommit(false);
             conn.add(in, baseURI.toString(), SesameUtils.asReadableRDFFormat(mediaType, MediaType.RDF_XML), getContext(graphURI));
             conn.commit();
+            updateGraphIndex(conn, graphURI, false);
+            _modifications.touch(graphURI);
         }
         catch (RDFParseException ex) {
             rollbackConnection(conn);
@@ -280,7 +622,7 @@ public final class SesameStore implements IStore {
         finally {
             closeConnection(conn);
         }
-        return new GraphInfo(graphURI);
+        return new GraphInfo(graphURI, _modifications.getLastModification(graphURI));
     }
 
     /* (non-Javadoc)
@@ -296,6 +638,8 @@ public final class SesameStore implements IStore {
             conn.setAutoCommit(false);
             conn.add(in, baseURI.toString(), SesameUtils.asReadableRDFFormat(mediaType, MediaType.RDF_XML), getContext(graphURI));
             conn.commit();
+            updateGraphIndex(conn, graphURI, false);
+            _modifications.touch(graphURI);
         }
         catch (RDFParseException ex) {
             rollbackConnection(conn);
@@ -308,7 +652,7 @@ public final class SesameStore implements IStore {
         finally {
             closeConnection(conn);
         }
-        return new GraphInfo(graphURI);
+        return new GraphInfo(graphURI, _modifications.getLastModification(graphURI));
     }
 
     /* (non-Javadoc)
@@ -319,6 +663,20 @@ public final class SesameStore implements IStore {
             final URI baseURI, final MediaType mediaType)
             throws UnsupportedMediaTypeException, IOException, StoreException {
         final RDFFormat format = SesameUtils.asReadableRDFFormat(mediaType, MediaType.RDF_XML);
+        if (_stagedReplacement && graphURI != IStore.DEFAULT_GRAPH) {
+            replaceGraphStaged(graphURI, in, baseURI, format);
+        }
+        else {
+            replaceGraph(graphURI, in, baseURI, format);
+        }
+        return new GraphInfo(graphURI, _modifications.getLastModification(graphURI));
+    }
+
+    /**
+     * Replaces the graph within one transaction.
+     */
+    private void replaceGraph(final URI graphURI, final InputStream in,
+            final URI baseURI, final RDFFormat format) throws IOException, StoreException {
         final Resource[] contexts = getContext(graphURI);
         final RepositoryConnection conn = getConnection();
         try {
@@ -326,6 +684,8 @@ public final class SesameStore implements IStore {
             conn.clear(contexts);
             conn.add(in, baseURI.toString(), format, contexts);
             conn.commit();
+            updateGraphIndex(conn, graphURI, true);
+            _modifications.touch(graphURI);
         }
         catch (RDFParseException ex) {
             rollbackConnection(conn);
@@ -338,7 +698,152 @@ public final class SesameStore implements IStore {
         finally {
             closeConnection(conn);
         }
-        return new GraphInfo(graphURI);
+    }
+
+    /**
+     * Parses the input into a staging context and replaces the statements 
+     * of the graph with the statements of the staging context in a second
+     * transaction.
+     * 
+     * The second transaction copies all staged statements one by one, 
+     * i.e. it is {@code O(n)} and holds the write transaction of the 
+     * connection until all statements were copied.
+     */
+    private void replaceGraphStaged(final URI graphURI, final InputStream in,
+            final URI baseURI, final RDFFormat format) throws IOException, StoreException {
+        final Resource staging = _repository.getValueFactory().createURI(_STAGING_PREFIX + UUID.randomUUID().toString());
+        final Resource context = asResource(graphURI);
+        final RepositoryConnection conn = getConnection();
+        try {
+            try {
+                conn.setAutoCommit(false);
+                conn.add(in, baseURI.toString(), format, staging);
+                conn.commit();
+            }
+            catch (RDFParseException ex) {
+                rollbackConnection(conn);
+                throw new ParseException(ex.getMessage(), ex);
+            }
+            catch (OpenRDFException ex) {
+                rollbackConnection(conn);
+                throw new StoreException(ex);
+            }
+            RepositoryResult<Statement> res = null;
+            try {
+                conn.clear(context);
+                res = conn.getStatements(null, null, null, false, staging);
+                conn.add(res, context);
+                res.close();
+                res = null;
+                conn.clear(staging);
+                conn.commit();
+                updateGraphIndex(conn, graphURI, true);
+            }
+            catch (OpenRDFException ex) {
+                if (res != null) {
+                    try {
+                        res.close();
+                    }
+                    catch (RepositoryException e) {
+                        // noop.
+                    }
+                }
+                rollbackConnection(conn);
+                clearStaging(conn, staging);
+                throw new StoreException(ex);
+            }
+            _modifications.touch(graphURI);
+        }
+        finally {
+            closeConnection(conn);
+        }
+    }
+
+    /**
+     * Removes a staging context after a failed swap.
+     */
+    private static void clearStaging(final RepositoryConnection conn, final Resource staging) {
+        try {
+            conn.clear(staging);
+            conn.commit();
+        }
+        catch (RepositoryException ex) {
+            // noop, the staging context is ignored by the graph index and getGraphInfos
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.IStore#loadGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType, com.semagia.cassa.server.store.BulkLoad)
+     */
+    @Override
+    public IGraphInfo loadGraph(final URI graphURI, final InputStream in,
+            final URI baseURI, final MediaType mediaType, final BulkLoad bulkLoad)
+            throws UnsupportedMediaTypeException, IOException, ParseException,
+            BulkLoadException, StoreException {
+        if (bulkLoad == null) {
+            throw new IllegalArgumentException("The bulk load must not be null");
+        }
+        final RDFFormat format = SesameUtils.asReadableRDFFormat(mediaType, MediaType.RDF_XML);
+        final URI uri = graphURI != null ? graphURI : baseURI.resolve(UUID.randomUUID().toString());
+        final Resource[] contexts = getContext(uri);
+        final RepositoryConnection conn = getConnection();
+        try {
+            if (graphURI != null && !bulkLoad.isReplace()) {
+                ensureGraphExists(conn, uri);
+            }
+            conn.setAutoCommit(false);
+            if (bulkLoad.isReplace()) {
+                conn.clear(contexts);
+            }
+            final RDFParser parser = Rio.createParser(format, _repository.getValueFactory());
+            parser.setRDFHandler(new ChunkingHandler(conn, contexts, bulkLoad));
+            parser.parse(in, baseURI.toString());
+        }
+        catch (RDFParseException ex) {
+            rollbackConnection(conn);
+            throw bulkLoadFailed(bulkLoad, new ParseException(ex.getMessage(), ex));
+        }
+        catch (RDFHandlerException ex) {
+            rollbackConnection(conn);
+            throw bulkLoadFailed(bulkLoad, new StoreException(ex.getCause() != null ? ex.getCause() : ex));
+        }
+        catch (OpenRDFException ex) {
+            rollbackConnection(conn);
+            throw bulkLoadFailed(bulkLoad, new StoreException(ex));
+        }
+        catch (IOException ex) {
+            rollbackConnection(conn);
+            if (bulkLoad.getCommittedChunks() > 0) {
+                throw new BulkLoadException(bulkLoad, ex);
+            }
+            throw ex;
+        }
+        finally {
+            try {
+                if (bulkLoad.getCommittedChunks() > 0) {
+                    updateGraphIndex(conn, uri, bulkLoad.isReplace());
+                    _modifications.touch(uri);
+                }
+            }
+            catch (RepositoryException ex) {
+                throw new StoreException(ex);
+            }
+            finally {
+                closeConnection(conn);
+            }
+        }
+        return new GraphInfo(uri, _modifications.getLastModification(uri));
+    }
+
+    /**
+     * Returns the exception to throw if the bulk load failed.
+     *
+     * @param bulkLoad The bulk load.
+     * @param ex The original error.
+     * @return {@code ex} if nothing was committed, otherwise a {@link BulkLoadException}.
+     */
+    private static StoreException bulkLoadFailed(final BulkLoad bulkLoad, final StoreException ex) {
+        return bulkLoad.getCommittedChunks() == 0 ? ex : new BulkLoadException(bulkLoad, ex);
     }
 
     /* (non-Javadoc)
@@ -348,28 +853,56 @@ public final class SesameStore implements IStore {
     public boolean modifyGraph(final URI graphURI, final InputStream in, final URI baseURI,
             final MediaType mediaType) throws UnsupportedMediaTypeException,
             IOException, StoreException, QueryException, GraphMismatchException {
+        return modifyGraph(graphURI, in, baseURI, mediaType, Collections.<String, String>emptyMap());
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.IStore#modifyGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType, java.util.Map)
+     */
+    @Override
+    public boolean modifyGraph(final URI graphURI, final InputStream in, final URI baseURI,
+            final MediaType mediaType, final Map<String, String> bindings) throws UnsupportedMediaTypeException,
+            IOException, StoreException, QueryException, GraphMismatchException {
         if (mediaType != null && !(MediaType.SPARQL_UPDATE.equals(mediaType) || _TEXT_PLAIN.isCompatible(mediaType))) {
             throw new UnsupportedMediaTypeException(mediaType, MediaType.SPARQL_QUERY);
         }
-        final Writer writer = new StringWriter();
-        char[] buffer = new char[1024];
-        final Reader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
-        int n;
-        while ((n = reader.read(buffer)) != -1) {
-            writer.write(buffer, 0, n);
-        }
+        final String query = read(in);
         boolean result = false;
         final RepositoryConnection conn = getConnection();
+        final NotifyingSailConnection sailConn = getNotifyingSailConnection(conn);
+        final ContextCollector contexts = new ContextCollector();
+        if (sailConn != null) {
+            sailConn.addConnectionListener(contexts);
+        }
         try {
             conn.setAutoCommit(false);
-            final Update update = conn.prepareUpdate(QueryLanguage.SPARQL, writer.toString(), baseURI.toASCIIString());
+            final Update update = prepareUpdate(conn, query, baseURI.toASCIIString());
+            final ValueFactory vf = _repository.getValueFactory();
+            for (Map.Entry<String, String> binding: bindings.entrySet()) {
+                try {
+                    update.setBinding(binding.getKey(), NTriplesUtil.parseValue(binding.getValue(), vf));
+                }
+                catch (IllegalArgumentException ex) {
+                    throw new QueryException("Illegal value for binding '" + binding.getKey() + "': " + binding.getValue(), ex);
+                }
+            }
             if (graphURI != IStore.DEFAULT_GRAPH) {
                 final DatasetImpl ds = new DatasetImpl();
-                ds.addDefaultGraph(_repository.getValueFactory().createURI(graphURI.toString()));
+                ds.addDefaultGraph(vf.createURI(graphURI.toString()));
                 update.setDataset(ds);
             }
             update.execute();
             conn.commit();
+            if (sailConn != null) {
+                for (Resource context: contexts.getContexts()) {
+                    _graphIndex.sync(conn, context);
+                }
+            }
+            else {
+                // The update may have touched any graph, i.e. GRAPH <other> { ... }
+                _graphIndex.rebuild(conn);
+            }
+            _modifications.touch(graphURI);
             result = true;
         }
         catch (RepositoryException ex) {
@@ -382,11 +915,71 @@ public final class SesameStore implements IStore {
             throw new QueryException(ex.getMessage(), ex);
         }
         finally {
+            if (sailConn != null) {
+                sailConn.removeConnectionListener(contexts);
+            }
             closeConnection(conn);
         }
         return result;
     }
 
+    /**
+     * Returns the underlying Sail connection if it reports changed statements.
+     *
+     * @param conn The repository connection.
+     * @return The Sail connection or {@code null} if the connection does 
+     *          not belong to a {@link SailRepository} or if the Sail does 
+     *          not support listeners.
+     */
+    private static NotifyingSailConnection getNotifyingSailConnection(final RepositoryConnection conn) {
+        if (conn instanceof SailRepositoryConnection) {
+            final SailConnection sailConn = ((SailRepositoryConnection) conn).getSailConnection();
+            if (sailConn instanceof NotifyingSailConnection) {
+                return (NotifyingSailConnection) sailConn;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the query from the provided input stream.
+     *
+     * @param in The input stream (UTF-8 encoded).
+     * @return The query.
+     * @throws IOException In case of an I/O error.
+     */
+    private static String read(final InputStream in) throws IOException {
+        final StringBuilder query = new StringBuilder(_QUERY_BUFFER_SIZE);
+        final char[] buffer = new char[_QUERY_BUFFER_SIZE];
+        final Reader reader = new InputStreamReader(in, "UTF-8");
+        int n;
+        while ((n = reader.read(buffer)) != -1) {
+            query.append(buffer, 0, n);
+        }
+        return query.toString();
+    }
+
+    /**
+     * Returns an update operation for the provided query.
+     * 
+     * If the connection belongs to a {@link SailRepository}, the parsed query
+     * is taken from the update cache.
+     *
+     * @param conn The connection.
+     * @param query The SPARQL Update query.
+     * @param baseURI The base URI.
+     * @return An update operation.
+     * @throws RepositoryException In case of an error.
+     * @throws MalformedQueryException In case of a syntax error.
+     */
+    private Update prepareUpdate(final RepositoryConnection conn, final String query, 
+            final String baseURI) throws RepositoryException, MalformedQueryException {
+        if (conn instanceof SailRepositoryConnection) {
+            return new CachedUpdate(_updateCache.get(query, baseURI), (SailRepositoryConnection) conn);
+        }
+        return conn.prepareUpdate(QueryLanguage.SPARQL, query, baseURI);
+    }
+
     /* (non-Javadoc)
      * @see com.semagia.cassa.server.store.IStore#deleteSubject(java.net.URI, java.net.URI)
      */
@@ -399,6 +992,8 @@ public final class SesameStore implements IStore {
             conn.setAutoCommit(false);
             conn.remove(asResource(subjectURI), null, null, getContext(graphURI));
             conn.commit();
+            updateGraphIndex(conn, graphURI, true);
+            _modifications.touch(graphURI);
         }
         catch (OpenRDFException ex) {
             rollbackConnection(conn);
@@ -425,6 +1020,8 @@ public final class SesameStore implements IStore {
             conn.remove(asResource(subjectURI), null, null, getContext(graphURI));
             conn.add(in, baseURI.toString(), format, contexts);
             conn.commit();
+            updateGraphIndex(conn, graphURI, true);
+            _modifications.touch(graphURI);
         }
         catch (RDFParseException ex) {
             rollbackConnection(conn);
@@ -437,7 +1034,86 @@ public final class SesameStore implements IStore {
         finally {
             closeConnection(conn);
         }
-        return new GraphInfo(graphURI);
+        return new GraphInfo(graphURI, _modifications.getLastModification(graphURI));
+    }
+
+    /**
+     * Parses the input stream into a list of statements.
+     *
+     * @param in The input stream to read the statements from.
+     * @param baseURI The base URI to resolve relative URIs against.
+     * @param mediaType The media type of the input stream.
+     * @return The statements.
+     * @throws UnsupportedMediaTypeException In case the media type isn't supported.
+     * @throws IOException In case of an I/O error.
+     * @throws ParseException In case of a parsing error, i.e. syntax error.
+     * @throws StoreException In case of an error.
+     */
+    List<Statement> parse(final InputStream in, final URI baseURI, 
+            final MediaType mediaType) throws UnsupportedMediaTypeException, 
+            IOException, ParseException, StoreException {
+        final RDFParser parser = Rio.createParser(SesameUtils.asReadableRDFFormat(mediaType, MediaType.RDF_XML), 
+                _repository.getValueFactory());
+        final List<Statement> statements = new ArrayList<Statement>();
+        parser.setRDFHandler(new StatementCollector(statements));
+        try {
+            parser.parse(in, baseURI.toString());
+        }
+        catch (RDFParseException ex) {
+            throw new ParseException(ex.getMessage(), ex);
+        }
+        catch (RDFHandlerException ex) {
+            throw new StoreException(ex);
+        }
+        return statements;
+    }
+
+    /**
+     * Applies the provided writes within one transaction.
+     * 
+     * Either all writes are applied or none.
+     *
+     * @param writes The writes to apply in the provided order.
+     * @return The metadata of the modified graphs, in the order of the writes.
+     * @throws StoreException In case of an error.
+     */
+    List<IGraphInfo> commitBatch(final List<StatementWrite> writes) throws StoreException {
+        final Set<URI> graphURIs = new LinkedHashSet<URI>();
+        boolean defaultGraphRemoval = false;
+        final RepositoryConnection conn = getConnection();
+        try {
+            conn.setAutoCommit(false);
+            for (StatementWrite write: writes) {
+                final URI graphURI = write.getGraphURI();
+                final Resource[] contexts = getContext(graphURI);
+                if (write.getSubjectURI() != null) {
+                    conn.remove(asResource(write.getSubjectURI()), null, null, contexts);
+                    defaultGraphRemoval |= graphURI == IStore.DEFAULT_GRAPH;
+                }
+                conn.add(write.getStatements(), contexts);
+                graphURIs.add(graphURI);
+            }
+            conn.commit();
+            for (URI graphURI: graphURIs) {
+                updateGraphIndex(conn, graphURI, defaultGraphRemoval);
+            }
+        }
+        catch (OpenRDFException ex) {
+            rollbackConnection(conn);
+            throw new StoreException(ex);
+        }
+        finally {
+            closeConnection(conn);
+        }
+        for (URI graphURI: graphURIs) {
+            _modifications.touch(graphURI);
+        }
+        final List<IGraphInfo> infos = new ArrayList<IGraphInfo>(writes.size());
+        for (StatementWrite write: writes) {
+            final URI graphURI = write.getGraphURI();
+            infos.add(new GraphInfo(graphURI, _modifications.getLastModification(graphURI)));
+        }
+        return infos;
     }
 
     /**
@@ -475,28 +1151,231 @@ public final class SesameStore implements IStore {
     }
 
 
+    /**
+     * Collects the contexts of the added and removed statements.
+     */
+    private static final class ContextCollector implements SailConnectionListener {
+
+        private final Set<Resource> _contexts;
+
+        ContextCollector() {
+            _contexts = new HashSet<Resource>();
+        }
+
+        /**
+         * Returns the contexts of the changed statements, the null context
+         * is not reported.
+         */
+        Set<Resource> getContexts() {
+            return _contexts;
+        }
+
+        /* (non-Javadoc)
+         * @see org.openrdf.sail.SailConnectionListener#statementAdded(org.openrdf.model.Statement)
+         */
+        @Override
+        public void statementAdded(final Statement st) {
+            changed(st);
+        }
+
+        /* (non-Javadoc)
+         * @see org.openrdf.sail.SailConnectionListener#statementRemoved(org.openrdf.model.Statement)
+         */
+        @Override
+        public void statementRemoved(final Statement st) {
+            changed(st);
+        }
+
+        private void changed(final Statement st) {
+            if (st.getContext() != null) {
+                _contexts.add(st.getContext());
+            }
+        }
+    }
+
+
+    /**
+     * Update operation which executes a (cached) parsed update.
+     */
+    private static final class CachedUpdate extends SailUpdate {
+
+        CachedUpdate(final ParsedUpdate parsedUpdate, final SailRepositoryConnection conn) {
+            super(parsedUpdate, conn);
+        }
+    }
+
+
     private static class GraphInfo extends DefaultGraphInfo {
        
-        public GraphInfo(final URI uri) {
-            super(uri, SesameUtils.getWritableMediaTypes());
+        public GraphInfo(final URI uri, final long lastModification) {
+            super(uri, SesameUtils.getWritableMediaTypes(), lastModification);
         }
     }
 
 
-    private static class WritableRepresentation implements IWritableRepresentation {
+    /**
+     * {@link IGraph} implementation which owns a connection until the 
+     * serialization is requested.
+     */
+    private final class Graph implements IGraph {
+
+        private final ConnectionLeases.Lease _lease;
+        private final URI _graphURI;
+        private final IGraphInfo _info;
+        private boolean _released;
+
+        public Graph(final ConnectionLeases.Lease lease, final URI graphURI, 
+                final IGraphInfo info) {
+            _lease = lease;
+            _graphURI = graphURI;
+            _info = info;
+        }
+
+        /* (non-Javadoc)
+         * @see com.semagia.cassa.server.store.IGraph#getGraphInfo()
+         */
+        @Override
+        public IGraphInfo getGraphInfo() {
+            return _info;
+        }
+
+        /* (non-Javadoc)
+         * @see com.semagia.cassa.server.store.IGraph#getRepresentation(com.semagia.cassa.common.MediaType)
+         */
+        @Override
+        public IWritableRepresentation getRepresentation(MediaType mediaType)
+                throws UnsupportedMediaTypeException, StoreException {
+            return getRepresentation(mediaType, null);
+        }
+
+        /**
+         * Returns a representation of the graph or of the statements about
+         * the provided subject.
+         *
+         * @param mediaType The media type.
+         * @param subject The subject or {@code null} to serialize the graph.
+         * @return The representation.
+         * @throws UnsupportedMediaTypeException In case the media type is not available.
+         * @throws StoreException In case of an error.
+         */
+        IWritableRepresentation getRepresentation(MediaType mediaType, final Resource subject)
+                throws UnsupportedMediaTypeException, StoreException {
+            if (_released) {
+                throw new IllegalStateException("The representation was already requested");
+            }
+            if (mediaType == null) {
+                mediaType = MediaType.RDF_XML;
+            }
+            RDFFormat format = null;
+            try {
+                format = SesameUtils.asWritableRDFFormat(mediaType);
+            }
+            catch (UnsupportedMediaTypeException ex) {
+                close();
+                throw ex;
+            }
+            _released = true;
+            return new WritableRepresentation(_lease, format, mediaType, subject, getContext(_graphURI));
+        }
+
+        /* (non-Javadoc)
+         * @see com.semagia.cassa.server.store.IGraph#close()
+         */
+        @Override
+        public void close() throws StoreException {
+            if (!_released) {
+                _released = true;
+                try {
+                    _lease.release();
+                }
+                catch (RepositoryException ex) {
+                    throw new StoreException(ex);
+                }
+            }
+        }
+
+    }
+
+
+    /**
+     * Handler which adds the statements to the repository and commits 
+     * the transaction every {@link BulkLoad#getChunkSize()} statements.
+     */
+    private static final class ChunkingHandler extends RDFHandlerWrapper {
 
         private final RepositoryConnection _conn;
+        private final BulkLoad _bulkLoad;
+        private int _pending;
+
+        public ChunkingHandler(final RepositoryConnection conn, 
+                final Resource[] contexts, final BulkLoad bulkLoad) {
+            super(createInserter(conn, contexts));
+            _conn = conn;
+            _bulkLoad = bulkLoad;
+        }
+
+        private static RDFInserter createInserter(final RepositoryConnection conn, 
+                final Resource[] contexts) {
+            final RDFInserter inserter = new RDFInserter(conn);
+            inserter.enforceContext(contexts);
+            return inserter;
+        }
+
+        /* (non-Javadoc)
+         * @see org.openrdf.rio.helpers.RDFHandlerWrapper#handleStatement(org.openrdf.model.Statement)
+         */
+        @Override
+        public void handleStatement(final Statement st) throws RDFHandlerException {
+            super.handleStatement(st);
+            _pending++;
+            if (_pending >= _bulkLoad.getChunkSize()) {
+                commit();
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see org.openrdf.rio.helpers.RDFHandlerWrapper#endRDF()
+         */
+        @Override
+        public void endRDF() throws RDFHandlerException {
+            super.endRDF();
+            // Commit the remaining statements or (if the graph is replaced 
+            // by an empty graph) the removal of the statements 
+            if (_pending > 0 || _bulkLoad.getCommittedChunks() == 0) {
+                commit();
+            }
+        }
+
+        private void commit() throws RDFHandlerException {
+            try {
+                _conn.commit();
+            }
+            catch (RepositoryException ex) {
+                throw new RDFHandlerException(ex);
+            }
+            _bulkLoad.chunkCommitted(_pending);
+            _pending = 0;
+        }
+    }
+
+
+    private static class WritableRepresentation implements IWritableRepresentation {
+
+        private final ConnectionLeases.Lease _lease;
         private final RDFFormat _format;
         private final MediaType _mediaType;
+        private final Resource _subject;
         private Resource[] _resources;
 
-        public WritableRepresentation(final RepositoryConnection conn, 
+        public WritableRepresentation(final ConnectionLeases.Lease lease, 
                 final RDFFormat format, 
                 final MediaType mediaType,
+                final Resource subject,
                 final Resource[] resources) {
-            _conn = conn;
+            _lease = lease;
             _format = format;
             _mediaType = mediaType;
+            _subject = subject;
             _resources = resources;
         }
 
@@ -505,9 +1384,15 @@ public final class SesameStore implements IStore {
          */
         @Override
         public void write(final OutputStream out) throws IOException {
-            final RDFWriter writer = Rio.createWriter(_format, out);
+            final RepositoryConnection conn = _lease.begin();
+            final RDFWriter writer = Rio.createWriter(_format, _lease.guard(out));
             try {
-                _conn.export(writer, _resources);
+                if (_subject == null) {
+                    conn.export(_lease.guard(writer), _resources);
+                }
+                else {
+                    conn.exportStatements(_subject, null, null, false, _lease.guard(writer), _resources);
+                }
             }
             catch (OpenRDFException ex) {
                 if (ex.getCause() instanceof IOException) {
@@ -517,7 +1402,7 @@ public final class SesameStore implements IStore {
             }
             finally {
                 try {
-                    _conn.close();
+                    _lease.release();
                 }
                 catch (RepositoryException ex) {
                     throw new IOException(ex);
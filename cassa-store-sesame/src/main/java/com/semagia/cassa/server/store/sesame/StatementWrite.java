@@ -0,0 +1,61 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store.sesame;
+
+import java.net.URI;
+import java.util.List;
+
+import org.openrdf.model.Statement;
+
+/**
+ * Parsed write request which adds statements to a graph and optionally 
+ * removes the statements of a subject beforehand.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+class StatementWrite {
+
+    private final URI _graphURI;
+    private final URI _subjectURI;
+    private final List<Statement> _statements;
+
+    /**
+     * Creates an instance.
+     *
+     * @param graphURI The graph URI.
+     * @param subjectURI The subject to replace or {@code null} if the 
+     *          statements should be added to the graph.
+     * @param statements The statements to add.
+     */
+    public StatementWrite(final URI graphURI, final URI subjectURI, final List<Statement> statements) {
+        _graphURI = graphURI;
+        _subjectURI = subjectURI;
+        _statements = statements;
+    }
+
+    public URI getGraphURI() {
+        return _graphURI;
+    }
+
+    public URI getSubjectURI() {
+        return _subjectURI;
+    }
+
+    public List<Statement> getStatements() {
+        return _statements;
+    }
+
+}
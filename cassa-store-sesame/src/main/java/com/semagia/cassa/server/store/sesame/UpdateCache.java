@@ -0,0 +1,213 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store.sesame;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openrdf.query.Dataset;
+import org.openrdf.query.MalformedQueryException;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.algebra.UpdateExpr;
+import org.openrdf.query.parser.ParsedUpdate;
+import org.openrdf.query.parser.QueryParserUtil;
+
+import com.semagia.cassa.server.utils.Histogram;
+
+/**
+ * Bounded (LRU) cache of parsed SPARQL Update operations.
+ * <p>
+ * The operations are keyed by the query text and the base URI. Since the 
+ * algebra of an operation may be modified during evaluation, a copy of
+ * the cached operation is returned.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+final class UpdateCache {
+
+    private final Map<Key, ParsedUpdate> _cache;
+    private final AtomicLong _hits;
+    private final AtomicLong _misses;
+    private final Histogram _parseTimes;
+    private volatile int _capacity;
+
+    /**
+     * Creates a cache.
+     *
+     * @param capacity The max. number of cached operations.
+     */
+    @SuppressWarnings("serial")
+    public UpdateCache(final int capacity) {
+        setCapacity(capacity);
+        _cache = new LinkedHashMap<Key, ParsedUpdate>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Key, ParsedUpdate> eldest) {
+                return size() > _capacity;
+            }
+        };
+        _hits = new AtomicLong();
+        _misses = new AtomicLong();
+        _parseTimes = new Histogram();
+    }
+
+    /**
+     * Sets the max. number of cached operations.
+     * 
+     * {@code 0} disables the cache.
+     *
+     * @param capacity The capacity.
+     */
+    public void setCapacity(final int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("The capacity must not be negative");
+        }
+        _capacity = capacity;
+        if (_cache != null) {
+            synchronized (_cache) {
+                while (_cache.size() > capacity) {
+                    _cache.remove(_cache.keySet().iterator().next());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the max. number of cached operations.
+     *
+     * @return The capacity.
+     */
+    public int getCapacity() {
+        return _capacity;
+    }
+
+    /**
+     * Returns a parsed update operation.
+     *
+     * @param query The SPARQL Update query.
+     * @param baseURI The base URI.
+     * @return A parsed update which may be modified by the caller.
+     * @throws MalformedQueryException In case of a syntax error.
+     */
+    public ParsedUpdate get(final String query, final String baseURI) throws MalformedQueryException {
+        final Key key = new Key(query, baseURI);
+        ParsedUpdate update;
+        synchronized (_cache) {
+            update = _cache.get(key);
+        }
+        if (update != null) {
+            _hits.incrementAndGet();
+        }
+        else {
+            _misses.incrementAndGet();
+            final long start = System.nanoTime();
+            update = QueryParserUtil.parseUpdate(QueryLanguage.SPARQL, query, baseURI);
+            _parseTimes.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            if (_capacity > 0) {
+                synchronized (_cache) {
+                    _cache.put(key, update);
+                }
+            }
+        }
+        return copy(update);
+    }
+
+    private static ParsedUpdate copy(final ParsedUpdate update) {
+        final ParsedUpdate result = new ParsedUpdate(update.getNamespaces());
+        final Map<UpdateExpr, Dataset> datasets = update.getDatasetMapping();
+        for (UpdateExpr expr: update.getUpdateExprs()) {
+            final UpdateExpr clone = expr.clone();
+            result.addUpdateExpr(clone);
+            final Dataset dataset = datasets.get(expr);
+            if (dataset != null) {
+                result.map(clone, dataset);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of operations which were served from the cache.
+     * <p>
+     * The counter is cumulative since the creation of this cache and may be
+     * read concurrently to {@link #get(String, String)}.
+     * </p>
+     *
+     * @return The number of cache hits.
+     */
+    public long getHits() {
+        return _hits.get();
+    }
+
+    /**
+     * Returns the number of operations which had to be parsed.
+     * <p>
+     * The counter is cumulative since the creation of this cache and may be
+     * read concurrently to {@link #get(String, String)}. It includes 
+     * operations which were not cached since the capacity is {@code 0}.
+     * </p>
+     *
+     * @return The number of cache misses.
+     */
+    public long getMisses() {
+        return _misses.get();
+    }
+
+    /**
+     * Returns the histogram of the parse times (in microseconds).
+     *
+     * @return The parse times.
+     */
+    public Histogram getParseTimes() {
+        return _parseTimes;
+    }
+
+
+    private static final class Key {
+
+        private final String _query;
+        private final String _baseURI;
+        private final int _hashCode;
+
+        Key(final String query, final String baseURI) {
+            _query = query;
+            _baseURI = baseURI;
+            _hashCode = 31 * query.hashCode() + (baseURI == null ? 0 : baseURI.hashCode());
+        }
+
+        @Override
+        public int hashCode() {
+            return _hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return _hashCode == other._hashCode 
+                    && _query.equals(other._query)
+                    && (_baseURI == null ? other._baseURI == null : _baseURI.equals(other._baseURI));
+        }
+    }
+
+}
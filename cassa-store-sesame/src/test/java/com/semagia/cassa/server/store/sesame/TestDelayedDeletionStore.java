@@ -0,0 +1,131 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store.sesame;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.memory.MemoryStore;
+
+import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.common.dm.RemovalStatus;
+import com.semagia.cassa.server.store.GraphNotExistsException;
+import com.semagia.cassa.server.store.IGraphInfo;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link DelayedDeletionStore}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestDelayedDeletionStore extends TestCase {
+
+    private static final URI _GRAPH = URI.create("http://www.semagia.com/deleted-graph");
+    private static final MediaType _NTRIPLES = MediaType.valueOf("text/plain");
+
+    private Repository _repository;
+    private SesameStore _sesame;
+    private DelayedDeletionStore _store;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _repository = new SailRepository(new MemoryStore());
+        _repository.initialize();
+        _sesame = new SesameStore(_repository);
+        _sesame.createOrReplaceGraph(_GRAPH, ntriples(25), _GRAPH, _NTRIPLES);
+        _store = new DelayedDeletionStore(_sesame, 10, 20);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        _store.close();
+        _repository.shutDown();
+        super.tearDown();
+    }
+
+    private static InputStream ntriples(final int count) {
+        final StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            buf.append("<http://psi.example.org/s").append(i)
+                .append("> <http://psi.example.org/value> \"").append(i).append("\" .\n");
+        }
+        return new ByteArrayInputStream(buf.toString().getBytes());
+    }
+
+    private long size() throws Exception {
+        final RepositoryConnection conn = _repository.getConnection();
+        try {
+            return conn.size(_repository.getValueFactory().createURI(_GRAPH.toString()));
+        }
+        finally {
+            conn.close();
+        }
+    }
+
+    public void testIllegalConstructor() throws Exception {
+        try {
+            new DelayedDeletionStore(_sesame, 0);
+            fail("The constructor shouldn't accept batchSize < 1");
+        }
+        catch (IllegalArgumentException ex) {
+            // noop.
+        }
+    }
+
+    public void testDelayedDeletion() throws Exception {
+        assertEquals(RemovalStatus.DELAYED, _store.deleteGraph(_GRAPH));
+        assertFalse(_store.containsGraph(_GRAPH));
+        for (IGraphInfo info: _store.getGraphInfos()) {
+            assertFalse(_GRAPH.equals(info.getURI()));
+        }
+        try {
+            _store.getGraph(_GRAPH, MediaType.RDF_XML);
+            fail("Expected an exception for a deleted graph");
+        }
+        catch (GraphNotExistsException ex) {
+            // noop.
+        }
+        try {
+            _store.deleteGraph(_GRAPH);
+            fail("Expected an exception for a deleted graph");
+        }
+        catch (GraphNotExistsException ex) {
+            // noop.
+        }
+        _store.awaitDeletion(_GRAPH);
+        assertEquals(0, _store.getPendingDeletions());
+        assertEquals(0, size());
+        assertFalse(_sesame.containsGraph(_GRAPH));
+        assertEquals(25, _store.getReclaimedStatements());
+        assertEquals(1, _store.getReclaimedGraphs());
+        assertEquals(0, _store.getFailedDeletions());
+    }
+
+    public void testRecreateGraph() throws Exception {
+        assertEquals(RemovalStatus.DELAYED, _store.deleteGraph(_GRAPH));
+        _store.createOrReplaceGraph(_GRAPH, ntriples(5), _GRAPH, _NTRIPLES);
+        assertEquals(1, _store.getReclaimedGraphs());
+        assertTrue(_store.containsGraph(_GRAPH));
+        assertEquals(5, size());
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store.sesame;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.memory.MemoryStore;
+
+import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.server.store.ParseException;
+import com.semagia.cassa.server.store.StoreException;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link GroupCommitStore}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestGroupCommitStore extends TestCase {
+
+    private static final URI _GRAPH = URI.create("http://www.semagia.com/batched-graph");
+    private static final MediaType _NTRIPLES = MediaType.valueOf("text/plain");
+
+    private Repository _repository;
+    private GroupCommitStore _store;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _repository = new SailRepository(new MemoryStore());
+        _repository.initialize();
+        final SesameStore store = new SesameStore(_repository);
+        store.createOrReplaceGraph(_GRAPH, statement("http://psi.example.org/init", 0), _GRAPH, _NTRIPLES);
+        _store = new GroupCommitStore(store, 10, 100);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        _store.close();
+        _repository.shutDown();
+        super.tearDown();
+    }
+
+    private static InputStream statement(final String subject, final int value) {
+        return new ByteArrayInputStream(("<" + subject + "> <http://psi.example.org/value> \"" + value + "\" .").getBytes());
+    }
+
+    private long size() throws Exception {
+        final RepositoryConnection conn = _repository.getConnection();
+        try {
+            return conn.size(_repository.getValueFactory().createURI(_GRAPH.toString()));
+        }
+        finally {
+            conn.close();
+        }
+    }
+
+    public void testIllegalConstructor() throws Exception {
+        try {
+            new GroupCommitStore(new SesameStore(_repository), 10, 0);
+            fail("The constructor shouldn't accept maxBatchSize < 1");
+        }
+        catch (IllegalArgumentException ex) {
+            // noop.
+        }
+    }
+
+    public void testConcurrentWrites() throws Exception {
+        final AtomicInteger errors = new AtomicInteger();
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i=0; i<8; i++) {
+            final int n = i;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int j=0; j<20; j++) {
+                        final String subject = "http://psi.example.org/" + n + "-" + (j % 5);
+                        try {
+                            _store.createOrReplaceSubject(_GRAPH, URI.create(subject), 
+                                    statement(subject, j), _GRAPH, _NTRIPLES);
+                        }
+                        catch (Exception ex) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread thread: threads) {
+            thread.start();
+        }
+        for (Thread thread: threads) {
+            thread.join();
+        }
+        assertEquals(0, errors.get());
+        assertEquals(1 + 8 * 5, size());
+        assertTrue(_store.getBatchSizes().getCount() > 0);
+        assertTrue(_store.getBatchSizes().getCount() <= 8 * 20);
+        assertEquals(_store.getBatchSizes().getCount(), _store.getCommitLatencies().getCount());
+    }
+
+    public void testParseError() throws Exception {
+        try {
+            _store.updateGraph(_GRAPH, new ByteArrayInputStream("<".getBytes()), _GRAPH, _NTRIPLES);
+            fail("Expected a parse exception");
+        }
+        catch (ParseException ex) {
+            // noop.
+        }
+        assertEquals(1, size());
+    }
+
+    public void testOrdering() throws Exception {
+        _store.updateGraph(_GRAPH, statement("http://psi.example.org/a", 1), _GRAPH, _NTRIPLES);
+        assertEquals(2, size());
+        _store.createOrReplaceGraph(_GRAPH, statement("http://psi.example.org/b", 1), _GRAPH, _NTRIPLES);
+        assertEquals(1, size());
+    }
+
+    public void testClosed() throws Exception {
+        _store.close();
+        try {
+            _store.updateGraph(_GRAPH, statement("http://psi.example.org/a", 1), _GRAPH, _NTRIPLES);
+            fail("Expected an exception since the store is closed");
+        }
+        catch (StoreException ex) {
+            // noop.
+        }
+    }
+
+    public void testCommitterInterrupted() throws Exception {
+        final List<Thread> committers = new ArrayList<Thread>();
+        for (Thread thread: Thread.getAllStackTraces().keySet()) {
+            if ("cassa-sesame-group-commit".equals(thread.getName()) && thread.isAlive()) {
+                committers.add(thread);
+            }
+        }
+        assertEquals(1, committers.size());
+        committers.get(0).interrupt();
+        committers.get(0).join();
+        try {
+            _store.updateGraph(_GRAPH, statement("http://psi.example.org/a", 1), _GRAPH, _NTRIPLES);
+            fail("Expected an exception since the committer was interrupted");
+        }
+        catch (StoreException ex) {
+            // noop.
+        }
+        try {
+            _store.flush();
+            fail("Expected an exception since the committer was interrupted");
+        }
+        catch (StoreException ex) {
+            // noop.
+        }
+        assertEquals(1, size());
+    }
+
+}
@@ -15,15 +15,40 @@
  */
 package com.semagia.cassa.server.store.sesame;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
 import org.openrdf.model.ValueFactory;
 import org.openrdf.repository.Repository;
 import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryResult;
 import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.NotifyingSail;
+import org.openrdf.sail.SailChangedEvent;
+import org.openrdf.sail.SailChangedListener;
 import org.openrdf.sail.memory.MemoryStore;
 
+import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.common.dm.IWritableRepresentation;
 import com.semagia.cassa.server.store.AbstractStoreTest;
+import com.semagia.cassa.server.store.BulkLoad;
+import com.semagia.cassa.server.store.BulkLoadException;
+import com.semagia.cassa.server.store.IGraph;
+import com.semagia.cassa.server.store.IGraphInfo;
+import com.semagia.cassa.server.store.IStore;
+import com.semagia.cassa.server.store.ParseException;
+import com.semagia.cassa.server.store.QueryException;
+import com.semagia.cassa.server.store.impl.ModificationTracker;
 
 /**
  * Tests against the {@link SesameStore}.
@@ -75,4 +100,293 @@ public class TestSesameStore extends AbstractStoreTest<SesameStore> {
         conn.close();
     }
 
+    public void testGraphIndex() throws Exception {
+        final URI graphURI = URI.create("http://www.semagia.com/index-graph");
+        assertFalse(_store.containsGraph(graphURI));
+        final long misses = _store.getGraphIndexMisses();
+        createGraph(_store, graphURI);
+        assertTrue("Graphs which were created without the store must be detected", 
+                _store.containsGraph(graphURI));
+        assertEquals(misses + 1, _store.getGraphIndexMisses());
+        final long hits = _store.getGraphIndexHits();
+        assertTrue(_store.containsGraph(graphURI));
+        assertEquals(hits + 1, _store.getGraphIndexHits());
+        _store.deleteGraph(graphURI);
+        assertFalse(_store.containsGraph(graphURI));
+    }
+
+    public void testGraphIndexUpdate() throws Exception {
+        final URI graphURI = URI.create("http://www.semagia.com/index-graph");
+        final URI otherGraphURI = URI.create("http://www.semagia.com/other-index-graph");
+        createGraph(_store, graphURI);
+        createGraph(_store, otherGraphURI);
+        assertTrue(_store.containsGraph(graphURI));
+        assertTrue(_store.containsGraph(otherGraphURI));
+        final String query = "CLEAR GRAPH <" + otherGraphURI + ">";
+        _store.modifyGraph(graphURI, new ByteArrayInputStream(query.getBytes()), graphURI, MediaType.SPARQL_UPDATE);
+        assertTrue(_store.containsGraph(graphURI));
+        assertFalse("The update removed all statements of the other graph", 
+                _store.containsGraph(otherGraphURI));
+        final String drop = "DROP GRAPH <" + graphURI + ">";
+        _store.modifyGraph(IStore.DEFAULT_GRAPH, new ByteArrayInputStream(drop.getBytes()), graphURI, MediaType.SPARQL_UPDATE);
+        assertFalse(_store.containsGraph(graphURI));
+    }
+
+    public void testLastModification() throws Exception {
+        final URI graphURI = URI.create("http://www.semagia.com/modified-graph");
+        final IGraphInfo info = _store.createOrReplaceGraph(graphURI, 
+                TestSesameStore.class.getResourceAsStream("/test.rdf"), graphURI, MediaType.RDF_XML);
+        assertTrue(info.getLastModification() != -1);
+        assertEquals(info.getLastModification(), _store.getGraphInfo(graphURI).getLastModification());
+        final IGraphInfo info2 = _store.updateGraph(graphURI, 
+                TestSesameStore.class.getResourceAsStream("/test2.rdf"), graphURI, MediaType.RDF_XML);
+        assertTrue(info2.getLastModification() > info.getLastModification());
+        assertEquals(info2.getLastModification(), _store.getLastModification());
+    }
+
+    public void testOpenGraph() throws Exception {
+        final URI graphURI = URI.create("http://www.semagia.com/opened-graph");
+        createGraph(_store, graphURI);
+        final IGraph graph = _store.openGraph(graphURI);
+        assertEquals(graphURI, graph.getGraphInfo().getURI());
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        graph.getRepresentation(MediaType.RDF_XML).write(out);
+        assertTrue(out.size() > 0);
+        graph.close();
+        _store.openGraph(graphURI).close();
+    }
+
+    public void testConnectionLeases() throws Exception {
+        final SesameStore store = new SesameStore(_repository, new ModificationTracker(), 200);
+        final URI graphURI = URI.create("http://www.semagia.com/leased-graph");
+        createGraph(store, graphURI);
+        final IWritableRepresentation writable = store.getGraph(graphURI, MediaType.RDF_XML);
+        assertEquals(1, store.getConnectionLeases());
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (store.getConnectionLeases() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, store.getConnectionLeases());
+        assertEquals(1, store.getLeakedConnections());
+        assertEquals(1, store.getReclaimedConnections());
+        try {
+            writable.write(new ByteArrayOutputStream());
+            fail("Expected an IOException since the connection was reclaimed");
+        }
+        catch (IOException ex) {
+            // noop.
+        }
+    }
+
+    public void testConnectionLeaseProgress() throws Exception {
+        final SesameStore store = new SesameStore(_repository, new ModificationTracker(), 100);
+        final URI graphURI = URI.create("http://www.semagia.com/streamed-graph");
+        final MediaType ntriples = MediaType.valueOf("text/plain");
+        store.createOrReplaceGraph(graphURI, ntriples(5000, ""), graphURI, ntriples);
+        final long start = System.currentTimeMillis();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // A slow client which keeps reading
+        store.getGraph(graphURI, ntriples).write(new FilterOutputStream(out) {
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                try {
+                    Thread.sleep(20);
+                }
+                catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+                out.write(b, off, len);
+            }
+        });
+        assertTrue("The export should exceed the max. lifetime", System.currentTimeMillis() - start > 200);
+        assertEquals(0, store.getCancelledExports());
+        assertEquals(0, store.getLeakedConnections());
+        assertEquals(5000, out.toString("utf-8").trim().split("\n").length);
+        assertEquals(0, store.getConnectionLeases());
+    }
+
+    public void testStagedReplacement() throws Exception {
+        final URI graphURI = URI.create("http://www.semagia.com/staged-graph");
+        _store.setStagedReplacement(true);
+        _store.createOrReplaceGraph(graphURI, 
+                TestSesameStore.class.getResourceAsStream("/test.rdf"), graphURI, MediaType.RDF_XML);
+        final RepositoryConnection conn = _repository.getConnection();
+        try {
+            final long size = conn.size();
+            assertTrue(size > 0);
+            try {
+                _store.createOrReplaceGraph(graphURI, 
+                        new ByteArrayInputStream("<rdf:RDF".getBytes()), graphURI, MediaType.RDF_XML);
+                fail("Expected a parse exception");
+            }
+            catch (ParseException ex) {
+                // noop.
+            }
+            assertEquals("The graph must not be modified in case of a parse error", size, conn.size());
+            _store.createOrReplaceGraph(graphURI, 
+                    TestSesameStore.class.getResourceAsStream("/test.rdf"), graphURI, MediaType.RDF_XML);
+            assertEquals(size, conn.size());
+        }
+        finally {
+            conn.close();
+        }
+        int count = 0;
+        for (IGraphInfo info: _store.getGraphInfos()) {
+            assertEquals(graphURI, info.getURI());
+            count++;
+        }
+        assertEquals(1, count);
+    }
+
+    public void testStagingContextsHidden() throws Exception {
+        final URI graphURI = URI.create("http://www.semagia.com/staged-listing-graph");
+        _store.setStagedReplacement(true);
+        final List<Resource> stagingContexts = new ArrayList<Resource>();
+        final List<URI> listed = new ArrayList<URI>();
+        final List<Exception> errors = new ArrayList<Exception>();
+        // Inspect the store after the input was staged and before the graph is replaced
+        final NotifyingSail sail = (NotifyingSail) ((SailRepository) _repository).getSail();
+        final SailChangedListener listener = new SailChangedListener() {
+            @Override
+            public void sailChanged(final SailChangedEvent event) {
+                if (!stagingContexts.isEmpty() || !errors.isEmpty()) {
+                    return;
+                }
+                try {
+                    final RepositoryConnection conn = _repository.getConnection();
+                    try {
+                        final RepositoryResult<Resource> res = conn.getContextIDs();
+                        while (res.hasNext()) {
+                            final Resource context = res.next();
+                            if (!graphURI.toString().equals(context.stringValue())) {
+                                stagingContexts.add(context);
+                            }
+                        }
+                        res.close();
+                    }
+                    finally {
+                        conn.close();
+                    }
+                    _store.rebuildGraphIndex();
+                    for (IGraphInfo info: _store.getGraphInfos()) {
+                        listed.add(info.getURI());
+                    }
+                    for (Resource context: stagingContexts) {
+                        if (_store.containsGraph(URI.create(context.stringValue()))) {
+                            listed.add(URI.create(context.stringValue()));
+                        }
+                    }
+                }
+                catch (Exception ex) {
+                    errors.add(ex);
+                }
+            }
+        };
+        sail.addSailChangedListener(listener);
+        try {
+            _store.createOrReplaceGraph(graphURI, ntriples(5, ""), graphURI, MediaType.valueOf("text/plain"));
+        }
+        finally {
+            sail.removeSailChangedListener(listener);
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals("The staging context must exist while the graph is replaced", 1, stagingContexts.size());
+        assertTrue(listed.toString(), listed.isEmpty());
+        assertTrue(_store.containsGraph(graphURI));
+        assertFalse(_store.containsGraph(URI.create(stagingContexts.get(0).stringValue())));
+    }
+
+    private static InputStream ntriples(final int statements, final String suffix) {
+        final StringBuilder buf = new StringBuilder();
+        for (int i=0; i<statements; i++) {
+            buf.append("<http://psi.example.org/").append(i).append("> <http://psi.example.org/value> \"").append(i).append("\" .\n");
+        }
+        buf.append(suffix);
+        return new ByteArrayInputStream(buf.toString().getBytes());
+    }
+
+    public void testBulkLoad() throws Exception {
+        final URI graphURI = URI.create("http://www.semagia.com/bulk-graph");
+        final MediaType ntriples = MediaType.valueOf("text/plain");
+        BulkLoad bulkLoad = new BulkLoad(10, true);
+        _store.loadGraph(graphURI, ntriples(25, ""), graphURI, ntriples, bulkLoad);
+        assertTrue(_store.containsGraph(graphURI));
+        assertEquals(25, bulkLoad.getCommittedStatements());
+        assertEquals(3, bulkLoad.getCommittedChunks());
+        bulkLoad = new BulkLoad(10, true);
+        try {
+            _store.loadGraph(graphURI, ntriples(15, "<"), graphURI, ntriples, bulkLoad);
+            fail("Expected a bulk load exception");
+        }
+        catch (BulkLoadException ex) {
+            assertTrue(ex.getCause() instanceof ParseException);
+            assertEquals(10, ex.getCommittedStatements());
+        }
+        final RepositoryConnection conn = _repository.getConnection();
+        try {
+            assertEquals(10, conn.size(_repository.getValueFactory().createURI(graphURI.toString())));
+        }
+        finally {
+            conn.close();
+        }
+        try {
+            _store.loadGraph(graphURI, ntriples(5, "<"), graphURI, ntriples, new BulkLoad(10, false));
+            fail("Expected a parse exception");
+        }
+        catch (ParseException ex) {
+            // noop.
+        }
+    }
+
+    public void testGetSubject() throws Exception {
+        final URI graphURI = URI.create("http://www.semagia.com/subject-graph");
+        final MediaType ntriples = MediaType.valueOf("text/plain");
+        _store.createOrReplaceGraph(graphURI, ntriples(5, ""), graphURI, ntriples);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        _store.getSubject(graphURI, URI.create("http://psi.example.org/1"), ntriples).write(out);
+        final String result = out.toString("utf-8").trim();
+        assertEquals("<http://psi.example.org/1> <http://psi.example.org/value> \"1\" .", result);
+        out = new ByteArrayOutputStream();
+        _store.getSubject(graphURI, URI.create("http://psi.example.org/unknown"), ntriples).write(out);
+        assertEquals(0, out.toString("utf-8").trim().length());
+        assertEquals(0, _store.getConnectionLeases());
+    }
+
+    public void testModifyGraphWithBindings() throws Exception {
+        final URI graphURI = URI.create("http://www.semagia.com/modified-graph");
+        createGraph(_store, graphURI);
+        final String query = "INSERT { ?s <http://psi.example.org/bar> ?o } WHERE { }";
+        final long hits = _store.getUpdateCacheHits();
+        final long misses = _store.getUpdateCacheMisses();
+        final Map<String, String> bindings = new HashMap<String, String>();
+        bindings.put("s", "<http://www.example.org/a>");
+        bindings.put("o", "\"a\"@en");
+        assertTrue(_store.modifyGraph(graphURI, new ByteArrayInputStream(query.getBytes()), graphURI, MediaType.SPARQL_UPDATE, bindings));
+        assertEquals(misses + 1, _store.getUpdateCacheMisses());
+        assertEquals(1, _store.getUpdateParseTimes().getCount());
+        bindings.put("s", "<http://www.example.org/b>");
+        assertTrue(_store.modifyGraph(graphURI, new ByteArrayInputStream(query.getBytes()), graphURI, MediaType.SPARQL_UPDATE, bindings));
+        assertEquals(hits + 1, _store.getUpdateCacheHits());
+        assertEquals(misses + 1, _store.getUpdateCacheMisses());
+        final RepositoryConnection conn = _repository.getConnection();
+        try {
+            final ValueFactory factory = _repository.getValueFactory();
+            final org.openrdf.model.URI pred = factory.createURI("http://psi.example.org/bar");
+            final Literal lit = factory.createLiteral("a", "en");
+            assertTrue(conn.hasStatement(factory.createURI("http://www.example.org/a"), pred, lit, false));
+            assertTrue(conn.hasStatement(factory.createURI("http://www.example.org/b"), pred, lit, false));
+        }
+        finally {
+            conn.close();
+        }
+        bindings.put("o", "not N-Triples");
+        try {
+            _store.modifyGraph(graphURI, new ByteArrayInputStream(query.getBytes()), graphURI, MediaType.SPARQL_UPDATE, bindings);
+            fail("Expected a query exception");
+        }
+        catch (QueryException ex) {
+            // noop.
+        }
+    }
+
 }
@@ -0,0 +1,999 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store.tmapi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.common.dm.RemovalStatus;
+import com.semagia.cassa.server.store.BulkLoad;
+import com.semagia.cassa.server.store.GraphMismatchException;
+import com.semagia.cassa.server.store.GraphNotExistsException;
+import com.semagia.cassa.server.store.IGraph;
+import com.semagia.cassa.server.store.IGraphInfo;
+import com.semagia.cassa.server.store.ISDShareStore;
+import com.semagia.cassa.server.store.IStore;
+import com.semagia.cassa.server.store.ParseException;
+import com.semagia.cassa.server.store.QueryException;
+import com.semagia.cassa.server.store.StoreException;
+import com.semagia.cassa.server.store.UnsupportedMediaTypeException;
+import com.semagia.cassa.server.store.impl.DelegatingSDShareStore;
+
+/**
+ * {@link ISDShareStore} implementation which makes a {@link TMAPIStore} durable.
+ * <p>
+ * Each modifying call is appended to a write-ahead journal (operation, 
+ * graph and subject URI, base URI, media type and the raw payload) and 
+ * forced to disk before it is applied to the underlying store. If the call 
+ * fails, an abort record is appended, so the call is not replayed.
+ * </p>
+ * <p>
+ * A snapshot writes all topic maps to files and starts a new journal, so 
+ * older journals become obsolete. The snapshot pins the current versions
+ * of the topic maps while it holds the journal lock and serializes them 
+ * afterwards, writers are not blocked while the files are written.
+ * </p>
+ * <p>
+ * On startup, the newest complete snapshot is read into the (empty) 
+ * underlying store and the journals written after that snapshot are 
+ * replayed. An incomplete record at the end of a journal (i.e. a crash 
+ * while the record was written) is discarded. The directory is owned by 
+ * this store.
+ * </p>
+ * <p>
+ * The fragments of the underlying store are not persisted: Loading a 
+ * snapshot discards them and the replayed calls report their changes again.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class PersistentTMAPIStore extends DelegatingSDShareStore {
+
+    private static final String _JOURNAL_PREFIX = "journal-";
+    private static final String _JOURNAL_SUFFIX = ".log";
+    private static final String _SNAPSHOT_PREFIX = "snapshot-";
+    private static final String _TMP_SUFFIX = ".tmp";
+    private static final String _INDEX = "index";
+    private static final MediaType _SNAPSHOT_MEDIA_TYPE = MediaType.XTM;
+
+    private static final byte 
+        _REPLACE_GRAPH = 'R',
+        _UPDATE_GRAPH = 'U',
+        _MODIFY_GRAPH = 'M',
+        _DELETE_GRAPH = 'D',
+        _REPLACE_SUBJECT = 'S',
+        _DELETE_SUBJECT = 'X',
+        _ABORT = 'A';
+
+    private static final byte
+        _NULL_URI = 0,
+        _DEFAULT_GRAPH_URI = 1,
+        _URI = 2;
+
+    private final TMAPIStore _tmapiStore;
+    private final File _directory;
+    /**
+     * Guards the journal and serializes the writers.
+     */
+    private final Object _lock;
+    private final Object _snapshotLock;
+    private final AtomicLong _failures;
+    private final ScheduledExecutorService _executor;
+    private long _generation;
+    private Journal _journal;
+
+    /**
+     * Creates a store without a schedule, snapshots are written by 
+     * {@link #snapshot()}.
+     *
+     * @param store The underlying store, must be empty.
+     * @param directory The directory to keep the journals and snapshots.
+     * @throws IOException In case the directory cannot be created or read.
+     * @throws StoreException In case the underlying store rejects the recovered data.
+     */
+    public PersistentTMAPIStore(final TMAPIStore store, final File directory) 
+            throws IOException, StoreException {
+        this(store, directory, 0);
+    }
+
+    /**
+     * Creates a store.
+     *
+     * @param store The underlying store, must be empty.
+     * @param directory The directory to keep the journals and snapshots.
+     * @param period The time between two snapshots (in milliseconds) or 
+     *          {@code 0} to disable the background thread.
+     * @throws IOException In case the directory cannot be created or read.
+     * @throws StoreException In case the underlying store rejects the recovered data.
+     */
+    public PersistentTMAPIStore(final TMAPIStore store, final File directory, 
+            final long period) throws IOException, StoreException {
+        super(store);
+        if (directory == null) {
+            throw new IllegalArgumentException("The directory must not be null");
+        }
+        if (period < 0) {
+            throw new IllegalArgumentException("The period must not be negative");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create the directory " + directory);
+        }
+        _tmapiStore = store;
+        _directory = directory;
+        _lock = new Object();
+        _snapshotLock = new Object();
+        _failures = new AtomicLong();
+        recover();
+        if (period > 0) {
+            _executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "cassa-tmapi-snapshot");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+            _executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        snapshot();
+                    }
+                    catch (IOException ex) {
+                        _failures.incrementAndGet();
+                    }
+                    catch (StoreException ex) {
+                        _failures.incrementAndGet();
+                    }
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        }
+        else {
+            _executor = null;
+        }
+    }
+
+    /**
+     * Returns the number of snapshots which could not be written by the 
+     * background thread.
+     *
+     * @return The number of failures.
+     */
+    public long getFailedSnapshots() {
+        return _failures.get();
+    }
+
+    /**
+     * Writes a snapshot of all topic maps and removes the journals and 
+     * snapshots which are superseded by the new snapshot.
+     * 
+     * This method is invoked periodically by the background thread, but it
+     * may be called anytime.
+     *
+     * @throws IOException In case of an I/O error.
+     * @throws StoreException In case of an error.
+     */
+    public void snapshot() throws IOException, StoreException {
+        synchronized (_snapshotLock) {
+            final long generation;
+            final List<URI> graphURIs = new ArrayList<URI>();
+            final List<IGraph> graphs = new ArrayList<IGraph>();
+            try {
+                synchronized (_lock) {
+                    ensureOpen();
+                    // The graphs pin the current versions, the snapshot
+                    // reflects the state at the start of the new journal
+                    graphURIs.add(IStore.DEFAULT_GRAPH);
+                    for (IGraphInfo info: _store.getGraphInfos()) {
+                        graphURIs.add(info.getURI());
+                    }
+                    for (URI graphURI: graphURIs) {
+                        graphs.add(_store.openGraph(graphURI));
+                    }
+                    generation = _generation + 1;
+                    final Journal journal = new Journal(journalFile(generation));
+                    _journal.close();
+                    _journal = journal;
+                    _generation = generation;
+                }
+                writeSnapshot(generation, graphURIs, graphs);
+            }
+            finally {
+                for (IGraph graph: graphs) {
+                    graph.close();
+                }
+            }
+            removeObsolete(generation);
+        }
+    }
+
+    /**
+     * Stops the background thread and closes the journal.
+     * 
+     * @throws IOException In case the journal cannot be closed.
+     */
+    public void close() throws IOException {
+        if (_executor != null) {
+            _executor.shutdownNow();
+        }
+        synchronized (_lock) {
+            if (_journal != null) {
+                _journal.close();
+                _journal = null;
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingSDShareStore#deleteGraph(java.net.URI)
+     */
+    @Override
+    public RemovalStatus deleteGraph(final URI graphURI)
+            throws GraphNotExistsException, IOException, StoreException {
+        synchronized (_lock) {
+            ensureOpen();
+            _journal.append(new Record(_DELETE_GRAPH, graphURI), null);
+            boolean success = false;
+            try {
+                final RemovalStatus status = _store.deleteGraph(graphURI);
+                success = true;
+                return status;
+            }
+            finally {
+                if (!success) {
+                    _journal.abort();
+                }
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingSDShareStore#deleteSubject(java.net.URI, java.net.URI)
+     */
+    @Override
+    public RemovalStatus deleteSubject(final URI graphURI, final URI subjectURI)
+            throws GraphNotExistsException, IOException, StoreException {
+        synchronized (_lock) {
+            ensureOpen();
+            final Record record = new Record(_DELETE_SUBJECT, graphURI);
+            record.subjectURI = subjectURI;
+            _journal.append(record, null);
+            boolean success = false;
+            try {
+                final RemovalStatus status = _store.deleteSubject(graphURI, subjectURI);
+                success = true;
+                return status;
+            }
+            finally {
+                if (!success) {
+                    _journal.abort();
+                }
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingSDShareStore#updateGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IGraphInfo updateGraph(final URI graphURI, final InputStream in,
+            final URI baseURI, final MediaType mediaType)
+            throws UnsupportedMediaTypeException, IOException, ParseException,
+            StoreException {
+        return (IGraphInfo) apply(new Record(_UPDATE_GRAPH, graphURI, baseURI, mediaType), in);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingSDShareStore#modifyGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public boolean modifyGraph(final URI graphURI, final InputStream in,
+            final URI baseURI, final MediaType mediaType)
+            throws UnsupportedMediaTypeException, IOException, QueryException,
+            GraphMismatchException, StoreException {
+        return modifyGraph(graphURI, in, baseURI, mediaType, Collections.<String, String>emptyMap());
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingSDShareStore#modifyGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType, java.util.Map)
+     */
+    @Override
+    public boolean modifyGraph(final URI graphURI, final InputStream in,
+            final URI baseURI, final MediaType mediaType, final Map<String, String> bindings)
+            throws UnsupportedMediaTypeException, IOException, QueryException,
+            GraphMismatchException, StoreException {
+        final Record record = new Record(_MODIFY_GRAPH, graphURI, baseURI, mediaType);
+        record.bindings = bindings;
+        return ((Boolean) apply(record, in)).booleanValue();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingSDShareStore#createGraph(java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IGraphInfo createGraph(final InputStream in, final URI baseURI,
+            final MediaType mediaType) throws UnsupportedMediaTypeException,
+            IOException, ParseException, StoreException {
+        // The graph URI is created here, so the journal can replay the call
+        final URI graphURI = baseURI.resolve(UUID.randomUUID().toString());
+        return createOrReplaceGraph(graphURI, in, baseURI, mediaType);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingSDShareStore#createOrReplaceGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IGraphInfo createOrReplaceGraph(final URI graphURI, final InputStream in,
+            final URI baseURI, final MediaType mediaType)
+            throws UnsupportedMediaTypeException, IOException, ParseException,
+            StoreException {
+        return (IGraphInfo) apply(new Record(_REPLACE_GRAPH, graphURI, baseURI, mediaType), in);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingSDShareStore#loadGraph(java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType, com.semagia.cassa.server.store.BulkLoad)
+     */
+    @Override
+    public IGraphInfo loadGraph(final URI graphURI, final InputStream in,
+            final URI baseURI, final MediaType mediaType, final BulkLoad bulkLoad)
+            throws UnsupportedMediaTypeException, IOException, ParseException,
+            StoreException {
+        return graphURI == null ? createGraph(in, baseURI, mediaType)
+                 : bulkLoad.isReplace() ? createOrReplaceGraph(graphURI, in, baseURI, mediaType)
+                                        : updateGraph(graphURI, in, baseURI, mediaType);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.DelegatingSDShareStore#createOrReplaceSubject(java.net.URI, java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
+    @Override
+    public IGraphInfo createOrReplaceSubject(final URI graphURI, final URI subjectURI,
+            final InputStream in, final URI baseURI, final MediaType mediaType)
+            throws UnsupportedMediaTypeException, IOException, ParseException,
+            StoreException {
+        final Record record = new Record(_REPLACE_SUBJECT, graphURI, baseURI, mediaType);
+        record.subjectURI = subjectURI;
+        return (IGraphInfo) apply(record, in);
+    }
+
+    /**
+     * Appends the record and the payload to the journal and applies the 
+     * record to the underlying store afterwards.
+     * 
+     * The payload is read back from the journal.
+     */
+    private Object apply(final Record record, final InputStream in) throws IOException, StoreException {
+        synchronized (_lock) {
+            ensureOpen();
+            final long offset = _journal.append(record, in);
+            boolean success = false;
+            final InputStream payload = _journal.openPayload(offset);
+            try {
+                final Object result = execute(record, payload);
+                success = true;
+                return result;
+            }
+            finally {
+                payload.close();
+                if (!success) {
+                    _journal.abort();
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the record to the underlying store.
+     *
+     * @param record The record.
+     * @param payload The payload or {@code null} if the record has no payload.
+     * @return The result of the store operation.
+     */
+    private Object execute(final Record record, final InputStream payload) throws IOException, 
+            StoreException {
+        switch (record.operation) {
+            case _REPLACE_GRAPH:
+                return _store.createOrReplaceGraph(record.graphURI, payload, record.baseURI, record.mediaType);
+            case _UPDATE_GRAPH:
+                return _store.updateGraph(record.graphURI, payload, record.baseURI, record.mediaType);
+            case _MODIFY_GRAPH:
+                return Boolean.valueOf(_store.modifyGraph(record.graphURI, payload, record.baseURI, record.mediaType, record.bindings));
+            case _DELETE_GRAPH:
+                return _store.deleteGraph(record.graphURI);
+            case _REPLACE_SUBJECT:
+                return _store.createOrReplaceSubject(record.graphURI, record.subjectURI, payload, record.baseURI, record.mediaType);
+            case _DELETE_SUBJECT:
+                return _store.deleteSubject(record.graphURI, record.subjectURI);
+            default:
+                throw new StoreException("Unknown journal operation: " + (char) record.operation);
+        }
+    }
+
+    private void ensureOpen() throws StoreException {
+        if (_journal == null) {
+            throw new StoreException("The store is closed");
+        }
+    }
+
+    private File journalFile(final long generation) {
+        return new File(_directory, _JOURNAL_PREFIX + generation + _JOURNAL_SUFFIX);
+    }
+
+    private File snapshotDirectory(final long generation) {
+        return new File(_directory, _SNAPSHOT_PREFIX + generation);
+    }
+
+    /**
+     * Returns the generation of a journal or snapshot file name or 
+     * {@code -1} if the name does not belong to a journal or snapshot.
+     */
+    private static long generation(final String name, final String prefix, final String suffix) {
+        if (!name.startsWith(prefix) || !name.endsWith(suffix)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+        }
+        catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Reads the newest snapshot into the underlying store, replays the 
+     * journals which were written after the snapshot and opens a new journal.
+     */
+    private void recover() throws IOException, StoreException {
+        long snapshot = -1;
+        final List<Long> journals = new ArrayList<Long>();
+        final File[] files = _directory.listFiles();
+        if (files != null) {
+            for (File file: files) {
+                final String name = file.getName();
+                if (name.endsWith(_TMP_SUFFIX)) {
+                    delete(file);
+                    continue;
+                }
+                final long journal = generation(name, _JOURNAL_PREFIX, _JOURNAL_SUFFIX);
+                if (journal != -1) {
+                    journals.add(journal);
+                }
+                snapshot = Math.max(snapshot, generation(name, _SNAPSHOT_PREFIX, ""));
+            }
+        }
+        Collections.sort(journals);
+        long generation = snapshot;
+        if (snapshot != -1) {
+            readSnapshot(snapshotDirectory(snapshot));
+        }
+        for (Long journal: journals) {
+            if (journal.longValue() >= snapshot) {
+                replay(journalFile(journal.longValue()));
+            }
+            generation = Math.max(generation, journal.longValue());
+        }
+        _generation = generation + 1;
+        _journal = new Journal(journalFile(_generation));
+    }
+
+    private void readSnapshot(final File dir) throws IOException, StoreException {
+        final DataInputStream index = new DataInputStream(new BufferedInputStream(new FileInputStream(new File(dir, _INDEX))));
+        try {
+            final int count = index.readInt();
+            for (int i = 0; i < count; i++) {
+                final URI graphURI = readURI(index);
+                final URI baseURI = URI.create(index.readUTF());
+                final InputStream in = new BufferedInputStream(new FileInputStream(new File(dir, index.readUTF())));
+                try {
+                    _store.createOrReplaceGraph(graphURI, in, baseURI, _SNAPSHOT_MEDIA_TYPE);
+                }
+                finally {
+                    in.close();
+                }
+            }
+        }
+        finally {
+            index.close();
+        }
+    }
+
+    private void writeSnapshot(final long generation, final List<URI> graphURIs, 
+            final List<IGraph> graphs) throws IOException, StoreException {
+        final File tmp = new File(_directory, _SNAPSHOT_PREFIX + generation + _TMP_SUFFIX);
+        boolean success = false;
+        try {
+            if (!tmp.mkdir()) {
+                throw new IOException("Cannot create the directory " + tmp);
+            }
+            final FileOutputStream indexOut = new FileOutputStream(new File(tmp, _INDEX));
+            try {
+                final DataOutputStream index = new DataOutputStream(new BufferedOutputStream(indexOut));
+                index.writeInt(graphURIs.size());
+                for (int i = 0; i < graphURIs.size(); i++) {
+                    final URI graphURI = graphURIs.get(i);
+                    final String name = i + ".xtm";
+                    final FileOutputStream fileOut = new FileOutputStream(new File(tmp, name));
+                    try {
+                        final OutputStream out = new BufferedOutputStream(fileOut, 65536);
+                        graphs.get(i).getRepresentation(_SNAPSHOT_MEDIA_TYPE).write(out);
+                        out.flush();
+                        fileOut.getFD().sync();
+                    }
+                    finally {
+                        fileOut.close();
+                    }
+                    writeURI(index, graphURI);
+                    index.writeUTF(_tmapiStore.getBaseIRI(graphURI));
+                    index.writeUTF(name);
+                }
+                index.flush();
+                indexOut.getFD().sync();
+            }
+            finally {
+                indexOut.close();
+            }
+            if (!tmp.renameTo(snapshotDirectory(generation))) {
+                throw new IOException("Cannot rename " + tmp);
+            }
+            success = true;
+        }
+        finally {
+            if (!success) {
+                delete(tmp);
+            }
+        }
+    }
+
+    /**
+     * Removes the journals and snapshots which are older than the provided 
+     * snapshot generation.
+     */
+    private void removeObsolete(final long generation) {
+        final File[] files = _directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file: files) {
+            final String name = file.getName();
+            long gen = generation(name, _JOURNAL_PREFIX, _JOURNAL_SUFFIX);
+            if (gen == -1) {
+                gen = generation(name, _SNAPSHOT_PREFIX, "");
+            }
+            if (gen != -1 && gen < generation) {
+                delete(file);
+            }
+        }
+    }
+
+    private static void delete(final File file) {
+        final File[] files = file.listFiles();
+        if (files != null) {
+            for (File child: files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Applies the complete and not aborted records of the journal to the 
+     * underlying store. An incomplete record at the end of the journal is
+     * removed.
+     */
+    private void replay(final File file) throws IOException {
+        final List<Record> records = new ArrayList<Record>();
+        final CountingInputStream counter = new CountingInputStream(new FileInputStream(file));
+        final byte[] buffer = new byte[Journal._CHUNK_SIZE];
+        long validLength = 0;
+        try {
+            final DataInputStream in = new DataInputStream(counter);
+            while (true) {
+                final Record record;
+                try {
+                    record = Journal.readRecord(in, counter, buffer);
+                }
+                catch (EOFException ex) {
+                    break;
+                }
+                catch (IOException ex) {
+                    // Corrupt record
+                    break;
+                }
+                validLength = counter.count;
+                if (record.operation == _ABORT) {
+                    if (!records.isEmpty()) {
+                        records.remove(records.size() - 1);
+                    }
+                }
+                else {
+                    records.add(record);
+                }
+            }
+        }
+        finally {
+            counter.close();
+        }
+        if (validLength < file.length()) {
+            final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(validLength);
+            }
+            finally {
+                raf.close();
+            }
+        }
+        for (Record record: records) {
+            final InputStream payload = record.payloadOffset != -1 ? Journal.openPayload(file, record.payloadOffset) : null;
+            try {
+                execute(record, payload);
+            }
+            catch (IOException ex) {
+                // The call was not aborted due to the crash but it failed
+            }
+            catch (StoreException ex) {
+                // The call was not aborted due to the crash but it failed
+            }
+            finally {
+                if (payload != null) {
+                    payload.close();
+                }
+            }
+        }
+    }
+
+    private static void writeURI(final DataOutputStream out, final URI uri) throws IOException {
+        if (uri == null) {
+            out.writeByte(_NULL_URI);
+        }
+        else if (uri == IStore.DEFAULT_GRAPH) {
+            out.writeByte(_DEFAULT_GRAPH_URI);
+        }
+        else {
+            out.writeByte(_URI);
+            out.writeUTF(uri.toString());
+        }
+    }
+
+    private static URI readURI(final DataInputStream in) throws IOException {
+        switch (in.readByte()) {
+            case _NULL_URI: return null;
+            case _DEFAULT_GRAPH_URI: return IStore.DEFAULT_GRAPH;
+            case _URI: return URI.create(in.readUTF());
+            default: throw new IOException("Invalid URI flag");
+        }
+    }
+
+
+    /**
+     * A journaled store operation.
+     */
+    private static final class Record {
+
+        final byte operation;
+        final URI graphURI;
+        final URI baseURI;
+        final MediaType mediaType;
+        URI subjectURI;
+        Map<String, String> bindings;
+        /**
+         * The offset of the payload in the journal or {@code -1} if the 
+         * record has no payload.
+         */
+        long payloadOffset = -1;
+
+        Record(final byte operation, final URI graphURI) {
+            this(operation, graphURI, null, null);
+        }
+
+        Record(final byte operation, final URI graphURI, final URI baseURI, final MediaType mediaType) {
+            this.operation = operation;
+            this.graphURI = graphURI;
+            this.baseURI = baseURI;
+            this.mediaType = mediaType;
+        }
+
+    }
+
+
+    /**
+     * Append-only journal file.
+     * <p>
+     * A record consists of the operation, the URIs, the media type, the 
+     * bindings, the payload as sequence of length-prefixed chunks which is 
+     * terminated by a chunk of length {@code 0} and the CRC-32 of the 
+     * preceding bytes of the record.
+     * </p>
+     */
+    private static final class Journal {
+
+        private static final int _CHUNK_SIZE = 65536;
+
+        private final File _file;
+        private final FileOutputStream _fileOut;
+        private final CRC32 _crc;
+        private final DataOutputStream _out;
+        private final byte[] _buffer;
+        private long _position;
+
+        Journal(final File file) throws IOException {
+            _file = file;
+            _fileOut = new FileOutputStream(file, true);
+            _position = file.length();
+            _crc = new CRC32();
+            _out = new DataOutputStream(new BufferedOutputStream(new OutputStream() {
+                @Override
+                public void write(final int b) throws IOException {
+                    _fileOut.write(b);
+                    _crc.update(b);
+                    _position++;
+                }
+                @Override
+                public void write(final byte[] b, final int off, final int len) throws IOException {
+                    _fileOut.write(b, off, len);
+                    _crc.update(b, off, len);
+                    _position += len;
+                }
+            }, _CHUNK_SIZE));
+            _buffer = new byte[_CHUNK_SIZE];
+        }
+
+        /**
+         * Appends the record and forces it to disk.
+         *
+         * @param record The record to append.
+         * @param in The payload or {@code null}.
+         * @return The offset of the payload.
+         */
+        long append(final Record record, final InputStream in) throws IOException {
+            final long start = _position;
+            boolean success = false;
+            try {
+                _crc.reset();
+                _out.writeByte(record.operation);
+                writeURI(_out, record.graphURI);
+                writeURI(_out, record.subjectURI);
+                writeURI(_out, record.baseURI);
+                _out.writeUTF(record.mediaType != null ? record.mediaType.toString() : "");
+                if (record.bindings == null) {
+                    _out.writeInt(-1);
+                }
+                else {
+                    _out.writeInt(record.bindings.size());
+                    for (Map.Entry<String, String> binding: record.bindings.entrySet()) {
+                        _out.writeUTF(binding.getKey());
+                        _out.writeUTF(binding.getValue());
+                    }
+                }
+                _out.flush();
+                final long offset = _position;
+                if (in != null) {
+                    int n;
+                    while ((n = in.read(_buffer)) != -1) {
+                        if (n > 0) {
+                            _out.writeInt(n);
+                            _out.write(_buffer, 0, n);
+                        }
+                    }
+                }
+                _out.writeInt(0);
+                _out.flush();
+                _out.writeLong(_crc.getValue());
+                _out.flush();
+                _fileOut.getChannel().force(false);
+                success = true;
+                return offset;
+            }
+            finally {
+                if (!success) {
+                    // Remove the incomplete record
+                    _out.flush();
+                    _fileOut.getChannel().truncate(start);
+                    _position = start;
+                }
+            }
+        }
+
+        /**
+         * Marks the preceding record as aborted.
+         */
+        void abort() throws IOException {
+            append(new Record(_ABORT, null), null);
+        }
+
+        InputStream openPayload(final long offset) throws IOException {
+            return openPayload(_file, offset);
+        }
+
+        void close() throws IOException {
+            _out.flush();
+            _fileOut.getChannel().force(false);
+            _fileOut.close();
+        }
+
+        static InputStream openPayload(final File file, final long offset) throws IOException {
+            final FileInputStream in = new FileInputStream(file);
+            in.getChannel().position(offset);
+            return new ChunkedInputStream(new DataInputStream(new BufferedInputStream(in, _CHUNK_SIZE)));
+        }
+
+        /**
+         * Reads the next record and skips its payload.
+         *
+         * @throws EOFException If the end of the journal is reached or the record is incomplete.
+         * @throws IOException If the record is corrupt.
+         */
+        static Record readRecord(final DataInputStream in, final CountingInputStream counter, 
+                final byte[] buffer) throws IOException {
+            counter.crc.reset();
+            final byte operation = in.readByte();
+            final URI graphURI = readURI(in);
+            final URI subjectURI = readURI(in);
+            final URI baseURI = readURI(in);
+            final String mediaType = in.readUTF();
+            final Record record = new Record(operation, graphURI, baseURI, 
+                    mediaType.length() == 0 ? null : MediaType.valueOf(mediaType));
+            record.subjectURI = subjectURI;
+            final int count = in.readInt();
+            if (count >= 0) {
+                final Map<String, String> bindings = new HashMap<String, String>(count);
+                for (int i = 0; i < count; i++) {
+                    bindings.put(in.readUTF(), in.readUTF());
+                }
+                record.bindings = bindings;
+            }
+            final long offset = counter.count;
+            int n;
+            while ((n = in.readInt()) != 0) {
+                if (n < 0 || n > buffer.length) {
+                    throw new IOException("Invalid chunk length");
+                }
+                in.readFully(buffer, 0, n);
+            }
+            final long crc = counter.crc.getValue();
+            if (in.readLong() != crc) {
+                throw new IOException("Checksum mismatch");
+            }
+            if (operation == _REPLACE_GRAPH || operation == _UPDATE_GRAPH 
+                    || operation == _MODIFY_GRAPH || operation == _REPLACE_SUBJECT) {
+                record.payloadOffset = offset;
+            }
+            return record;
+        }
+
+    }
+
+
+    /**
+     * Reads the length-prefixed chunks of a payload.
+     */
+    private static final class ChunkedInputStream extends InputStream {
+
+        private final DataInputStream _in;
+        private int _remaining;
+        private boolean _eof;
+
+        ChunkedInputStream(final DataInputStream in) {
+            _in = in;
+        }
+
+        private boolean fill() throws IOException {
+            if (_remaining == 0 && !_eof) {
+                _remaining = _in.readInt();
+                _eof = _remaining == 0;
+            }
+            return !_eof;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            _remaining--;
+            return _in.read();
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            final int n = _in.read(b, off, Math.min(len, _remaining));
+            if (n == -1) {
+                throw new EOFException();
+            }
+            _remaining -= n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            _in.close();
+        }
+
+    }
+
+
+    /**
+     * Counts the bytes read and computes their CRC-32.
+     */
+    private static final class CountingInputStream extends InputStream {
+
+        private final InputStream _in;
+        final CRC32 crc;
+        long count;
+
+        CountingInputStream(final InputStream in) {
+            _in = new BufferedInputStream(in, 65536);
+            crc = new CRC32();
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = _in.read();
+            if (b != -1) {
+                count++;
+                crc.update(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n = _in.read(b, off, len);
+            if (n > 0) {
+                count += n;
+                crc.update(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            _in.close();
+        }
+
+    }
+
+}
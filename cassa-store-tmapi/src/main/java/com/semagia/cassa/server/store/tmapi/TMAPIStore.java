@@ -20,44 +20,138 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.tmapi.core.Association;
 import org.tmapi.core.Locator;
+import org.tmapi.core.Role;
 import org.tmapi.core.TMAPIException;
+import org.tmapi.core.Topic;
 import org.tmapi.core.TopicMap;
 import org.tmapi.core.TopicMapSystem;
 
 import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.common.dm.IResource;
 import com.semagia.cassa.common.dm.IWritableRepresentation;
 import com.semagia.cassa.common.dm.RemovalStatus;
+import com.semagia.cassa.common.dm.impl.DefaultResource;
 import com.semagia.cassa.server.store.GraphMismatchException;
 import com.semagia.cassa.server.store.GraphNotExistsException;
+import com.semagia.cassa.server.store.IFragmentInfo;
+import com.semagia.cassa.server.store.IGraph;
 import com.semagia.cassa.server.store.IGraphInfo;
+import com.semagia.cassa.server.store.ISDShareStore;
 import com.semagia.cassa.server.store.IStore;
 import com.semagia.cassa.server.store.ParseException;
 import com.semagia.cassa.server.store.QueryException;
 import com.semagia.cassa.server.store.StoreException;
 import com.semagia.cassa.server.store.UnsupportedMediaTypeException;
 import com.semagia.cassa.server.store.impl.AbstractStore;
+import com.semagia.cassa.server.store.impl.CachingStore;
+import com.semagia.cassa.server.store.impl.DefaultFragmentInfo;
 import com.semagia.cassa.server.store.impl.DefaultGraphInfo;
+import com.semagia.cassa.server.store.impl.FragmentIndex;
 
 /**
- * {@link IStore} implementation that uses a TMAPI-compatible Topic Maps engine.
+ * {@link ISDShareStore} implementation that uses a TMAPI-compatible Topic Maps engine.
+ * <p>
+ * Each graph is represented by an immutable version of a topic map. Readers
+ * serialize the current version without locking while writers build the 
+ * next version in a private topic map and publish it atomically afterwards.
+ * Writers are serialized since the {@link TopicMapSystem} is not expected
+ * to be thread-safe. A version is removed from the topic map system after 
+ * it was superseded and all readers finished.
+ * </p>
+ * <p>
+ * Input is always parsed into a topic map aside which replaces the current 
+ * version only if parsing succeeds. The writer holds the lock which guards
+ * the topic map system only for short operations, so listing graphs is 
+ * not blocked while a writer parses.
+ * </p>
+ * <p>
+ * Subjects are looked up by their subject identifiers, subject locators and
+ * item identifiers. Replacing or deleting a subject is applied to a copy of 
+ * the current version which becomes the next version, so readers never see 
+ * a partially changed topic map and a failing change leaves the current 
+ * version untouched.
+ * </p>
+ * <p>
+ * Each version carries a strictly increasing modification time which is 
+ * reported as last modification of the graph, so conditional requests 
+ * can be answered without serializing the topic map. Since a new version 
+ * gets a new time, a {@link CachingStore} on top of this store caches the 
+ * serializations per version.
+ * </p>
+ * <p>
+ * Each changed topic is reported as fragment: Replacing or deleting a 
+ * subject and updating a graph report the affected topics with their 
+ * subject identifiers, subject locators and item identifiers. Since the
+ * fragment of a topic contains its associations, replacing or deleting a 
+ * subject reports the other players of the removed and added associations 
+ * as well. The URI of 
+ * a fragment is the first subject identifier of the topic, or the first 
+ * subject locator or item identifier if the topic has no subject identifier.
+ * Creating, replacing or deleting a graph discards its fragments, consumers 
+ * have to load a snapshot afterwards.
+ * </p>
  * 
  * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
  */
-public final class TMAPIStore extends AbstractStore {
+public final class TMAPIStore extends AbstractStore implements ISDShareStore {
 
     private static final String _DEFAULT_GRAPH_IRI_BASE = "urn:x-cassa-tmapi:";
+    private static final String _VERSION_IRI_BASE = _DEFAULT_GRAPH_IRI_BASE + "version:";
     private final TopicMapSystem _sys;
     private final Locator _defaultGraphLocator;
+    private final ConcurrentMap<Locator, Graph> _graphs;
+    /**
+     * Versions which are not used anymore but which are not removed 
+     * from the topic map system yet.
+     */
+    private final Queue<Version> _released;
+    /**
+     * Locators of the topic maps which wait for removal.
+     */
+    private final Set<Locator> _pendingRemoval;
+    /**
+     * Serializes the writers.
+     */
+    private final Object _writeLock;
+    /**
+     * Guards the topic map system, {@link #_pendingRemoval} and the 
+     * registration of graphs. Never held while parsing or serializing.
+     */
+    private final Object _sysLock;
+    /**
+     * The time of the last modification, changed by the writer only.
+     */
+    private volatile long _lastModification;
 
     public TMAPIStore(final TopicMapSystem sys) {
         _sys = sys;
+        _graphs = new ConcurrentHashMap<Locator, Graph>();
+        _released = new ConcurrentLinkedQueue<Version>();
+        _pendingRemoval = new HashSet<Locator>();
+        _writeLock = new Object();
+        _sysLock = new Object();
+        _lastModification = System.currentTimeMillis();
         _defaultGraphLocator = _sys.createLocator(_DEFAULT_GRAPH_IRI_BASE + UUID.randomUUID().toString());
         try {
-            _sys.createTopicMap(_defaultGraphLocator);
+            _graphs.put(_defaultGraphLocator, new Graph(_defaultGraphLocator, 
+                    new Version(_sys.createTopicMap(_defaultGraphLocator), _lastModification)));
         }
         catch (TMAPIException ex) {
             throw new IllegalStateException("Expected an empty topic map system");
@@ -69,7 +163,7 @@ public final class TMAPIStore extends AbstractStore {
      */
     @Override
     public long getLastModification() {
-        return -1;
+        return _lastModification;
     }
 
     /* (non-Javadoc)
@@ -77,12 +171,16 @@ public final class TMAPIStore extends AbstractStore {
      */
     @Override
     public Iterable<IGraphInfo> getGraphInfos() throws StoreException {
+        synchronized (_sysLock) {
+            adoptTopicMaps();
+        }
         final List<IGraphInfo> graphs = new ArrayList<IGraphInfo>();
-        for (Locator loc: _sys.getLocators()) {
-            if (loc.equals(_defaultGraphLocator)) {
+        for (Graph graph: _graphs.values()) {
+            final Version version = graph.current;
+            if (graph.locator.equals(_defaultGraphLocator) || version == null) {
                 continue;
             }
-            graphs.add(new GraphInfo(loc));
+            graphs.add(new GraphInfo(graph.locator, version.lastModification));
         }
         return graphs;
     }
@@ -94,14 +192,67 @@ public final class TMAPIStore extends AbstractStore {
     public IWritableRepresentation getGraph(URI graphURI, MediaType mediaType)
             throws GraphNotExistsException, UnsupportedMediaTypeException,
             StoreException {
-        ensureGraphExists(graphURI);
         if (mediaType != null) {
             TMAPIUtils.ensureWritableMediaType(mediaType);
         }
         else {
             mediaType = MediaType.XTM;
         }
-        return new WritableRepresentation(_sys.getTopicMap(asLocator(graphURI)), mediaType);
+        final Graph graph = existingGraph(graphURI);
+        return new WritableRepresentation(graph.locator, acquire(graph, graphURI), mediaType);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.impl.AbstractStore#openGraph(java.net.URI)
+     */
+    @Override
+    public IGraph openGraph(URI graphURI) throws GraphNotExistsException,
+            StoreException {
+        final Graph graph = existingGraph(graphURI);
+        return new VersionGraph(graphURI, graph.locator, acquire(graph, graphURI));
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * The topic which represents the subject is copied with its names,
+     * occurrences and associations into a new topic map which is removed 
+     * after the serialization.
+     */
+    @Override
+    public IWritableRepresentation getSubject(URI graphURI, URI subjectURI,
+            MediaType mediaType) throws GraphNotExistsException,
+            UnsupportedMediaTypeException, StoreException {
+        if (mediaType != null) {
+            TMAPIUtils.ensureWritableMediaType(mediaType);
+        }
+        else {
+            mediaType = MediaType.XTM;
+        }
+        final Graph graph = existingGraph(graphURI);
+        final Version version = acquire(graph, graphURI);
+        final TopicMap tm;
+        try {
+            tm = newTopicMap();
+            boolean success = false;
+            try {
+                final Topic topic = TMAPIUtils.getTopic(version.tm, subjectURI);
+                if (topic != null) {
+                    TMAPIUtils.copyTopic(topic, tm);
+                }
+                success = true;
+            }
+            finally {
+                if (!success) {
+                    discard(tm);
+                }
+            }
+        }
+        finally {
+            version.release();
+        }
+        // The copy is removed like a released version after it was written
+        return new WritableRepresentation(graph.locator, new Version(tm, version.lastModification), mediaType);
     }
 
     /* (non-Javadoc)
@@ -109,7 +260,8 @@ public final class TMAPIStore extends AbstractStore {
      */
     @Override
     public boolean containsGraph(URI graphURI) throws StoreException {
-        return _sys.getLocators().contains(asLocator(graphURI));
+        final Graph graph = lookup(asLocator(graphURI));
+        return graph != null && graph.current != null;
     }
 
     /* (non-Javadoc)
@@ -118,8 +270,11 @@ public final class TMAPIStore extends AbstractStore {
     @Override
     public IGraphInfo getGraphInfo(URI graphURI)
             throws GraphNotExistsException, StoreException {
-        ensureGraphExists(graphURI);
-        return new GraphInfo(graphURI);
+        final Version version = existingGraph(graphURI).current;
+        if (version == null) {
+            throw new GraphNotExistsException(graphURI);
+        }
+        return new GraphInfo(graphURI, version.lastModification);
     }
 
     /* (non-Javadoc)
@@ -128,11 +283,17 @@ public final class TMAPIStore extends AbstractStore {
     @Override
     public RemovalStatus deleteGraph(URI graphURI)
             throws GraphNotExistsException, StoreException {
-        ensureGraphExists(graphURI);
-        final Locator loc = asLocator(graphURI);
-        _sys.getTopicMap(loc).remove();
-        if (_defaultGraphLocator.equals(loc)) {
-            makeTopicMap(_defaultGraphLocator);
+        synchronized (_writeLock) {
+            final Graph graph = existingGraph(graphURI);
+            if (graph.locator.equals(_defaultGraphLocator)) {
+                final long modification = nextModification();
+                publish(graph, new Version(newTopicMap(), modification));
+                graph.reset(modification);
+            }
+            else {
+                unpublish(graph);
+                nextModification();
+            }
         }
         return RemovalStatus.IMMEDIATELY;
     }
@@ -144,15 +305,44 @@ public final class TMAPIStore extends AbstractStore {
     public IGraphInfo updateGraph(URI graphURI, InputStream in, URI baseURI,
             MediaType mediaType) throws UnsupportedMediaTypeException,
             IOException, StoreException {
-        ensureGraphExists(graphURI);
         if (mediaType != null) {
             TMAPIUtils.ensureReadableMediaType(mediaType);
         }
         else {
             mediaType = MediaType.XTM;
         }
-        TMAPIUtils.read(_sys.getTopicMap(asLocator(graphURI)), baseURI, in, mediaType);
-        return new GraphInfo(graphURI);
+        final long modification;
+        synchronized (_writeLock) {
+            final Graph graph = existingGraph(graphURI);
+            // Parse aside, the topics of the input are the changed topics
+            final TopicMap input = read(baseURI, in, mediaType);
+            final TopicMap tm;
+            final Collection<Set<IResource>> changes;
+            try {
+                tm = newTopicMap();
+                boolean success = false;
+                try {
+                    tm.mergeIn(graph.current.tm);
+                    tm.mergeIn(input);
+                    changes = getChanges(tm, input);
+                    success = true;
+                }
+                finally {
+                    if (!success) {
+                        discard(tm);
+                    }
+                }
+            }
+            finally {
+                discard(input);
+            }
+            modification = nextModification();
+            publish(graph, new Version(tm, modification));
+            for (Set<IResource> resources: changes) {
+                graph.addFragment(resources, modification);
+            }
+        }
+        return new GraphInfo(graphURI, modification);
     }
 
     /* (non-Javadoc)
@@ -169,8 +359,16 @@ public final class TMAPIStore extends AbstractStore {
             mediaType = MediaType.XTM;
         }
         final URI graphURI = baseURI.resolve(UUID.randomUUID().toString());
-        TMAPIUtils.read(makeTopicMap(asLocator(graphURI)), baseURI, in, mediaType);
-        return new GraphInfo(graphURI);
+        final long modification;
+        synchronized (_writeLock) {
+            final Locator loc = asLocator(graphURI);
+            final TopicMap tm = read(baseURI, in, mediaType);
+            modification = nextModification();
+            final Graph graph = new Graph(loc);
+            graph.reset(modification);
+            publish(graph, new Version(tm, modification));
+        }
+        return new GraphInfo(graphURI, modification);
     }
 
     /* (non-Javadoc)
@@ -186,12 +384,18 @@ public final class TMAPIStore extends AbstractStore {
         else {
             mediaType = MediaType.XTM;
         }
-        final Locator loc = asLocator(graphURI);
-        if (containsGraph(graphURI)) {
-            _sys.getTopicMap(loc).remove();
+        final long modification;
+        synchronized (_writeLock) {
+            final Locator loc = asLocator(graphURI);
+            // Parse aside, the current version is replaced iff parsing succeeds
+            final TopicMap tm = read(baseURI, in, mediaType);
+            modification = nextModification();
+            final Graph existing = lookup(loc);
+            final Graph graph = existing != null ? existing : new Graph(loc);
+            graph.reset(modification);
+            publish(graph, new Version(tm, modification));
         }
-        TMAPIUtils.read(makeTopicMap(loc), baseURI, in, mediaType);
-        return new GraphInfo(graphURI);
+        return new GraphInfo(graphURI, modification);
     }
 
     /* (non-Javadoc)
@@ -205,20 +409,231 @@ public final class TMAPIStore extends AbstractStore {
         return false;
     }
 
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.IStore#deleteSubject(java.net.URI, java.net.URI)
+     */
     @Override
     public RemovalStatus deleteSubject(URI graphURI, URI subjectURI)
             throws GraphNotExistsException, IOException, StoreException {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException();
+        synchronized (_writeLock) {
+            final Graph graph = existingGraph(graphURI);
+            final Topic topic = TMAPIUtils.getTopic(graph.current.tm, subjectURI);
+            if (topic != null) {
+                // The identities of the topic are unknown after the removal
+                final Set<IResource> resources = TMAPIUtils.getResources(topic);
+                final List<Set<IResource>> players = new ArrayList<Set<IResource>>();
+                final long modification = replaceSubject(graph, subjectURI, null, players);
+                graph.addFragment(resources, modification);
+                for (Set<IResource> player: players) {
+                    graph.addFragment(player, modification);
+                }
+            }
+        }
+        return RemovalStatus.IMMEDIATELY;
     }
 
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.IStore#createOrReplaceSubject(java.net.URI, java.net.URI, java.io.InputStream, java.net.URI, com.semagia.cassa.common.MediaType)
+     */
     @Override
     public IGraphInfo createOrReplaceSubject(URI graphURI, URI subjectURI,
             InputStream in, URI baseURI, MediaType mediaType)
             throws UnsupportedMediaTypeException, IOException, ParseException,
             StoreException {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException();
+        if (mediaType != null) {
+            TMAPIUtils.ensureReadableMediaType(mediaType);
+        }
+        else {
+            mediaType = MediaType.XTM;
+        }
+        final long modification;
+        synchronized (_writeLock) {
+            final Graph graph = existingGraph(graphURI);
+            // Parse aside, the subject is replaced iff parsing succeeds
+            final TopicMap input = read(baseURI, in, mediaType);
+            final List<Set<IResource>> players = new ArrayList<Set<IResource>>();
+            try {
+                modification = replaceSubject(graph, subjectURI, input, players);
+            }
+            finally {
+                discard(input);
+            }
+            final Topic topic = TMAPIUtils.getTopic(graph.current.tm, subjectURI);
+            graph.addFragment(topic != null ? TMAPIUtils.getResources(topic) 
+                                            : Collections.<IResource>singleton(new DefaultResource(subjectURI)), 
+                              modification);
+            for (Set<IResource> player: players) {
+                graph.addFragment(player, modification);
+            }
+        }
+        return new GraphInfo(graphURI, modification);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.ISDShareStore#getLastModificationFragments(java.net.URI)
+     */
+    @Override
+    public long getLastModificationFragments(URI graphURI)
+            throws GraphNotExistsException, StoreException {
+        final Graph graph = existingGraph(graphURI);
+        return Math.max(graph.fragments.getLastModification(), graph.getLastReset());
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.ISDShareStore#getLastModificationSnapshots(java.net.URI)
+     */
+    @Override
+    public long getLastModificationSnapshots(URI graphURI)
+            throws GraphNotExistsException, StoreException {
+        return getGraphInfo(graphURI).getLastModification();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.ISDShareStore#getFragments(java.net.URI)
+     */
+    @Override
+    public Iterable<IFragmentInfo> getFragments(URI graphURI)
+            throws GraphNotExistsException, StoreException {
+        return existingGraph(graphURI).fragments.getFragments();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.ISDShareStore#getFragments(java.net.URI, long)
+     */
+    @Override
+    public Iterable<IFragmentInfo> getFragments(URI graphURI, long since)
+            throws GraphNotExistsException, StoreException {
+        return existingGraph(graphURI).fragments.getFragments(since);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.cassa.server.store.ISDShareStore#getSnapshots(java.net.URI)
+     */
+    @Override
+    public Iterable<IGraphInfo> getSnapshots(URI graphURI)
+            throws GraphNotExistsException, StoreException {
+        return Collections.singleton(getGraphInfo(graphURI));
+    }
+
+    /**
+     * Returns the base IRI which is used to serialize the provided graph.
+     *
+     * @param graphURI The graph URI.
+     * @return The base IRI.
+     */
+    String getBaseIRI(final URI graphURI) {
+        return asLocator(graphURI).toExternalForm();
+    }
+
+    /**
+     * Removes the topic which represents the subject from a copy of the 
+     * current version of the graph, merges the input (if any) into the copy
+     * and publishes the copy as next version.
+     * 
+     * Must be called by the writer.
+     *
+     * @param graph The graph.
+     * @param subjectURI The subject URI.
+     * @param input The topic map to merge in or {@code null}.
+     * @param players Receives the identities of the other players of the 
+     *          removed and the added associations.
+     * @return The modification time or {@code -1} if the graph was not changed.
+     */
+    private long replaceSubject(final Graph graph, final URI subjectURI, final TopicMap input, 
+            final List<Set<IResource>> players) throws StoreException {
+        final TopicMap tm = newTopicMap();
+        final boolean changed;
+        boolean success = false;
+        try {
+            tm.mergeIn(graph.current.tm);
+            changed = replaceSubject(tm, subjectURI, input, players);
+            success = true;
+        }
+        finally {
+            if (!success) {
+                discard(tm);
+            }
+        }
+        if (!changed) {
+            discard(tm);
+            return -1;
+        }
+        final long modification = nextModification();
+        publish(graph, new Version(tm, modification));
+        return modification;
+    }
+
+    /**
+     * Returns the identities of the topics of the input as they are in the
+     * provided topic map, topics which were merged are reported once.
+     */
+    private static Collection<Set<IResource>> getChanges(final TopicMap tm, final TopicMap input) {
+        final Map<Topic, Set<IResource>> changes = new LinkedHashMap<Topic, Set<IResource>>();
+        for (Topic inputTopic: input.getTopics()) {
+            final Set<IResource> inputResources = TMAPIUtils.getResources(inputTopic);
+            if (inputResources.isEmpty()) {
+                continue;
+            }
+            final Topic topic = TMAPIUtils.getTopic(tm, inputResources.iterator().next().getURI());
+            if (topic != null && !changes.containsKey(topic)) {
+                changes.put(topic, TMAPIUtils.getResources(topic));
+            }
+        }
+        return changes.values();
+    }
+
+    private static boolean replaceSubject(final TopicMap tm, final URI subjectURI, final TopicMap input, 
+            final List<Set<IResource>> players) {
+        // The serialization of a topic contains its associations, so the 
+        // other players of the removed and added associations change as well.
+        // Players are remembered by one of their identities since topics may 
+        // be merged by mergeIn()
+        final Set<URI> playerIRIs = new LinkedHashSet<URI>();
+        final Topic topic = TMAPIUtils.getTopic(tm, subjectURI);
+        if (topic != null) {
+            for (Role role: topic.getRolesPlayed()) {
+                addPlayers(playerIRIs, role.getParent());
+            }
+            TMAPIUtils.removeTopic(topic);
+        }
+        if (input != null) {
+            for (Association assoc: input.getAssociations()) {
+                addPlayers(playerIRIs, assoc);
+            }
+            tm.mergeIn(input);
+        }
+        final Topic subject = TMAPIUtils.getTopic(tm, subjectURI);
+        final Set<Topic> seen = new HashSet<Topic>();
+        for (URI iri: playerIRIs) {
+            final Topic player = TMAPIUtils.getTopic(tm, iri);
+            if (player != null && player != subject && seen.add(player)) {
+                players.add(TMAPIUtils.getResources(player));
+            }
+        }
+        return topic != null || input != null;
+    }
+
+    /**
+     * Adds an identity of each player of the association to the provided set.
+     */
+    private static void addPlayers(final Set<URI> playerIRIs, final Association assoc) {
+        for (Role role: assoc.getRoles()) {
+            final Set<IResource> resources = TMAPIUtils.getResources(role.getPlayer());
+            if (!resources.isEmpty()) {
+                playerIRIs.add(resources.iterator().next().getURI());
+            }
+        }
+    }
+
+    /**
+     * Returns a modification time which is greater than the previous one.
+     * 
+     * Must be called by the writer.
+     */
+    private long nextModification() {
+        final long now = System.currentTimeMillis();
+        _lastModification = now > _lastModification ? now : _lastModification + 1;
+        return _lastModification;
     }
 
     /**
@@ -232,24 +647,345 @@ public final class TMAPIStore extends AbstractStore {
                                            : _sys.createLocator(uri.toString());
     }
 
-    private TopicMap makeTopicMap(final Locator loc) throws StoreException {
+    /**
+     * Returns an empty topic map with an internal locator.
+     */
+    private TopicMap newTopicMap() throws StoreException {
+        synchronized (_sysLock) {
+            removeReleased();
+            try {
+                return _sys.createTopicMap(_VERSION_IRI_BASE + UUID.randomUUID().toString());
+            }
+            catch (TMAPIException ex) {
+                throw new StoreException(ex);
+            }
+        }
+    }
+
+    /**
+     * Removes a topic map which was never published.
+     */
+    private void discard(final TopicMap tm) {
+        synchronized (_sysLock) {
+            tm.remove();
+        }
+    }
+
+    /**
+     * Reads the input into a new topic map.
+     * 
+     * Must be called by the writer.
+     */
+    private TopicMap read(final URI baseURI, final InputStream in, final MediaType mediaType) throws IOException, StoreException {
+        final TopicMap tm = newTopicMap();
+        boolean success = false;
         try {
-            return _sys.createTopicMap(loc);
+            TMAPIUtils.read(tm, baseURI, in, mediaType);
+            success = true;
         }
-        catch (TMAPIException ex) {
-            throw new StoreException(ex);
+        finally {
+            if (!success) {
+                discard(tm);
+            }
+        }
+        return tm;
+    }
+
+    /**
+     * Returns the graph with the provided URI.
+     * 
+     * @throws GraphNotExistsException If the graph does not exist.
+     */
+    private Graph existingGraph(final URI graphURI) throws GraphNotExistsException {
+        final Graph graph = lookup(asLocator(graphURI));
+        if (graph == null || graph.current == null) {
+            throw new GraphNotExistsException(graphURI);
+        }
+        return graph;
+    }
+
+    /**
+     * Returns the graph with the provided locator or {@code null}.
+     */
+    private Graph lookup(final Locator loc) {
+        final Graph graph = _graphs.get(loc);
+        if (graph != null) {
+            return graph;
+        }
+        synchronized (_sysLock) {
+            adoptTopicMaps();
+            return _graphs.get(loc);
+        }
+    }
+
+    /**
+     * Registers the topic maps which were created directly through the
+     * topic map system.
+     * 
+     * The caller must hold the {@link #_sysLock}.
+     */
+    private void adoptTopicMaps() {
+        removeReleased();
+        for (Locator loc: _sys.getLocators()) {
+            if (_graphs.containsKey(loc) 
+                    || _pendingRemoval.contains(loc)
+                    || loc.toExternalForm().startsWith(_DEFAULT_GRAPH_IRI_BASE)) {
+                continue;
+            }
+            _graphs.put(loc, new Graph(loc, new Version(_sys.getTopicMap(loc), _lastModification)));
+        }
+    }
+
+    /**
+     * Acquires the current version of the provided graph. 
+     * 
+     * The caller must release the version.
+     * 
+     * @throws GraphNotExistsException If the graph was removed.
+     */
+    private Version acquire(final Graph graph, final URI graphURI) throws GraphNotExistsException {
+        while (true) {
+            final Version version = graph.current;
+            if (version == null) {
+                throw new GraphNotExistsException(graphURI);
+            }
+            if (version.acquire()) {
+                return version;
+            }
+            // The version was superseded in the meantime, try again
+        }
+    }
+
+    /**
+     * Publishes the provided version as current version of the graph.
+     * 
+     * Must be called by the writer.
+     */
+    private void publish(final Graph graph, final Version version) {
+        synchronized (_sysLock) {
+            final Version previous = graph.current;
+            graph.current = version;
+            _graphs.put(graph.locator, graph);
+            if (previous != null) {
+                retire(previous);
+            }
+        }
+    }
+
+    /**
+     * Removes the graph.
+     * 
+     * Must be called by the writer.
+     */
+    private void unpublish(final Graph graph) {
+        synchronized (_sysLock) {
+            final Version previous = graph.current;
+            graph.current = null;
+            _graphs.remove(graph.locator);
+            if (previous != null) {
+                retire(previous);
+            }
+        }
+    }
+
+    /**
+     * Releases the store's reference to the version, the version is removed
+     * if no reader uses it.
+     * 
+     * Must be called by the writer.
+     */
+    private void retire(final Version version) {
+        synchronized (_sysLock) {
+            _pendingRemoval.add(version.tm.getLocator());
+            version.release();
+            removeReleased();
+        }
+    }
+
+    /**
+     * Removes the released versions from the topic map system.
+     * 
+     * The caller must hold the {@link #_sysLock}.
+     */
+    private void removeReleased() {
+        Version version;
+        while ((version = _released.poll()) != null) {
+            final Locator loc = version.tm.getLocator();
+            version.tm.remove();
+            _pendingRemoval.remove(loc);
+        }
+    }
+
+
+    /**
+     * A graph which refers to the current version of its topic map.
+     */
+    private static final class Graph {
+
+        final Locator locator;
+        /**
+         * The current version or {@code null} if the graph was removed.
+         */
+        volatile Version current;
+        /**
+         * The changed topics since the last reset.
+         */
+        final FragmentIndex fragments;
+        /**
+         * The time of the last change which affected the whole graph.
+         */
+        private volatile long _reset;
+
+        Graph(final Locator loc) {
+            locator = loc;
+            fragments = new FragmentIndex();
+            _reset = -1;
+        }
+
+        Graph(final Locator loc, final Version version) {
+            this(loc);
+            current = version;
+        }
+
+        long getLastReset() {
+            return _reset;
         }
+
+        /**
+         * Discards the fragments. 
+         */
+        void reset(final long time) {
+            fragments.clear();
+            _reset = time;
+        }
+
+        /**
+         * Adds a fragment which describes the topic with the provided 
+         * identities.
+         */
+        void addFragment(final Set<IResource> resources, final long time) {
+            if (resources.isEmpty()) {
+                return;
+            }
+            fragments.add(new DefaultFragmentInfo(resources.iterator().next().getURI(), 
+                    resources, TMAPIUtils.getWritableMediaTypes(), time));
+        }
+
+    }
+
+
+    /**
+     * An immutable version of a topic map.
+     * 
+     * The version is reference counted: The store holds one reference until 
+     * the version is superseded, each reader holds a reference while it 
+     * serializes the topic map.
+     */
+    private final class Version {
+
+        final TopicMap tm;
+        final long lastModification;
+        private final AtomicInteger _refs;
+
+        Version(final TopicMap topicMap, final long modification) {
+            tm = topicMap;
+            lastModification = modification;
+            _refs = new AtomicInteger(1);
+        }
+
+        /**
+         * Returns {@code true} if a reference was acquired, {@code false}
+         * if the version is released.
+         */
+        boolean acquire() {
+            while (true) {
+                final int refs = _refs.get();
+                if (refs == 0) {
+                    return false;
+                }
+                if (_refs.compareAndSet(refs, refs + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            if (_refs.decrementAndGet() == 0) {
+                // Readers must not modify the topic map system, the writer removes the topic map
+                _released.add(this);
+            }
+        }
+
     }
 
 
     private static class GraphInfo extends DefaultGraphInfo {
 
-        public GraphInfo(final Locator loc) {
-            this(URI.create(loc.toExternalForm()));
+        public GraphInfo(final Locator loc, final long lastModification) {
+            this(URI.create(loc.toExternalForm()), lastModification);
+        }
+
+        public GraphInfo(final URI uri, final long lastModification) {
+            super(uri, TMAPIUtils.getWritableMediaTypes(), lastModification);
+        }
+
+    }
+
+
+    /**
+     * {@link IGraph} implementation which holds a reference to a version, so 
+     * the metadata and the serialization belong to the same version.
+     */
+    private static final class VersionGraph implements IGraph {
+
+        private final Locator _graphLocator;
+        private final IGraphInfo _info;
+        private Version _version;
+
+        VersionGraph(final URI graphURI, final Locator graphLocator, final Version version) {
+            _graphLocator = graphLocator;
+            _version = version;
+            _info = new GraphInfo(graphURI, version.lastModification);
+        }
+
+        /* (non-Javadoc)
+         * @see com.semagia.cassa.server.store.IGraph#getGraphInfo()
+         */
+        @Override
+        public IGraphInfo getGraphInfo() {
+            return _info;
         }
 
-        public GraphInfo(final URI uri) {
-            super(uri, TMAPIUtils.getWritableMediaTypes());
+        /* (non-Javadoc)
+         * @see com.semagia.cassa.server.store.IGraph#getRepresentation(com.semagia.cassa.common.MediaType)
+         */
+        @Override
+        public IWritableRepresentation getRepresentation(MediaType mediaType)
+                throws UnsupportedMediaTypeException, IOException,
+                StoreException {
+            if (_version == null) {
+                throw new IllegalStateException("The representation was already requested");
+            }
+            if (mediaType != null) {
+                TMAPIUtils.ensureWritableMediaType(mediaType);
+            }
+            else {
+                mediaType = MediaType.XTM;
+            }
+            final Version version = _version;
+            _version = null;
+            return new WritableRepresentation(_graphLocator, version, mediaType);
+        }
+
+        /* (non-Javadoc)
+         * @see com.semagia.cassa.server.store.IGraph#close()
+         */
+        @Override
+        public void close() throws StoreException {
+            if (_version != null) {
+                _version.release();
+                _version = null;
+            }
         }
 
     }
@@ -258,10 +994,12 @@ public final class TMAPIStore extends AbstractStore {
     private static class WritableRepresentation implements IWritableRepresentation {
 
         private final MediaType _mediaType;
-        private final TopicMap _tm;
+        private final Locator _graphLocator;
+        private final Version _version;
 
-        public WritableRepresentation(final TopicMap tm, final MediaType mt) {
-            _tm = tm;
+        public WritableRepresentation(final Locator graphLocator, final Version version, final MediaType mt) {
+            _graphLocator = graphLocator;
+            _version = version;
             _mediaType = mt;
         }
 
@@ -270,7 +1008,12 @@ public final class TMAPIStore extends AbstractStore {
          */
         @Override
         public void write(OutputStream out) throws IOException {
-            TMAPIUtils.write(_tm, _mediaType, out);
+            try {
+                TMAPIUtils.write(_version.tm, _graphLocator.toExternalForm(), _mediaType, out);
+            }
+            finally {
+                _version.release();
+            }
         }
 
         /* (non-Javadoc)
@@ -19,10 +19,30 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import org.tmapi.core.Association;
+import org.tmapi.core.Construct;
+import org.tmapi.core.Locator;
+import org.tmapi.core.Name;
+import org.tmapi.core.Occurrence;
+import org.tmapi.core.Reifiable;
+import org.tmapi.core.Role;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicInUseException;
 import org.tmapi.core.TopicMap;
+import org.tmapi.core.Variant;
 import org.tmapix.io.CTMTopicMapWriter;
 import org.tmapix.io.MapHandlerFactory;
 import org.tmapix.io.TopicMapWriter;
@@ -30,6 +50,8 @@ import org.tmapix.io.XTM2TopicMapWriter;
 import org.tmapix.io.XTMVersion;
 
 import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.common.dm.IResource;
+import com.semagia.cassa.common.dm.impl.DefaultResource;
 import com.semagia.cassa.server.store.UnsupportedMediaTypeException;
 import com.semagia.mio.DeserializerRegistry;
 import com.semagia.mio.IDeserializer;
@@ -49,6 +71,13 @@ final class TMAPIUtils {
 
     private static final List<MediaType> _WRITABLE_MEDIATYPES = _READABLE_MEDIATYPES;
 
+    private static final int _MAX_SYNTAXES = 64;
+
+    /**
+     * Caches the syntax lookups per (interned) media type.
+     */
+    private static final ConcurrentMap<MediaType, Syntax> _SYNTAXES = new ConcurrentHashMap<MediaType, Syntax>();
+
     private TMAPIUtils() {
         // noop.
     }
@@ -85,19 +114,211 @@ final class TMAPIUtils {
 
     public static void write(final TopicMap tm, final MediaType mediaType,
             final OutputStream out) throws IOException {
+        write(tm, tm.getLocator().toExternalForm(), mediaType, out);
+    }
+
+    public static void write(final TopicMap tm, final String baseIRI, final MediaType mediaType,
+            final OutputStream out) throws IOException {
         final TopicMapWriter writer = mediaType.equals(MediaType.XTM) ? new XTM2TopicMapWriter(
-                out, tm.getLocator().toExternalForm(), XTMVersion.XTM_2_1)
-                : new CTMTopicMapWriter(out, tm.getLocator().toExternalForm());
+                out, baseIRI, XTMVersion.XTM_2_1)
+                : new CTMTopicMapWriter(out, baseIRI);
         writer.write(tm);
     }
 
+    /**
+     * Returns the topic which has the provided IRI as subject identifier,
+     * subject locator or item identifier (in this order).
+     * 
+     * The lookup uses the identity indexes of the topic map, the costs 
+     * do not depend on the size of the topic map.
+     *
+     * @param tm The topic map.
+     * @param iri The IRI.
+     * @return The topic or {@code null} if no topic has the provided identity.
+     */
+    public static Topic getTopic(final TopicMap tm, final URI iri) {
+        final Locator loc = tm.createLocator(iri.toString());
+        Topic topic = tm.getTopicBySubjectIdentifier(loc);
+        if (topic == null) {
+            topic = tm.getTopicBySubjectLocator(loc);
+        }
+        if (topic == null) {
+            final Construct construct = tm.getConstructByItemIdentifier(loc);
+            if (construct instanceof Topic) {
+                topic = (Topic) construct;
+            }
+        }
+        return topic;
+    }
+
+    /**
+     * Returns the subject identifiers, subject locators and item identifiers
+     * of the topic (in this order) with their roles.
+     *
+     * @param topic The topic.
+     * @return A (maybe empty) set of resources.
+     */
+    public static Set<IResource> getResources(final Topic topic) {
+        final Set<IResource> resources = new LinkedHashSet<IResource>();
+        addResources(resources, topic.getSubjectIdentifiers(), IResource.Role.SUBJECT_IDENTIFIER);
+        addResources(resources, topic.getSubjectLocators(), IResource.Role.SUBJECT_LOCATOR);
+        addResources(resources, topic.getItemIdentifiers(), IResource.Role.ITEM_IDENTIFIER);
+        return resources;
+    }
+
+    private static void addResources(final Set<IResource> resources, 
+            final Set<Locator> locators, final IResource.Role role) {
+        // Sorted, so the first resource of a topic does not depend on the engine
+        final Set<String> iris = new TreeSet<String>();
+        for (Locator loc: locators) {
+            iris.add(loc.toExternalForm());
+        }
+        for (String iri: iris) {
+            resources.add(new DefaultResource(URI.create(iri), role));
+        }
+    }
+
+    /**
+     * Removes the topic and the statements about it: The associations
+     * where the topic plays a role are removed and the reification is 
+     * cancelled. If the topic is used as type or theme, only its names and
+     * occurrences are removed.
+     * 
+     * The costs depend on the size of the topic, not on the size of the 
+     * topic map.
+     *
+     * @param topic The topic to remove.
+     */
+    public static void removeTopic(final Topic topic) {
+        final Set<Association> associations = new HashSet<Association>();
+        for (Role role: topic.getRolesPlayed()) {
+            associations.add(role.getParent());
+        }
+        for (Association assoc: associations) {
+            assoc.remove();
+        }
+        final Reifiable reified = topic.getReified();
+        if (reified != null) {
+            reified.setReifier(null);
+        }
+        try {
+            topic.remove();
+        }
+        catch (TopicInUseException ex) {
+            for (Name name: new ArrayList<Name>(topic.getNames())) {
+                name.remove();
+            }
+            for (Occurrence occ: new ArrayList<Occurrence>(topic.getOccurrences())) {
+                occ.remove();
+            }
+        }
+    }
+
+    /**
+     * Copies the topic with its types, names, occurrences and the 
+     * associations where it plays a role into the target topic map. 
+     * The other topics (types, themes, role players) are copied with their 
+     * identities only.
+     * 
+     * The costs depend on the size of the topic, not on the size of the 
+     * topic map.
+     *
+     * @param topic The topic to copy.
+     * @param target The topic map to copy the topic into.
+     */
+    public static void copyTopic(final Topic topic, final TopicMap target) {
+        final Map<Topic, Topic> copies = new HashMap<Topic, Topic>();
+        final Topic copy = copyIdentities(topic, target, copies);
+        for (Topic type: topic.getTypes()) {
+            copy.addType(copyIdentities(type, target, copies));
+        }
+        for (Name name: topic.getNames()) {
+            final Name nameCopy = copy.createName(copyIdentities(name.getType(), target, copies), 
+                    name.getValue(), copyScope(name.getScope(), target, copies));
+            for (Variant variant: name.getVariants()) {
+                nameCopy.createVariant(variant.getValue(), variant.getDatatype(), 
+                        copyScope(variant.getScope(), target, copies));
+            }
+        }
+        for (Occurrence occ: topic.getOccurrences()) {
+            copy.createOccurrence(copyIdentities(occ.getType(), target, copies), 
+                    occ.getValue(), occ.getDatatype(), copyScope(occ.getScope(), target, copies));
+        }
+        final Set<Association> associations = new HashSet<Association>();
+        for (Role role: topic.getRolesPlayed()) {
+            associations.add(role.getParent());
+        }
+        for (Association assoc: associations) {
+            final Association assocCopy = target.createAssociation(copyIdentities(assoc.getType(), target, copies), 
+                    copyScope(assoc.getScope(), target, copies));
+            for (Role role: assoc.getRoles()) {
+                assocCopy.createRole(copyIdentities(role.getType(), target, copies), 
+                        copyIdentities(role.getPlayer(), target, copies));
+            }
+        }
+    }
+
+    private static Topic copyIdentities(final Topic topic, final TopicMap target, 
+            final Map<Topic, Topic> copies) {
+        Topic copy = copies.get(topic);
+        if (copy != null) {
+            return copy;
+        }
+        if (!topic.getSubjectIdentifiers().isEmpty()) {
+            copy = target.createTopicBySubjectIdentifier(topic.getSubjectIdentifiers().iterator().next());
+        }
+        else if (!topic.getSubjectLocators().isEmpty()) {
+            copy = target.createTopicBySubjectLocator(topic.getSubjectLocators().iterator().next());
+        }
+        else if (!topic.getItemIdentifiers().isEmpty()) {
+            copy = target.createTopicByItemIdentifier(topic.getItemIdentifiers().iterator().next());
+        }
+        else {
+            copy = target.createTopic();
+        }
+        for (Locator loc: topic.getSubjectIdentifiers()) {
+            copy.addSubjectIdentifier(loc);
+        }
+        for (Locator loc: topic.getSubjectLocators()) {
+            copy.addSubjectLocator(loc);
+        }
+        for (Locator loc: topic.getItemIdentifiers()) {
+            copy.addItemIdentifier(loc);
+        }
+        copies.put(topic, copy);
+        return copy;
+    }
+
+    private static Collection<Topic> copyScope(final Set<Topic> scope, final TopicMap target, 
+            final Map<Topic, Topic> copies) {
+        final List<Topic> themes = new ArrayList<Topic>(scope.size());
+        for (Topic theme: scope) {
+            themes.add(copyIdentities(theme, target, copies));
+        }
+        return themes;
+    }
+
     private static String toMIMEType(MediaType mediaType) {
         return mediaType.toString();
     }
 
+    private static Syntax toSyntax(final MediaType mediaType) {
+        Syntax syntax = _SYNTAXES.get(mediaType);
+        if (syntax == null) {
+            syntax = Syntax.forMIMEType(toMIMEType(mediaType));
+            if (syntax != null) {
+                if (_SYNTAXES.size() >= _MAX_SYNTAXES) {
+                    _SYNTAXES.clear();
+                }
+                _SYNTAXES.put(mediaType, syntax);
+            }
+        }
+        return syntax;
+    }
+
     public static void read(final TopicMap tm, final URI baseURI, 
             final InputStream in, final MediaType mediaType) throws IOException {
-        final IDeserializer deser = DeserializerRegistry.getInstance().createDeserializer(Syntax.forMIMEType(toMIMEType(mediaType)));
+        final IDeserializer deser = DeserializerRegistry.getInstance().createDeserializer(toSyntax(mediaType));
         // Enable more lenient topic map parsing
         deser.setProperty(Property.VALIDATE, Boolean.FALSE);
         deser.setProperty(Property.LTM_LEGACY, Boolean.FALSE);
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store.tmapi;
+
+import static com.semagia.cassa.server.store.tmapi.XTMTestUtils.read;
+import static com.semagia.cassa.server.store.tmapi.XTMTestUtils.topic;
+import static com.semagia.cassa.server.store.tmapi.XTMTestUtils.topicMap;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+
+import org.tmapi.core.TopicMapSystemFactory;
+
+import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.server.store.IStore;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against {@link PersistentTMAPIStore}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestPersistentTMAPIStore extends TestCase {
+
+    private static final URI _GRAPH = URI.create("http://www.semagia.com/test-graph");
+
+    private File _directory;
+    private PersistentTMAPIStore _store;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _directory = File.createTempFile("cassa-tmapi", "");
+        _directory.delete();
+        _store = open();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        _store.close();
+        delete(_directory);
+        super.tearDown();
+    }
+
+    private static void delete(final File file) {
+        final File[] files = file.listFiles();
+        if (files != null) {
+            for (File child: files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private PersistentTMAPIStore open() throws Exception {
+        return new PersistentTMAPIStore(new TMAPIStore(TopicMapSystemFactory.newInstance().newTopicMapSystem()), _directory);
+    }
+
+    private PersistentTMAPIStore reopen() throws Exception {
+        _store.close();
+        _store = open();
+        return _store;
+    }
+
+    private File journal() {
+        for (File file: _directory.listFiles()) {
+            if (file.getName().endsWith(".log")) {
+                return file;
+            }
+        }
+        fail("Expected a journal");
+        return null;
+    }
+
+    private static boolean hasTopic(final IStore store, final String topicId) throws Exception {
+        return TMAPIUtils.getTopic(read(store.getGraph(_GRAPH, MediaType.XTM), _GRAPH), _GRAPH.resolve("#" + topicId)) != null;
+    }
+
+    public void testIllegalDirectory() throws Exception {
+        try {
+            new PersistentTMAPIStore(new TMAPIStore(TopicMapSystemFactory.newInstance().newTopicMapSystem()), null);
+            fail("Expected an exception for a null directory");
+        }
+        catch (IllegalArgumentException ex) {
+            // noop.
+        }
+    }
+
+    public void testReplayJournal() throws Exception {
+        _store.createOrReplaceGraph(_GRAPH, topicMap(topic("a")), _GRAPH, MediaType.XTM);
+        _store.updateGraph(_GRAPH, topicMap(topic("b")), _GRAPH, MediaType.XTM);
+        final URI created = _store.createGraph(topicMap(topic("c")), _GRAPH, MediaType.XTM).getURI();
+        _store.deleteGraph(created);
+        final IStore store = reopen();
+        assertTrue(store.containsGraph(_GRAPH));
+        assertFalse(store.containsGraph(created));
+        assertTrue(hasTopic(store, "a"));
+        assertTrue(hasTopic(store, "b"));
+    }
+
+    public void testSnapshotAndJournalTail() throws Exception {
+        _store.createOrReplaceGraph(_GRAPH, topicMap(topic("a")), _GRAPH, MediaType.XTM);
+        _store.createOrReplaceGraph(IStore.DEFAULT_GRAPH, topicMap(topic("d")), _GRAPH, MediaType.XTM);
+        _store.snapshot();
+        _store.updateGraph(_GRAPH, topicMap(topic("b")), _GRAPH, MediaType.XTM);
+        final IStore store = reopen();
+        assertTrue(hasTopic(store, "a"));
+        assertTrue(hasTopic(store, "b"));
+        assertTrue(new File(_directory, "snapshot-1").isDirectory());
+        assertFalse(new File(_directory, "journal-0.log").exists());
+    }
+
+    public void testAbortedCallIsNotReplayed() throws Exception {
+        _store.createOrReplaceGraph(_GRAPH, topicMap(topic("a")), _GRAPH, MediaType.XTM);
+        try {
+            _store.updateGraph(_GRAPH, new ByteArrayInputStream("invalid".getBytes()), _GRAPH, MediaType.XTM);
+            fail("Expected a parse error");
+        }
+        catch (IOException ex) {
+            // noop.
+        }
+        _store.deleteSubject(_GRAPH, _GRAPH.resolve("#a"));
+        final IStore store = reopen();
+        assertTrue(store.containsGraph(_GRAPH));
+        assertFalse(hasTopic(store, "a"));
+    }
+
+    public void testIncompleteRecordIsDiscarded() throws Exception {
+        _store.createOrReplaceGraph(_GRAPH, topicMap(topic("a")), _GRAPH, MediaType.XTM);
+        _store.updateGraph(_GRAPH, topicMap(topic("b")), _GRAPH, MediaType.XTM);
+        _store.close();
+        final File journal = journal();
+        final long length = journal.length();
+        final RandomAccessFile raf = new RandomAccessFile(journal, "rw");
+        try {
+            raf.setLength(length - 3);
+        }
+        finally {
+            raf.close();
+        }
+        _store = open();
+        assertTrue(hasTopic(_store, "a"));
+        assertFalse(hasTopic(_store, "b"));
+    }
+
+}
@@ -15,12 +15,35 @@
  */
 package com.semagia.cassa.server.store.tmapi;
 
+import static com.semagia.cassa.server.store.tmapi.XTMTestUtils.association;
+import static com.semagia.cassa.server.store.tmapi.XTMTestUtils.getTopicName;
+import static com.semagia.cassa.server.store.tmapi.XTMTestUtils.read;
+import static com.semagia.cassa.server.store.tmapi.XTMTestUtils.topic;
+import static com.semagia.cassa.server.store.tmapi.XTMTestUtils.topicMap;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
 import org.tmapi.core.TopicMapSystem;
 import org.tmapi.core.TopicMapSystemFactory;
 
+import com.semagia.cassa.common.MediaType;
+import com.semagia.cassa.common.dm.IResource;
+import com.semagia.cassa.common.dm.IWritableRepresentation;
+import com.semagia.cassa.common.dm.impl.DefaultResource;
 import com.semagia.cassa.server.store.AbstractStoreTest;
+import com.semagia.cassa.server.store.GraphNotExistsException;
+import com.semagia.cassa.server.store.IFragmentInfo;
+import com.semagia.cassa.server.store.IGraph;
 
 /**
  * Tests against the {@link TMAPIStore}.
@@ -29,6 +52,8 @@ import com.semagia.cassa.server.store.AbstractStoreTest;
  */
 public class TestTMAPIStore extends AbstractStoreTest<TMAPIStore> {
 
+    private static final URI _GRAPH = URI.create("http://www.semagia.com/test-graph");
+
     private TopicMapSystem _sys;
 
     /* (non-Javadoc)
@@ -65,4 +90,196 @@ public class TestTMAPIStore extends AbstractStoreTest<TMAPIStore> {
         return true;
     }
 
+    private List<IFragmentInfo> fragments(final long since) throws Exception {
+        final List<IFragmentInfo> fragments = new ArrayList<IFragmentInfo>();
+        for (IFragmentInfo fragment: _store.getFragments(_GRAPH, since)) {
+            fragments.add(fragment);
+        }
+        return fragments;
+    }
+
+    public void testFragments() throws Exception {
+        final URI sidA = URI.create("http://psi.example.org/a");
+        final URI sidB = URI.create("http://psi.example.org/b");
+        _store.createOrReplaceGraph(_GRAPH, topicMap(topic("a", sidA)), _GRAPH, MediaType.XTM);
+        assertTrue(fragments(-1).isEmpty());
+        final long updated = _store.updateGraph(_GRAPH, topicMap(topic("b", sidB)), _GRAPH, MediaType.XTM).getLastModification();
+        List<IFragmentInfo> fragments = fragments(-1);
+        assertEquals(1, fragments.size());
+        IFragmentInfo fragment = fragments.get(0);
+        assertEquals(sidB, fragment.getURI());
+        assertEquals(updated, fragment.getLastModification());
+        assertTrue(fragment.getResources().contains(new DefaultResource(sidB, IResource.Role.SUBJECT_IDENTIFIER)));
+        assertTrue(fragment.getResources().contains(new DefaultResource(_GRAPH.resolve("#b"), IResource.Role.ITEM_IDENTIFIER)));
+        final long replaced = _store.createOrReplaceSubject(_GRAPH, sidA, topicMap(topic("a", sidA)), _GRAPH, MediaType.XTM).getLastModification();
+        fragments = fragments(replaced);
+        assertEquals(1, fragments.size());
+        assertEquals(sidA, fragments.get(0).getURI());
+        _store.deleteSubject(_GRAPH, sidB);
+        fragments = fragments(-1);
+        assertEquals(2, fragments.size());
+        fragment = fragments.get(1);
+        assertEquals(sidB, fragment.getURI());
+        assertTrue(fragment.getLastModification() > replaced);
+        assertEquals(fragment.getLastModification(), _store.getLastModificationFragments(_GRAPH));
+        _store.createOrReplaceGraph(_GRAPH, topicMap(topic("a")), _GRAPH, MediaType.XTM);
+        assertTrue(fragments(-1).isEmpty());
+    }
+
+    private static Set<URI> fragmentURIs(final List<IFragmentInfo> fragments, final long lastModification) {
+        final Set<URI> uris = new HashSet<URI>();
+        for (IFragmentInfo fragment: fragments) {
+            assertEquals(lastModification, fragment.getLastModification());
+            uris.add(fragment.getURI());
+        }
+        return uris;
+    }
+
+    public void testFragmentsOfRolePlayers() throws Exception {
+        final URI sidA = URI.create("http://psi.example.org/a");
+        final URI sidB = URI.create("http://psi.example.org/b");
+        final URI sidC = URI.create("http://psi.example.org/c");
+        _store.createOrReplaceGraph(_GRAPH, topicMap(topic("a", sidA, "A") + topic("b", sidB, "B") 
+                + topic("c", sidC, "C") + association("a", "b")), _GRAPH, MediaType.XTM);
+        final long replaced = _store.createOrReplaceSubject(_GRAPH, sidC, 
+                topicMap(topic("c", sidC, "C2") + association("c", "b")), _GRAPH, MediaType.XTM).getLastModification();
+        assertEquals("The association of B was added", 
+                new HashSet<URI>(Arrays.asList(sidB, sidC)), fragmentURIs(fragments(replaced), replaced));
+        _store.deleteSubject(_GRAPH, sidA);
+        final long deleted = _store.getLastModificationFragments(_GRAPH);
+        assertTrue(deleted > replaced);
+        assertEquals("The association of B was removed", 
+                new HashSet<URI>(Arrays.asList(sidA, sidB)), fragmentURIs(fragments(deleted), deleted));
+    }
+
+    public void testGetSubject() throws Exception {
+        final URI sidA = URI.create("http://psi.example.org/a");
+        final URI sidB = URI.create("http://psi.example.org/b");
+        _store.createOrReplaceGraph(_GRAPH, topicMap(topic("a", sidA, "A") + topic("b", sidB, "B") 
+                + association("a", "b")), _GRAPH, MediaType.XTM);
+        final TopicMap tm = read(_store.getSubject(_GRAPH, sidA, MediaType.XTM), _GRAPH);
+        final Topic a = tm.getTopicBySubjectIdentifier(tm.createLocator(sidA.toString()));
+        assertNotNull(a);
+        assertEquals(1, a.getNames().size());
+        assertEquals("A", a.getNames().iterator().next().getValue());
+        assertEquals(1, a.getRolesPlayed().size());
+        final Topic b = tm.getTopicBySubjectIdentifier(tm.createLocator(sidB.toString()));
+        assertNotNull("The role player must be part of the subject's statements", b);
+        assertTrue("Only the identities of other topics are serialized", b.getNames().isEmpty());
+        assertEquals(1, tm.getAssociations().size());
+        assertTrue(read(_store.getSubject(_GRAPH, URI.create("http://psi.example.org/unknown"), MediaType.XTM), _GRAPH).getTopics().isEmpty());
+        try {
+            _store.getSubject(URI.create("http://www.semagia.com/unknown"), sidA, MediaType.XTM);
+            fail("Expected an exception for an unknown graph");
+        }
+        catch (GraphNotExistsException ex) {
+            // noop.
+        }
+    }
+
+    public void testCreateOrReplaceSubject() throws Exception {
+        final URI sidA = URI.create("http://psi.example.org/a");
+        final URI sidB = URI.create("http://psi.example.org/b");
+        _store.createOrReplaceGraph(_GRAPH, topicMap(topic("a", sidA, "A") + topic("b", sidB, "B")), _GRAPH, MediaType.XTM);
+        _store.createOrReplaceSubject(_GRAPH, sidA, topicMap(topic("a", sidA, "A2")), _GRAPH, MediaType.XTM);
+        final TopicMap tm = read(_store.getGraph(_GRAPH, MediaType.XTM), _GRAPH);
+        assertEquals("The topic must be replaced, not merged", "A2", getTopicName(tm, sidA));
+        assertEquals("B", getTopicName(tm, sidB));
+    }
+
+    public void testDeleteSubject() throws Exception {
+        final URI sidA = URI.create("http://psi.example.org/a");
+        final URI sidB = URI.create("http://psi.example.org/b");
+        _store.createOrReplaceGraph(_GRAPH, topicMap(topic("a", sidA, "A") + topic("b", sidB, "B")), _GRAPH, MediaType.XTM);
+        _store.deleteSubject(_GRAPH, sidA);
+        final TopicMap tm = read(_store.getGraph(_GRAPH, MediaType.XTM), _GRAPH);
+        assertNull(tm.getTopicBySubjectIdentifier(tm.createLocator(sidA.toString())));
+        assertEquals("B", getTopicName(tm, sidB));
+    }
+
+    /**
+     * Returns a stream which fails after the provided content was read.
+     */
+    private static InputStream broken(final InputStream in) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                final int b = in.read();
+                if (b == -1) {
+                    throw new IOException("Connection reset");
+                }
+                return b;
+            }
+        };
+    }
+
+    public void testCreateOrReplaceGraphParseError() throws Exception {
+        final URI sidA = URI.create("http://psi.example.org/a");
+        final URI sidB = URI.create("http://psi.example.org/b");
+        final long created = _store.createOrReplaceGraph(_GRAPH, topicMap(topic("a", sidA, "A")), _GRAPH, MediaType.XTM).getLastModification();
+        final int topicMaps = _sys.getLocators().size();
+        try {
+            _store.createOrReplaceGraph(_GRAPH, broken(new ByteArrayInputStream(("<topicMap xmlns='http://www.topicmaps.org/xtm/' version='2.0'>" 
+                    + topic("b", sidB, "B")).getBytes())), _GRAPH, MediaType.XTM);
+            fail("Expected an exception since the input is incomplete");
+        }
+        catch (IOException ex) {
+            // noop.
+        }
+        assertEquals("The partially parsed topic map must be removed", topicMaps, _sys.getLocators().size());
+        assertEquals(created, _store.getGraphInfo(_GRAPH).getLastModification());
+        final TopicMap tm = read(_store.getGraph(_GRAPH, MediaType.XTM), _GRAPH);
+        assertEquals("A", getTopicName(tm, sidA));
+        assertNull(tm.getTopicBySubjectIdentifier(tm.createLocator(sidB.toString())));
+        // If a reference to the current version leaked, the superseded 
+        // version would not be removed
+        _store.createOrReplaceSubject(_GRAPH, sidA, topicMap(topic("a", sidA, "A2")), _GRAPH, MediaType.XTM);
+        assertEquals(topicMaps, _sys.getLocators().size());
+    }
+
+    public void testLastModification() throws Exception {
+        final long created = _store.createOrReplaceGraph(_GRAPH, topicMap(topic("a")), _GRAPH, MediaType.XTM).getLastModification();
+        assertTrue(created > 0);
+        assertEquals(created, _store.getGraphInfo(_GRAPH).getLastModification());
+        assertEquals(created, _store.getLastModification());
+        final long updated = _store.updateGraph(_GRAPH, topicMap(topic("b")), _GRAPH, MediaType.XTM).getLastModification();
+        assertTrue(updated > created);
+        assertEquals(updated, _store.getGraphInfo(_GRAPH).getLastModification());
+        final long replaced = _store.createOrReplaceSubject(_GRAPH, _GRAPH.resolve("#a"), topicMap(topic("a")), _GRAPH, MediaType.XTM).getLastModification();
+        assertTrue(replaced > updated);
+        assertEquals(replaced, _store.getGraphInfo(_GRAPH).getLastModification());
+    }
+
+    public void testReadersKeepVersion() throws Exception {
+        final URI sidA = URI.create("http://psi.example.org/a");
+        final URI sidB = URI.create("http://psi.example.org/b");
+        _store.createOrReplaceGraph(_GRAPH, topicMap(topic("a", sidA, "A")), _GRAPH, MediaType.XTM);
+        final int topicMaps = _sys.getLocators().size();
+        final IWritableRepresentation representation = _store.getGraph(_GRAPH, MediaType.XTM);
+        final IGraph graph = _store.openGraph(_GRAPH);
+        _store.updateGraph(_GRAPH, topicMap(topic("b", sidB, "B")), _GRAPH, MediaType.XTM);
+        _store.createOrReplaceGraph(_GRAPH, topicMap(topic("a", sidA, "A2")), _GRAPH, MediaType.XTM);
+        assertTrue("The versions in use must not be removed", _sys.getLocators().size() > topicMaps);
+        TopicMap tm = read(representation, _GRAPH);
+        assertEquals("A", getTopicName(tm, sidA));
+        assertNull(tm.getTopicBySubjectIdentifier(tm.createLocator(sidB.toString())));
+        tm = read(graph.getRepresentation(MediaType.XTM), _GRAPH);
+        assertEquals("A", getTopicName(tm, sidA));
+        assertNull(tm.getTopicBySubjectIdentifier(tm.createLocator(sidB.toString())));
+        // The writer removes the released versions with its next operation
+        _store.getGraphInfos();
+        assertEquals("The superseded versions must be removed", topicMaps, _sys.getLocators().size());
+        assertEquals("A2", getTopicName(read(_store.getGraph(_GRAPH, MediaType.XTM), _GRAPH), sidA));
+    }
+
+    public void testOpenGraphKeepsVersion() throws Exception {
+        _store.createOrReplaceGraph(_GRAPH, topicMap(topic("a")), _GRAPH, MediaType.XTM);
+        final IGraph graph = _store.openGraph(_GRAPH);
+        final long lastModification = graph.getGraphInfo().getLastModification();
+        _store.updateGraph(_GRAPH, topicMap(topic("b")), _GRAPH, MediaType.XTM);
+        assertTrue(_store.getGraphInfo(_GRAPH).getLastModification() > lastModification);
+        assertEquals(lastModification, graph.getGraphInfo().getLastModification());
+        graph.close();
+    }
+
 }
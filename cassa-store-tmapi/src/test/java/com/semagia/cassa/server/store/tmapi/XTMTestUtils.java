@@ -0,0 +1,137 @@
+/*
+ * Copyright 2011 Lars Heuer (heuer[at]semagia.com). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.cassa.server.store.tmapi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.URI;
+
+import junit.framework.Assert;
+
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
+import org.tmapi.core.TopicMapSystemFactory;
+
+import com.semagia.cassa.common.dm.IWritableRepresentation;
+
+/**
+ * XTM 2.0 fixtures for the tests of this package.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+final class XTMTestUtils {
+
+    private XTMTestUtils() {
+        // noop.
+    }
+
+    /**
+     * Returns an XTM 2.0 topic map with the provided content.
+     *
+     * @param content The topics and associations, i.e. created by {@link #topic(String)}.
+     * @return A stream to read the topic map from.
+     */
+    static InputStream topicMap(final String content) {
+        return new ByteArrayInputStream(("<topicMap xmlns='http://www.topicmaps.org/xtm/' version='2.0'>" 
+                + content + "</topicMap>").getBytes());
+    }
+
+    /**
+     * Returns a topic without subject identifier and name.
+     *
+     * @param topicId The topic id.
+     * @return The XTM topic element.
+     */
+    static String topic(final String topicId) {
+        return topic(topicId, null, null);
+    }
+
+    /**
+     * Returns a topic with a subject identifier.
+     *
+     * @param topicId The topic id.
+     * @param sid The subject identifier.
+     * @return The XTM topic element.
+     */
+    static String topic(final String topicId, final URI sid) {
+        return topic(topicId, sid, null);
+    }
+
+    /**
+     * Returns a topic with an optional subject identifier and an optional name.
+     *
+     * @param topicId The topic id.
+     * @param sid The subject identifier or {@code null}.
+     * @param name The name or {@code null}.
+     * @return The XTM topic element.
+     */
+    static String topic(final String topicId, final URI sid, final String name) {
+        final StringBuilder buff = new StringBuilder("<topic id='").append(topicId).append("'>");
+        if (sid != null) {
+            buff.append("<subjectIdentifier href='").append(sid).append("'/>");
+        }
+        if (name != null) {
+            buff.append("<name><value>").append(name).append("</value></name>");
+        }
+        return buff.append("</topic>").toString();
+    }
+
+    /**
+     * Returns a binary association between the provided topics.
+     *
+     * @param playerId The id of the first role player.
+     * @param otherPlayerId The id of the second role player.
+     * @return The XTM association element.
+     */
+    static String association(final String playerId, final String otherPlayerId) {
+        return "<association><type><topicRef href='#assoc'/></type>"
+                + "<role><type><topicRef href='#role'/></type><topicRef href='#" + playerId + "'/></role>"
+                + "<role><type><topicRef href='#role2'/></type><topicRef href='#" + otherPlayerId + "'/></role>"
+                + "</association>";
+    }
+
+    /**
+     * Reads the representation into a topic map which does not belong to 
+     * a store.
+     *
+     * @param representation The representation to read.
+     * @param baseURI The base URI, used as topic map locator as well.
+     * @return The topic map.
+     */
+    static TopicMap read(final IWritableRepresentation representation, final URI baseURI) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        representation.write(out);
+        final TopicMap tm = TopicMapSystemFactory.newInstance().newTopicMapSystem().createTopicMap(baseURI.toString());
+        TMAPIUtils.read(tm, baseURI, new ByteArrayInputStream(out.toByteArray()), representation.getMediaType());
+        return tm;
+    }
+
+    /**
+     * Returns the only name of the topic with the provided subject identifier.
+     *
+     * @param tm The topic map.
+     * @param sid The subject identifier.
+     * @return The name.
+     */
+    static String getTopicName(final TopicMap tm, final URI sid) {
+        final Topic topic = tm.getTopicBySubjectIdentifier(tm.createLocator(sid.toString()));
+        Assert.assertNotNull("The topic " + sid + " must exist", topic);
+        Assert.assertEquals(1, topic.getNames().size());
+        return topic.getNames().iterator().next().getValue();
+    }
+
+}